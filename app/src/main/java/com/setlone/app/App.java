@@ -12,6 +12,7 @@ import android.os.Bundle;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.preference.PreferenceManager;
 
+import com.setlone.app.service.SignatureLookupService;
 import com.setlone.app.util.TimberInit;
 import com.setlone.app.walletconnect.AWWalletConnectClient;
 
@@ -60,6 +61,7 @@ public class App extends Application
         mInstance = this;
         Realm.init(this);
         TimberInit.configTimber();
+        SignatureLookupService.getInstance(this).preload();
 
         int defaultTheme = PreferenceManager.getDefaultSharedPreferences(this)
                 .getInt("theme", C.THEME_AUTO);
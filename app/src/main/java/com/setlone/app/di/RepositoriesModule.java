@@ -11,6 +11,7 @@ import com.setlone.app.repository.EthereumNetworkRepositoryType;
 import com.setlone.app.repository.OnRampRepository;
 import com.setlone.app.repository.OnRampRepositoryType;
 import com.setlone.app.repository.PreferenceRepositoryType;
+import com.setlone.app.repository.RealmWriteQueue;
 import com.setlone.app.repository.SharedPreferenceRepository;
 import com.setlone.app.repository.SwapRepository;
 import com.setlone.app.repository.SwapRepositoryType;
@@ -151,9 +152,9 @@ public class RepositoriesModule
 
     @Singleton
     @Provides
-    TransactionLocalSource provideTransactionInDiskCache(RealmManager realmManager)
+    TransactionLocalSource provideTransactionInDiskCache(RealmManager realmManager, RealmWriteQueue writeQueue)
     {
-        return new TransactionsRealmCache(realmManager);
+        return new TransactionsRealmCache(realmManager, writeQueue);
     }
 
     @Singleton
@@ -161,9 +162,10 @@ public class RepositoriesModule
     TransactionsNetworkClientType provideBlockExplorerClient(
         OkHttpClient httpClient,
         Gson gson,
-        RealmManager realmManager)
+        RealmManager realmManager,
+        RealmWriteQueue writeQueue)
     {
-        return new TransactionsNetworkClient(httpClient, gson, realmManager);
+        return new TransactionsNetworkClient(httpClient, gson, realmManager, writeQueue);
     }
 
     @Singleton
@@ -235,9 +237,9 @@ public class RepositoriesModule
 
     @Singleton
     @Provides
-    IPFSServiceType provideIPFSService(OkHttpClient client)
+    IPFSServiceType provideIPFSService(@ApplicationContext Context context, OkHttpClient client)
     {
-        return new IPFSService(client);
+        return new IPFSService(client, new File(context.getCacheDir(), "ipfs"));
     }
 
     @Singleton
@@ -270,9 +272,9 @@ public class RepositoriesModule
 
     @Singleton
     @Provides
-    OpenSeaService provideOpenseaService()
+    OpenSeaService provideOpenseaService(RealmManager realmManager)
     {
-        return new OpenSeaService();
+        return new OpenSeaService(realmManager);
     }
 
     @Singleton
@@ -5,6 +5,7 @@ import android.content.Context;
 import com.setlone.app.C;
 import com.setlone.app.interact.WalletConnectInteract;
 import com.setlone.app.repository.PreferenceRepositoryType;
+import com.setlone.app.repository.RealmWriteQueue;
 import com.setlone.app.service.GasService;
 import com.setlone.app.service.RealmManager;
 import com.setlone.app.walletconnect.AWWalletConnectClient;
@@ -53,6 +54,13 @@ public class ToolsModule
         return new RealmManager();
     }
 
+    @Singleton
+    @Provides
+    RealmWriteQueue provideRealmWriteQueue(RealmManager realmManager)
+    {
+        return new RealmWriteQueue(realmManager);
+    }
+
     @Singleton
     @Provides
     AWWalletConnectClient provideAWWalletConnectClient(@ApplicationContext Context context, WalletConnectInteract walletConnectInteract, PreferenceRepositoryType preferenceRepositoryType, GasService gasService)
@@ -5,25 +5,45 @@ import static com.setlone.app.repository.TokenRepository.callSmartContractFuncti
 
 import android.text.TextUtils;
 
+import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
+
+import com.setlone.app.App;
 import com.setlone.app.C;
 import com.setlone.app.entity.nftassets.NFTAsset;
 import com.setlone.app.entity.tokens.Token;
+import com.setlone.app.repository.EthereumNetworkBase;
+import com.setlone.app.repository.TokenRepository;
 import com.setlone.app.service.IPFSService;
+import com.setlone.app.service.NFTMetadataCache;
+import com.setlone.app.util.Multicall3;
 import com.setlone.app.util.Utils;
 
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
 import org.web3j.abi.datatypes.Utf8String;
 import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.response.EthCall;
 
+import java.io.File;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 import okhttp3.OkHttpClient;
+import timber.log.Timber;
 
 /**
  * Created by JB on 7/05/2022.
@@ -32,6 +52,7 @@ public class ContractInteract
 {
     private final Token token;
     protected static IPFSService client;
+    protected static NFTMetadataCache metadataCache;
 
     public ContractInteract(Token token)
     {
@@ -64,20 +85,15 @@ public class ContractInteract
         //check if this is direct metadata, some tokens do this
         setupClient();
 
-        return client.getContent(tokenURI);
+        return metadataCache.getContent(tokenURI);
     }
 
     public NFTAsset fetchTokenMetadata(BigInteger tokenId)
     {
-        //1. get TokenURI (check for non-standard URI - check "tokenURI" and "uri")
-        String responseValue = callSmartContractFunction(token.tokenInfo.chainId, getTokenURI(tokenId), token.getAddress(), token.getWallet());
-        if (TextUtils.isEmpty(responseValue))
-        {
-            responseValue = callSmartContractFunction(token.tokenInfo.chainId, getTokenURI2(tokenId), token.getAddress(), token.getWallet());
-        }
+        setupClient();
+        String metaData = metadataCache.getTokenMetadata(token.tokenInfo.chainId, token.getAddress(), tokenId,
+                () -> fetchTokenURI(tokenId));
 
-        responseValue = Utils.parseResponseValue(responseValue, tokenId); //ensure {id} is honoured as per ERC1155 rules
-        String metaData = loadMetaData(responseValue);
         if (!TextUtils.isEmpty(metaData))
         {
             return new NFTAsset(metaData);
@@ -88,6 +104,94 @@ public class ContractInteract
         }
     }
 
+    /**
+     * Fetch metadata for a set of tokens in the collection. Token URIs which aren't already cached are read in
+     * Multicall3 batches rather than one tokenURI call per token, then the metadata itself is fetched with bounded
+     * concurrency. Tokens the batch couldn't resolve go through the usual tokenURI/uri path.
+     */
+    public Map<BigInteger, NFTAsset> fetchTokenMetadata(Collection<BigInteger> tokenIds)
+    {
+        setupClient();
+        long chainId = token.tokenInfo.chainId;
+        List<BigInteger> unknown = new ArrayList<>();
+        for (BigInteger tokenId : tokenIds)
+        {
+            if (!metadataCache.hasTokenURI(chainId, token.getAddress(), tokenId)) unknown.add(tokenId);
+        }
+
+        if (unknown.size() > 1 && EthereumNetworkBase.hasMulticall(chainId))
+        {
+            fetchTokenURIs(unknown);
+        }
+
+        Map<BigInteger, NFTAsset> assets = new ConcurrentHashMap<>();
+        Flowable.fromIterable(tokenIds)
+                .flatMapCompletable(tokenId -> Completable.fromAction(() -> assets.put(tokenId, fetchTokenMetadata(tokenId)))
+                        .subscribeOn(Schedulers.io()), false, NFTMetadataCache.MAX_CONCURRENT_FETCHES)
+                .onErrorComplete()
+                .blockingAwait();
+
+        return assets;
+    }
+
+    private String fetchTokenURI(BigInteger tokenId)
+    {
+        //1. get TokenURI (check for non-standard URI - check "tokenURI" and "uri")
+        String responseValue = callSmartContractFunction(token.tokenInfo.chainId, getTokenURI(tokenId), token.getAddress(), token.getWallet());
+        if (TextUtils.isEmpty(responseValue))
+        {
+            responseValue = callSmartContractFunction(token.tokenInfo.chainId, getTokenURI2(tokenId), token.getAddress(), token.getWallet());
+        }
+
+        return Utils.parseResponseValue(responseValue, tokenId); //ensure {id} is honoured as per ERC1155 rules
+    }
+
+    /**
+     * Reads tokenURI for the tokens in aggregate3 calls and records the results in the metadata cache
+     */
+    private void fetchTokenURIs(List<BigInteger> tokenIds)
+    {
+        long chainId = token.tokenInfo.chainId;
+        int limit = EthereumNetworkBase.getMulticallLimit(chainId);
+        for (int start = 0; start < tokenIds.size(); start += limit)
+        {
+            List<BigInteger> chunk = tokenIds.subList(start, Math.min(tokenIds.size(), start + limit));
+            List<Multicall3.Call3> calls = new ArrayList<>(chunk.size());
+            for (BigInteger tokenId : chunk)
+            {
+                calls.add(new Multicall3.Call3(token.getAddress(), FunctionEncoder.encode(getTokenURI(tokenId))));
+            }
+
+            try
+            {
+                EthCall response = TokenRepository.getWeb3jService(chainId).ethCall(createEthCallTransaction(token.getWallet(),
+                        Multicall3.MULTICALL3_ADDRESS, Multicall3.encodeAggregate3(calls)), DefaultBlockParameterName.LATEST).send();
+
+                List<Multicall3.Result> results = response.hasError() ? new ArrayList<>() : Multicall3.decodeAggregate3(response.getValue());
+                if (results.size() != chunk.size())
+                {
+                    EthereumNetworkBase.setMulticallError(chainId);
+                    return;
+                }
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    Multicall3.Result r = results.get(i);
+                    if (!r.success) continue; //may use 'uri' instead; left for the single token path
+                    List<Type> values = FunctionReturnDecoder.decode(r.returnData, getTokenURI(chunk.get(i)).getOutputParameters());
+                    if (values.isEmpty() || TextUtils.isEmpty((String) values.get(0).getValue())) continue;
+                    metadataCache.putTokenURI(chainId, token.getAddress(), chunk.get(i),
+                            Utils.parseResponseValue((String) values.get(0).getValue(), chunk.get(i)));
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.w(e);
+                return;
+            }
+        }
+    }
+
     private Function getTokenURI(BigInteger tokenId)
     {
         return new Function("tokenURI",
@@ -114,17 +218,24 @@ public class ContractInteract
                 Collections.singletonList(new TypeReference<Utf8String>() {}));
     }
 
-    private static void setupClient()
+    private static synchronized void setupClient()
     {
         if (client == null)
         {
+            File ipfsDir = App.getInstance() != null ? new File(App.getInstance().getCacheDir(), "ipfs") : null;
             client = new IPFSService(
                     new OkHttpClient.Builder()
                     .connectTimeout(C.CONNECT_TIMEOUT*2, TimeUnit.SECONDS)
                     .readTimeout(C.READ_TIMEOUT*2, TimeUnit.SECONDS)
                     .writeTimeout(C.WRITE_TIMEOUT*2, TimeUnit.SECONDS)
                     .retryOnConnectionFailure(false)
-                    .build());
+                    .build(), ipfsDir);
+        }
+
+        if (metadataCache == null)
+        {
+            File cacheDir = App.getInstance() != null ? new File(App.getInstance().getCacheDir(), "nft-metadata") : null;
+            metadataCache = new NFTMetadataCache(client, cacheDir);
         }
     }
 }
@@ -0,0 +1,190 @@
+package com.setlone.app.entity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Reads the history of a block range as independent segments, several at a time.
+ *
+ * The range is split into segments, each reading upwards through its own blocks in windows. A window that returns
+ * too many logs is halved and tried again, and a window that succeeds lets the next one grow, so a busy stretch of
+ * history doesn't slow the quiet ones. Each pass reads a bounded number of windows per segment; segments record
+ * where they got to, so the caller can store that with the logs and pick up from there on the next pass.
+ *
+ * The logs read by all the segments are handed back in block order, whatever order the segments finished in.
+ */
+public class EventBackfill<T>
+{
+    public interface RangeReader<T>
+    {
+        /**
+         * @return logs from the inclusive block range
+         * @throws LogOverflowException if the node won't return the range, eg too many results
+         */
+        List<T> read(long fromBlock, long toBlock) throws LogOverflowException, IOException;
+    }
+
+    public static class Segment
+    {
+        public final long start;
+        public final long end;
+        public long next;   //next block to read
+        public long window; //blocks to read at once
+
+        public Segment(long start, long end, long next, long window)
+        {
+            this.start = start;
+            this.end = end;
+            this.next = next;
+            this.window = Math.max(1, window);
+        }
+
+        public boolean isComplete()
+        {
+            return next > end;
+        }
+    }
+
+    public static class Result<T>
+    {
+        public final List<T> logs;
+        public final int reads; //windows the node returned
+        public final boolean complete;
+
+        Result(List<T> logs, int reads, boolean complete)
+        {
+            this.logs = logs;
+            this.reads = reads;
+            this.complete = complete;
+        }
+    }
+
+    private final RangeReader<T> reader;
+    private final Comparator<T> blockOrder;
+    private final int parallelism;
+    private final int windowsPerPass;
+    private final long maxWindow;
+
+    /**
+     * @param blockOrder orders logs by block, then position in the block
+     * @param maxWindow most blocks a window may grow to, zero for no limit
+     */
+    public EventBackfill(RangeReader<T> reader, Comparator<T> blockOrder, int parallelism, int windowsPerPass, long maxWindow)
+    {
+        this.reader = reader;
+        this.blockOrder = blockOrder;
+        this.parallelism = Math.max(1, parallelism);
+        this.windowsPerPass = Math.max(1, windowsPerPass);
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * Divides the inclusive block range into segments of equal length
+     */
+    public static List<Segment> split(long start, long end, int count, long window)
+    {
+        List<Segment> segments = new ArrayList<>();
+        if (end < start) return segments;
+        long length = end - start + 1;
+        count = (int) Math.max(1, Math.min(count, length));
+        long size = (length + count - 1) / count;
+        for (long segStart = start; segStart <= end; segStart += size)
+        {
+            segments.add(new Segment(segStart, Math.min(end, segStart + size - 1), segStart, window));
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the next windows of each incomplete segment, moving the segments on past what was read
+     */
+    public Result<T> run(List<Segment> segments) throws IOException
+    {
+        List<Segment> pending = new ArrayList<>();
+        for (Segment segment : segments)
+        {
+            if (!segment.isComplete()) pending.add(segment);
+        }
+
+        List<T> logs = new ArrayList<>();
+        int reads = 0;
+        IOException failure = null;
+        if (!pending.isEmpty())
+        {
+            List<SegmentRead<T>> segmentReads = Observable.fromIterable(pending)
+                    .flatMap(segment -> Observable.fromCallable(() -> readSegment(segment))
+                            .subscribeOn(Schedulers.io()), parallelism)
+                    .toList()
+                    .blockingGet();
+
+            for (SegmentRead<T> read : segmentReads)
+            {
+                logs.addAll(read.logs);
+                reads += read.reads;
+                if (read.error != null) failure = read.error;
+            }
+        }
+
+        //what was read is still good even if a segment couldn't reach the node; report only if nothing was read
+        if (failure != null && reads == 0) throw failure;
+
+        Collections.sort(logs, blockOrder);
+
+        boolean complete = true;
+        for (Segment segment : segments)
+        {
+            complete &= segment.isComplete();
+        }
+
+        return new Result<>(logs, reads, complete);
+    }
+
+    private static class SegmentRead<T>
+    {
+        final List<T> logs = new ArrayList<>();
+        int reads;
+        IOException error;
+    }
+
+    private SegmentRead<T> readSegment(Segment segment)
+    {
+        SegmentRead<T> result = new SegmentRead<>();
+        int windows = 0;
+        while (!segment.isComplete() && windows < windowsPerPass && !Thread.currentThread().isInterrupted())
+        {
+            long to = Math.min(segment.end, segment.next + segment.window - 1);
+            try
+            {
+                windows++;
+                result.logs.addAll(reader.read(segment.next, to));
+                result.reads++;
+                segment.next = to + 1;
+                segment.window = maxWindow > 0 ? Math.min(maxWindow, segment.window * 2) : segment.window * 2;
+            }
+            catch (LogOverflowException e)
+            {
+                if (to == segment.next) break; //a single block the node won't return; leave for a later pass
+                segment.window = Math.max(1, (to - segment.next + 1) / 2);
+            }
+            catch (IOException e)
+            {
+                result.error = e;
+                break;
+            }
+            catch (RuntimeException e)
+            {
+                //web3j reports HTTP errors such as 429 unchecked; keep what this segment read, as next has moved past it
+                result.error = new IOException(e);
+                break;
+            }
+        }
+
+        return result;
+    }
+}
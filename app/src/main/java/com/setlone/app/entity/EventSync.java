@@ -7,6 +7,7 @@ import com.setlone.app.repository.EthereumNetworkBase;
 import com.setlone.app.repository.TokensRealmSource;
 import com.setlone.app.repository.entity.RealmAuxData;
 import com.setlone.app.repository.entity.RealmTransfer;
+import com.setlone.app.service.BlockTimestampCache;
 import com.setlone.app.service.TransactionsService;
 
 import org.web3j.abi.datatypes.Event;
@@ -18,16 +19,22 @@ import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.request.EthFilter;
 import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.utils.Numeric;
 
 import java.io.IOException;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.realm.Realm;
+import io.realm.RealmResults;
 import timber.log.Timber;
 
 /**
@@ -39,12 +46,17 @@ public class EventSync
     public static final long POLYGON_BLOCK_SEARCH_INTERVAL = 3000L;
     public static final long OKX_BLOCK_SEARCH_INTERVAL = 2000L;
 
+    public static final int BACKFILL_SEGMENTS = 8;
+    public static final int BACKFILL_PARALLELISM = 3;
+    public static final int BACKFILL_WINDOWS_PER_PASS = 4;
+
     private static final String TAG = "EVENT_SYNC";
+    private static final String BACKFILL_KEY = "-backfill-";
     private static final boolean EVENT_SYNC_DEBUGGING = false;
 
     private final Token token;
 
-    private static final HashSet<Long> batchProcessingError = new HashSet<>();
+    private static final Set<Long> batchProcessingError = ConcurrentHashMap.newKeySet(); //backfill reads from several threads
 
     public EventSync(Token token)
     {
@@ -336,7 +348,7 @@ public class EventSync
                 .equalTo("instanceKey", TokensRealmSource.databaseKey(token.tokenInfo.chainId, token.getAddress()))
                 .findFirst();
 
-        if (rd == null)
+        if (rd == null || rd.getFunctionId() == null)
         {
             return TransactionsService.getCurrentBlock(token.tokenInfo.chainId).longValue();
         }
@@ -445,8 +457,6 @@ public class EventSync
 
     /***
      * Event Handling
-     *
-     * TODO: batch up catch-up calls
      */
 
     public Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> processTransferEvents(Web3j web3j, Event transferEvent, DefaultBlockParameter startBlock,
@@ -470,13 +480,218 @@ public class EventSync
 
         HashSet<BigInteger> sendTokenIds = token.processLogsAndStoreTransferEvents(sendLogs, transferEvent, txHashes, realm);
 
+        registerTransactions(web3j, txHashes, getBlockHashes(receiveLogs.getLogs(), sendLogs.getLogs()));
+
+        return new Pair<>(eventCount, new Pair<>(rcvTokenIds, sendTokenIds));
+    }
+
+    /**
+     * True once the read of the whole history at once has failed, so the history has to be read in parts
+     */
+    public boolean isBackfilling(SyncDef sync)
+    {
+        return sync.state == EventSyncState.DOWNWARD_SYNC;
+    }
+
+    /**
+     * Reads the history below the downward sync point as segments, several at a time, and the new blocks since the
+     * sync began, so the wallet stays current while the history is filled in. The read points are kept here: each
+     * segment's progress is written with the transfers it read, and once all the segments are complete the sync
+     * carries on upwards from the new blocks.
+     *
+     * @param events transfer events of the token, all read for each block range
+     */
+    public Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> backfillTransferEvents(Web3j web3j, Realm realm, Event... events)
+            throws IOException
+    {
+        long chainId = token.tokenInfo.chainId;
+        long maxFetch = EthereumNetworkBase.getMaxEventFetch(chainId).longValue();
+        HashSet<String> txHashes = new HashSet<>();
+        HashSet<BigInteger> rcvTokenIds = new HashSet<>();
+        HashSet<BigInteger> sendTokenIds = new HashSet<>();
+        List<TransferLog> logs = new ArrayList<>();
+
+        //keep up with new blocks; liveStart is the first block not yet read
+        long liveStart = getSyncStart(realm);
+        long currentBlock = TransactionsService.getCurrentBlock(chainId).longValue();
+        if (currentBlock >= liveStart)
+        {
+            long liveEnd = EthereumNetworkBase.isEventBlockLimitEnforced(chainId) ? Math.min(currentBlock, liveStart + maxFetch - 1) : currentBlock;
+            try
+            {
+                logs.addAll(readTransferLogs(web3j, events, liveStart, liveEnd));
+                liveStart = liveEnd + 1;
+            }
+            catch (LogOverflowException e)
+            {
+                Timber.tag(TAG).w("Live read deferred: %s", e.getMessage());
+            }
+        }
+
+        //then the next part of the history
+        List<EventBackfill.Segment> segments = loadSegments(realm);
+        EventBackfill<TransferLog> backfill = new EventBackfill<>((from, to) -> readTransferLogs(web3j, events, from, to),
+                TransferLog.BLOCK_ORDER, BACKFILL_PARALLELISM, BACKFILL_WINDOWS_PER_PASS,
+                EthereumNetworkBase.isEventBlockLimitEnforced(chainId) ? maxFetch : 0);
+        EventBackfill.Result<TransferLog> result = backfill.run(segments);
+        logs.addAll(result.logs);
+        Collections.sort(logs, TransferLog.BLOCK_ORDER);
+
+        List<EthLog.LogResult> stored = new ArrayList<>();
+        for (TransferLog log : logs)
+        {
+            EthLog single = new EthLog();
+            single.setResult(Collections.singletonList(log.log));
+            HashSet<BigInteger> tokenIds = token.processLogsAndStoreTransferEvents(single, log.event, txHashes, realm);
+            if (tokenIds != null) (log.received ? rcvTokenIds : sendTokenIds).addAll(tokenIds);
+            stored.add(log.log);
+        }
+
+        writeStartSyncBlock(realm, liveStart);
+        storeSegments(realm, segments, result.complete);
+        if (result.complete)
+        {
+            EVENT_DEBUG("Backfill complete");
+            updateEventReads(realm, liveStart, maxFetch, EventSyncState.UPWARD_SYNC_MAX);
+        }
+
+        registerTransactions(web3j, txHashes, getBlockHashes(stored));
+
+        return new Pair<>(logs.size(), new Pair<>(rcvTokenIds, sendTokenIds));
+    }
+
+    private static class TransferLog
+    {
+        static final Comparator<TransferLog> BLOCK_ORDER = (a, b) -> {
+            int order = a.block().compareTo(b.block());
+            return order != 0 ? order : a.index().compareTo(b.index());
+        };
+
+        final Event event;
+        final boolean received;
+        final EthLog.LogResult<?> log;
+
+        TransferLog(Event event, boolean received, EthLog.LogResult<?> log)
+        {
+            this.event = event;
+            this.received = received;
+            this.log = log;
+        }
+
+        BigInteger block()
+        {
+            BigInteger block = ((Log) log.get()).getBlockNumber();
+            return block != null ? block : BigInteger.ZERO;
+        }
+
+        BigInteger index()
+        {
+            BigInteger index = ((Log) log.get()).getLogIndex();
+            return index != null ? index : BigInteger.ZERO;
+        }
+    }
+
+    private List<TransferLog> readTransferLogs(Web3j web3j, Event[] events, long fromBlock, long toBlock) throws LogOverflowException, IOException
+    {
+        DefaultBlockParameter startBlock = DefaultBlockParameter.valueOf(BigInteger.valueOf(fromBlock));
+        DefaultBlockParameter endBlock = DefaultBlockParameter.valueOf(BigInteger.valueOf(toBlock));
+        List<TransferLog> logs = new ArrayList<>();
+        for (Event event : events)
+        {
+            Pair<EthLog, EthLog> ethLogs = getTxLogs(web3j, token.getReceiveBalanceFilter(event, startBlock, endBlock),
+                    token.getSendBalanceFilter(event, startBlock, endBlock));
+
+            for (EthLog.LogResult<?> log : ethLogs.first.getLogs())
+            {
+                if (log.get() instanceof Log) logs.add(new TransferLog(event, true, log));
+            }
+            for (EthLog.LogResult<?> log : ethLogs.second.getLogs())
+            {
+                if (log.get() instanceof Log) logs.add(new TransferLog(event, false, log));
+            }
+        }
+        return logs;
+    }
+
+    private List<EventBackfill.Segment> loadSegments(Realm realm)
+    {
+        String prefix = TokensRealmSource.databaseKey(token.tokenInfo.chainId, token.getAddress()) + BACKFILL_KEY;
+        RealmResults<RealmAuxData> records = realm.where(RealmAuxData.class)
+                .beginsWith("instanceKey", prefix)
+                .findAll();
+
+        List<EventBackfill.Segment> segments = new ArrayList<>();
+        for (RealmAuxData rd : records)
+        {
+            String[] range = rd.getResult() != null ? rd.getResult().split("-") : new String[0];
+            if (range.length != 2) continue;
+            segments.add(new EventBackfill.Segment(Long.parseLong(range[0]), Long.parseLong(range[1]), rd.getResultTime(), rd.getResultReceivedTime()));
+        }
+
+        if (segments.isEmpty())
+        {
+            //everything from the downward sync point up has been read
+            segments = EventBackfill.split(1, getLastEventRead(realm), BACKFILL_SEGMENTS, getCurrentEventBlockSize(realm));
+            EVENT_DEBUG("Backfill " + segments.size() + " segments to " + getLastEventRead(realm));
+        }
+
+        Collections.sort(segments, (a, b) -> Long.compare(a.start, b.start));
+        return segments;
+    }
+
+    private void storeSegments(Realm realm, List<EventBackfill.Segment> segments, boolean complete)
+    {
+        if (realm == null) return;
+        String prefix = TokensRealmSource.databaseKey(token.tokenInfo.chainId, token.getAddress()) + BACKFILL_KEY;
+        realm.executeTransaction(r -> {
+            r.where(RealmAuxData.class)
+                    .beginsWith("instanceKey", prefix)
+                    .findAll().deleteAllFromRealm();
+
+            if (complete) return;
+
+            for (EventBackfill.Segment segment : segments)
+            {
+                RealmAuxData rd = r.createObject(RealmAuxData.class, prefix + segment.start);
+                rd.setChainId(token.tokenInfo.chainId);
+                rd.setResult(segment.start + "-" + segment.end);
+                rd.setResultTime(segment.next);
+                rd.setResultReceivedTime(segment.window);
+                r.insertOrUpdate(rd);
+            }
+        });
+    }
+
+    private void registerTransactions(Web3j web3j, Set<String> txHashes, List<String> blockHashes)
+    {
+        //the transactions are fetched next and each needs its block time; read them now, one request for the distinct blocks
+        if (!blockHashes.isEmpty())
+        {
+            BlockTimestampCache.getInstance().enrich(web3j, token.tokenInfo.chainId, blockHashes);
+        }
+
         //register Transaction fetches
         for (String txHash : txHashes)
         {
             TransactionsService.addTransactionHashFetch(txHash, token.tokenInfo.chainId, token.getWallet());
         }
+    }
 
-        return new Pair<>(eventCount, new Pair<>(rcvTokenIds, sendTokenIds));
+    private static List<String> getBlockHashes(List<EthLog.LogResult> logs, List<EthLog.LogResult> moreLogs)
+    {
+        List<String> blockHashes = getBlockHashes(logs);
+        blockHashes.addAll(getBlockHashes(moreLogs));
+        return blockHashes;
+    }
+
+    private static List<String> getBlockHashes(List<EthLog.LogResult> logs)
+    {
+        List<String> blockHashes = new ArrayList<>();
+        for (EthLog.LogResult<?> result : logs)
+        {
+            if (result.get() instanceof Log) blockHashes.add(((Log) result.get()).getBlockHash());
+        }
+        return blockHashes;
     }
 
     private Pair<EthLog, EthLog> getTxLogs(Web3j web3j, EthFilter receiveFilter, EthFilter sendFilter) throws LogOverflowException, IOException
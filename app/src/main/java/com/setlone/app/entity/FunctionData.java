@@ -8,6 +8,7 @@ import static com.setlone.app.entity.ContractType.ERC875_LEGACY;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Created by James on 2/02/2018.
@@ -28,7 +29,7 @@ public class FunctionData
         functionFullName = fName;
         args = new ArrayList<>();
         hasSig = false;
-        contractType = new ArrayList<>();
+        contractType = new CopyOnWriteArrayList<>();
     }
 
     public FunctionData(String methodSig, ContractType t, boolean hasSignature)
@@ -43,7 +44,7 @@ public class FunctionData
         this.args = new ArrayList<>();
         this.args.addAll(temp);
         functionFullName = methodSig;
-        contractType = new ArrayList<>();
+        contractType = new CopyOnWriteArrayList<>(); //types may be added while a decode reads them
         contractType.add(t);
         hasSig  = hasSignature;
 
@@ -7,11 +7,25 @@ public class QueryResponse
 {
     public final int code;
     public final String body;
+    public final String etag;         // validators for conditional re-fetch, null if the server didn't send them
+    public final String lastModified;
 
     public QueryResponse(int code, String body)
+    {
+        this(code, body, null, null);
+    }
+
+    public QueryResponse(int code, String body, String etag, String lastModified)
     {
         this.code = code;
         this.body = body;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public boolean isNotModified()
+    {
+        return code == 304;
     }
 
     public boolean isSuccessful()
@@ -11,33 +11,43 @@ import org.web3j.utils.Numeric;
 
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import timber.log.Timber;
 
 /**
  * Created by James on 2/02/2018.
  *
- * TransactionDecoder currently only decode a transaction input in the
- * string format, which is strictly a string starting with "0x" and
- * with an even number of hex digits followed. (Probably should be
- * bytes but we work with string for now.) It is used only for one
- * thing at the moment: decodeInput(), which returns the decoded
- * input.
+ * TransactionDecoder decodes a transaction input, a string starting with "0x" and followed by an even number of hex
+ * digits, into the function called and its arguments: decodeInput() returns the decoded input.
+ *
+ * Arguments are read in place from the input, only numbers are parsed and only what the function's args need is
+ * copied out; each decode keeps its own read position, so a single decoder can be shared by any number of threads. Decoded inputs of mined transactions are held by hash and wallet,
+ * as the same transactions are decoded each time a list is shown.
  */
 
 public class TransactionDecoder
 {
     public static final int FUNCTION_LENGTH = 10;
-    private final static List<String> endContractSignatures = new ArrayList<>();
-
-    private int parseIndex;
-    private Map<String, FunctionData> functionList;
+    private static final int WORD_LENGTH = 64; //hex digits in an argument
+    private static final int DECODED_CACHE_SIZE = 2048;
+    private final static List<String> endContractSignatures = buildEndContractSigs();
 
-    private ReadState state = ARGS;
-    private int sigCount = 0;
+    private final Map<String, FunctionData> functionList = new ConcurrentHashMap<>();
+    private final Map<String, TransactionInput> decodedInputs = new LinkedHashMap<String, TransactionInput>(64, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TransactionInput> eldest)
+        {
+            return size() > DECODED_CACHE_SIZE;
+        }
+    };
 
     private FunctionData getUnknownFunction()
     {
@@ -51,11 +61,9 @@ public class TransactionDecoder
 
     public TransactionInput decodeInput(String input)
     {
-        ParseStage parseState = ParseStage.PARSE_FUNCTION;
-        parseIndex = 0;
         //1. check function
         TransactionInput thisData = new TransactionInput();
-        if (input == null || input.length() < 10)
+        if (input == null || input.length() < FUNCTION_LENGTH)
         {
             thisData.functionData = getUnknownFunction();
             return thisData;
@@ -63,25 +71,18 @@ public class TransactionDecoder
 
         try
         {
-            while (parseIndex < input.length() && !(parseState == ParseStage.FINISH))
+            String function = input.substring(0, FUNCTION_LENGTH);
+            FunctionData data = functionList.get(function);
+            if (data != null)
             {
-                switch (parseState)
-                {
-                    case PARSE_FUNCTION: //get function
-                        parseState = setFunction(thisData, readBytes(input, FUNCTION_LENGTH), input.length());
-                        break;
-                    case PARSE_ARGS: //now get params
-                        parseState = getParams(thisData, input);
-                        break;
-                    case FINISH:
-                        break;
-                    case ERROR:
-                        //Perform any future error handling here
-                        parseState = ParseStage.FINISH;
-                        break;
-                }
-
-                if (parseIndex < 0) break; //error
+                thisData.functionData = data;
+                //2. now get params
+                if (input.length() > FUNCTION_LENGTH) getParams(thisData, new CallData(input, FUNCTION_LENGTH));
+            }
+            else
+            {
+                thisData.functionData = getUnknownFunction();
+                thisData.functionData.functionRawHex = function;
             }
         }
         catch (Exception e)
@@ -95,8 +96,28 @@ public class TransactionDecoder
 
     public TransactionInput decodeInput(Transaction tx, String walletAddress)
     {
+        //a mined transaction's input never changes
+        String key = (!tx.isPending() && tx.hash != null && walletAddress != null)
+                ? tx.hash + "-" + walletAddress.toLowerCase(Locale.ROOT) : null;
+        if (key != null)
+        {
+            synchronized (decodedInputs)
+            {
+                TransactionInput decoded = decodedInputs.get(key);
+                if (decoded != null) return decoded;
+            }
+        }
+
         TransactionInput thisData = decodeInput(tx.input);
         thisData.setOperationType(tx, walletAddress);
+
+        if (key != null)
+        {
+            synchronized (decodedInputs)
+            {
+                decodedInputs.put(key, thisData);
+            }
+        }
         return thisData;
     }
 
@@ -108,174 +129,197 @@ public class TransactionDecoder
         return thisData;
     }
 
-    private ParseStage setFunction(TransactionInput thisData, String input, int length)
-    {
-        //first get expected arg list:
-        FunctionData data = functionList.get(input);
-
-        if (data != null)
-        {
-            thisData.functionData = data;
-            thisData.arrayValues.clear();
-            thisData.addresses.clear();
-            thisData.sigData.clear();
-            thisData.miscData.clear();
-            thisData.functionData.functionRawHex = input;
-        }
-        else
-        {
-            thisData.functionData = getUnknownFunction();
-            thisData.functionData.functionRawHex = input;
-            return ParseStage.ERROR;
-        }
-
-        return ParseStage.PARSE_ARGS;
-    }
-
     enum ReadState
     {
         ARGS,
         SIGNATURE
     }
 
-    private ParseStage getParams(TransactionInput thisData, String input)
+    /**
+     * The arguments of one input, and where the decode has got to in them.
+     *
+     * Positions are counted in hex digits, so that a length read in digits (see 'bytes' below) leaves the next read
+     * exactly where it always has.
+     */
+    private static class CallData
     {
-        state = ARGS;
-        BigInteger count;
-        StringBuilder sb = new StringBuilder();
-        if (thisData.functionData != null && thisData.functionData.args != null)
+        private final String input;
+        private final int start;
+        private final int digits;
+        private int position;
+        private ReadState state = ARGS;
+        private int sigCount = 0;
+
+        CallData(String input, int start)
         {
-            for (String type : thisData.functionData.args)
-            {
-                String argData = read256bits(input);
-                if (argData.equals("0")) break;
-                switch (type)
-                {
-                    case "bytes":
-                        sb.setLength(0);
-                        argData = read256bits(input);
-                        BigInteger dataCount = Numeric.toBigInt(argData);
-                        String hexBytes = readBytes(input, dataCount.intValue());
-                        thisData.miscData.add(hexBytes);
-                        thisData.hexArgs.add(Numeric.prependHexPrefix(hexBytes));
-                        break;
-                    case "string":
-                        count = new BigInteger(argData, 16);
-                        sb.setLength(0);
-                        argData = read256bits(input);
-                        if (count.intValue() > argData.length())
-                            count = BigInteger.valueOf(argData.length());
-                        for (int index = 0; index < (count.intValue() * 2); index += 2)
-                        {
-                            int v = Integer.parseInt(argData.substring(index, index + 2), 16);
-                            char c = (char) v;
-                            sb.append(c);
-                        }
-                        thisData.miscData.add(Numeric.cleanHexPrefix(sb.toString()));
+            this.input = input;
+            this.start = start;
+            this.digits = input.length() - start;
+        }
 
-                        //Should be ASCII, try to convert
-                        thisData.hexArgs.add(new String(Numeric.hexStringToByteArray(sb.toString())));
-                        break;
-                    case "address":
-                        if (argData.length() >= 64 - ADDRESS_LENGTH_IN_HEX)
-                        {
-                            String addr = Numeric.prependHexPrefix(argData.substring(64 - ADDRESS_LENGTH_IN_HEX));
-                            thisData.addresses.add(addr);
-                            thisData.hexArgs.add(addr);
-                        }
-                        break;
-                    case "bytes32":
-                        addArg(thisData, argData);
-                        break;
-                    case "bytes32[]":
-                    case "uint16[]":
-                    case "uint256[]":
-                        count = new BigInteger(argData, 16);
-                        for (int i = 0; i < count.intValue(); i++)
-                        {
-                            String inputData = read256bits(input);
-                            thisData.arrayValues.add(new BigInteger(inputData, 16));
-                            thisData.hexArgs.add(inputData);
-                            if (inputData.equals("0")) break;
-                        }
-                        break;
-                    case "uint256":
-                    case "uint":
-                        addArg(thisData, argData);
-                        break;
-                    case "uint8": //In our standards, we will put uint8 as the signature marker
-                        if (thisData.functionData.hasSig)
-                        {
-                            state = ReadState.SIGNATURE;
-                            sigCount = 0;
-                        }
-                        addArg(thisData, argData);
-                        break;
-                    case "nodata":
-                        //no need to store this data - eg placeholder to indicate presence of a vararg
-                        break;
-                    case "bool":
-                        //zero or one?
-                        BigInteger val = new BigInteger(argData, 16);
-                        thisData.hexArgs.add(val.longValue() == 0 ? "false" : "true");
-                        break;
-                    default:
-                        break;
-                }
-            }
+        private boolean has(int end)
+        {
+            return end <= digits;
         }
-        else
+
+        int digit(int index)
         {
-            return ParseStage.FINISH; //skip to end of read if there are no args in the spec
+            int digit = Character.digit(input.charAt(start + index), 16);
+            if (digit < 0) throw new NumberFormatException("Not hex: " + input.charAt(start + index)); //as BigInteger would have
+            return digit;
         }
 
-        return ParseStage.FINISH;
-    }
+        /**
+         * @return position of the next argument, or -1 if there isn't a whole argument left
+         */
+        int nextWord()
+        {
+            if (!has(position + WORD_LENGTH)) return -1;
+            int word = position;
+            position += WORD_LENGTH;
+            return word;
+        }
 
-    private void addArg(TransactionInput thisData, String input)
-    {
-        switch (state)
+        /**
+         * @return the next count digits, null if there aren't that many left
+         */
+        String nextDigits(int count)
         {
-            case ARGS:
-                thisData.miscData.add(Numeric.cleanHexPrefix(input));
-                break;
-            case SIGNATURE:
-                thisData.sigData.add(input);
-                if (++sigCount == 3) state = ARGS;
-                break;
+            if (!has(position + count)) return null;
+            String value = hex(position, count);
+            position += count;
+            return value;
         }
-        thisData.hexArgs.add(input);
-    }
 
-    private String readBytes(String input, int bytes)
-    {
-        if ((parseIndex + bytes) <= input.length())
+        String hex(int from, int count)
+        {
+            return input.substring(start + from, start + from + count);
+        }
+
+        //low 64 bits of the argument, as BigInteger.longValue() would give
+        long longValue(int word)
         {
-            String value = input.substring(parseIndex, parseIndex + bytes);
-            parseIndex += bytes;
+            long value = 0;
+            for (int i = word + WORD_LENGTH - 16; i < word + WORD_LENGTH; i++)
+            {
+                value = (value << 4) | digit(i);
+            }
             return value;
         }
-        else
+
+        int intValue(int word)
+        {
+            return (int) longValue(word);
+        }
+
+        int byteAt(int start)
         {
-            return "0";
+            return (digit(start) << 4) | digit(start + 1);
         }
     }
 
-    private String read256bits(String input)
+    private void getParams(TransactionInput thisData, CallData call)
     {
-        if ((parseIndex + 64) <= input.length())
+        if (thisData.functionData == null || thisData.functionData.args == null) return;
+
+        for (String type : thisData.functionData.args)
         {
-            String value = input.substring(parseIndex, parseIndex + 64);
-            parseIndex += 64;
-            return value;
+            int arg = call.nextWord();
+            if (arg < 0) break;
+            switch (type)
+            {
+                case "bytes":
+                    int lengthWord = call.nextWord();
+                    int dataCount = lengthWord >= 0 ? call.intValue(lengthWord) : 0;
+                    if (dataCount < 0 || call.position + dataCount < 0) return; //can't be read
+                    String hexBytes = call.nextDigits(dataCount);
+                    if (hexBytes == null) hexBytes = "0";
+                    thisData.miscData.add(hexBytes);
+                    thisData.hexArgs.add(Numeric.prependHexPrefix(hexBytes));
+                    break;
+                case "string":
+                    int count = call.intValue(arg);
+                    int text = call.nextWord();
+                    int available = text >= 0 ? WORD_LENGTH : 1;
+                    if (count > available) count = available;
+                    if (count * 2 > available) return; //longer than the argument; can't be read
+                    StringBuilder sb = new StringBuilder();
+                    for (int index = 0; index < count * 2; index += 2)
+                    {
+                        sb.append((char) call.byteAt(text + index));
+                    }
+                    thisData.miscData.add(Numeric.cleanHexPrefix(sb.toString()));
+
+                    //Should be ASCII, try to convert
+                    thisData.hexArgs.add(new String(Numeric.hexStringToByteArray(sb.toString())));
+                    break;
+                case "address":
+                    String addr = Numeric.prependHexPrefix(call.hex(arg + WORD_LENGTH - ADDRESS_LENGTH_IN_HEX, ADDRESS_LENGTH_IN_HEX));
+                    thisData.addresses.add(addr);
+                    thisData.hexArgs.add(addr);
+                    break;
+                case "bytes32":
+                    addArg(thisData, call, call.hex(arg, WORD_LENGTH));
+                    break;
+                case "bytes32[]":
+                case "uint16[]":
+                case "uint256[]":
+                    int elements = call.intValue(arg);
+                    for (int i = 0; i < elements; i++)
+                    {
+                        int element = call.nextWord();
+                        if (element < 0)
+                        {
+                            thisData.arrayValues.add(BigInteger.ZERO);
+                            thisData.hexArgs.add("0");
+                            break;
+                        }
+                        String inputData = call.hex(element, WORD_LENGTH);
+                        thisData.arrayValues.add(new BigInteger(inputData, 16));
+                        thisData.hexArgs.add(inputData);
+                    }
+                    break;
+                case "uint256":
+                case "uint":
+                    addArg(thisData, call, call.hex(arg, WORD_LENGTH));
+                    break;
+                case "uint8": //In our standards, we will put uint8 as the signature marker
+                    if (thisData.functionData.hasSig)
+                    {
+                        call.state = ReadState.SIGNATURE;
+                        call.sigCount = 0;
+                    }
+                    addArg(thisData, call, call.hex(arg, WORD_LENGTH));
+                    break;
+                case "nodata":
+                    //no need to store this data - eg placeholder to indicate presence of a vararg
+                    break;
+                case "bool":
+                    //zero or one?
+                    thisData.hexArgs.add(call.longValue(arg) == 0 ? "false" : "true");
+                    break;
+                default:
+                    break;
+            }
         }
-        else
+    }
+
+    private void addArg(TransactionInput thisData, CallData call, String input)
+    {
+        switch (call.state)
         {
-            return "0";
+            case ARGS:
+                thisData.miscData.add(input);
+                break;
+            case SIGNATURE:
+                thisData.sigData.add(input);
+                if (++call.sigCount == 3) call.state = ARGS;
+                break;
         }
+        thisData.hexArgs.add(input);
     }
 
-    private void addFunction(String method, ContractType type, boolean hasSig)
+    private synchronized void addFunction(String method, ContractType type, boolean hasSig)
     {
         String methodId = buildMethodId(method);
         FunctionData data = functionList.get(methodId);
@@ -286,13 +330,13 @@ public class TransactionDecoder
         else
         {
             data = new FunctionData(method, type, hasSig);
-            functionList.put(buildMethodId(method), data);
+            data.functionRawHex = methodId;
+            functionList.put(methodId, data);
         }
     }
 
     private void setupKnownFunctions()
     {
-        functionList = new HashMap<>();
         addFunction("transferFrom(address,address,uint16[])", ContractType.ERC875_LEGACY, false);
         addFunction("transfer(address,uint16[])", ContractType.ERC875_LEGACY, false);
         addFunction("trade(uint256,uint16[],uint8,bytes32,bytes32)", ContractType.ERC875_LEGACY, true);
@@ -355,7 +399,7 @@ public class TransactionDecoder
         addFunctionImmediate("commitNFT()", "0x521d83f0", ContractType.ERC721, false);
     }
 
-    private void addFunctionImmediate(String functionBody, String functionHash, ContractType type, boolean hasSig)
+    private synchronized void addFunctionImmediate(String functionBody, String functionHash, ContractType type, boolean hasSig)
     {
         FunctionData data = functionList.get(functionHash);
         if (data != null)
@@ -365,6 +409,7 @@ public class TransactionDecoder
         else
         {
             data = new FunctionData(functionBody, type, hasSig);
+            data.functionRawHex = functionHash;
             functionList.put(functionHash, data);
         }
     }
@@ -374,6 +419,22 @@ public class TransactionDecoder
         addFunction(methodSignature, ContractType.OTHER, hasSig);
     }
 
+    /**
+     * Adds a function whose selector is already known, eg from the selector database. Functions the decoder already
+     * has are left as they are, so their contract types still count towards getContractType
+     */
+    public synchronized void addScanFunction(String methodSignature, String methodId)
+    {
+        if (!functionList.containsKey(methodId))
+        {
+            addFunctionImmediate(methodSignature, methodId, ContractType.OTHER, false);
+            synchronized (decodedInputs)
+            {
+                decodedInputs.clear(); //held inputs may have been decoded without this function
+            }
+        }
+    }
+
     public ContractType getContractType(String input)
     {
         if (input.length() < 10) return ContractType.OTHER;
@@ -443,11 +504,6 @@ public class TransactionDecoder
         return highestType;
     }
 
-    enum ParseStage
-    {
-        PARSE_FUNCTION, PARSE_ARGS, FINISH, ERROR
-    }
-
     public Sign.SignatureData getSignatureData(TransactionInput data)
     {
         Sign.SignatureData sigData = null;
@@ -495,11 +551,6 @@ public class TransactionDecoder
             return false;
         }
 
-        if (endContractSignatures.size() == 0)
-        {
-            buildEndContractSigs();
-        }
-
         for (String sig : endContractSignatures)
         {
             if (input.equals(sig)) return true;
@@ -508,11 +559,13 @@ public class TransactionDecoder
         return false;
     }
 
-    private static void buildEndContractSigs()
+    private static List<String> buildEndContractSigs()
     {
-        endContractSignatures.add(buildMethodId("endContract()"));
-        endContractSignatures.add(buildMethodId("selfdestruct()"));
-        endContractSignatures.add(buildMethodId("kill()"));
+        List<String> sigs = new ArrayList<>();
+        sigs.add(buildMethodId("endContract()"));
+        sigs.add(buildMethodId("selfdestruct()"));
+        sigs.add(buildMethodId("kill()"));
+        return Collections.unmodifiableList(sigs);
     }
 }
 
@@ -692,16 +692,25 @@ public class ERC1155Token extends Token
         {
             final Web3j web3j = TokenRepository.getWeb3jServiceForEvents(tokenInfo.chainId);
 
-            Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> evRead = eventSync.processTransferEvents(web3j,
-                    getBalanceUpdateEvents(), startBlock, endBlock, realm);
+            boolean backfill = eventSync.isBackfilling(sync);
+            Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> evRead;
+            if (backfill)
+            {
+                //history is read in segments alongside the new blocks; the backfill keeps its own read points
+                evRead = eventSync.backfillTransferEvents(web3j, realm, getBalanceUpdateEvents(), getBatchBalanceUpdateEvents());
+            }
+            else
+            {
+                evRead = eventSync.processTransferEvents(web3j, getBalanceUpdateEvents(), startBlock, endBlock, realm);
 
-            Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> batchRead = eventSync.processTransferEvents(web3j,
-                    getBatchBalanceUpdateEvents(), startBlock, endBlock, realm);
+                Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> batchRead = eventSync.processTransferEvents(web3j,
+                        getBatchBalanceUpdateEvents(), startBlock, endBlock, realm);
+                evRead.second.first.addAll(batchRead.second.first);
+                evRead.second.first.addAll(batchRead.second.second);
+            }
 
             // All tokenIds which have passed through the owner address
             evRead.second.first.addAll(evRead.second.second);
-            evRead.second.first.addAll(batchRead.second.first);
-            evRead.second.first.addAll(batchRead.second.second);
 
             //combine the tokenIds with existing assets
             evRead.second.first.addAll(assets.keySet());
@@ -712,7 +721,7 @@ public class ERC1155Token extends Token
             updateRealmBalance(realm, evRead.second.first, balances);
 
             //update read points
-            eventSync.updateEventReads(realm, sync, currentBlock, evRead.first); //means our event read was fine
+            if (!backfill) eventSync.updateEventReads(realm, sync, currentBlock, evRead.first); //means our event read was fine
         }
         catch (LogOverflowException e)
         {
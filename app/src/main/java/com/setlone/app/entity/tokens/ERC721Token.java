@@ -368,10 +368,17 @@ public class ERC721Token extends Token
 
             balanceChecks.put(tokenInfo.address, true); //set checking
 
-            Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> evRead = eventSync.processTransferEvents(web3j,
-                    getTransferEvents(), startBlock, endBlock, realm);
-
-            eventSync.updateEventReads(realm, sync, currentBlock, evRead.first); //means our event read was fine
+            Pair<Integer, Pair<HashSet<BigInteger>, HashSet<BigInteger>>> evRead;
+            if (eventSync.isBackfilling(sync))
+            {
+                //history is read in segments alongside the new blocks; the backfill keeps its own read points
+                evRead = eventSync.backfillTransferEvents(web3j, realm, getTransferEvents());
+            }
+            else
+            {
+                evRead = eventSync.processTransferEvents(web3j, getTransferEvents(), startBlock, endBlock, realm);
+                eventSync.updateEventReads(realm, sync, currentBlock, evRead.first); //means our event read was fine
+            }
 
             //No need to go any further if this is enumerable
             if (contractType == ContractType.ERC721_ENUMERABLE) return balance;
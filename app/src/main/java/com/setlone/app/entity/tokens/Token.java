@@ -48,6 +48,7 @@ import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -1036,6 +1037,11 @@ public class Token
         return contractInteract.fetchTokenMetadata(tokenId);
     }
 
+    public Map<BigInteger, NFTAsset> fetchTokenMetadata(Collection<BigInteger> tokenIds)
+    {
+        return contractInteract.fetchTokenMetadata(tokenIds);
+    }
+
     public boolean checkInfoRequiresUpdate(RealmToken realmToken)
     {
         if (TextUtils.isEmpty(realmToken.getName()) || (!TextUtils.isEmpty(tokenInfo.name) && !tokenInfo.name.equals(realmToken.getName()))) { return true; }
@@ -1059,13 +1065,21 @@ public class Token
             EventResult counts = result.get("value");
             if (amounts == null) return assets;
 
+            //fetch any unknown assets together
+            List<BigInteger> unknown = new ArrayList<>();
+            for (String tokenId : amounts.values)
+            {
+                if (getAssetForToken(tokenId) == null) unknown.add(new BigInteger(tokenId));
+            }
+            Map<BigInteger, NFTAsset> fetched = unknown.isEmpty() ? Collections.emptyMap() : fetchTokenMetadata(unknown);
+
             for (int i = 0; i < amounts.values.length; i++)
             {
                 String tokenId = amounts.values[i];
                 String count = (counts == null || counts.values.length < i) ? "1" : counts.values[i];
 
                 NFTAsset asset = getAssetForToken(tokenId);
-                if (asset == null) asset = fetchTokenMetadata(new BigInteger(tokenId));
+                if (asset == null) asset = fetched.get(new BigInteger(tokenId));
 
                 if (asset != null)
                 {
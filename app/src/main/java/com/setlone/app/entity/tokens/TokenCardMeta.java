@@ -298,10 +298,15 @@ public class TokenCardMeta implements Comparable<TokenCardMeta>, Parcelable
     }
 
     public float calculateBalanceUpdateWeight()
+    {
+        return calculateBalanceUpdateWeight(System.currentTimeMillis());
+    }
+
+    public float calculateBalanceUpdateWeight(long currentTime)
     {
         float updateWeight = 0;
         //calculate balance update time
-        long timeDiff = (System.currentTimeMillis() - lastUpdate) / DateUtils.SECOND_IN_MILLIS;
+        long timeDiff = (currentTime - lastUpdate) / DateUtils.SECOND_IN_MILLIS;
 
         if (isEthereum())
         {
@@ -2,6 +2,7 @@ package com.setlone.app.entity.tokenscript;
 
 import com.setlone.app.BuildConfig;
 import com.setlone.app.entity.tokens.Token;
+import com.setlone.app.service.BlockTimestampCache;
 import com.setlone.token.entity.Attribute;
 import com.setlone.token.entity.AttributeInterface;
 import com.setlone.token.entity.ContractAddress;
@@ -120,7 +121,6 @@ import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
 import org.web3j.protocol.core.methods.request.EthFilter;
-import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog;
 import org.web3j.protocol.core.methods.response.EthTransaction;
 import org.web3j.protocol.core.methods.response.Log;
@@ -247,23 +247,12 @@ public abstract class EventUtils
         return topicVal;
     }
 
-    public static Single<EthBlock> getBlockDetails(String blockHash, Web3j web3j)
+    /**
+     * @return block timestamp in seconds, from the shared cache where the block has been seen before; 0 if unknown
+     */
+    public static Single<Long> getBlockTimestamp(long chainId, String blockHash, Web3j web3j)
     {
-        return Single.fromCallable(() -> {
-            EthBlock txResult;
-            try
-            {
-                txResult = web3j.ethGetBlockByHash(blockHash.trim(), false).send();
-                //if (BuildConfig.DEBUG) Timber.d("TS EVENT: " + txResult.getResult().getHash());
-            }
-            catch (IOException | NullPointerException e)
-            {
-                Timber.e(e);
-                txResult = new EthBlock();
-            }
-
-            return txResult;
-        });
+        return Single.fromCallable(() -> BlockTimestampCache.getInstance().getTimestamp(web3j, chainId, blockHash));
     }
 
     public static Single<EthTransaction> getTransactionDetails(String blockHash, Web3j web3j)
@@ -778,7 +778,6 @@ public abstract class TokenscriptFunction
                                                                  BigInteger tokenId, TokenDefinition definition, AttributeInterface attrIf)
     {
         return Single.fromCallable(() -> {
-            TransactionResult transactionResult = new TransactionResult(contractAddress.chainId, contractAddress.address, tokenId, attr);
             Function transaction = generateTransactionFunction(token, tokenId, definition, attr.function, attrIf);
 
             String result;
@@ -793,11 +792,22 @@ public abstract class TokenscriptFunction
                 result = callSmartContractFunction(TokenRepository.getWeb3jService(contractAddress.chainId), transaction, contractAddress.address, token.getWallet());
             }
 
-            transactionResult.result = handleTransactionResult(transactionResult, transaction, result, attr, System.currentTimeMillis());
-            return transactionResult;
+            return buildTransactionResult(contractAddress, attr, tokenId, transaction, result);
         });
     }
 
+    /**
+     * Interprets the return of an attribute function call, which may have been made as part of a batch
+     * @param responseValue raw return of the eth_call, null if the call failed
+     */
+    public TransactionResult buildTransactionResult(ContractAddress contractAddress, Attribute attr, BigInteger tokenId,
+                                                    Function transaction, String responseValue)
+    {
+        TransactionResult transactionResult = new TransactionResult(contractAddress.chainId, contractAddress.address, tokenId, attr);
+        transactionResult.result = handleTransactionResult(transactionResult, transaction, responseValue, attr, System.currentTimeMillis());
+        return transactionResult;
+    }
+
     public String callSmartContract(long chainId, String contractAddress, Function function)
     {
         return callSmartContractFunction(TokenRepository.getWeb3jService(chainId), function, contractAddress, ZERO_ADDRESS);
@@ -502,6 +502,46 @@ public class AWRealmMigration implements RealmMigration
 
             oldVersion = 54;
         }
+
+        if (oldVersion == 54)
+        {
+            if (schema.get("RealmOpenSeaCursor") == null)
+            {
+                schema.create("RealmOpenSeaCursor")
+                        .addField("chainId", long.class, FieldAttribute.PRIMARY_KEY)
+                        .addField("cursor", String.class)
+                        .addField("etag", String.class)
+                        .addField("updated", long.class);
+            }
+
+            oldVersion = 55;
+        }
+
+        if (oldVersion == 55)
+        {
+            if (schema.get("RealmSelector") == null)
+            {
+                schema.create("RealmSelector")
+                        .addField("selector", String.class, FieldAttribute.PRIMARY_KEY)
+                        .addField("signature", String.class)
+                        .addField("updated", long.class);
+            }
+
+            oldVersion = 56;
+        }
+
+        if (oldVersion == 56)
+        {
+            if (schema.get("RealmEnsRecord") == null)
+            {
+                schema.create("RealmEnsRecord")
+                        .addField("key", String.class, FieldAttribute.PRIMARY_KEY)
+                        .addField("value", String.class)
+                        .addField("updated", long.class);
+            }
+
+            oldVersion = 57;
+        }
     }
 
     @Override
@@ -0,0 +1,248 @@
+package com.setlone.app.repository;
+
+import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
+
+import android.util.Pair;
+
+import com.setlone.app.entity.Wallet;
+import com.setlone.app.entity.tokens.Token;
+import com.setlone.app.util.Multicall3;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.core.methods.response.EthGetBalance;
+import org.web3j.utils.Numeric;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Reads the balances of many tokens on a single chain using as few node round-trips as possible.
+ *
+ * Calls are packed into Multicall3 aggregate3 calls where the chain has the contract, otherwise into JSON-RPC batches
+ * sized by {@link EthereumNetworkBase#getBatchProcessingLimit}. Tokens which can't be resolved from a plain balance
+ * read (reverted calls, unsupported types) are handed back to the caller to go through the usual single token update.
+ * NFTs are never batched: an unchanged balance doesn't mean unchanged holdings (a newly received ERC1155 tokenId, or
+ * an ERC721 swapped for another), so they stay on the single token update and its transfer event sync.
+ *
+ * This class only reads; writing the results is the job of {@link TokenLocalSource#updateTokenBalances}
+ */
+public class BatchBalanceEngine
+{
+    private static final String TAG = "BATCHBAL";
+
+    public static class Result
+    {
+        public final List<Pair<Token, BigDecimal>> balances = new ArrayList<>();
+        public final List<Token> unresolved = new ArrayList<>();
+        public int nodeCalls = 0;
+    }
+
+    private static class BalanceRead
+    {
+        final Token token;
+        final String target;
+        final Function function;
+        final boolean isBaseChain;
+
+        BalanceRead(Token token, String target, Function function, boolean isBaseChain)
+        {
+            this.token = token;
+            this.target = target;
+            this.function = function;
+            this.isBaseChain = isBaseChain;
+        }
+    }
+
+    /**
+     * Determines if a token's balance can be read in a batch
+     */
+    public static boolean canBatch(Token token)
+    {
+        switch (token.getInterfaceSpec())
+        {
+            case ETHEREUM:
+            case ERC20:
+            case DYNAMIC_CONTRACT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public Result fetchBalances(Web3j web3j, Wallet wallet, long chainId, List<Token> tokens)
+    {
+        Result result = new Result();
+        List<BalanceRead> reads = new ArrayList<>();
+
+        for (Token token : tokens)
+        {
+            BalanceRead read = buildRead(token, wallet.address, chainId);
+            if (read != null) reads.add(read);
+            else result.unresolved.add(token);
+        }
+
+        if (reads.isEmpty()) return result;
+
+        List<BalanceRead> remaining = reads;
+        if (EthereumNetworkBase.hasMulticall(chainId))
+        {
+            remaining = readMulticall(web3j, wallet, chainId, reads, result);
+        }
+
+        if (!remaining.isEmpty() && EthereumNetworkBase.getBatchProcessingLimit(chainId) > 0)
+        {
+            remaining = readBatch(web3j, wallet, chainId, remaining, result);
+        }
+
+        for (BalanceRead read : remaining)
+        {
+            result.unresolved.add(read.token);
+        }
+
+        return result;
+    }
+
+    private BalanceRead buildRead(Token token, String walletAddress, long chainId)
+    {
+        if (token.tokenInfo.chainId != chainId || !canBatch(token)) return null;
+
+        if (token.isEthereum())
+        {
+            return new BalanceRead(token, Multicall3.MULTICALL3_ADDRESS, Multicall3.getEthBalance(walletAddress), true);
+        }
+        else
+        {
+            return new BalanceRead(token, token.getAddress(), TokenRepository.balanceOf(walletAddress), false);
+        }
+    }
+
+    /**
+     * @return reads that could not be resolved because the multicall itself failed
+     */
+    private List<BalanceRead> readMulticall(Web3j web3j, Wallet wallet, long chainId, List<BalanceRead> reads, Result result)
+    {
+        int limit = EthereumNetworkBase.getMulticallLimit(chainId);
+        for (int start = 0; start < reads.size(); start += limit)
+        {
+            List<BalanceRead> chunk = reads.subList(start, Math.min(reads.size(), start + limit));
+            List<Multicall3.Call3> calls = new ArrayList<>(chunk.size());
+            for (BalanceRead read : chunk)
+            {
+                calls.add(new Multicall3.Call3(read.target, FunctionEncoder.encode(read.function)));
+            }
+
+            try
+            {
+                result.nodeCalls++;
+                EthCall response = web3j.ethCall(createEthCallTransaction(wallet.address, Multicall3.MULTICALL3_ADDRESS,
+                        Multicall3.encodeAggregate3(calls)), DefaultBlockParameterName.LATEST).send();
+
+                List<Multicall3.Result> results = response.hasError() ? new ArrayList<>() : Multicall3.decodeAggregate3(response.getValue());
+                if (results.size() != chunk.size())
+                {
+                    //Multicall3 not deployed on this chain, or the node won't run it. Don't try again this session
+                    Timber.tag(TAG).d("Multicall unavailable on chain %d", chainId);
+                    EthereumNetworkBase.setMulticallError(chainId);
+                    return new ArrayList<>(reads.subList(start, reads.size()));
+                }
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    Multicall3.Result r = results.get(i);
+                    handleReturn(chunk.get(i), r.success ? r.returnData : null, result);
+                }
+            }
+            catch (Exception e)
+            {
+                //network failure; leave the rest for the single token path
+                Timber.tag(TAG).w(e);
+                return new ArrayList<>(reads.subList(start, reads.size()));
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    private List<BalanceRead> readBatch(Web3j web3j, Wallet wallet, long chainId, List<BalanceRead> reads, Result result)
+    {
+        int limit = EthereumNetworkBase.getBatchProcessingLimit(chainId);
+        for (int start = 0; start < reads.size(); start += limit)
+        {
+            List<BalanceRead> chunk = reads.subList(start, Math.min(reads.size(), start + limit));
+            BatchRequest requests = web3j.newBatch();
+            for (BalanceRead read : chunk)
+            {
+                if (read.isBaseChain)
+                {
+                    requests.add(web3j.ethGetBalance(wallet.address, DefaultBlockParameterName.LATEST));
+                }
+                else
+                {
+                    requests.add(web3j.ethCall(createEthCallTransaction(wallet.address, read.target,
+                            FunctionEncoder.encode(read.function)), DefaultBlockParameterName.LATEST));
+                }
+            }
+
+            try
+            {
+                result.nodeCalls++;
+                BatchResponse responses = requests.send();
+                if (responses.getResponses().size() != chunk.size())
+                {
+                    EthereumNetworkBase.setBatchProcessingError(chainId);
+                    return new ArrayList<>(reads.subList(start, reads.size()));
+                }
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    handleReturn(chunk.get(i), getReturnValue(responses.getResponses().get(i)), result);
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e);
+                return new ArrayList<>(reads.subList(start, reads.size()));
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    private String getReturnValue(Response<?> rsp)
+    {
+        if (rsp.hasError()) return null;
+        else if (rsp instanceof EthGetBalance) return Numeric.toHexStringWithPrefixZeroPadded(((EthGetBalance) rsp).getBalance(), 64);
+        else if (rsp instanceof EthCall) return ((EthCall) rsp).getValue();
+        else return null;
+    }
+
+    private void handleReturn(BalanceRead read, String returnData, Result result)
+    {
+        //reverted, empty or self-destructed contract; the single token path handles these cases
+        if (returnData == null || Numeric.cleanHexPrefix(returnData).isEmpty())
+        {
+            result.unresolved.add(read.token);
+            return;
+        }
+
+        try
+        {
+            BigDecimal balance = new BigDecimal(Numeric.toBigInt(Numeric.cleanHexPrefix(returnData).substring(0, 64)));
+            result.balances.add(new Pair<>(read.token, balance));
+        }
+        catch (Exception e)
+        {
+            result.unresolved.add(read.token);
+        }
+    }
+}
@@ -89,6 +89,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.reactivex.Single;
 
@@ -971,6 +972,31 @@ public abstract class EthereumNetworkBase implements EthereumNetworkRepositoryTy
         }
     }
 
+    public static final int MULTICALL_BATCH_LIMIT = 128;
+
+    //Chains where the Multicall3 contract is missing or the aggregate call failed. Assume available until proven otherwise
+    private static final Set<Long> multicallErrorSet = ConcurrentHashMap.newKeySet();
+
+    public static boolean hasMulticall(long chainId)
+    {
+        return !multicallErrorSet.contains(chainId) && chainId != TronConstants.TRON_ID;
+    }
+
+    public static void setMulticallError(long chainId)
+    {
+        multicallErrorSet.add(chainId);
+    }
+
+    /**
+     * Number of calls to pack into a single batched balance read. Multicall3 isn't bound by the node's JSON-RPC
+     * batch limit, but we still cap it so a single eth_call doesn't exceed node gas / payload limits
+     */
+    public static int getMulticallLimit(long chainId)
+    {
+        if (!hasMulticall(chainId)) return getBatchProcessingLimit(chainId);
+        return Math.max(MULTICALL_BATCH_LIMIT, getBatchProcessingLimit(chainId));
+    }
+
     @Override
     public boolean hasLockedGas(long chainId)
     {
@@ -0,0 +1,295 @@
+package com.setlone.app.repository;
+
+import com.setlone.app.entity.tokendata.TokenTicker;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ * In-memory fiat value of each wallet's holdings, kept up to date as tickers and balances are written.
+ *
+ * Every priced token holds its fiat contribution (and the contribution 24h ago) as doubles, and the wallet totals are
+ * the running sum of those. A ticker or balance write only adjusts the contributions it touches, so refreshing the
+ * wallet total doesn't read the database or rebuild any tokens. A wallet is loaded from Realm the first time its value
+ * is asked for, and loaded again if something invalidates it.
+ *
+ * Holdings and tickers are keyed by the ticker database key: the token address, or 'eth' for the chain token.
+ */
+public class PortfolioValueIndex
+{
+    public static class Totals
+    {
+        public final double value;
+        public final double historical; // value at prices 24h ago
+
+        Totals(double value, double historical)
+        {
+            this.value = value;
+            this.historical = historical;
+        }
+    }
+
+    public static class Holding
+    {
+        final String key;
+        final long chainId;
+        double balance;     // corrected for decimals
+        boolean priced;     // token type which carries a fiat value (not NFT or spam)
+        boolean hidden;     // hidden by the user
+        double value;
+        double historical;
+
+        public Holding(long chainId, String tickerAddress, double balance, boolean priced, boolean hidden)
+        {
+            this.key = TokensRealmSource.databaseKey(chainId, tickerAddress);
+            this.chainId = chainId;
+            this.balance = balance;
+            this.priced = priced;
+            this.hidden = hidden;
+        }
+    }
+
+    private static class Portfolio
+    {
+        final List<Long> networkFilters;
+        final Map<String, Holding> holdings = new HashMap<>();
+        double value;
+        double historical;
+
+        Portfolio(List<Long> networkFilters)
+        {
+            this.networkFilters = new ArrayList<>(networkFilters);
+        }
+
+        boolean includes(long chainId)
+        {
+            return networkFilters.isEmpty() || networkFilters.contains(chainId);
+        }
+    }
+
+    private final Map<String, double[]> tickers = new HashMap<>(); // ticker key -> { price, change24h }
+    private final Map<String, Portfolio> portfolios = new HashMap<>();
+    private final Subject<String> changes = PublishSubject.<String>create().toSerialized();
+    private boolean tickersLoaded;
+
+    public synchronized boolean hasTickers()
+    {
+        return tickersLoaded;
+    }
+
+    /**
+     * Load the full ticker table; keyed by ticker database key
+     */
+    public synchronized void loadTickers(Map<String, TokenTicker> tickerMap)
+    {
+        tickers.clear();
+        for (Map.Entry<String, TokenTicker> entry : tickerMap.entrySet())
+        {
+            double[] price = parseTicker(entry.getValue());
+            if (price != null) tickers.put(entry.getKey(), price);
+        }
+        tickersLoaded = true;
+    }
+
+    public synchronized boolean isLoaded(String walletAddress, List<Long> networkFilters)
+    {
+        Portfolio portfolio = portfolios.get(walletAddress.toLowerCase());
+        return portfolio != null && portfolio.networkFilters.equals(networkFilters);
+    }
+
+    /**
+     * Replace a wallet's holdings with a full listing from the database
+     */
+    public void loadWallet(String walletAddress, List<Long> networkFilters, List<Holding> holdings)
+    {
+        String wallet = walletAddress.toLowerCase();
+        synchronized (this)
+        {
+            Portfolio portfolio = new Portfolio(networkFilters);
+            for (Holding holding : holdings)
+            {
+                if (!portfolio.includes(holding.chainId)) continue;
+                portfolio.holdings.put(holding.key, holding);
+                price(holding);
+                portfolio.value += holding.value;
+                portfolio.historical += holding.historical;
+            }
+            portfolios.put(wallet, portfolio);
+        }
+        changes.onNext(wallet);
+    }
+
+    public void invalidate(String walletAddress)
+    {
+        synchronized (this)
+        {
+            portfolios.remove(walletAddress.toLowerCase());
+        }
+    }
+
+    /**
+     * Drop everything, eg when the ticker table is cleared; wallets reload on their next value request
+     */
+    public synchronized void clear()
+    {
+        tickers.clear();
+        tickersLoaded = false;
+        portfolios.clear();
+    }
+
+    /**
+     * Apply a batch of ticker writes for one chain, adjusting only the holdings priced by them
+     *
+     * @param chainTickers keyed by token address, or 'eth' for the chain token
+     */
+    public void updateTickers(long chainId, Map<String, TokenTicker> chainTickers)
+    {
+        List<String> changed = new ArrayList<>();
+        synchronized (this)
+        {
+            List<String> keys = new ArrayList<>(chainTickers.size());
+            for (Map.Entry<String, TokenTicker> entry : chainTickers.entrySet())
+            {
+                String key = TokensRealmSource.databaseKey(chainId, entry.getKey());
+                double[] price = parseTicker(entry.getValue());
+                if (price != null) tickers.put(key, price);
+                else tickers.remove(key);
+                keys.add(key);
+            }
+
+            for (Map.Entry<String, Portfolio> entry : portfolios.entrySet())
+            {
+                Portfolio portfolio = entry.getValue();
+                boolean updated = false;
+                for (String key : keys)
+                {
+                    Holding holding = portfolio.holdings.get(key);
+                    if (holding != null && reprice(portfolio, holding)) updated = true;
+                }
+                if (updated) changed.add(entry.getKey());
+            }
+        }
+
+        publish(changed);
+    }
+
+    /**
+     * Apply a balance write. Ignored if the wallet isn't loaded; it'll pick the balance up when it is.
+     */
+    public void updateBalance(String walletAddress, long chainId, String tickerAddress, double balance, boolean priced)
+    {
+        String wallet = walletAddress.toLowerCase();
+        boolean updated;
+        synchronized (this)
+        {
+            Portfolio portfolio = portfolios.get(wallet);
+            if (portfolio == null || !portfolio.includes(chainId)) return;
+            String key = TokensRealmSource.databaseKey(chainId, tickerAddress);
+            Holding holding = portfolio.holdings.get(key);
+            if (holding == null)
+            {
+                holding = new Holding(chainId, tickerAddress, 0, priced, false);
+                portfolio.holdings.put(key, holding);
+            }
+            holding.balance = balance;
+            holding.priced = priced;
+            updated = reprice(portfolio, holding);
+        }
+
+        if (updated) changes.onNext(wallet);
+    }
+
+    public void setHidden(String walletAddress, long chainId, String tickerAddress, boolean hidden)
+    {
+        String wallet = walletAddress.toLowerCase();
+        boolean updated;
+        synchronized (this)
+        {
+            Portfolio portfolio = portfolios.get(wallet);
+            Holding holding = portfolio != null ? portfolio.holdings.get(TokensRealmSource.databaseKey(chainId, tickerAddress)) : null;
+            if (holding == null || holding.hidden == hidden) return;
+            holding.hidden = hidden;
+            updated = reprice(portfolio, holding);
+        }
+
+        if (updated) changes.onNext(wallet);
+    }
+
+    /**
+     * @return current totals, or null if the wallet needs loading
+     */
+    public synchronized Totals getTotals(String walletAddress)
+    {
+        Portfolio portfolio = portfolios.get(walletAddress.toLowerCase());
+        return portfolio != null ? new Totals(portfolio.value, portfolio.historical) : null;
+    }
+
+    /**
+     * Totals for the wallet each time they change. Emits on the thread which made the change.
+     */
+    public Observable<Totals> observe(String walletAddress)
+    {
+        final String wallet = walletAddress.toLowerCase();
+        return changes.filter(wallet::equals)
+                .flatMapMaybe(w -> {
+                    Totals totals = getTotals(w);
+                    return totals != null ? Maybe.just(totals) : Maybe.<Totals>empty();
+                });
+    }
+
+    // Recalculate one holding's contribution, applying the difference to the wallet totals
+    private boolean reprice(Portfolio portfolio, Holding holding)
+    {
+        double oldValue = holding.value;
+        double oldHistorical = holding.historical;
+        price(holding);
+        if (holding.value == oldValue && holding.historical == oldHistorical) return false;
+
+        portfolio.value += holding.value - oldValue;
+        portfolio.historical += holding.historical - oldHistorical;
+        return true;
+    }
+
+    private void price(Holding holding)
+    {
+        double[] ticker = tickers.get(holding.key);
+        if (ticker == null || !holding.priced || holding.hidden || !(holding.balance > 0))
+        {
+            holding.value = 0;
+            holding.historical = 0;
+        }
+        else
+        {
+            holding.value = holding.balance * ticker[0];
+            holding.historical = holding.value - holding.value * (ticker[1] / 100.0);
+        }
+    }
+
+    private void publish(List<String> wallets)
+    {
+        for (String wallet : wallets)
+        {
+            changes.onNext(wallet);
+        }
+    }
+
+    private static double[] parseTicker(TokenTicker ticker)
+    {
+        if (ticker == null) return null;
+        try
+        {
+            return new double[] { Double.parseDouble(ticker.price), Double.parseDouble(ticker.percentChange24h) };
+        }
+        catch (NumberFormatException | NullPointerException e)
+        {
+            return null; // blank placeholder ticker
+        }
+    }
+}
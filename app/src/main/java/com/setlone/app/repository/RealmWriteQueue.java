@@ -0,0 +1,276 @@
+package com.setlone.app.repository;
+
+import com.setlone.app.service.RealmManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Completable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import io.realm.Realm;
+import timber.log.Timber;
+
+/**
+ * Write-behind queue for transaction and transfer ingestion.
+ *
+ * Sync sources queue their Realm writes here instead of each opening a write transaction. Writes are held for a short
+ * window and then committed together, one Realm transaction per wallet per flush, so a large sync costs a handful of
+ * commits (and UI change notifications) rather than one per page, chunk or token.
+ *
+ * Writes given a key coalesce: a later write with the same key replaces the earlier one if it hasn't been committed yet.
+ * A barrier write (eg erasing a chain's transactions) is applied in order and nothing queued after it is merged with
+ * anything before it. If producers get too far ahead of the flush they are blocked until it catches up.
+ */
+public class RealmWriteQueue
+{
+    private static final String TAG = "REALMQ";
+
+    public static final long FLUSH_WINDOW = 250;  // ms writes are held to collect more
+    public static final int FLUSH_BATCH = 500;    // flush straight away once this many writes are waiting
+    public static final int MAX_PENDING = 4000;   // producers wait above this
+
+    public interface Write
+    {
+        void apply(Realm r);
+    }
+
+    static class QueuedWrite
+    {
+        final Write write;
+        final Runnable onCommitted;
+
+        QueuedWrite(Write write, Runnable onCommitted)
+        {
+            this.write = write;
+            this.onCommitted = onCommitted;
+        }
+    }
+
+    /**
+     * Writes for one wallet, in segments split at barriers
+     */
+    private static class WalletWrites
+    {
+        final List<Map<String, QueuedWrite>> segments = new ArrayList<>();
+
+        WalletWrites()
+        {
+            segments.add(new LinkedHashMap<>());
+        }
+
+        Map<String, QueuedWrite> current()
+        {
+            return segments.get(segments.size() - 1);
+        }
+    }
+
+    private final RealmManager realmManager;
+    private final Scheduler scheduler;
+    private Map<String, WalletWrites> pending = new LinkedHashMap<>();
+    private int pendingCount;
+    private long sequence;
+    private Disposable flushTimer;
+    private volatile Thread flushThread;
+
+    private long commits;
+    private long written;
+    private long coalesced;
+
+    public RealmWriteQueue(RealmManager realmManager)
+    {
+        this(realmManager, Schedulers.from(Executors.newSingleThreadExecutor(r -> new Thread(r, "realm-write-queue"))));
+    }
+
+    public RealmWriteQueue(RealmManager realmManager, Scheduler scheduler)
+    {
+        this.realmManager = realmManager;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queue a write; replaces any uncommitted write with the same key
+     */
+    public void enqueue(String walletAddress, String key, Write write)
+    {
+        add(walletAddress, key, write, null, false);
+    }
+
+    /**
+     * Queue a write, running onCommitted once it's in the database
+     */
+    public void enqueue(String walletAddress, Write write, Runnable onCommitted)
+    {
+        add(walletAddress, null, write, onCommitted, false);
+    }
+
+    /**
+     * Queue a write that everything queued before it must be applied ahead of, and everything after it behind it
+     */
+    public void enqueueBarrier(String walletAddress, Write write)
+    {
+        add(walletAddress, null, write, null, true);
+    }
+
+    /**
+     * Commit everything queued now rather than waiting out the window, eg when the wallet comes into focus or goes to
+     * the background
+     */
+    public synchronized void requestFlush()
+    {
+        if (pendingCount > 0) scheduleFlush(0);
+    }
+
+    /**
+     * Commit everything queued and wait for it; for writes the caller must be able to read straight back
+     */
+    public void flushAndWait()
+    {
+        if (Thread.currentThread() == flushThread)
+        {
+            drain();
+        }
+        else
+        {
+            Completable.fromAction(this::drain).subscribeOn(scheduler).blockingAwait();
+        }
+    }
+
+    public synchronized int getPendingCount()
+    {
+        return pendingCount;
+    }
+
+    public synchronized String getStats()
+    {
+        return "commits: " + commits + ", writes: " + written + ", coalesced: " + coalesced + ", pending: " + pendingCount;
+    }
+
+    private void add(String walletAddress, String key, Write write, Runnable onCommitted, boolean barrier)
+    {
+        synchronized (this)
+        {
+            //back-pressure: hold the producer until the flush has caught up (never the flush thread itself)
+            while (pendingCount >= MAX_PENDING && Thread.currentThread() != flushThread)
+            {
+                scheduleFlush(0);
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+
+            WalletWrites walletWrites = pending.get(walletAddress.toLowerCase());
+            if (walletWrites == null)
+            {
+                walletWrites = new WalletWrites();
+                pending.put(walletAddress.toLowerCase(), walletWrites);
+            }
+
+            QueuedWrite queued = new QueuedWrite(write, onCommitted);
+            if (barrier)
+            {
+                if (!walletWrites.current().isEmpty()) walletWrites.segments.add(new LinkedHashMap<>());
+                walletWrites.current().put("#" + sequence++, queued);
+                walletWrites.segments.add(new LinkedHashMap<>());
+                pendingCount++;
+            }
+            else if (walletWrites.current().put(key != null ? key : "#" + sequence++, queued) != null)
+            {
+                coalesced++;
+            }
+            else
+            {
+                pendingCount++;
+            }
+
+            scheduleFlush(pendingCount >= FLUSH_BATCH ? 0 : FLUSH_WINDOW);
+        }
+    }
+
+    private void scheduleFlush(long delay)
+    {
+        if (flushTimer != null && !flushTimer.isDisposed())
+        {
+            if (delay > 0) return; //already due
+            flushTimer.dispose();
+        }
+        flushTimer = scheduler.scheduleDirect(this::drain, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void drain()
+    {
+        flushThread = Thread.currentThread();
+        Map<String, WalletWrites> toCommit;
+        synchronized (this)
+        {
+            if (flushTimer != null) flushTimer.dispose();
+            flushTimer = null;
+            toCommit = pending;
+            pending = new LinkedHashMap<>();
+            pendingCount = 0;
+            notifyAll();
+        }
+
+        for (Map.Entry<String, WalletWrites> entry : toCommit.entrySet())
+        {
+            List<QueuedWrite> writes = new ArrayList<>();
+            for (Map<String, QueuedWrite> segment : entry.getValue().segments)
+            {
+                writes.addAll(segment.values());
+            }
+            if (writes.isEmpty()) continue;
+
+            try
+            {
+                commit(entry.getKey(), writes);
+                synchronized (this)
+                {
+                    commits++;
+                    written += writes.size();
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).e(e);
+                continue;
+            }
+
+            for (QueuedWrite w : writes)
+            {
+                if (w.onCommitted != null) w.onCommitted.run();
+            }
+        }
+    }
+
+    void commit(String walletAddress, List<QueuedWrite> writes)
+    {
+        try (Realm instance = realmManager.getRealmInstance(walletAddress))
+        {
+            instance.executeTransaction(r -> {
+                for (QueuedWrite w : writes)
+                {
+                    try
+                    {
+                        w.write.apply(r);
+                    }
+                    catch (Exception e)
+                    {
+                        //one bad write shouldn't lose the rest of the batch
+                        Timber.tag(TAG).w(e);
+                    }
+                }
+            });
+        }
+    }
+}
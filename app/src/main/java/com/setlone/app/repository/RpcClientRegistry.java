@@ -0,0 +1,242 @@
+package com.setlone.app.repository;
+
+import com.setlone.app.C;
+import com.setlone.app.entity.NetworkInfo;
+import com.setlone.app.service.AWHttpServiceWaterfall;
+import com.setlone.app.service.RpcEndpointHealth;
+
+import org.web3j.protocol.Web3j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+/**
+ * Process-wide holder for the node clients.
+ *
+ * All Web3j instances share one OkHttp connection pool and dispatcher, so TLS sessions and keep-alive connections to
+ * the RPC nodes survive between calls. Clients are keyed by chainId and timeout profile; event reads get the longer
+ * timeouts they always had. Counters report how often a pooled connection was reused, so reuse can be checked on device.
+ */
+public class RpcClientRegistry
+{
+    public enum Profile
+    {
+        STANDARD,
+        EVENTS
+    }
+
+    public static final int DEFAULT_MAX_REQUESTS_PER_HOST = 8;
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 10;
+    public static final long DEFAULT_KEEP_ALIVE_SECONDS = 120;
+
+    private static final AtomicLong poolHits = new AtomicLong(0);
+    private static final AtomicLong newConnections = new AtomicLong(0);
+    private static final AtomicLong tlsHandshakes = new AtomicLong(0);
+    private static final AtomicLong failedConnections = new AtomicLong(0);
+
+    private static final Map<String, ClientEntry> clients = new ConcurrentHashMap<>();
+
+    private static volatile boolean hedgedRequests = false;
+
+    private static OkHttpClient baseClient;
+    private static OkHttpClient standardClient;
+    private static OkHttpClient eventsClient;
+
+    private static class ClientEntry
+    {
+        final String[] rpcUrls;
+        final Web3j web3j;
+
+        ClientEntry(String[] rpcUrls, Web3j web3j)
+        {
+            this.rpcUrls = rpcUrls;
+            this.web3j = web3j;
+        }
+    }
+
+    /**
+     * Tracks a single call; a call which acquires a connection without having to open one was served from the pool
+     */
+    private static class CountingListener extends EventListener
+    {
+        private boolean connecting = false;
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy)
+        {
+            connecting = true;
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake)
+        {
+            tlsHandshakes.incrementAndGet();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol)
+        {
+            newConnections.incrementAndGet();
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe)
+        {
+            failedConnections.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection)
+        {
+            if (!connecting) poolHits.incrementAndGet();
+            connecting = false;
+        }
+    }
+
+    /**
+     * Sets up the shared pool. Can be called once at startup to override the defaults; any clients already built are
+     * dropped and rebuilt on next use.
+     *
+     * @param maxRequestsPerHost maximum concurrent requests to a single node
+     * @param maxIdleConnections idle connections kept in the pool
+     * @param keepAliveSeconds time an idle connection is kept before eviction
+     */
+    public static synchronized void configure(int maxRequestsPerHost, int maxIdleConnections, long keepAliveSeconds)
+    {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        if (baseClient != null)
+        {
+            baseClient.connectionPool().evictAll();
+        }
+
+        baseClient = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .dispatcher(dispatcher)
+                .eventListenerFactory(call -> new CountingListener())
+                .connectTimeout(C.CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(C.READ_TIMEOUT * 3, TimeUnit.SECONDS)
+                .writeTimeout(C.LONG_WRITE_TIMEOUT, TimeUnit.SECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+
+        //derived clients share the pool and dispatcher of the base client
+        standardClient = baseClient;
+        eventsClient = baseClient.newBuilder()
+                .connectTimeout(C.CONNECT_TIMEOUT * 3, TimeUnit.SECONDS) //events can take longer to render
+                .readTimeout(C.READ_TIMEOUT * 3, TimeUnit.SECONDS)
+                .build();
+
+        clients.clear();
+    }
+
+    public static synchronized OkHttpClient getClient(Profile profile)
+    {
+        if (baseClient == null)
+        {
+            configure(DEFAULT_MAX_REQUESTS_PER_HOST, DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_SECONDS);
+        }
+
+        return profile == Profile.EVENTS ? eventsClient : standardClient;
+    }
+
+    public static Web3j getWeb3j(long chainId, Profile profile)
+    {
+        NetworkInfo info = EthereumNetworkBase.getNetwork(chainId);
+        String[] rpcUrls = info.rpcUrls;
+        String key = chainId + "-" + profile.name();
+
+        ClientEntry entry = clients.get(key);
+        if (entry == null || !Arrays.equals(entry.rpcUrls, rpcUrls)) //rebuild if the user edited the network's nodes
+        {
+            KeyProvider keyProvider = KeyProviderFactory.get();
+            AWHttpServiceWaterfall service = new AWHttpServiceWaterfall(rpcUrls, chainId, getClient(profile), keyProvider.getInfuraKey(),
+                    keyProvider.getInfuraSecret(), keyProvider.getKlaytnKey(), false);
+            service.setHedgedRequests(hedgedRequests && profile == Profile.STANDARD);
+            entry = new ClientEntry(rpcUrls, Web3j.build(service));
+            clients.put(key, entry);
+        }
+
+        return entry.web3j;
+    }
+
+    /**
+     * Drop the cached clients for a chain, eg after its RPC settings change
+     */
+    public static void invalidate(long chainId)
+    {
+        for (Profile profile : Profile.values())
+        {
+            clients.remove(chainId + "-" + profile.name());
+        }
+    }
+
+    /**
+     * Hedge slow standard profile reads to a second node. Event reads are long running by nature and aren't hedged.
+     */
+    public static void setHedgedRequests(boolean enabled)
+    {
+        hedgedRequests = enabled;
+        clients.clear();
+    }
+
+    /**
+     * Per-node health for a chain's RPC nodes, for display in a debug screen
+     */
+    public static List<RpcEndpointHealth.Stats> getEndpointStats(long chainId)
+    {
+        List<RpcEndpointHealth.Stats> stats = new ArrayList<>();
+        for (String url : EthereumNetworkBase.getNetwork(chainId).rpcUrls)
+        {
+            stats.add(RpcEndpointHealth.get(url).getStats());
+        }
+        return stats;
+    }
+
+    public static long getPoolHits()
+    {
+        return poolHits.get();
+    }
+
+    public static long getNewConnections()
+    {
+        return newConnections.get();
+    }
+
+    public static long getTlsHandshakes()
+    {
+        return tlsHandshakes.get();
+    }
+
+    public static long getFailedConnections()
+    {
+        return failedConnections.get();
+    }
+
+    public static String getStats()
+    {
+        return "pool hits: " + poolHits.get()
+                + ", new connections: " + newConnections.get()
+                + ", TLS handshakes: " + tlsHandshakes.get()
+                + ", failed connects: " + failedConnections.get()
+                + ", idle: " + (baseClient != null ? baseClient.connectionPool().idleConnectionCount() : 0);
+    }
+}
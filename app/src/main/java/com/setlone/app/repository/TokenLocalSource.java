@@ -11,6 +11,7 @@ import com.setlone.app.entity.tokendata.TokenTicker;
 import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokens.TokenCardMeta;
 import com.setlone.app.entity.tokens.TokenInfo;
+import com.setlone.app.repository.entity.RealmToken;
 import com.setlone.app.service.AssetDefinitionService;
 import com.setlone.token.entity.ContractAddress;
 
@@ -19,6 +20,7 @@ import java.math.BigInteger;
 import java.util.List;
 import java.util.Map;
 
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.realm.Realm;
 
@@ -30,6 +32,8 @@ public interface TokenLocalSource
 
     boolean updateTokenBalance(Wallet wallet, Token token, BigDecimal balance, List<BigInteger> balanceArray);
 
+    int updateTokenBalances(Wallet wallet, List<Pair<Token, BigDecimal>> balances);
+
     Token fetchToken(long chainId, Wallet wallet, String address);
 
     void setEnable(Wallet wallet, ContractAddress cAddr, boolean isEnabled);
@@ -50,6 +54,8 @@ public interface TokenLocalSource
 
     TokenCardMeta[] fetchTokenMetasForUpdate(Wallet wallet, List<Long> networkFilters);
 
+    TokenCardMeta getUpdateMeta(RealmToken token, List<Long> networkFilters);
+
     Single<Token[]> fetchAllTokensWithNameIssue(String walletAddress, List<Long> networkFilters);
 
     Single<ContractAddress[]> fetchAllTokensWithBlankName(String walletAddress, List<Long> networkFilters);
@@ -80,6 +86,8 @@ public interface TokenLocalSource
 
     Single<Pair<Double, Double>> getTotalValue(String currentAddress, List<Long> networkFilters);
 
+    Observable<Pair<Double, Double>> getTotalValueUpdates(String currentAddress);
+
     Map<String, Long> getTickerTimeMap(long chainId, List<TokenCardMeta> erc20Tokens);
 
     void deleteTickers();
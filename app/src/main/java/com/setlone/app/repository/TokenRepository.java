@@ -12,7 +12,6 @@ import android.util.Pair;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.setlone.app.C;
 import com.setlone.app.entity.ContractLocator;
 import com.setlone.app.entity.ContractType;
 import com.setlone.app.entity.ImageEntry;
@@ -27,6 +26,7 @@ import com.setlone.app.entity.tokens.ERC721Token;
 import com.setlone.app.entity.tokens.Ticket;
 import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokens.TokenCardMeta;
+import com.setlone.app.repository.entity.RealmToken;
 import com.setlone.app.entity.tokens.TokenInfo;
 import com.setlone.app.util.TronUtils;
 import com.setlone.app.service.AWHttpServiceWaterfall;
@@ -74,7 +74,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Observable;
 import io.reactivex.Single;
@@ -116,6 +115,7 @@ public class TokenRepository implements TokenRepositoryType {
     private final WalletAddressService walletAddressService;
     private final Gson gson;
     private final RealmManager realmManager;
+    private final BatchBalanceEngine balanceEngine = new BatchBalanceEngine();
 
     public TokenRepository(
             EthereumNetworkRepositoryType ethereumNetworkRepository,
@@ -139,12 +139,7 @@ public class TokenRepository implements TokenRepositoryType {
         web3jNodeServers = new ConcurrentHashMap<>();
         currentAddress = ethereumNetworkRepository.getCurrentWalletAddress();
 
-        okClient = new OkHttpClient.Builder()
-                .connectTimeout(C.CONNECT_TIMEOUT * 4, TimeUnit.SECONDS) //events can take longer to render
-                .connectTimeout(C.READ_TIMEOUT * 4, TimeUnit.SECONDS)
-                .writeTimeout(C.LONG_WRITE_TIMEOUT, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .build();
+        okClient = RpcClientRegistry.getClient(RpcClientRegistry.Profile.EVENTS);
     }
 
     private void buildWeb3jClient(NetworkInfo networkInfo)
@@ -248,12 +243,25 @@ public class TokenRepository implements TokenRepositoryType {
         return localSource.fetchTokenMetasForUpdate(wallet, networkFilters);
     }
 
+    @Override
+    public TokenCardMeta getUpdateMeta(RealmToken token, List<Long> networkFilters)
+    {
+        if (networkFilters == null) networkFilters = Collections.emptyList();
+        return localSource.getUpdateMeta(token, networkFilters);
+    }
+
     @Override
     public Single<Pair<Double, Double>> getTotalValue(String currentAddress, List<Long> networkFilters)
     {
         return localSource.getTotalValue(currentAddress, networkFilters);
     }
 
+    @Override
+    public Observable<Pair<Double, Double>> getTotalValueUpdates(String currentAddress)
+    {
+        return localSource.getTotalValueUpdates(currentAddress);
+    }
+
     @Override
     public Single<List<String>> getTickerUpdateList(List<Long> networkFilter)
     {
@@ -417,6 +425,41 @@ public class TokenRepository implements TokenRepositoryType {
                 .observeOn(Schedulers.io());
     }
 
+    /**
+     * Updates the balances of a set of tokens on one chain. Balances are read in batches and written in
+     * a single Realm transaction; any token the batch couldn't resolve falls back to the single token update.
+     *
+     * @param walletAddress
+     * @param chainId
+     * @param tokens tokens to update, all on chainId
+     * @return token and updated balance pairs
+     */
+    @Override
+    public Single<List<Pair<Token, BigDecimal>>> updateTokenBalances(String walletAddress, long chainId, List<Token> tokens)
+    {
+        Wallet wallet = new Wallet(walletAddress);
+        return Single.fromCallable(() -> {
+            List<Pair<Token, BigDecimal>> updated = new ArrayList<>();
+            List<Token> singleUpdate = tokens;
+
+            if (!wallet.isTronWallet() && !TronUtils.isTronChain(chainId))
+            {
+                BatchBalanceEngine.Result result = balanceEngine.fetchBalances(getService(chainId), wallet, chainId, tokens);
+                localSource.updateTokenBalances(wallet, result.balances);
+                updated.addAll(result.balances);
+                singleUpdate = result.unresolved;
+            }
+
+            for (Token token : singleUpdate)
+            {
+                updated.add(new Pair<>(token, updateBalance(wallet, token).blockingGet()));
+            }
+
+            return updated;
+        }).subscribeOn(Schedulers.io())
+          .observeOn(Schedulers.io());
+    }
+
     @Override
     public Single<Token[]> storeTokens(Wallet wallet, Token[] tokens)
     {
@@ -1482,18 +1525,7 @@ public class TokenRepository implements TokenRepositoryType {
                     "Use TronService for TRON network operations.");
         }
         
-        OkHttpClient okClient = new OkHttpClient.Builder()
-                .connectTimeout(C.CONNECT_TIMEOUT * 3, TimeUnit.SECONDS) //events can take longer to render
-                .connectTimeout(C.READ_TIMEOUT * 3, TimeUnit.SECONDS)
-                .writeTimeout(C.LONG_WRITE_TIMEOUT, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .build();
-
-        String[] rpcUrls = EthereumNetworkBase.getNetwork(chainId).rpcUrls;
-
-        AWHttpServiceWaterfall publicNodeService = new AWHttpServiceWaterfall(rpcUrls, chainId, okClient, KeyProviderFactory.get().getInfuraKey(),
-                KeyProviderFactory.get().getInfuraSecret(), KeyProviderFactory.get().getKlaytnKey(), false);
-        return Web3j.build(publicNodeService);
+        return RpcClientRegistry.getWeb3j(chainId, RpcClientRegistry.Profile.EVENTS);
     }
 
     public static Web3j getWeb3jService(long chainId)
@@ -1507,16 +1539,7 @@ public class TokenRepository implements TokenRepositoryType {
                     "Use TronService for TRON network operations.");
         }
         
-        OkHttpClient okClient = new OkHttpClient.Builder()
-                .connectTimeout(C.CONNECT_TIMEOUT, TimeUnit.SECONDS)
-                .connectTimeout(C.READ_TIMEOUT * 3, TimeUnit.SECONDS)
-                .writeTimeout(C.LONG_WRITE_TIMEOUT, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .build();
-
-        AWHttpServiceWaterfall publicNodeService = new AWHttpServiceWaterfall(EthereumNetworkBase.getNetwork(chainId).rpcUrls, chainId, okClient, KeyProviderFactory.get().getInfuraKey(),
-                KeyProviderFactory.get().getInfuraSecret(), KeyProviderFactory.get().getKlaytnKey(), false);
-        return Web3j.build(publicNodeService);
+        return RpcClientRegistry.getWeb3j(chainId, RpcClientRegistry.Profile.STANDARD);
     }
 
     public static String callSmartContractFunction(long chainId,
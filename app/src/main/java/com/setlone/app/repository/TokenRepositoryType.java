@@ -13,6 +13,7 @@ import com.setlone.app.entity.tokendata.TokenTicker;
 import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokens.TokenCardMeta;
 import com.setlone.app.entity.tokens.TokenInfo;
+import com.setlone.app.repository.entity.RealmToken;
 import com.setlone.app.service.AssetDefinitionService;
 import com.setlone.token.entity.ContractAddress;
 
@@ -30,6 +31,8 @@ public interface TokenRepositoryType
 
     Single<BigDecimal> updateTokenBalance(String walletAddress, Token token);
 
+    Single<List<Pair<Token, BigDecimal>>> updateTokenBalances(String walletAddress, long chainId, List<Token> tokens);
+
     Single<ContractLocator> getTokenResponse(String address, long chainId, String method);
 
     Single<Token> checkInterface(Token tokens, Wallet wallet);
@@ -84,6 +87,8 @@ public interface TokenRepositoryType
 
     TokenCardMeta[] fetchTokenMetasForUpdate(Wallet wallet, List<Long> networkFilters);
 
+    TokenCardMeta getUpdateMeta(RealmToken token, List<Long> networkFilters);
+
     Realm getRealmInstance(Wallet wallet);
 
     Realm getTickerRealmInstance();
@@ -96,6 +101,8 @@ public interface TokenRepositoryType
 
     Single<Pair<Double, Double>> getTotalValue(String currentAddress, List<Long> networkFilters);
 
+    Observable<Pair<Double, Double>> getTotalValueUpdates(String currentAddress);
+
     Single<List<String>> getTickerUpdateList(List<Long> networkFilter);
 
     TokenGroup getTokenGroup(long chainId, String address, ContractType type);
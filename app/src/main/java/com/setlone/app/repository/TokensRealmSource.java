@@ -36,13 +36,14 @@ import com.google.gson.JsonSyntaxException;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
-import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.realm.Case;
 import io.realm.Realm;
@@ -64,6 +65,7 @@ public class TokensRealmSource implements TokenLocalSource
     private final RealmManager realmManager;
     private final EthereumNetworkRepositoryType ethereumNetworkRepository;
     private final TokensMappingRepositoryType tokensMappingRepository;
+    private final PortfolioValueIndex portfolioIndex = new PortfolioValueIndex();
 
     public TokensRealmSource(RealmManager realmManager, EthereumNetworkRepositoryType ethereumNetworkRepository, TokensMappingRepositoryType tokensMappingRepository)
     {
@@ -186,6 +188,11 @@ public class TokensRealmSource implements TokenLocalSource
                             }
                         }
                     });
+
+                    for (Token token : items)
+                    {
+                        if (token.tokenInfo != null) updatePortfolioBalance(wallet, token, token.balance);
+                    }
                 }
                 catch (Exception e)
                 {
@@ -214,6 +221,8 @@ public class TokensRealmSource implements TokenLocalSource
                 }
             });
         }
+
+        portfolioIndex.invalidate(wallet.address);
     }
 
     @Override
@@ -240,6 +249,7 @@ public class TokensRealmSource implements TokenLocalSource
             {
                 realm.executeTransaction(r -> saveTokenLocal(r, token));
             }
+            updatePortfolioBalance(wallet, token, token.balance);
             return token;
         });
     }
@@ -442,6 +452,8 @@ public class TokensRealmSource implements TokenLocalSource
                 }
             });
         }
+
+        portfolioIndex.setHidden(wallet.address, cAddr.chainId, cAddr.address.equalsIgnoreCase(wallet.address) ? "eth" : cAddr.address, !isEnabled);
     }
 
     @Override
@@ -599,6 +611,81 @@ public class TokensRealmSource implements TokenLocalSource
 
     @Override
     public boolean updateTokenBalance(Wallet wallet, Token token, BigDecimal balance, List<BigInteger> balanceArray)
+    {
+        boolean balanceChanged = false;
+
+        try (Realm realm = realmManager.getRealmInstance(wallet))
+        {
+            try
+            {
+                balanceChanged = writeTokenBalance(realm, wallet, token, balance, balanceArray);
+                if (realm.isInTransaction()) realm.commitTransaction();
+            }
+            finally
+            {
+                if (realm.isInTransaction()) realm.cancelTransaction();
+            }
+
+            if (balanceChanged) updatePortfolioBalance(wallet, token, balance);
+        }
+        catch (Exception e)
+        {
+            Timber.e(e);
+        }
+
+        return balanceChanged;
+    }
+
+    /**
+     * Writes the results of a batched balance read for one chain. All changes go into a single Realm transaction,
+     * which is only opened if at least one token actually changed.
+     *
+     * @return number of tokens whose balance changed
+     */
+    @Override
+    public int updateTokenBalances(Wallet wallet, List<Pair<Token, BigDecimal>> balances)
+    {
+        int changed = 0;
+        if (balances.isEmpty()) return changed;
+
+        List<Pair<Token, BigDecimal>> written = new ArrayList<>();
+        try (Realm realm = realmManager.getRealmInstance(wallet))
+        {
+            try
+            {
+                for (Pair<Token, BigDecimal> entry : balances)
+                {
+                    if (writeTokenBalance(realm, wallet, entry.first, entry.second, null)) written.add(entry);
+                }
+                if (realm.isInTransaction()) realm.commitTransaction();
+                changed = written.size();
+            }
+            finally
+            {
+                if (realm.isInTransaction()) realm.cancelTransaction();
+            }
+
+            for (Pair<Token, BigDecimal> entry : written)
+            {
+                updatePortfolioBalance(wallet, entry.first, entry.second);
+            }
+        }
+        catch (Exception e)
+        {
+            Timber.e(e);
+            changed = 0;
+        }
+
+        return changed;
+    }
+
+    private void beginWrite(Realm realm)
+    {
+        if (!realm.isInTransaction()) realm.beginTransaction();
+    }
+
+    // Write transaction is only started when there's a change to be made; caller must commit if one was opened
+    private boolean writeTokenBalance(Realm realm, Wallet wallet, Token token, BigDecimal balance, List<BigInteger> balanceArray)
     {
         boolean balanceChanged = false;
         String key = databaseKey(token);
@@ -607,86 +694,73 @@ public class TokensRealmSource implements TokenLocalSource
             token.setTokenWallet(wallet.address);
         }
 
-        try (Realm realm = realmManager.getRealmInstance(wallet))
+        RealmToken realmToken = realm.where(RealmToken.class).equalTo("address", key).findFirst();
+
+        if (realmToken != null)
         {
-            RealmToken realmToken = realm.where(RealmToken.class).equalTo("address", key).findFirst();
+            final String currentBalance = realmToken.getBalance();
+            final String newBalance = (balanceArray == null || balanceArray.size() == 0) ? balance.toString() : Utils.bigIntListToString(balanceArray, true);
 
-            if (realmToken != null)
+            //does the token need updating?
+            if (token.checkInfoRequiresUpdate(realmToken))
             {
-                final String currentBalance = realmToken.getBalance();
-                final String newBalance = (balanceArray == null || balanceArray.size() == 0) ? balance.toString() : Utils.bigIntListToString(balanceArray, true);
-
-                //does the token need updating?
-                if (token.checkInfoRequiresUpdate(realmToken))
-                {
-                    realm.executeTransaction(r -> {
-                        realmToken.setName(token.tokenInfo.name);
-                        realmToken.setSymbol(token.tokenInfo.symbol);
-                        realmToken.setDecimals(token.tokenInfo.decimals);
-                        realmToken.setInterfaceSpec(token.getInterfaceSpec().ordinal());
-                    });
-                }
+                beginWrite(realm);
+                realmToken.setName(token.tokenInfo.name);
+                realmToken.setSymbol(token.tokenInfo.symbol);
+                realmToken.setDecimals(token.tokenInfo.decimals);
+                realmToken.setInterfaceSpec(token.getInterfaceSpec().ordinal());
+            }
 
-                validateTokenName(realm, realmToken, token, balance);
+            validateTokenName(realm, realmToken, token, balance);
 
-                if ((token.isERC721()) && balance.equals(BigDecimal.ZERO) && !currentBalance.equals("0"))
+            if ((token.isERC721()) && balance.equals(BigDecimal.ZERO) && !currentBalance.equals("0"))
+            {
+                //only used for determining if balance is now zero
+                beginWrite(realm);
+                realmToken.setBalance(newBalance);
+                deleteAllAssets(realm, key);
+                Timber.tag(TAG).d("Zero out ERC721 balance: %s :%s", realmToken.getName(), token.getAddress());
+                balanceChanged = true;
+            }
+            else if (!TextUtils.isEmpty(newBalance) && (!newBalance.equals(currentBalance) || !checkEthToken(realm, token)))
+            {
+                beginWrite(realm);
+                realmToken.setBalance(newBalance);
+                if (token.isEthereum())
                 {
-                    //only used for determining if balance is now zero
-                    realm.executeTransaction(r -> {
-                        realmToken.setBalance(newBalance);
-                        deleteAllAssets(r, key);
-                    });
-                    Timber.tag(TAG).d("Zero out ERC721 balance: %s :%s", realmToken.getName(), token.getAddress());
-                    balanceChanged = true;
+                    updateEthToken(realm, token, newBalance);
                 }
-                else if (!TextUtils.isEmpty(newBalance) && (!newBalance.equals(currentBalance) || !checkEthToken(realm, token)))
+                if (currentBalance.equals("0") && !realmToken.isVisibilityChanged())
                 {
-                    realm.executeTransaction(r -> {
-                        realmToken.setBalance(newBalance);
-                        if (token.isEthereum())
-                        {
-                            updateEthToken(r, token, newBalance);
-                        }
-                        if (currentBalance.equals("0") && !realmToken.isVisibilityChanged())
-                        {
-                            realmToken.setEnabled(true);
-                            realmToken.setUpdateTime(System.currentTimeMillis());
-                        }
-                    });
-                    Timber.tag(TAG).d("Update Token Balance: %s :%s", realmToken.getName(), token.getAddress());
-                    balanceChanged = true;
+                    realmToken.setEnabled(true);
+                    realmToken.setUpdateTime(System.currentTimeMillis());
                 }
+                Timber.tag(TAG).d("Update Token Balance: %s :%s", realmToken.getName(), token.getAddress());
+                balanceChanged = true;
+            }
 
-                if (!realmToken.isVisibilityChanged() && realmToken.isEnabled() && newBalance != null && newBalance.equals("0") && !(token.isEthereum() && CustomViewSettings.alwaysShow(token.tokenInfo.chainId)))
-                {
-                    realm.executeTransaction(r -> {
-                        realmToken.setEnabled(false);
-                        realmToken.setBalance("0");
-                    });
-                }
-                else if (token.group != TokenGroup.SPAM && (!realmToken.isVisibilityChanged() && !realmToken.isEnabled()) && (token.balance.compareTo(BigDecimal.ZERO) > 0 || (token.isEthereum() && CustomViewSettings.alwaysShow(token.tokenInfo.chainId) && !realmToken.isEnabled()))) // enable if base token should be showing
-                {
-                    realm.executeTransaction(r -> {
-                        realmToken.setEnabled(true);
-                        realmToken.setUpdateTime(System.currentTimeMillis());
-                    });
-                }
+            if (!realmToken.isVisibilityChanged() && realmToken.isEnabled() && newBalance != null && newBalance.equals("0") && !(token.isEthereum() && CustomViewSettings.alwaysShow(token.tokenInfo.chainId)))
+            {
+                beginWrite(realm);
+                realmToken.setEnabled(false);
+                realmToken.setBalance("0");
             }
-            else
+            else if (token.group != TokenGroup.SPAM && (!realmToken.isVisibilityChanged() && !realmToken.isEnabled()) && (token.balance.compareTo(BigDecimal.ZERO) > 0 || (token.isEthereum() && CustomViewSettings.alwaysShow(token.tokenInfo.chainId) && !realmToken.isEnabled()))) // enable if base token should be showing
             {
-                balanceChanged = true;
-                if (token.isEthereum() && CustomViewSettings.alwaysShow(token.tokenInfo.chainId))
-                    token.tokenInfo.isEnabled = true;
-                //write token
-                realm.executeTransaction(r -> {
-                    token.balance = balance;
-                    saveTokenLocal(r, token);
-                });
+                beginWrite(realm);
+                realmToken.setEnabled(true);
+                realmToken.setUpdateTime(System.currentTimeMillis());
             }
         }
-        catch (Exception e)
+        else
         {
-            Timber.e(e);
+            balanceChanged = true;
+            if (token.isEthereum() && CustomViewSettings.alwaysShow(token.tokenInfo.chainId))
+                token.tokenInfo.isEnabled = true;
+            //write token
+            beginWrite(realm);
+            token.balance = balance;
+            saveTokenLocal(realm, token);
         }
 
         return balanceChanged;
@@ -696,9 +770,8 @@ public class TokensRealmSource implements TokenLocalSource
     {
         if (TextUtils.isEmpty(token.tokenInfo.name) && TextUtils.isEmpty(token.tokenInfo.symbol) && balance.compareTo(BigDecimal.ZERO) > 0)
         {
-            realm.executeTransaction(r -> {
-                realmToken.setName(Utils.formatAddress(token.tokenInfo.address));
-            });
+            beginWrite(realm);
+            realmToken.setName(Utils.formatAddress(token.tokenInfo.address));
         }
     }
 
@@ -973,6 +1046,25 @@ public class TokensRealmSource implements TokenLocalSource
         return assets;
     }
 
+    /**
+     * Builds the balance update meta for a token, or null if the token shouldn't be updated
+     * Must be called on the thread which owns the RealmToken
+     */
+    @Override
+    public TokenCardMeta getUpdateMeta(RealmToken t, List<Long> networkFilters)
+    {
+        if (networkFilters.size() > 0 && !networkFilters.contains(t.getChainId()) || (!t.getEnabled() && t.isVisibilityChanged()) || // Don't update tokens hidden by user
+                (ethereumNetworkRepository.isChainContract(t.getChainId(), t.getTokenAddress())))
+        {
+            return null;
+        }
+
+        TokenCardMeta meta = new TokenCardMeta(t.getChainId(), t.getTokenAddress(), convertStringBalance(t.getBalance(), t.getContractType()), t.getUpdateTime(), null, t.getName(), t.getSymbol(), t.getContractType(), getTokenGroup(t.getChainId(), t.getTokenAddress(), t.getContractType()));
+        meta.lastTxUpdate = t.getLastTxTime();
+        meta.isEnabled = t.isEnabled();
+        return meta;
+    }
+
     public TokenCardMeta[] fetchTokenMetasForUpdate(Wallet wallet, List<Long> networkFilters)
     {
         List<TokenCardMeta> tokenMetas = new ArrayList<>();
@@ -983,9 +1075,8 @@ public class TokensRealmSource implements TokenLocalSource
 
             for (RealmToken t : realmItems)
             {
-                if (networkFilters.size() > 0 && !networkFilters.contains(t.getChainId()) || (!t.getEnabled() && t.isVisibilityChanged()) || // Don't update tokens hidden by user
-                    (ethereumNetworkRepository.isChainContract(t.getChainId(), t.getTokenAddress())))
-                    continue;
+                TokenCardMeta meta = getUpdateMeta(t, networkFilters);
+                if (meta == null) continue;
 
                 if (t.getContractType() == ContractType.ETHEREUM)
                 {
@@ -999,10 +1090,6 @@ public class TokensRealmSource implements TokenLocalSource
                     }
                 }
 
-                TokenCardMeta meta = new TokenCardMeta(t.getChainId(), t.getTokenAddress(), convertStringBalance(t.getBalance(), t.getContractType()), t.getUpdateTime(), null, t.getName(), t.getSymbol(), t.getContractType(), getTokenGroup(t.getChainId(), t.getTokenAddress(), t.getContractType()));
-                meta.lastTxUpdate = t.getLastTxTime();
-                meta.isEnabled = t.isEnabled();
-
                 tokenMetas.add(meta);
             }
         }
@@ -1128,59 +1215,111 @@ public class TokensRealmSource implements TokenLocalSource
     @Override
     public Single<Pair<Double, Double>> getTotalValue(String currentAddress, List<Long> networkFilters)
     {
-        final Wallet wallet = new Wallet(currentAddress);
-        return calculateWalletValue(fetchTokenMetasForUpdate(wallet, networkFilters), wallet);
+        return Single.fromCallable(() -> {
+            PortfolioValueIndex.Totals totals = portfolioIndex.getTotals(currentAddress);
+            if (totals == null || !portfolioIndex.isLoaded(currentAddress, networkFilters))
+            {
+                loadPortfolio(new Wallet(currentAddress), networkFilters);
+                totals = portfolioIndex.getTotals(currentAddress);
+            }
+
+            return totals != null ? new Pair<>(totals.value, totals.historical) : new Pair<>(0.0, 0.0);
+        });
+    }
+
+    /**
+     * Wallet value each time a ticker or balance write changes it. Values are only published once the wallet has
+     * been loaded by {@link #getTotalValue}.
+     */
+    @Override
+    public Observable<Pair<Double, Double>> getTotalValueUpdates(String currentAddress)
+    {
+        return portfolioIndex.observe(currentAddress)
+                .map(totals -> new Pair<>(totals.value, totals.historical));
     }
 
-    private Single<Pair<Double, Double>> calculateWalletValue(TokenCardMeta[] metas, Wallet wallet)
+    /**
+     * Full pass over the wallet's tokens and the ticker table to seed the portfolio index; after this the index is
+     * kept current by the ticker and balance writes
+     */
+    private void loadPortfolio(Wallet wallet, List<Long> networkFilters)
     {
-        return Single.fromCallable(() -> {
-            //fetch all token tickers
-            Map<Long, Map<String, TokenTicker>> tickerMap = fetchAllTokenTickers();
-            BigDecimal historicalBalance = BigDecimal.ZERO;
-            BigDecimal newBalance = BigDecimal.ZERO;
-            BigDecimal hundred = BigDecimal.valueOf(100);
-            for (TokenCardMeta meta : metas)
+        if (!portfolioIndex.hasTickers())
+        {
+            portfolioIndex.loadTickers(fetchAllTokenTickers());
+        }
+
+        List<PortfolioValueIndex.Holding> holdings = new ArrayList<>();
+        try (Realm realm = realmManager.getRealmInstance(wallet))
+        {
+            RealmResults<RealmToken> realmItems = realm.where(RealmToken.class).findAll();
+
+            for (RealmToken t : realmItems)
             {
-                long chainId = meta.getChain();
-                String address = meta.isEthereum() ? "eth" : meta.getAddress();
-                Map<String, TokenTicker> localTickers = tickerMap.get(chainId);
-                TokenTicker ticker = localTickers != null ? localTickers.get(address) : null;
-                if (ticker != null && meta.hasPositiveBalance() && !meta.isNFT() && meta.group != TokenGroup.SPAM) //Currently we don't add NFT value. TODO: potentially get value from OpenSea
-                {
-                    Token t = fetchToken(chainId, wallet, meta.getAddress());
-                    BigDecimal correctedBalance = t.getCorrectedBalance(18);
-                    BigDecimal fiatValue = correctedBalance.multiply(new BigDecimal(ticker.price)).setScale(18, RoundingMode.DOWN);
-                    historicalBalance = historicalBalance.add(fiatValue.add(fiatValue.multiply((new BigDecimal(ticker.percentChange24h).divide(hundred)).negate())));
-                    newBalance = newBalance.add(fiatValue);
-                }
+                boolean isChainToken = t.getContractType() == ContractType.ETHEREUM;
+                if (isChainToken && !t.getTokenAddress().equalsIgnoreCase(wallet.address)) continue;
+
+                boolean hidden = !t.getEnabled() && t.isVisibilityChanged();
+                holdings.add(new PortfolioValueIndex.Holding(t.getChainId(), isChainToken ? "eth" : t.getTokenAddress(),
+                        correctedBalance(t.getBalance(), t.getDecimals()),
+                        isPriced(t.getChainId(), t.getTokenAddress(), t.getContractType()), hidden));
             }
+        }
+        catch (Exception e)
+        {
+            Timber.e(e);
+        }
 
-            return new Pair<>(newBalance.doubleValue(), historicalBalance.doubleValue());
-        });
+        portfolioIndex.loadWallet(wallet.address, networkFilters, holdings);
+    }
+
+    private void updatePortfolioBalance(Wallet wallet, Token token, BigDecimal balance)
+    {
+        if (balance == null) return;
+        int decimals = token.tokenInfo.decimals;
+        portfolioIndex.updateBalance(wallet.address, token.tokenInfo.chainId, token.isEthereum() ? "eth" : token.getAddress(),
+                decimals > 0 ? balance.movePointLeft(decimals).doubleValue() : balance.doubleValue(),
+                isPriced(token.tokenInfo.chainId, token.getAddress(), token.getInterfaceSpec()));
+    }
+
+    // Currently we don't add NFT value. TODO: potentially get value from OpenSea
+    private boolean isPriced(long chainId, String address, ContractType type)
+    {
+        if (ethereumNetworkRepository.isChainContract(chainId, address)) return false;
+        TokenGroup group = getTokenGroup(chainId, address, type);
+        return group != TokenGroup.SPAM && group != TokenGroup.NFT;
+    }
+
+    private static double correctedBalance(String balance, int decimals)
+    {
+        try
+        {
+            BigDecimal value = new BigDecimal(balance);
+            return decimals > 0 ? value.movePointLeft(decimals).doubleValue() : value.doubleValue();
+        }
+        catch (Exception e)
+        {
+            return 0; // NFT balance list or blank
+        }
     }
 
-    private Map<Long, Map<String, TokenTicker>> fetchAllTokenTickers()
+    /**
+     * @return all usable tickers, keyed by ticker database key
+     */
+    private Map<String, TokenTicker> fetchAllTokenTickers()
     {
-        Map<Long, Map<String, TokenTicker>> tickerMap = new HashMap<>();
+        Map<String, TokenTicker> tickerMap = new HashMap<>();
         try (Realm realm = realmManager.getRealmInstance(TICKER_DB))
         {
             RealmResults<RealmTokenTicker> realmTickers = realm.where(RealmTokenTicker.class).findAll();
 
             for (RealmTokenTicker ticker : realmTickers)
             {
-                Map<String, TokenTicker> networkMap = tickerMap.get(ticker.getChain());
-                if (networkMap == null)
-                {
-                    networkMap = new HashMap<>();
-                    tickerMap.put(ticker.getChain(), networkMap);
-                }
-
                 TokenTicker tt = convertRealmTicker(ticker);
 
                 if (tt != null)
                 {
-                    networkMap.put(ticker.getContract(), tt);
+                    tickerMap.put(databaseKey(ticker.getChain(), ticker.getContract()), tt);
                 }
             }
         }
@@ -1339,6 +1478,11 @@ public class TokensRealmSource implements TokenLocalSource
             Timber.w(e);
         }
 
+        for (ContractAddress update : tickerUpdates)
+        {
+            portfolioIndex.updateTickers(update.chainId, Collections.singletonMap("eth", ethTickers.get(update.chainId)));
+        }
+
         //This will trigger an update of the holder
         updateWalletTokens(tickerUpdates);
     }
@@ -1397,6 +1541,7 @@ public class TokensRealmSource implements TokenLocalSource
             //
         }
 
+        if (!tickerUpdates.isEmpty()) portfolioIndex.updateTickers(chainId, erc20Tickers);
         updateWalletTokens(tickerUpdates);
     }
 
@@ -1408,6 +1553,7 @@ public class TokensRealmSource implements TokenLocalSource
             realm.executeTransaction(r -> {
                 writeTickerToRealm(r, ticker, chainId, address);
             });
+            portfolioIndex.updateTickers(chainId, Collections.singletonMap(address, ticker));
         }
         catch (Exception e)
         {
@@ -1494,6 +1640,8 @@ public class TokensRealmSource implements TokenLocalSource
         {
             //
         }
+
+        portfolioIndex.clear();
     }
 
     @Override
@@ -1535,6 +1683,8 @@ public class TokensRealmSource implements TokenLocalSource
         {
             //
         }
+
+        portfolioIndex.clear();
     }
 
     private boolean writeTickerToRealm(Realm realm, final TokenTicker ticker, long chainId, String tokenAddress)
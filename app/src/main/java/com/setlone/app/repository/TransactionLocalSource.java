@@ -13,6 +13,7 @@ import io.realm.Realm;
 public interface TransactionLocalSource {
 	Transaction fetchTransaction(Wallet wallet, String hash);
 	Transaction putTransaction(Wallet wallet, Transaction tx);
+	void flushWrites();
 	Realm getRealmInstance(Wallet wallet);
 
 	Single<ActivityMeta[]> fetchActivityMetas(Wallet wallet, List<Long> networkFilters, long fetchTime, int fetchLimit);
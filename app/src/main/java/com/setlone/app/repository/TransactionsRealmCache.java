@@ -34,10 +34,12 @@ import timber.log.Timber;
 public class TransactionsRealmCache implements TransactionLocalSource {
 
     private final RealmManager realmManager;
+    private final RealmWriteQueue writeQueue;
     private static final String TAG = "TRC";
 
-    public TransactionsRealmCache(RealmManager realmManager) {
+    public TransactionsRealmCache(RealmManager realmManager, RealmWriteQueue writeQueue) {
         this.realmManager = realmManager;
+        this.writeQueue = writeQueue;
     }
 
     @Override
@@ -238,31 +240,32 @@ public class TransactionsRealmCache implements TransactionLocalSource {
     @Override
     public Transaction putTransaction(Wallet wallet, final Transaction tx)
     {
-        try (Realm instance = realmManager.getRealmInstance(wallet))
-        {
-            instance.executeTransaction(r -> {
-                RealmTransaction realmTx = r.where(RealmTransaction.class)
-                        .equalTo("hash", tx.hash)
-                        .findFirst();
+        writeQueue.enqueue(wallet.address, "put-" + tx.hash, r -> {
+            RealmTransaction realmTx = r.where(RealmTransaction.class)
+                    .equalTo("hash", tx.hash)
+                    .findFirst();
 
-                if (realmTx == null)
-                {
-                    realmTx = r.createObject(RealmTransaction.class, tx.hash);
-                }
+            if (realmTx == null)
+            {
+                realmTx = r.createObject(RealmTransaction.class, tx.hash);
+            }
 
-                fill(realmTx, tx);
-                r.insertOrUpdate(realmTx);
-            });
-        }
-        catch (Exception e)
-        {
-            //do not record
-            Timber.w(e);
-        }
+            fill(realmTx, tx);
+            r.insertOrUpdate(realmTx);
+        });
+
+        //a newly sent transaction is read straight back to track it as pending
+        if (tx.isPending()) writeQueue.flushAndWait();
 
         return tx;
     }
 
+    @Override
+    public void flushWrites()
+    {
+        writeQueue.requestFlush();
+    }
+
     @Override
     public Single<Boolean> deleteAllTickers()
     {
@@ -286,6 +289,7 @@ public class TransactionsRealmCache implements TransactionLocalSource {
     {
         return Single.fromCallable(() -> {
             File databaseFile = null;
+            writeQueue.flushAndWait(); //don't let queued sync writes land after the delete
             try (Realm instance = realmManager.getRealmInstance(new Wallet(currentAddress)))
             {
                 databaseFile = new File(instance.getConfiguration().getPath());
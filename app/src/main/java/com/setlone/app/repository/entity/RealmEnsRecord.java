@@ -0,0 +1,42 @@
+package com.setlone.app.repository.entity;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * A reverse ENS name or avatar read for an address or name, kept so wallet lists don't resolve them again on every
+ * open. Kept in the wallet data database, as names aren't specific to a wallet
+ */
+public class RealmEnsRecord extends RealmObject
+{
+    @PrimaryKey
+    private String key; // 'name:' and lower case address, or 'avatar:' and the name or address
+
+    private String value; // empty string where there is none
+    private long updated;
+
+    public String getKey()
+    {
+        return key;
+    }
+
+    public String getValue()
+    {
+        return value;
+    }
+
+    public void setValue(String value)
+    {
+        this.value = value;
+    }
+
+    public long getUpdated()
+    {
+        return updated;
+    }
+
+    public void setUpdated(long updated)
+    {
+        this.updated = updated;
+    }
+}
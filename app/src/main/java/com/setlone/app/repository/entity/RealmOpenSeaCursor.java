@@ -0,0 +1,48 @@
+package com.setlone.app.repository.entity;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * Where NFT discovery through the OpenSea API has got to on one chain, kept in the wallet's database so a large
+ * collection carries on paging from where it was after a restart
+ */
+public class RealmOpenSeaCursor extends RealmObject
+{
+    @PrimaryKey
+    private long chainId;
+
+    private String cursor;  // 'next' cursor of the page to read; empty at the start of a pass
+    private String etag;    // ETag of the first page, kept only if the last complete pass was that one page
+    private long updated;
+
+    public String getCursor()
+    {
+        return cursor;
+    }
+
+    public void setCursor(String cursor)
+    {
+        this.cursor = cursor;
+    }
+
+    public String getEtag()
+    {
+        return etag;
+    }
+
+    public void setEtag(String etag)
+    {
+        this.etag = etag;
+    }
+
+    public long getUpdated()
+    {
+        return updated;
+    }
+
+    public void setUpdated(long updated)
+    {
+        this.updated = updated;
+    }
+}
@@ -0,0 +1,42 @@
+package com.setlone.app.repository.entity;
+
+import io.realm.RealmObject;
+import io.realm.annotations.PrimaryKey;
+
+/**
+ * A function signature learned from the 4byte directory for a selector the shipped table didn't have. Kept in the
+ * wallet data database, as selectors are the same for every wallet
+ */
+public class RealmSelector extends RealmObject
+{
+    @PrimaryKey
+    private String selector; // '0x' and 8 lowercase hex digits
+
+    private String signature;
+    private long updated;
+
+    public String getSelector()
+    {
+        return selector;
+    }
+
+    public String getSignature()
+    {
+        return signature;
+    }
+
+    public void setSignature(String signature)
+    {
+        this.signature = signature;
+    }
+
+    public long getUpdated()
+    {
+        return updated;
+    }
+
+    public void setUpdated(long updated)
+    {
+        this.updated = updated;
+    }
+}
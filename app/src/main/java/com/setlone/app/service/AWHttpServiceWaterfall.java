@@ -7,6 +7,8 @@ import static okhttp3.ConnectionSpec.CLEARTEXT;
 
 import android.text.TextUtils;
 
+import androidx.annotation.NonNull;
+
 import com.google.gson.JsonParseException;
 
 import org.slf4j.Logger;
@@ -18,12 +20,23 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.CipherSuite;
 import okhttp3.ConnectionSpec;
 import okhttp3.Headers;
@@ -94,8 +107,20 @@ public class AWHttpServiceWaterfall extends HttpService
 
     public static final String DEFAULT_URL = "http://localhost:8545/";
 
+    private static final String KLAYTN_API_HOST = "klaytnapi.com"; // the Klaytn key is for the KAS node API only
+
     private static final Logger log = LoggerFactory.getLogger(org.web3j.protocol.http.HttpService.class);
 
+    /**
+     * Methods safe to send to two nodes at once. Anything else, eg eth_sendRawTransaction, goes to one node at a time
+     */
+    private static final Set<String> HEDGEABLE_METHODS = new HashSet<>(Arrays.asList(
+            "eth_call", "eth_getBalance", "eth_blockNumber", "eth_chainId", "eth_gasPrice", "eth_estimateGas",
+            "eth_getCode", "eth_getStorageAt", "eth_getTransactionCount", "eth_getTransactionByHash",
+            "eth_getTransactionReceipt", "eth_getBlockByNumber", "eth_getBlockByHash", "eth_getLogs",
+            "eth_feeHistory", "eth_maxPriorityFeePerGas", "net_version", "web3_clientVersion"));
+    private static final Pattern METHOD = Pattern.compile("\"method\"\\s*:\\s*\"([^\"]+)\"");
+
     private final OkHttpClient httpClient;
 
     private final String[] urls; // Changed to array of URLs
@@ -105,8 +130,10 @@ public class AWHttpServiceWaterfall extends HttpService
     private final String klaytnKey;
     private final long chainId;
     private final Random random = new Random();
+    private volatile boolean hedgedRequests = false;
 
-    private final HashMap<String, String> headers = new HashMap<>();
+    //instances are shared between threads by RpcClientRegistry
+    private final Map<String, String> headers = new ConcurrentHashMap<>();
 
     public AWHttpServiceWaterfall(String[] urls, long chainId, OkHttpClient httpClient, String infuraKey, String infuraSecret, String klaytnKey, boolean includeRawResponses)
     {
@@ -120,42 +147,239 @@ public class AWHttpServiceWaterfall extends HttpService
         this.chainId = chainId;
     }
 
+    /**
+     * Enable sending a second read request to the next best node if the first hasn't answered within its p95 latency
+     */
+    public void setHedgedRequests(boolean enabled)
+    {
+        hedgedRequests = enabled;
+    }
+
+    public List<RpcEndpointHealth.Stats> getEndpointStats()
+    {
+        List<RpcEndpointHealth.Stats> stats = new ArrayList<>();
+        for (String url : urls)
+        {
+            stats.add(RpcEndpointHealth.get(url).getStats());
+        }
+        return stats;
+    }
+
     @Override
     protected InputStream performIO(String request) throws IOException
     {
-        // Start at a random point within the URLs
-        int startIndex = random.nextInt(urls.length);
+        // Best node first; nodes which are backing off or failing go to the back of the queue
+        List<String> ranked = RpcEndpointHealth.rank(urls, random);
+        int index = 0;
 
-        // Round-robin try all URLs
-        for (int count = 0; count < urls.length; count++)
+        long now = System.currentTimeMillis();
+        if (hedgedRequests && ranked.size() > 1 && isHedgeable(request)
+                && RpcEndpointHealth.get(ranked.get(0)).isAvailable(now) && RpcEndpointHealth.get(ranked.get(1)).isAvailable(now))
         {
-            String url = urls[(startIndex + count) % urls.length];
+            long hedgeDelay = RpcEndpointHealth.get(ranked.get(0)).getHedgeDelay();
+            if (hedgeDelay > 0)
+            {
+                try
+                {
+                    return performHedgedIO(ranked.get(0), ranked.get(1), request, hedgeDelay);
+                }
+                catch (IOException e)
+                {
+                    log.warn("Hedged request to {} failed: {}", ranked.get(0), e.getMessage());
+                    index = 2;
+                }
+            }
+        }
 
+        for (; index < ranked.size(); index++)
+        {
+            String url = ranked.get(index);
             try
             {
-                okhttp3.Response response = performSingleIO(url, request);
+                return handleResponse(url, System.currentTimeMillis(), performSingleIO(url, request));
+            }
+            catch (IOException e)
+            {
+                log.warn("Request to {} failed: {}", url, e.getMessage());
+            }
+        }
+
+        throw new IOException("All requests failed!");
+    }
+
+    // true if every call in the request, or batch, only reads
+    static boolean isHedgeable(String request)
+    {
+        Matcher matcher = METHOD.matcher(request);
+        boolean found = false;
+        while (matcher.find())
+        {
+            if (!HEDGEABLE_METHODS.contains(matcher.group(1))) return false;
+            found = true;
+        }
+        return found;
+    }
+
+    /**
+     * Sends the request to the primary node, and to the secondary if there's no answer after the delay.
+     * The first good response wins and the other call is cancelled.
+     */
+    private InputStream performHedgedIO(String primary, String secondary, String request, long delayMs) throws IOException
+    {
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>();
+        calls.add(enqueueIO(primary, request, results));
+
+        try
+        {
+            Object result = results.poll(delayMs, TimeUnit.MILLISECONDS);
+            if (result instanceof InputStream)
+            {
+                return (InputStream) result;
+            }
+
+            //primary is slow or already failed; bring in the secondary
+            int pending = 1;
+            IOException lastError = null;
+            if (result != null)
+            {
+                lastError = (IOException) result;
+                pending--;
+            }
+            Timber.d("Hedging request to %s after %dms", secondary, delayMs);
+            calls.add(enqueueIO(secondary, request, results));
+            pending++;
+
+            while (pending > 0)
+            {
+                result = results.take();
+                pending--;
+                if (result instanceof InputStream)
+                {
+                    return (InputStream) result;
+                }
+                lastError = (IOException) result;
+            }
+
+            throw lastError;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        finally
+        {
+            for (Call call : calls)
+            {
+                call.cancel();
+            }
+        }
+    }
 
-                // Check if the response is valid (2xx status code)
-                if (response.isSuccessful())
+    private Call enqueueIO(String url, String request, BlockingQueue<Object> results)
+    {
+        long startTime = System.currentTimeMillis();
+        Call call = httpClient.newCall(buildRequest(url, request));
+        call.enqueue(new Callback()
+        {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e)
+            {
+                //the losing call of a hedged pair is cancelled, which says nothing about the node
+                if (!call.isCanceled()) RpcEndpointHealth.get(url).recordFailure();
+                results.add(e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response)
+            {
+                if (call.isCanceled())
                 {
-                    return processResponse(response);
+                    response.close();
+                    results.add(new IOException("Canceled"));
+                    return;
                 }
-                else
+
+                try
                 {
-                    Timber.d("Response was %s, retrying...", response.code());
+                    results.add(handleResponse(url, startTime, response));
                 }
+                catch (IOException e)
+                {
+                    results.add(e);
+                }
+            }
+        });
+
+        return call;
+    }
+
+    /**
+     * Reads the response and feeds the outcome into the node's health
+     */
+    private InputStream handleResponse(String url, long startTime, Response response) throws IOException
+    {
+        RpcEndpointHealth health = RpcEndpointHealth.get(url);
+        if (response.isSuccessful())
+        {
+            try
+            {
+                InputStream stream = processResponse(response);
+                health.recordSuccess(System.currentTimeMillis() - startTime);
+                return stream;
             }
             catch (IOException e)
             {
-                log.warn("Request to {} failed: {}", url, e.getMessage());
-                // Optionally, re-throw for specific error handling at a higher level
+                health.recordFailure();
+                throw e;
             }
         }
 
-        throw new IOException("All requests failed!");
+        int code = response.code();
+        String retryAfter = response.header("Retry-After");
+        response.close();
+
+        if (code == 429 || code >= 500)
+        {
+            Timber.d("Response was %s, backing off %s", code, url);
+            health.recordBackoff(parseRetryAfter(retryAfter));
+        }
+        else
+        {
+            health.recordFailure();
+        }
+
+        throw new IOException("Unsuccessful response: " + code);
+    }
+
+    private long parseRetryAfter(String retryAfter)
+    {
+        if (TextUtils.isEmpty(retryAfter)) return 0;
+        try
+        {
+            return Long.parseLong(retryAfter.trim()) * 1000;
+        }
+        catch (NumberFormatException e)
+        {
+            return 0; //HTTP-date form, use default backoff
+        }
+    }
+
+    private Response performSingleIO(String url, String request) throws IOException
+    {
+        try
+        {
+            return httpClient.newCall(buildRequest(url, request)).execute();
+        }
+        catch (IOException e)
+        {
+            RpcEndpointHealth.get(url).recordFailure();
+            throw e;
+        }
     }
 
-    private okhttp3.Response performSingleIO(String url, String request) throws IOException
+    private Request buildRequest(String url, String request)
     {
         RequestBody requestBody;
         try
@@ -167,15 +391,11 @@ public class AWHttpServiceWaterfall extends HttpService
             requestBody = RequestBody.create("", MEDIA_TYPE_TEXT);
         }
 
-        addRequiredSecrets(url);
-
-        Request httpRequest = new Request.Builder()
+        return new Request.Builder()
                 .url(url)
-                .headers(buildHeaders())
+                .headers(buildHeaders(url))
                 .post(requestBody)
                 .build();
-
-        return httpClient.newCall(httpRequest).execute();
     }
 
     private InputStream processResponse(Response response) throws IOException
@@ -247,22 +467,29 @@ public class AWHttpServiceWaterfall extends HttpService
         }
     }
 
-    private void addRequiredSecrets(String url)
+    /**
+     * Shared headers, plus the secrets for the node this request goes to. Secrets are only ever sent to their own
+     * provider, never to a failover node
+     */
+    private Headers buildHeaders(String url)
     {
-        if (!TextUtils.isEmpty(infuraKey) && url.endsWith(infuraKey) && !TextUtils.isEmpty(infuraSecret)) //primary InfuraKey has secret
+        Headers.Builder builder = Headers.of(headers).newBuilder();
+        if (hasValue(infuraKey) && hasValue(infuraSecret) && url.endsWith(infuraKey)) //primary InfuraKey has secret
         {
-            addHeader("Authorization", "Basic " + infuraSecret);
+            builder.set("Authorization", "Basic " + infuraSecret);
         }
-        else if (!TextUtils.isEmpty(klaytnKey) && (chainId == KLAYTN_BAOBAB_ID || chainId == KLAYTN_ID))
+        else if (hasValue(klaytnKey) && (chainId == KLAYTN_BAOBAB_ID || chainId == KLAYTN_ID) && url.contains(KLAYTN_API_HOST))
         {
-            addHeader("x-chain-id", Long.toString(chainId));
-            addHeader("Authorization", "Basic " + klaytnKey);
+            builder.set("x-chain-id", Long.toString(chainId));
+            builder.set("Authorization", "Basic " + klaytnKey);
         }
+
+        return builder.build();
     }
 
-    private Headers buildHeaders()
+    private static boolean hasValue(String value)
     {
-        return Headers.of(headers);
+        return value != null && !value.isEmpty();
     }
 
     public void addHeader(String key, String value)
@@ -277,7 +504,7 @@ public class AWHttpServiceWaterfall extends HttpService
 
     public HashMap<String, String> getHeaders()
     {
-        return headers;
+        return new HashMap<>(headers);
     }
 
     @Override
@@ -25,7 +25,6 @@ import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 import androidx.lifecycle.MutableLiveData;
 
-import com.setlone.app.BuildConfig;
 import com.setlone.app.entity.ContractLocator;
 import com.setlone.app.entity.ContractType;
 import com.setlone.app.entity.EasAttestation;
@@ -40,6 +39,7 @@ import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokenscript.EventUtils;
 import com.setlone.app.entity.tokenscript.TokenScriptFile;
 import com.setlone.app.entity.tokenscript.TokenscriptFunction;
+import com.setlone.app.repository.EthereumNetworkBase;
 import com.setlone.app.repository.TokenLocalSource;
 import com.setlone.app.repository.TokensRealmSource;
 import com.setlone.app.repository.entity.RealmAttestation;
@@ -70,6 +70,7 @@ import com.setlone.token.entity.TransactionResult;
 import com.setlone.token.entity.ViewType;
 import com.setlone.token.entity.XMLDsigDescriptor;
 import com.setlone.token.tools.TokenDefinition;
+import com.setlone.token.tools.TokenScriptSnapshot;
 
 import org.jetbrains.annotations.NotNull;
 import org.json.JSONArray;
@@ -81,7 +82,6 @@ import org.web3j.abi.datatypes.Type;
 import org.web3j.crypto.Keys;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.methods.request.EthFilter;
-import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthLog;
 import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.utils.Numeric;
@@ -104,14 +104,17 @@ import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -154,11 +157,14 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
     private final TokensService tokensService;
     private final TokenLocalSource tokenLocalSource;
     private final SetlOneService setlOneService;
-    private TokenDefinition cachedDefinition = null;
+    private final TokenDefinitionCache definitionCache = new TokenDefinitionCache();
+    private final AttributeResolutionEngine attributeEngine = new AttributeResolutionEngine();
+    private final EventLogScheduler eventScheduler = new EventLogScheduler();
     private final ConcurrentHashMap<String, EventDefinition> eventList = new ConcurrentHashMap<>(); //List of events built during file load
-    private final Semaphore assetLoadingLock;  // used to block if someone calls getAssetDefinitionASync() while loading
+    private final Object assetLoadingLock = new Object(); // one load of the scripts at a time
+    private volatile CountDownLatch assetsLoaded;  // holds getAssetDefinitionASync() callers until the current load completes; replaced when a reload starts
     private Disposable eventListener;           // timer thread that periodically checks event logs for scripts that require events
-    private final Semaphore eventConnection;
+    private final Semaphore eventConnection;    // one pass of the event logs at a time
     private FragmentMessenger homeMessenger;
 
     private final TokenscriptFunction tokenscriptUtility;
@@ -185,7 +191,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         {
         }; //no overridden functions
         tokenLocalSource = trs;
-        assetLoadingLock = new Semaphore(1);
+        assetsLoaded = new CountDownLatch(1); // closed until finishLoading(), which prevents attributes from being fetched until loading is complete
         eventConnection = new Semaphore(1);
         //deleteAllEventData();
         loadAssetScripts();
@@ -205,22 +211,18 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
      */
     private void loadAssetScripts()
     {
-        try
-        {
-            assetLoadingLock.acquire(); // acquire the semaphore here to prevent attributes from being fetched until loading is complete
-            // See flow above for details
-        }
-        catch (InterruptedException e)
-        {
-            Timber.e(e);
-        }
-
         //List<String> handledHashes = checkRealmScriptsForChanges();
         //loadNewFiles(handledHashes);
 
-        //executes after observable completes due to blockingForEach
-        loadInternalAssets();
-        finishLoading();
+        synchronized (assetLoadingLock)
+        {
+            //close the gate again if an earlier load opened it, so callers don't read a half reloaded set
+            if (assetsLoaded.getCount() == 0) assetsLoaded = new CountDownLatch(1);
+
+            //executes after observable completes due to blockingForEach
+            loadInternalAssets();
+            finishLoading();
+        }
     }
 
     private List<String> checkRealmScriptsForChanges()
@@ -313,6 +315,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
     private void deleteTokenScriptFromRealm(Realm realm, String fileHash) throws RealmException
     {
+        definitionCache.invalidate(fileHash);
         //delete from realm
         realm.executeTransactionAsync(r -> {
             //have to remove all instances of this hash
@@ -368,6 +371,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
     private void deleteAllInternalScriptFromRealm()
     {
+        definitionCache.invalidate(BUNDLED_SCRIPT);
         try (Realm realm = realmManager.getRealmInstance(ASSET_DEFINITION_DB))
         {
             realm.executeTransactionAsync(r -> {
@@ -408,6 +412,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
             }
 
             final String hash = file.calcMD5();
+            final List<String> updatedKeys = new ArrayList<>();
 
             realm.executeTransaction(r -> {
                 for (ContractLocator cl : originContracts)
@@ -432,9 +437,17 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
                         entry.setViewList(td.getViews());
                         entry.setHasEvents(hasEvents);
                         entry.setSchemaUID(td.getAttestationSchemaUID());
+                        updatedKeys.add(entryKey);
                     }
                 }
             });
+
+            //definition is already parsed, so hold it for the contracts now pointing at this file
+            for (String entryKey : updatedKeys)
+            {
+                definitionCache.invalidateContract(entryKey);
+                definitionCache.put(hash, entryKey, td, file.length());
+            }
         }
         catch (Exception e)
         {
@@ -610,19 +623,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
     public Single<Boolean> refreshAttributes(Token token, TokenDefinition td, BigInteger tokenId, List<Attribute> attrs)
     {
         return Single.fromCallable(() -> {
-            //run through attributes first
-            for (Attribute attr : attrs)
-            {
-                //check if any of these attributes take TokenID
-                if (attr.usesTokenId())
-                {
-                    updateAttributeResult(token, td, attr, tokenId);
-                }
-                else
-                {
-                    updateAttributeResult(token, td, attr, BigInteger.ZERO);
-                }
-            }
+            resolveAttributes(token, td, attrs, Collections.singletonList(tokenId));
             return true;
         });
     }
@@ -673,38 +674,37 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         if (td == null) return Single.fromCallable(() -> false);
 
         return Single.fromCallable(() -> {
-            //run through attributes first
-            for (Map.Entry<String, Attribute> attrEntry : td.attributes.entrySet())
-            {
-                //check if any of these attributes take TokenID
-                if (attrEntry.getValue().usesTokenId())
-                {
-                    //run through each tokenId and update
-                    for (BigInteger tokenId : token.getTokenAssets().keySet())
-                    {
-                        updateAttributeResult(token, td, attrEntry.getValue(), tokenId);
-                    }
-                }
-                else
-                {
-                    updateAttributeResult(token, td, attrEntry.getValue(), BigInteger.ZERO);
-                }
-            }
+            resolveAttributes(token, td, td.attributes.values(), token.getTokenAssets().keySet());
             return true;
         });
     }
 
-    private void updateAttributeResult(Token token, TokenDefinition td, Attribute attr, BigInteger tokenId)
+    /**
+     * Fetches the function attribute values for the tokenIds from the chain and stores them.
+     * Reads are de-duplicated and batched per chain, and all results are written in one transaction.
+     */
+    private void resolveAttributes(Token token, TokenDefinition td, Collection<Attribute> attrs, Collection<BigInteger> tokenIds)
     {
-        if (attr != null && attr.function != null)
+        AttributeResolutionEngine.Plan plan = attributeEngine.plan(attrs, tokenIds,
+                (attr, tokenId) -> tokenscriptUtility.generateTransactionFunction(token, tokenId, td, attr.function, this));
+
+        for (long chainId : plan.getChains())
         {
-            ContractAddress useAddress = new ContractAddress(attr.function); //always use the function attribute's address
-            tokenscriptUtility.fetchResultFromEthereum(token, useAddress, attr, tokenId, td, this) // Fetch function result from blockchain
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(Schedulers.io())
-                    .subscribe(txResult -> storeAuxData(getWalletAddr(), txResult))
-                    .isDisposed();
+            AttributeResolutionEngine.Result result = attributeEngine.execute(getWeb3jService(chainId), chainId,
+                    token.getWallet(), plan, EthereumNetworkBase.getBatchProcessingLimit(chainId));
+
+            if (result.batchUnavailable) EthereumNetworkBase.setBatchProcessingError(chainId);
+            Timber.d("Attributes for %s on %d: %d calls, %d reads in %d node calls", token.getAddress(), chainId,
+                    plan.calls.size(), plan.getReadCount(), result.nodeCalls);
         }
+
+        List<TransactionResult> results = new ArrayList<>(plan.calls.size());
+        for (AttributeResolutionEngine.AttributeCall call : plan.calls)
+        {
+            results.add(tokenscriptUtility.buildTransactionResult(call.contract, call.attr, call.tokenId, call.function, call.returnData));
+        }
+
+        storeAuxData(getWalletAddr(), results);
     }
 
     public void addLocalRefs(Map<String, String> refs)
@@ -808,14 +808,6 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
             return null;
         }
 
-        String address = elements[0];
-        long chainId = Long.parseLong(elements[1]);
-
-        if (checkCachedDefinition(chainId, address) != null)
-        {
-            return cachedDefinition;
-        }
-
         try (Realm realm = realmManager.getRealmInstance(ASSET_DEFINITION_DB))
         {
             RealmTokenScriptData tsData = realm.where(RealmTokenScriptData.class)
@@ -824,16 +816,23 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
             if (tsData != null)
             {
-                if (tsData.getFileHash().equals(BUNDLED_SCRIPT)) //handle bundled scripts
+                String fileHash = tsData.getFileHash();
+                result = definitionCache.get(fileHash, tsKey);
+                if (result != null)
                 {
-                    cachedDefinition = getBundledDefinition(tsData.getFilePath());
+                    return result;
+                }
+                else if (BUNDLED_SCRIPT.equals(fileHash)) //handle bundled scripts
+                {
+                    result = getBundledDefinition(tsData.getFilePath());
+                    definitionCache.put(fileHash, tsKey, result, 0);
                 }
                 else
                 {
                     TokenScriptFile tf = new TokenScriptFile(context, tsData.getFilePath());
-                    cachedDefinition = parseFile(tf.getInputStream());
+                    result = parseFile(tf, fileHash);
+                    definitionCache.put(fileHash, tsKey, result, tf.length());
                 }
-                result = cachedDefinition;
             }
         }
         catch (Exception e)
@@ -844,24 +843,6 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         return result;
     }
 
-    private TokenDefinition checkCachedDefinition(long chainId, String address)
-    {
-        if (cachedDefinition != null)
-        {
-            //only match holding token
-            ContractInfo holdingContracts = cachedDefinition.contracts.get(cachedDefinition.holdingToken);
-            if (holdingContracts != null && holdingContracts.addresses.containsKey(chainId))
-            {
-                for (String addr : holdingContracts.addresses.get(chainId))
-                {
-                    if (addr.equalsIgnoreCase(address.toLowerCase())) return cachedDefinition;
-                }
-            }
-        }
-
-        return null;
-    }
-
     public TokenScriptFile getTokenScriptFile(long chainId, String address)
     {
         //pull from database
@@ -981,7 +962,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
                         continue;
                     }
 
-                    TokenDefinition td = parseFile(tsf.getInputStream());
+                    TokenDefinition td = parseFile(tsf, tsCandidate.getFileHash());
                     if (td.matchCollection(attn.getAttestationCollectionId(td)))
                     {
                         tsfReturn = tsf;
@@ -1047,16 +1028,19 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
             return null;
         }
 
-        if (checkCachedDefinition(token.tokenInfo.chainId, token.getAddress()) != null)
+        TokenDefinition td = definitionCache.getForContract(token.getTSKey());
+        if (td != null)
         {
-            return cachedDefinition;
+            return td;
         }
 
         try
         {
             TokenScriptFile tsf = getTokenScriptFile(token);
-            cachedDefinition = parseFile(tsf.getInputStream());
-            return cachedDefinition;
+            String fileHash = tsf.calcMD5();
+            td = parseFile(tsf, fileHash);
+            definitionCache.put(fileHash, token.getTSKey(), td, tsf.length());
+            return td;
         }
         catch (Exception e)
         {
@@ -1110,16 +1094,12 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
     {
         try
         {
-            assetLoadingLock.acquire();
+            assetsLoaded.await();
         }
         catch (InterruptedException e)
         {
             Timber.e(e);
         }
-        finally
-        {
-            assetLoadingLock.release();
-        }
     }
 
     public String getTokenName(long chainId, String address, int count)
@@ -1208,6 +1188,18 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
                 xmlInputStream, locale, this);
     }
 
+    // Load from the script's precompiled snapshot where there is one; the snapshot is written on first parse
+    private TokenDefinition parseFile(TokenScriptFile tsf, String fileHash) throws Exception
+    {
+        if (!tsf.exists() || !tsf.canRead() || TextUtils.isEmpty(fileHash))
+        {
+            return parseFile(tsf.getInputStream()); //asset or missing file
+        }
+
+        Locale locale = context.getResources().getConfiguration().getLocales().get(0);
+        return TokenScriptSnapshot.load(tsf, fileHash, locale, this);
+    }
+
     private Single<TokenDefinition> handleNewTSFile(File newFile)
     {
         //if unchanged return existing definition
@@ -1239,7 +1231,6 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
                 boolean isDebugOverride = tsf.isDebug();
                 //remove all old definitions & certificates
                 updateScriptEntriesInRealm(originContracts, isDebugOverride, tsf.calcMD5(), schemaUID);
-                cachedDefinition = td;
                 return tsf;
         }).flatMap(tt -> cacheSignature(tsf, td))
           .map(a -> fileLoadComplete(originContracts, tsf, td));
@@ -1263,6 +1254,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
                 for (ContractLocator cl : origins)
                 {
                     String entryKey = getTSDataKey(cl.chainId, cl.address);
+                    definitionCache.invalidateContract(entryKey);
                     RealmTokenScriptData realmData = r.where(RealmTokenScriptData.class)
                             .equalTo("instanceKey", entryKey)
                             .findFirst();
@@ -1364,6 +1356,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         String fileHash = tsf.calcMD5();
         final String tokenKey = tempFileKey;
         final File storeFile = tsf;
+        definitionCache.invalidateContract(tokenKey);
 
         try (Realm realm = realmManager.getRealmInstance(ASSET_DEFINITION_DB))
         {
@@ -1597,7 +1590,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
     private void finishLoading()
     {
-        assetLoadingLock.release();
+        assetsLoaded.countDown();
         //remove event listener update for now
         /*if (Utils.isAddressValid(tokensService.getCurrentAddress()))
         {
@@ -1612,6 +1605,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         {
             File fileToDelete = new File(filename);
             fileToDelete.delete();
+            TokenScriptSnapshot.delete(fileToDelete);
         }
         catch (Exception e)
         {
@@ -1677,6 +1671,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
     private void updateRealmForBundledScript(long chainId, String address, String asset, TokenDefinition td)
     {
+        definitionCache.invalidateContract(getTSDataKey(chainId, address));
         try (Realm realm = realmManager.getRealmInstance(ASSET_DEFINITION_DB))
         {
             realm.executeTransaction(r -> {
@@ -1760,60 +1755,41 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
     public void startEventListener()
     {
-        if (assetLoadingLock.availablePermits() == 0) return;
+        if (assetsLoaded.getCount() > 0) return;
 
         if (eventListener != null && !eventListener.isDisposed()) eventListener.dispose();
         eventListener = Observable.interval(0, CHECK_TX_LOGS_INTERVAL, TimeUnit.SECONDS)
                 .doOnNext(l -> {
-                    checkEvents()
+                    checkEventDisposable = checkEvents()
                             .subscribeOn(Schedulers.io())
                             .observeOn(AndroidSchedulers.mainThread())
-                            .subscribe(() -> {}, t -> {}) //results are handled within logging function
-                            .isDisposed();
+                            .subscribe(() -> {}, t -> {}); //results are handled within logging function
                 }).subscribe();
     }
 
     private Completable checkEvents()
     {
-        //check events for corresponding tokens
+        //check events for corresponding tokens; definitions watching the same contract share one read
         return Completable.fromAction(() -> {
-            for (EventDefinition ev : eventList.values())
-            {
-                getEvent(ev);
-            }
-        });
-    }
-
-    private void getEvent(EventDefinition ev)
-    {
-        try
-        {
-            EthFilter filter = getEventFilter(ev);
-            if (filter == null) return;
-            if (BuildConfig.DEBUG)
-                eventConnection.acquire(); //prevent overlapping event calls while debugging
-            final String walletAddress = tokensService.getCurrentAddress();
-            Web3j web3j = getWeb3jService(ev.getEventChainId());
-
-            checkEventDisposable = handleLogs(ev, filter, web3j, walletAddress)
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(Schedulers.computation())
-                    .subscribe();
-        }
-        catch (Exception e)
-        {
-            Timber.e(e);
-        }
-    }
-
-    private Single<String> handleLogs(EventDefinition ev, EthFilter filter, Web3j web3j, final String walletAddress)
-    {
-        return Single.fromCallable(() -> {
-            String txHash = "";
+            if (!eventConnection.tryAcquire()) return; //previous pass is still reading
             try
             {
-                EthLog ethLogs = web3j.ethGetLogs(filter).send();
-                txHash = processLogs(ev, ethLogs.getLogs(), walletAddress);
+                final String walletAddress = tokensService.getCurrentAddress();
+                Map<EventDefinition, EthFilter> eventFilters = new LinkedHashMap<>();
+                for (EventDefinition ev : eventList.values())
+                {
+                    EthFilter filter = getEventFilter(ev);
+                    if (filter != null) eventFilters.put(ev, filter);
+                }
+
+                for (EventLogScheduler.MergedFilter filter : eventScheduler.plan(eventFilters))
+                {
+                    long chainId = filter.chainId;
+                    long maxSpan = EthereumNetworkBase.isEventBlockLimitEnforced(chainId)
+                            ? EthereumNetworkBase.getMaxEventFetch(chainId).longValue() : 0;
+                    eventScheduler.read(getWeb3jService(chainId), filter, TransactionsService.getCurrentBlock(chainId), maxSpan,
+                            (ev, logs) -> processLogs(ev, logs, walletAddress));
+                }
             }
             catch (Exception e)
             {
@@ -1821,18 +1797,9 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
             }
             finally
             {
-                if (BuildConfig.DEBUG) eventConnection.release();
+                eventConnection.release();
             }
-            return txHash;
         });
-        //More elegant, but requires a private node
-//        return web3j.ethLogFlowable(filter)
-//                .subscribeOn(Schedulers.io())
-//                .observeOn(AndroidSchedulers.mainThread())
-//                .subscribe(log -> {
-//            Timber.d("log.toString(): " +  log.toString());
-//            //TODO here: callback to event service listener
-//        }, this::onLogError);
     }
 
     private EthFilter getEventFilter(EventDefinition ev) throws Exception
@@ -1855,6 +1822,10 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
 
         String firstTxHash = "";
 
+        //read the timestamps of all the blocks the activity logs are in up front, one request for the distinct blocks
+        Map<String, Long> blockTimes = ev.parentAttribute != null ? new HashMap<>()
+                : BlockTimestampCache.getInstance().enrich(web3j, chainId, getBlockHashes(logs));
+
         int index = logs.size() - 1;
 
         for (int i = index; i >= 0; i--)
@@ -1877,10 +1848,15 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
             }
             else
             {
-                EthBlock txBlock = EventUtils.getBlockDetails(((Log) ethLog.get()).getBlockHash(), web3j).blockingGet();
-                long blockTime = txBlock.getBlock().getTimestamp().longValue();
-
-                storeActivityValue(walletAddress, ev, ethLog, blockTime, ev.activityName);
+                Long blockTime = blockTimes.get(((Log) ethLog.get()).getBlockHash().toLowerCase(Locale.ROOT));
+                if (blockTime != null)
+                {
+                    storeActivityValue(walletAddress, ev, ethLog, blockTime, ev.activityName);
+                }
+                else
+                {
+                    Timber.w("Unable to read block time for %s", txHash);
+                }
 
                 TransactionsService.addTransactionHashFetch(txHash, chainId, walletAddress);
             }
@@ -1889,6 +1865,16 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         return firstTxHash;
     }
 
+    private static List<String> getBlockHashes(List<EthLog.LogResult> logs)
+    {
+        List<String> blockHashes = new ArrayList<>(logs.size());
+        for (EthLog.LogResult<?> ethLog : logs)
+        {
+            blockHashes.add(((Log) ethLog.get()).getBlockHash());
+        }
+        return blockHashes;
+    }
+
     private void storeLatestEventBlockTime(String walletAddress, EventDefinition ev, BigInteger readBlock)
     {
         ev.readBlock = readBlock.add(BigInteger.ONE);
@@ -2646,23 +2632,30 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         if (tResult.result == null || tResult.resultTime < 0) return tResult;
         try (Realm realm = realmManager.getRealmInstance(walletAddress))
         {
-            ContractAddress cAddr = new ContractAddress(tResult.contractChainId, tResult.contractAddress);
-            String databaseKey = functionKey(cAddr, tResult.tokenId, tResult.attrId);
-            realm.executeTransaction(r -> {
-                RealmAuxData realmToken = r.where(RealmAuxData.class)
-                        .equalTo("instanceKey", databaseKey)
-                        .equalTo("chainId", tResult.contractChainId)
-                        .findFirst();
+            realm.executeTransaction(r -> writeAuxData(r, tResult));
+        }
+        catch (Exception e)
+        {
+            Timber.e(e);
+        }
 
-                if (realmToken == null)
-                {
-                    createAuxData(r, tResult, databaseKey);
-                }
-                else if (tResult.result != null)
+        return tResult;
+    }
+
+    /**
+     * Stores a set of function results in a single transaction
+     */
+    public void storeAuxData(String walletAddress, List<TransactionResult> results)
+    {
+        if (tokensService.getCurrentAddress() == null || !Utils.isAddressValid(tokensService.getCurrentAddress()))
+            return;
+        try (Realm realm = realmManager.getRealmInstance(walletAddress))
+        {
+            realm.executeTransaction(r -> {
+                for (TransactionResult tResult : results)
                 {
-                    realmToken.setResult(tResult.result);
-                    realmToken.setResultTime(tResult.resultTime);
-                    realmToken.setResultReceivedTime(System.currentTimeMillis());
+                    if (tResult.result == null || tResult.resultTime < 0) continue;
+                    writeAuxData(r, tResult);
                 }
             });
         }
@@ -2670,8 +2663,27 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         {
             Timber.e(e);
         }
+    }
 
-        return tResult;
+    private void writeAuxData(Realm r, TransactionResult tResult)
+    {
+        ContractAddress cAddr = new ContractAddress(tResult.contractChainId, tResult.contractAddress);
+        String databaseKey = functionKey(cAddr, tResult.tokenId, tResult.attrId);
+        RealmAuxData realmToken = r.where(RealmAuxData.class)
+                .equalTo("instanceKey", databaseKey)
+                .equalTo("chainId", tResult.contractChainId)
+                .findFirst();
+
+        if (realmToken == null)
+        {
+            createAuxData(r, tResult, databaseKey);
+        }
+        else if (tResult.result != null)
+        {
+            realmToken.setResult(tResult.result);
+            realmToken.setResultTime(tResult.resultTime);
+            realmToken.setResultReceivedTime(System.currentTimeMillis());
+        }
     }
 
     private void updateEventBlockTimes()
@@ -2715,6 +2727,7 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         }
 
         //Delete all tokenscript data
+        definitionCache.clear();
         try (Realm realm = realmManager.getRealmInstance(ASSET_DEFINITION_DB))
         {
             realm.executeTransactionAsync(r -> {
@@ -3077,11 +3090,11 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
     }
 
     /**
-     * Clear the currently cached definition. This forces the service to reload the definition so it's clean for the next usage.
+     * Clear the token's cached definition. This forces the service to reload it so it's clean for the next usage.
      */
-    public void clearCache()
+    public void clearCache(Token token)
     {
-        cachedDefinition = null;
+        definitionCache.invalidateContract(token.getTSKey());
     }
 
     public ContractLocator getHoldingContract(String importFileName)
@@ -3183,18 +3196,16 @@ public class AssetDefinitionService implements ParseResult, AttributeInterface
         {
             try
             {
-                TokenDefinition td;
-                if (checkCachedDefinition(token.tokenInfo.chainId, token.getAddress()) != null)
-                {
-                    td = cachedDefinition;
-                }
-                else
+                TokenDefinition td = definitionCache.getForContract(token.getTSKey());
+                if (td == null)
                 {
-                    td = parseFile(tf.getInputStream());
-                    cachedDefinition = td;
+                    String fileHash = tf.calcMD5();
+                    td = parseFile(tf, fileHash);
+                    definitionCache.put(fileHash, token.getTSKey(), td, tf.length());
                 }
+                final TokenDefinition definition = td;
 
-                return Single.fromCallable(() -> td);
+                return Single.fromCallable(() -> definition);
             }
             catch (Exception ignored)
             {
@@ -0,0 +1,276 @@
+package com.setlone.app.service;
+
+import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
+
+import com.setlone.token.entity.Attribute;
+import com.setlone.token.entity.ContractAddress;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthCall;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Resolves TokenScript function attributes for a set of tokenIds using as few node round-trips as possible.
+ *
+ * All the calls needed are planned first: one per attribute for attributes which don't take a tokenId, and one per
+ * attribute per tokenId for those that do. Calls which encode to the same contract and calldata are only made once.
+ * The unique calls are then sent as JSON-RPC batches of eth_calls, falling back to single calls where the node doesn't
+ * take batches. Each call is made from the token's wallet, as attribute functions may read msg.sender; so they aren't
+ * packed into Multicall3, which would make itself the caller.
+ *
+ * This class only reads; converting and storing the results is done by {@link AssetDefinitionService}
+ */
+public class AttributeResolutionEngine
+{
+    private static final String TAG = "ATTRRES";
+
+    public interface CallBuilder
+    {
+        /**
+         * @return function call for the attribute and tokenId. Input parameters are null if they could not all be resolved
+         */
+        Function build(Attribute attr, BigInteger tokenId);
+    }
+
+    public static class AttributeCall
+    {
+        public final ContractAddress contract;
+        public final Attribute attr;
+        public final BigInteger tokenId;
+        public final Function function;
+        public String returnData; //null if the call failed or reverted
+
+        AttributeCall(ContractAddress contract, Attribute attr, BigInteger tokenId, Function function)
+        {
+            this.contract = contract;
+            this.attr = attr;
+            this.tokenId = tokenId;
+            this.function = function;
+        }
+    }
+
+    public static class Plan
+    {
+        public final List<AttributeCall> calls = new ArrayList<>();
+        // chainId -> (contract address | calldata) -> calls sharing that read
+        private final Map<Long, Map<String, List<AttributeCall>>> reads = new LinkedHashMap<>();
+
+        public Set<Long> getChains()
+        {
+            return reads.keySet();
+        }
+
+        public int getReadCount()
+        {
+            int count = 0;
+            for (Map<String, List<AttributeCall>> chainReads : reads.values())
+            {
+                count += chainReads.size();
+            }
+            return count;
+        }
+    }
+
+    public static class Result
+    {
+        public int nodeCalls = 0;
+        public boolean batchUnavailable = false;
+    }
+
+    private static class Read
+    {
+        final String target;
+        final String callData;
+        final List<AttributeCall> calls;
+
+        Read(String target, String callData, List<AttributeCall> calls)
+        {
+            this.target = target;
+            this.callData = callData;
+            this.calls = calls;
+        }
+
+        void setReturn(String returnData)
+        {
+            for (AttributeCall call : calls)
+            {
+                call.returnData = returnData;
+            }
+        }
+    }
+
+    public Plan plan(Collection<Attribute> attrs, Collection<BigInteger> tokenIds, CallBuilder builder)
+    {
+        Plan plan = new Plan();
+        for (Attribute attr : attrs)
+        {
+            if (attr == null || attr.function == null) continue;
+            ContractAddress contract = new ContractAddress(attr.function); //always use the function attribute's address
+
+            if (attr.usesTokenId())
+            {
+                for (BigInteger tokenId : tokenIds)
+                {
+                    addCall(plan, contract, attr, tokenId, builder);
+                }
+            }
+            else
+            {
+                addCall(plan, contract, attr, BigInteger.ZERO, builder);
+            }
+        }
+
+        return plan;
+    }
+
+    private void addCall(Plan plan, ContractAddress contract, Attribute attr, BigInteger tokenId, CallBuilder builder)
+    {
+        Function function;
+        try
+        {
+            function = builder.build(attr, tokenId);
+        }
+        catch (Exception e)
+        {
+            Timber.tag(TAG).w(e);
+            return;
+        }
+
+        AttributeCall call = new AttributeCall(contract, attr, tokenId, function);
+        plan.calls.add(call);
+
+        if (function.getInputParameters() == null)
+        {
+            //couldn't validate all the input param values; stored as an empty result, same as the single call path
+            call.returnData = "";
+            return;
+        }
+
+        String readKey = contract.address.toLowerCase() + "|" + FunctionEncoder.encode(function);
+        Map<String, List<AttributeCall>> chainReads = plan.reads.get(contract.chainId);
+        if (chainReads == null)
+        {
+            chainReads = new LinkedHashMap<>();
+            plan.reads.put(contract.chainId, chainReads);
+        }
+
+        List<AttributeCall> sharing = chainReads.get(readKey);
+        if (sharing == null)
+        {
+            sharing = new ArrayList<>();
+            chainReads.put(readKey, sharing);
+        }
+        sharing.add(call);
+    }
+
+    /**
+     * Makes the planned reads for one chain, setting the return data of each call
+     *
+     * @param batchLimit requests per JSON-RPC batch, 0 if the node doesn't take batches
+     */
+    public Result execute(Web3j web3j, long chainId, String fromAddress, Plan plan, int batchLimit)
+    {
+        Result result = new Result();
+        Map<String, List<AttributeCall>> chainReads = plan.reads.get(chainId);
+        if (chainReads == null) return result;
+
+        List<Read> reads = new ArrayList<>(chainReads.size());
+        for (Map.Entry<String, List<AttributeCall>> entry : chainReads.entrySet())
+        {
+            String key = entry.getKey();
+            int split = key.indexOf('|');
+            reads.add(new Read(entry.getValue().get(0).contract.address, key.substring(split + 1), entry.getValue()));
+        }
+
+        List<Read> remaining = reads;
+        if (batchLimit > 0)
+        {
+            remaining = readBatch(web3j, fromAddress, remaining, batchLimit, result);
+        }
+
+        readSingle(web3j, fromAddress, remaining, result);
+
+        return result;
+    }
+
+    /**
+     * @return reads that could not be resolved because the batch itself failed
+     */
+    private List<Read> readBatch(Web3j web3j, String fromAddress, List<Read> reads, int limit, Result result)
+    {
+        for (int start = 0; start < reads.size(); start += limit)
+        {
+            List<Read> chunk = reads.subList(start, Math.min(reads.size(), start + limit));
+            BatchRequest requests = web3j.newBatch();
+            for (Read read : chunk)
+            {
+                requests.add(web3j.ethCall(createEthCallTransaction(fromAddress, read.target, read.callData),
+                        DefaultBlockParameterName.LATEST));
+            }
+
+            try
+            {
+                result.nodeCalls++;
+                BatchResponse responses = requests.send();
+                if (responses.getResponses().size() != chunk.size())
+                {
+                    result.batchUnavailable = true;
+                    return new ArrayList<>(reads.subList(start, reads.size()));
+                }
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    Response<?> rsp = responses.getResponses().get(i);
+                    chunk.get(i).setReturn(rsp.hasError() || !(rsp instanceof EthCall) ? null : ((EthCall) rsp).getValue());
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e);
+                return new ArrayList<>(reads.subList(start, reads.size()));
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    private void readSingle(Web3j web3j, String fromAddress, List<Read> reads, Result result)
+    {
+        for (Read read : reads)
+        {
+            try
+            {
+                result.nodeCalls++;
+                EthCall response = web3j.ethCall(createEthCallTransaction(fromAddress, read.target, read.callData),
+                        DefaultBlockParameterName.LATEST).send();
+                read.setReturn(response.getValue());
+            }
+            catch (IOException e)
+            {
+                //node unreachable; leave the rest unresolved, cached values stand
+                Timber.tag(TAG).w(e);
+                return;
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).e(e);
+            }
+        }
+    }
+}
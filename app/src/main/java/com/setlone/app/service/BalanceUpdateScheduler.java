@@ -0,0 +1,244 @@
+package com.setlone.app.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Runs the token balance check pass only when there's something to do.
+ *
+ * Each pass reports how long until its next piece of work is due and the scheduler sleeps until then, instead of
+ * polling on a fixed timer. Events which create work (a new transaction, focus token change, incoming transfer
+ * notification) call {@link #wake} to run a pass straight away. While the app is in the background the sleep is
+ * stretched with an increasing back-off, so a backgrounded wallet rarely wakes the CPU or radio.
+ *
+ * A trace of the recent passes (when each was scheduled, when it ran and why) is kept for tuning.
+ */
+public class BalanceUpdateScheduler
+{
+    public interface Task
+    {
+        /**
+         * Perform one pass of balance checks
+         *
+         * @return milliseconds until the next check is due; zero if more work is waiting, {@link #IDLE} if nothing is queued
+         */
+        long run();
+    }
+
+    public static final long IDLE = Long.MAX_VALUE;
+
+    public static final long MIN_INTERVAL = 500;                   // pacing between consecutive checks, as the old poll
+    public static final long MAX_SLEEP = 60 * 1000;                // backstop wake when idle in the foreground
+    public static final long BACKGROUND_MIN_INTERVAL = 30 * 1000;  // first back-off step once in the background
+    public static final long BACKGROUND_MAX_INTERVAL = 5 * 60 * 1000;
+    private static final int TRACE_SIZE = 128;
+
+    public static class TraceEntry
+    {
+        public final String reason;
+        public final long scheduledAt;  // time the pass was due
+        public final long executedAt;   // time it actually ran
+        public final long nextDelay;    // sleep chosen after the pass
+        public final boolean background;
+
+        TraceEntry(String reason, long scheduledAt, long executedAt, long nextDelay, boolean background)
+        {
+            this.reason = reason;
+            this.scheduledAt = scheduledAt;
+            this.executedAt = executedAt;
+            this.nextDelay = nextDelay;
+            this.background = background;
+        }
+
+        public long getLateness()
+        {
+            return executedAt - scheduledAt;
+        }
+
+        @Override
+        public String toString()
+        {
+            return reason + " due: " + scheduledAt + " ran: " + executedAt + " (+" + getLateness() + "ms) next: "
+                    + nextDelay + "ms" + (background ? " [bg]" : "");
+        }
+    }
+
+    private final Task task;
+    private final Scheduler scheduler;
+    private Scheduler.Worker worker;
+    private Disposable pending;
+    private long pendingAt;
+    private boolean inPass;
+    private boolean wakeRequested;
+    private boolean background;
+    private long backgroundInterval = BACKGROUND_MIN_INTERVAL;
+    private long lastPass;
+
+    private final TraceEntry[] trace = new TraceEntry[TRACE_SIZE];
+    private int traceIndex = 0;
+    private long passes = 0;
+    private long wakes = 0;
+
+    public BalanceUpdateScheduler(Task task)
+    {
+        this(task, Schedulers.computation());
+    }
+
+    public BalanceUpdateScheduler(Task task, Scheduler scheduler)
+    {
+        this.task = task;
+        this.scheduler = scheduler;
+    }
+
+    public synchronized void start()
+    {
+        stop();
+        worker = scheduler.createWorker();
+        lastPass = 0;
+        backgroundInterval = BACKGROUND_MIN_INTERVAL;
+        scheduleAt(now(), "start");
+    }
+
+    public synchronized void stop()
+    {
+        if (worker != null)
+        {
+            worker.dispose();
+            worker = null;
+        }
+        pending = null;
+        inPass = false;
+        wakeRequested = false;
+    }
+
+    public synchronized boolean isRunning()
+    {
+        return worker != null && !worker.isDisposed();
+    }
+
+    /**
+     * Run a pass as soon as pacing allows; call when an event has created balance work
+     */
+    public synchronized void wake(String reason)
+    {
+        if (!isRunning()) return;
+        wakes++;
+        backgroundInterval = BACKGROUND_MIN_INTERVAL;
+        if (inPass)
+        {
+            wakeRequested = true; //rescheduled once the current pass is complete
+            return;
+        }
+
+        long runAt = Math.max(now(), lastPass + MIN_INTERVAL);
+        if (pending != null && !pending.isDisposed() && pendingAt <= runAt) return; //already due by then
+        scheduleAt(runAt, reason);
+    }
+
+    public synchronized void setBackground(boolean inBackground)
+    {
+        if (background == inBackground) return;
+        background = inBackground;
+        backgroundInterval = BACKGROUND_MIN_INTERVAL;
+        if (!inBackground) wake("foreground");
+    }
+
+    public synchronized List<TraceEntry> getTrace()
+    {
+        List<TraceEntry> entries = new ArrayList<>();
+        for (int i = 0; i < TRACE_SIZE; i++)
+        {
+            TraceEntry entry = trace[(traceIndex + i) % TRACE_SIZE];
+            if (entry != null) entries.add(entry);
+        }
+        return entries;
+    }
+
+    public synchronized String getStats()
+    {
+        long lateness = 0;
+        int count = 0;
+        for (TraceEntry entry : trace)
+        {
+            if (entry == null) continue;
+            lateness += entry.getLateness();
+            count++;
+        }
+        return "passes: " + passes + ", wakes: " + wakes + ", avg lateness: " + (count > 0 ? lateness / count : 0) + "ms"
+                + (background ? ", background interval: " + backgroundInterval + "ms" : "");
+    }
+
+    private void runPass(long scheduledAt, String reason)
+    {
+        final Scheduler.Worker passWorker;
+        synchronized (this)
+        {
+            if (!isRunning()) return;
+            passWorker = worker;
+            inPass = true;
+            pending = null;
+        }
+
+        long executedAt = now();
+        long delay = IDLE;
+        try
+        {
+            delay = task.run();
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if (inPass && worker == passWorker) //not stopped or restarted during the pass
+                {
+                    inPass = false;
+                    lastPass = executedAt;
+                    passes++;
+                    if (wakeRequested)
+                    {
+                        wakeRequested = false;
+                        delay = 0;
+                    }
+
+                    long sleep = calculateSleep(delay);
+                    addTrace(new TraceEntry(reason, scheduledAt, executedAt, sleep, background));
+                    scheduleAt(now() + sleep, "timer");
+                }
+            }
+        }
+    }
+
+    private long calculateSleep(long delay)
+    {
+        long sleep = Math.max(MIN_INTERVAL, Math.min(delay, MAX_SLEEP));
+        if (background)
+        {
+            sleep = Math.max(sleep, backgroundInterval);
+            backgroundInterval = Math.min(BACKGROUND_MAX_INTERVAL, backgroundInterval * 2);
+        }
+        return sleep;
+    }
+
+    private void scheduleAt(long runAt, String reason)
+    {
+        if (pending != null) pending.dispose();
+        pendingAt = runAt;
+        pending = worker.schedule(() -> runPass(runAt, reason), Math.max(0, runAt - now()), TimeUnit.MILLISECONDS);
+    }
+
+    private long now()
+    {
+        return scheduler.now(TimeUnit.MILLISECONDS);
+    }
+
+    private void addTrace(TraceEntry entry)
+    {
+        trace[traceIndex] = entry;
+        traceIndex = (traceIndex + 1) % TRACE_SIZE;
+    }
+}
@@ -0,0 +1,441 @@
+package com.setlone.app.service;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.setlone.app.repository.EthereumNetworkBase;
+import com.setlone.app.repository.RpcClientRegistry;
+import com.setlone.app.repository.TokenRepository;
+
+import org.json.JSONObject;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import timber.log.Timber;
+
+/**
+ * Tracks the latest block of each active chain, so refreshes can be driven by new blocks rather than fixed timers.
+ *
+ * Where the chain's node has a WebSocket endpoint the tracker subscribes to newHeads; otherwise each chain schedules
+ * its own eth_blockNumber reads, twice per observed block time, every 2 - 15 seconds, backing off while the node
+ * fails. If a subscription drops or goes quiet the chain is polled until the socket can be re-opened.
+ *
+ * Chains which aren't tracked (eg while the app is in the background) are read on demand and cached for 10 seconds,
+ * as before.
+ */
+public class BlockHeadTracker
+{
+    private static final String TAG = "BLOCK_HEAD";
+
+    public interface HeadListener
+    {
+        void onNewHead(long chainId, BigInteger blockNumber);
+    }
+
+    public interface NodeSource
+    {
+        BigInteger fetchBlockNumber(long chainId) throws Exception;
+
+        /**
+         * @return WebSocket URL for the chain's node, or null if it only has HTTP
+         */
+        @Nullable
+        String getWebSocketUrl(long chainId);
+    }
+
+    private static final long MIN_POLL_INTERVAL = 2000;
+    private static final long MAX_POLL_INTERVAL = 15000;
+    private static final long MAX_FAILURE_BACKOFF = 120000;
+    private static final long DEFAULT_BLOCK_TIME = 8000;
+    private static final int BLOCK_TIME_SAMPLE = 3;     // blocks seen before the block time estimate is used
+    private static final int BLOCK_TIME_WINDOW = 64;
+    private static final long UNTRACKED_CACHE_TIME = 10000;
+    private static final long SOCKET_SILENCE_LIMIT = 60000;    // no head for this long and the chain is polled too
+    private static final long SOCKET_RETRY_TIME = 5 * 60000;
+
+    private static BlockHeadTracker instance;
+
+    private final NodeSource nodeSource;
+    @Nullable
+    private final OkHttpClient socketClient;
+    private final Scheduler scheduler;
+    private final Map<Long, ChainHead> heads = new ConcurrentHashMap<>();
+    private final List<HeadListener> listeners = new CopyOnWriteArrayList<>();
+
+    private static class ChainHead
+    {
+        final long chainId;
+        BigInteger blockNumber = BigInteger.ZERO;
+        long readTime;
+        long anchorTime;            // first read of the block time window
+        BigInteger anchorBlock;
+        long blockTime = DEFAULT_BLOCK_TIME;
+        int failures;               // node reads failed in a row
+        int pollGeneration;         // bumped whenever polling restarts, so a stale poll doesn't schedule another
+        Disposable pollTask;
+        volatile boolean tracked;
+        WebSocket socket;
+        boolean socketLive;
+        long socketRetryAt;
+
+        ChainHead(long chainId)
+        {
+            this.chainId = chainId;
+        }
+
+        //twice per block, so a new head is seen within half a block
+        long getPollInterval()
+        {
+            return Math.max(MIN_POLL_INTERVAL, Math.min(MAX_POLL_INTERVAL, blockTime / 2));
+        }
+
+        long getNextPollDelay()
+        {
+            if (failures == 0) return getPollInterval();
+            return Math.min(MAX_FAILURE_BACKOFF, getPollInterval() << Math.min(failures, 6));
+        }
+    }
+
+    public static synchronized BlockHeadTracker getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new BlockHeadTracker(new NodeSource()
+            {
+                @Override
+                public BigInteger fetchBlockNumber(long chainId) throws Exception
+                {
+                    return TokenRepository.getWeb3jService(chainId).ethBlockNumber().send().getBlockNumber();
+                }
+
+                @Override
+                public String getWebSocketUrl(long chainId)
+                {
+                    for (String rpcUrl : EthereumNetworkBase.getNetwork(chainId).rpcUrls)
+                    {
+                        String wsUrl = toWebSocketUrl(rpcUrl);
+                        if (wsUrl != null) return wsUrl;
+                    }
+                    return null;
+                }
+            }, RpcClientRegistry.getClient(RpcClientRegistry.Profile.STANDARD), Schedulers.io());
+        }
+
+        return instance;
+    }
+
+    public BlockHeadTracker(NodeSource nodeSource, @Nullable OkHttpClient socketClient, Scheduler scheduler)
+    {
+        this.nodeSource = nodeSource;
+        this.socketClient = socketClient;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Infura serves newHeads on the same key over /ws/; other public nodes don't have a predictable WebSocket endpoint
+     */
+    @Nullable
+    public static String toWebSocketUrl(String rpcUrl)
+    {
+        if (TextUtils.isEmpty(rpcUrl)) return null;
+        if (rpcUrl.startsWith("wss://") || rpcUrl.startsWith("ws://")) return rpcUrl;
+        if (EthereumNetworkBase.isInfura(rpcUrl))
+        {
+            return rpcUrl.replace("https://", "wss://").replace(".infura.io/v3/", ".infura.io/ws/v3/");
+        }
+        return null;
+    }
+
+    public void addListener(HeadListener listener)
+    {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    public void removeListener(HeadListener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Set the chains to keep current; any other chain's subscription is closed. Pass an empty list to stop tracking
+     */
+    public synchronized void setTrackedChains(Collection<Long> chainIds)
+    {
+        for (ChainHead head : heads.values())
+        {
+            if (head.tracked && !chainIds.contains(head.chainId)) stopTracking(head);
+        }
+
+        for (long chainId : chainIds)
+        {
+            ChainHead head = getHead(chainId);
+            synchronized (head)
+            {
+                if (head.tracked) continue;
+                head.tracked = true;
+                head.failures = 0;
+                openSocket(head);
+                schedulePoll(head, ++head.pollGeneration, 0);
+            }
+        }
+    }
+
+    public boolean isTracking(long chainId)
+    {
+        ChainHead head = heads.get(chainId);
+        return head != null && head.tracked;
+    }
+
+    /**
+     * Latest block for a tracked chain, without any node call; null if the chain isn't tracked or not yet read
+     */
+    @Nullable
+    public BigInteger getTrackedHead(long chainId)
+    {
+        ChainHead head = heads.get(chainId);
+        if (head == null) return null;
+        synchronized (head)
+        {
+            return head.tracked && head.readTime > 0 ? head.blockNumber : null;
+        }
+    }
+
+    /**
+     * Current block for the chain; reads from the node if the chain isn't tracked and the cached value is old.
+     * Blocking, so don't call on the main thread.
+     */
+    public BigInteger getBlockNumber(long chainId)
+    {
+        ChainHead head = getHead(chainId);
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        synchronized (head)
+        {
+            long cacheTime = head.tracked ? Math.max(UNTRACKED_CACHE_TIME, 2 * head.getPollInterval()) : UNTRACKED_CACHE_TIME;
+            if (head.blockNumber.signum() > 0 && now < head.readTime + cacheTime)
+            {
+                return head.blockNumber;
+            }
+        }
+
+        fetchHead(head);
+        synchronized (head)
+        {
+            return head.blockNumber;
+        }
+    }
+
+    private ChainHead getHead(long chainId)
+    {
+        ChainHead head = heads.get(chainId);
+        if (head == null)
+        {
+            heads.putIfAbsent(chainId, new ChainHead(chainId));
+            head = heads.get(chainId);
+        }
+        return head;
+    }
+
+    //call holding the head lock
+    private void schedulePoll(ChainHead head, int generation, long delay)
+    {
+        head.pollTask = scheduler.scheduleDirect(() -> pollHead(head, generation), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void pollHead(ChainHead head, int generation)
+    {
+        synchronized (head)
+        {
+            if (!head.tracked || head.pollGeneration != generation) return;
+            long now = scheduler.now(TimeUnit.MILLISECONDS);
+            if (head.socketLive && now < head.readTime + SOCKET_SILENCE_LIMIT)
+            {
+                //subscription is delivering; look again only once it could have gone quiet
+                schedulePoll(head, generation, head.readTime + SOCKET_SILENCE_LIMIT - now);
+                return;
+            }
+            if (head.socket == null && now > head.socketRetryAt && head.socketRetryAt > 0) openSocket(head);
+        }
+
+        boolean read = fetchHead(head);
+
+        synchronized (head)
+        {
+            if (!head.tracked || head.pollGeneration != generation) return;
+            head.failures = read ? 0 : head.failures + 1;
+            schedulePoll(head, generation, head.getNextPollDelay());
+        }
+    }
+
+    private boolean fetchHead(ChainHead head)
+    {
+        try
+        {
+            BigInteger blockNumber = nodeSource.fetchBlockNumber(head.chainId);
+            if (blockNumber != null) onHead(head, blockNumber);
+            return blockNumber != null;
+        }
+        catch (Exception e)
+        {
+            Timber.tag(TAG).w("Head read failed for %s: %s", head.chainId, e.getMessage());
+            return false;
+        }
+    }
+
+    private void onHead(ChainHead head, BigInteger blockNumber)
+    {
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        synchronized (head)
+        {
+            head.readTime = now;
+            if (blockNumber.compareTo(head.blockNumber) <= 0) return;
+
+            //block time averaged over a window of blocks, so the poll timing doesn't skew it
+            long blocks = head.anchorBlock != null ? blockNumber.subtract(head.anchorBlock).longValue() : 0;
+            if (head.anchorBlock == null || blocks > BLOCK_TIME_WINDOW || blocks < 0)
+            {
+                head.anchorBlock = blockNumber;
+                head.anchorTime = now;
+            }
+            else if (blocks >= BLOCK_TIME_SAMPLE)
+            {
+                head.blockTime = (now - head.anchorTime) / blocks;
+            }
+            head.blockNumber = blockNumber;
+        }
+
+        for (HeadListener listener : listeners)
+        {
+            listener.onNewHead(head.chainId, blockNumber);
+        }
+    }
+
+    private void stopTracking(ChainHead head)
+    {
+        synchronized (head)
+        {
+            head.tracked = false;
+            if (head.pollTask != null) head.pollTask.dispose();
+            head.pollTask = null;
+            head.socketLive = false;
+            if (head.socket != null) head.socket.close(1000, null);
+            head.socket = null;
+        }
+    }
+
+    //call holding the head lock
+    private void openSocket(final ChainHead head)
+    {
+        if (socketClient == null) return;
+        String wsUrl = nodeSource.getWebSocketUrl(head.chainId);
+        if (wsUrl == null) return;
+
+        head.socketRetryAt = 0;
+        head.socket = socketClient.newWebSocket(new Request.Builder().url(wsUrl).build(), new WebSocketListener()
+        {
+            @Override
+            public void onOpen(@NonNull WebSocket webSocket, @NonNull Response response)
+            {
+                webSocket.send("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"eth_subscribe\",\"params\":[\"newHeads\"]}");
+            }
+
+            @Override
+            public void onMessage(@NonNull WebSocket webSocket, @NonNull String text)
+            {
+                BigInteger blockNumber = parseHeadNotification(text);
+                if (blockNumber == null) return;
+                synchronized (head)
+                {
+                    if (head.socket != webSocket) return;
+                    head.socketLive = true;
+                }
+                onHead(head, blockNumber);
+            }
+
+            @Override
+            public void onFailure(@NonNull WebSocket webSocket, @NonNull Throwable t, @Nullable Response response)
+            {
+                Timber.tag(TAG).d("Head subscription failed for %s, polling: %s", head.chainId, t.getMessage());
+                socketClosed(head, webSocket);
+            }
+
+            @Override
+            public void onClosed(@NonNull WebSocket webSocket, int code, @NonNull String reason)
+            {
+                socketClosed(head, webSocket);
+            }
+        });
+    }
+
+    private void socketClosed(ChainHead head, WebSocket webSocket)
+    {
+        synchronized (head)
+        {
+            if (head.socket != webSocket) return;
+            head.socket = null;
+            head.socketLive = false;
+            head.socketRetryAt = scheduler.now(TimeUnit.MILLISECONDS) + SOCKET_RETRY_TIME;
+            if (head.tracked)
+            {
+                //poll now rather than when the subscription would have been counted as quiet
+                if (head.pollTask != null) head.pollTask.dispose();
+                schedulePoll(head, ++head.pollGeneration, 0);
+            }
+        }
+    }
+
+    /**
+     * Block number from an eth_subscription newHeads notification, or null for any other message
+     */
+    @Nullable
+    static BigInteger parseHeadNotification(String message)
+    {
+        try
+        {
+            JSONObject json = new JSONObject(message);
+            if (!"eth_subscription".equals(json.optString("method"))) return null;
+            JSONObject params = json.optJSONObject("params");
+            JSONObject result = params != null ? params.optJSONObject("result") : null;
+            String number = result != null ? result.optString("number") : null;
+            return TextUtils.isEmpty(number) ? null : Numeric.toBigInt(number);
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Current head per tracked chain and how it's being read, for a debug screen
+     */
+    public List<String> getStatus()
+    {
+        List<String> status = new ArrayList<>();
+        for (ChainHead head : heads.values())
+        {
+            synchronized (head)
+            {
+                if (!head.tracked) continue;
+                status.add(head.chainId + ": " + head.blockNumber + (head.socketLive ? " (newHeads)" : " (poll " + head.getPollInterval() + "ms)"));
+            }
+        }
+        return status;
+    }
+}
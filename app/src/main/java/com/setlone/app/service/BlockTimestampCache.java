@@ -0,0 +1,274 @@
+package com.setlone.app.service;
+
+import com.setlone.app.repository.EthereumNetworkBase;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Block timestamps, kept per chain by block hash and block number.
+ *
+ * A block's timestamp never changes, so once read it can be shared by everything that needs it: event activity,
+ * transaction fetches and the transfer event sync. Headers which aren't held are fetched together in one JSON-RPC
+ * batch, so a set of logs costs one call per distinct block rather than one per log, and nothing for blocks already seen.
+ */
+public class BlockTimestampCache
+{
+    private static final String TAG = "BLOCKTIME";
+
+    public static final int DEFAULT_CAPACITY = 4096; //entries per chain; a block with known number takes two
+
+    private static final BlockTimestampCache instance = new BlockTimestampCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final Map<Long, Map<String, Long>> chains = new HashMap<>();
+    private final Set<Long> batchUnsupported = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong nodeCalls = new AtomicLong();
+
+    public static BlockTimestampCache getInstance()
+    {
+        return instance;
+    }
+
+    public BlockTimestampCache(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return block timestamp in seconds, or 0 if it isn't held
+     */
+    public long get(long chainId, String blockHash)
+    {
+        return blockHash != null ? lookup(chainId, hashKey(blockHash)) : 0;
+    }
+
+    public long getByNumber(long chainId, BigInteger blockNumber)
+    {
+        return blockNumber != null ? lookup(chainId, numberKey(blockNumber)) : 0;
+    }
+
+    public synchronized void put(long chainId, String blockHash, BigInteger blockNumber, long timestamp)
+    {
+        if (timestamp <= 0) return;
+        Map<String, Long> chain = getChain(chainId);
+        if (blockHash != null) chain.put(hashKey(blockHash), timestamp);
+        if (blockNumber != null) chain.put(numberKey(blockNumber), timestamp);
+    }
+
+    /**
+     * Fetches the timestamp of one block, from the node if it isn't held
+     *
+     * @return block timestamp in seconds, or 0 if the node couldn't supply it
+     */
+    public long getTimestamp(Web3j web3j, long chainId, String blockHash)
+    {
+        Long timestamp = enrich(web3j, chainId, Collections.singletonList(blockHash), 0).get(hashKey(blockHash));
+        return timestamp != null ? timestamp : 0;
+    }
+
+    /**
+     * Ensures the timestamps of the given blocks are held, using the chain's JSON-RPC batch limit
+     */
+    public Map<String, Long> enrich(Web3j web3j, long chainId, Collection<String> blockHashes)
+    {
+        int batchLimit = batchUnsupported.contains(chainId) ? 0 : EthereumNetworkBase.getBatchProcessingLimit(chainId);
+        return enrich(web3j, chainId, blockHashes, batchLimit);
+    }
+
+    /**
+     * Ensures the timestamps of the given blocks are held. Only blocks not already held are read from the node: in
+     * batches of up to batchLimit, or one at a time if the node doesn't take batches.
+     *
+     * @param batchLimit requests per JSON-RPC batch, 0 if the node doesn't take batches
+     * @return timestamp for each block which could be resolved, by lower case block hash
+     */
+    public Map<String, Long> enrich(Web3j web3j, long chainId, Collection<String> blockHashes, int batchLimit)
+    {
+        Map<String, Long> timestamps = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String blockHash : blockHashes)
+        {
+            if (blockHash == null || blockHash.trim().isEmpty()) continue;
+            String key = hashKey(blockHash);
+            if (timestamps.containsKey(key) || missing.contains(key)) continue;
+            long timestamp = lookup(chainId, key);
+            if (timestamp > 0) timestamps.put(key, timestamp);
+            else missing.add(key);
+        }
+
+        if (missing.isEmpty()) return timestamps;
+
+        List<String> remaining = new ArrayList<>(missing);
+        if (batchLimit > 1 && remaining.size() > 1)
+        {
+            remaining = readBatch(web3j, chainId, remaining, batchLimit, timestamps);
+        }
+
+        readSingle(web3j, chainId, remaining, timestamps);
+
+        return timestamps;
+    }
+
+    /**
+     * @return blocks which could not be read because the batch itself failed
+     */
+    private List<String> readBatch(Web3j web3j, long chainId, List<String> blockHashes, int limit, Map<String, Long> timestamps)
+    {
+        for (int start = 0; start < blockHashes.size(); start += limit)
+        {
+            List<String> chunk = blockHashes.subList(start, Math.min(blockHashes.size(), start + limit));
+            BatchRequest requests = web3j.newBatch();
+            for (String blockHash : chunk)
+            {
+                requests.add(web3j.ethGetBlockByHash(blockHash, false));
+            }
+
+            try
+            {
+                nodeCalls.incrementAndGet();
+                BatchResponse responses = requests.send();
+                if (responses.getResponses().size() != chunk.size())
+                {
+                    Timber.tag(TAG).d("Batch unavailable on chain %d", chainId);
+                    batchUnsupported.add(chainId);
+                    return new ArrayList<>(blockHashes.subList(start, blockHashes.size()));
+                }
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    Response<?> rsp = responses.getResponses().get(i);
+                    if (!rsp.hasError() && rsp instanceof EthBlock)
+                    {
+                        store(chainId, chunk.get(i), ((EthBlock) rsp).getBlock(), timestamps);
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                //node unreachable; single calls won't do any better
+                Timber.tag(TAG).w(e);
+                return new ArrayList<>();
+            }
+            catch (Exception e)
+            {
+                //eg ClassCastException where the node answers a batch with a single response
+                Timber.tag(TAG).w(e);
+                batchUnsupported.add(chainId);
+                return new ArrayList<>(blockHashes.subList(start, blockHashes.size()));
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    private void readSingle(Web3j web3j, long chainId, List<String> blockHashes, Map<String, Long> timestamps)
+    {
+        for (String blockHash : blockHashes)
+        {
+            try
+            {
+                nodeCalls.incrementAndGet();
+                EthBlock response = web3j.ethGetBlockByHash(blockHash, false).send();
+                if (!response.hasError()) store(chainId, blockHash, response.getBlock(), timestamps);
+            }
+            catch (IOException e)
+            {
+                Timber.tag(TAG).w(e);
+                return;
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).e(e);
+            }
+        }
+    }
+
+    private void store(long chainId, String blockHash, EthBlock.Block block, Map<String, Long> timestamps)
+    {
+        if (block == null || block.getTimestampRaw() == null) return; //unknown block, eg not yet seen by this node
+        long timestamp = block.getTimestamp().longValue();
+        put(chainId, blockHash, block.getNumberRaw() != null ? block.getNumber() : null, timestamp);
+        timestamps.put(hashKey(blockHash), timestamp);
+    }
+
+    private synchronized long lookup(long chainId, String key)
+    {
+        Map<String, Long> chain = chains.get(chainId);
+        Long timestamp = chain != null ? chain.get(key) : null;
+        if (timestamp != null)
+        {
+            hits.incrementAndGet();
+            return timestamp;
+        }
+
+        misses.incrementAndGet();
+        return 0;
+    }
+
+    private Map<String, Long> getChain(long chainId)
+    {
+        Map<String, Long> chain = chains.get(chainId);
+        if (chain == null)
+        {
+            chain = new LinkedHashMap<String, Long>(64, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+            chains.put(chainId, chain);
+        }
+        return chain;
+    }
+
+    private static String hashKey(String blockHash)
+    {
+        return blockHash.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String numberKey(BigInteger blockNumber)
+    {
+        return "#" + blockNumber.toString();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    public long getNodeCalls()
+    {
+        return nodeCalls.get();
+    }
+}
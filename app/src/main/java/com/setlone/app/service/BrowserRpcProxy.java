@@ -0,0 +1,459 @@
+package com.setlone.app.service;
+
+import androidx.annotation.Nullable;
+
+import com.setlone.app.repository.EthereumNetworkBase;
+import com.setlone.app.repository.TokenRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.BatchRequest;
+import org.web3j.protocol.core.BatchResponse;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterNumber;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.SingleSubject;
+import timber.log.Timber;
+
+/**
+ * Answers the dapp browser's eth_call requests, which a DeFi page can send hundreds of while it loads, many of them
+ * identical.
+ *
+ * - A call identical to one already on its way to the node waits for that one's result rather than making another.
+ * - Results are held by chain, block and the call's parameters. A result read at 'latest' is good until the
+ *   chain moves to a new head; one read at a block number is good for as long as it's held. 'pending' isn't held.
+ * - Calls arriving within a few milliseconds of each other go to the node as one JSON-RPC batch, within the chain's
+ *   batch limit, or one at a time where the node doesn't take batches.
+ *
+ * Counts are kept per page, so the saving on each page load can be seen in the log.
+ */
+public class BrowserRpcProxy implements BlockHeadTracker.HeadListener
+{
+    private static final String TAG = "RPC_PROXY";
+
+    public static final long BATCH_WINDOW = 10; //ms to gather calls before sending
+    public static final int CACHE_SIZE = 1024;
+    private static final long UNTRACKED_CACHE_TIME = 4000; //for chains whose head isn't being tracked
+    private static final String PENDING = "pending";
+    private static final Pattern HTTP_STATUS = Pattern.compile("Invalid response received: (\\d{3})");
+
+    public interface NodeSource
+    {
+        Web3j getWeb3j(long chainId);
+
+        /**
+         * @return requests per JSON-RPC batch, 0 if the node doesn't take batches
+         */
+        int getBatchLimit(long chainId);
+
+        /**
+         * @return latest block of the chain if it's known without a node call, else null
+         */
+        @Nullable
+        BigInteger getTrackedHead(long chainId);
+    }
+
+    public static class PageStats
+    {
+        public final long calls;
+        public final long cacheHits;
+        public final long coalesced;
+        public final long upstreamRequests; //requests sent to the node, a batch counting once
+
+        PageStats(long calls, long cacheHits, long coalesced, long upstreamRequests)
+        {
+            this.calls = calls;
+            this.cacheHits = cacheHits;
+            this.coalesced = coalesced;
+            this.upstreamRequests = upstreamRequests;
+        }
+
+        public double getHitRatio()
+        {
+            return calls > 0 ? (double) (cacheHits + coalesced) / calls : 0;
+        }
+
+        public long getSaved()
+        {
+            return Math.max(0, calls - upstreamRequests);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format(Locale.ROOT, "%d calls, %d cached, %d coalesced, %d node requests (hit ratio %.2f, %d saved)",
+                    calls, cacheHits, coalesced, upstreamRequests, getHitRatio(), getSaved());
+        }
+    }
+
+    private static class Cached
+    {
+        final String result;
+        final BigInteger head; //head when read, for a 'latest' read; null if not known
+        final long readTime;
+        final boolean fixedBlock;
+
+        Cached(String result, BigInteger head, long readTime, boolean fixedBlock)
+        {
+            this.result = result;
+            this.head = head;
+            this.readTime = readTime;
+            this.fixedBlock = fixedBlock;
+        }
+    }
+
+    private static class Call
+    {
+        final String key;
+        final long chainId;
+        final Transaction transaction;
+        final DefaultBlockParameter block;
+        final SingleSubject<String> result = SingleSubject.create();
+
+        Call(String key, long chainId, Transaction transaction, DefaultBlockParameter block)
+        {
+            this.key = key;
+            this.chainId = chainId;
+            this.transaction = transaction;
+            this.block = block;
+        }
+    }
+
+    private static BrowserRpcProxy instance;
+
+    private final NodeSource nodeSource;
+    private final Scheduler scheduler;
+    private final long batchWindow;
+    private final Map<String, Cached> cache = new LinkedHashMap<String, Cached>(64, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest)
+        {
+            return size() > CACHE_SIZE;
+        }
+    };
+    private final Map<String, Call> inFlight = new HashMap<>();
+    private final Map<Long, List<Call>> queued = new HashMap<>();
+    private final Set<Long> batchUnsupported = ConcurrentHashMap.newKeySet();
+
+    private long calls;
+    private long cacheHits;
+    private long coalesced;
+    private long upstreamRequests;
+
+    public static synchronized BrowserRpcProxy getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new BrowserRpcProxy(new NodeSource()
+            {
+                @Override
+                public Web3j getWeb3j(long chainId)
+                {
+                    return TokenRepository.getWeb3jService(chainId);
+                }
+
+                @Override
+                public int getBatchLimit(long chainId)
+                {
+                    return EthereumNetworkBase.getBatchProcessingLimit(chainId);
+                }
+
+                @Override
+                public BigInteger getTrackedHead(long chainId)
+                {
+                    return BlockHeadTracker.getInstance().getTrackedHead(chainId);
+                }
+            }, Schedulers.io(), BATCH_WINDOW);
+            BlockHeadTracker.getInstance().addListener(instance);
+        }
+
+        return instance;
+    }
+
+    public BrowserRpcProxy(NodeSource nodeSource, Scheduler scheduler, long batchWindow)
+    {
+        this.nodeSource = nodeSource;
+        this.scheduler = scheduler;
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * @return the call's result data; errors with the node's message if the call failed
+     */
+    public Single<String> ethCall(long chainId, Transaction transaction, DefaultBlockParameter block)
+    {
+        String key = getKey(chainId, transaction, block);
+        boolean schedule;
+        Call call;
+        synchronized (this)
+        {
+            calls++;
+            Cached cached = cache.get(key);
+            if (cached != null && isCurrent(chainId, cached))
+            {
+                cacheHits++;
+                return Single.just(cached.result);
+            }
+
+            call = inFlight.get(key);
+            if (call != null)
+            {
+                coalesced++;
+                return call.result.hide();
+            }
+
+            call = new Call(key, chainId, transaction, block);
+            inFlight.put(key, call);
+            List<Call> chainQueue = queued.get(chainId);
+            schedule = chainQueue == null;
+            if (schedule)
+            {
+                chainQueue = new ArrayList<>();
+                queued.put(chainId, chainQueue);
+            }
+            chainQueue.add(call);
+        }
+
+        if (schedule)
+        {
+            scheduler.scheduleDirect(() -> flush(chainId), batchWindow, TimeUnit.MILLISECONDS);
+        }
+
+        return call.result.hide();
+    }
+
+    /**
+     * Starts the counts for a new page, logging those for the page before
+     */
+    public synchronized PageStats startPage(String url)
+    {
+        PageStats stats = getPageStats();
+        if (stats.calls > 0) Timber.tag(TAG).d("eth_call for page: %s", stats);
+        calls = 0;
+        cacheHits = 0;
+        coalesced = 0;
+        upstreamRequests = 0;
+        return stats;
+    }
+
+    public synchronized PageStats getPageStats()
+    {
+        return new PageStats(calls, cacheHits, coalesced, upstreamRequests);
+    }
+
+    @Override
+    public synchronized void onNewHead(long chainId, BigInteger blockNumber)
+    {
+        //'latest' results from an earlier head won't be served again; drop them now rather than wait for eviction
+        String prefix = chainId + "|";
+        Iterator<Map.Entry<String, Cached>> it = cache.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<String, Cached> entry = it.next();
+            if (!entry.getValue().fixedBlock && entry.getKey().startsWith(prefix)) it.remove();
+        }
+    }
+
+    private void flush(long chainId)
+    {
+        List<Call> chainCalls;
+        synchronized (this)
+        {
+            chainCalls = queued.remove(chainId);
+        }
+        if (chainCalls == null || chainCalls.isEmpty()) return;
+
+        Web3j web3j;
+        try
+        {
+            web3j = nodeSource.getWeb3j(chainId);
+        }
+        catch (Exception e)
+        {
+            for (Call call : chainCalls) fail(call, e);
+            return;
+        }
+
+        //results are at least as new as the head seen before they were sent
+        BigInteger head = nodeSource.getTrackedHead(chainId);
+        int batchLimit = batchUnsupported.contains(chainId) ? 0 : nodeSource.getBatchLimit(chainId);
+        List<Call> remaining = chainCalls;
+        if (batchLimit > 1 && chainCalls.size() > 1)
+        {
+            remaining = sendBatch(web3j, chainId, chainCalls, batchLimit, head);
+        }
+
+        for (Call call : remaining)
+        {
+            scheduler.scheduleDirect(() -> sendSingle(web3j, call, head));
+        }
+    }
+
+    /**
+     * @return calls which were not sent because the node doesn't take batches
+     */
+    private List<Call> sendBatch(Web3j web3j, long chainId, List<Call> chainCalls, int limit, BigInteger head)
+    {
+        for (int start = 0; start < chainCalls.size(); start += limit)
+        {
+            List<Call> chunk = chainCalls.subList(start, Math.min(chainCalls.size(), start + limit));
+            BatchRequest requests = web3j.newBatch();
+            for (Call call : chunk)
+            {
+                requests.add(web3j.ethCall(call.transaction, call.block));
+            }
+
+            try
+            {
+                countRequest();
+                BatchResponse responses = requests.send();
+                if (responses.getResponses().size() != chunk.size())
+                {
+                    Timber.tag(TAG).d("Batch unavailable on chain %d", chainId);
+                    batchUnsupported.add(chainId);
+                    return new ArrayList<>(chainCalls.subList(start, chainCalls.size()));
+                }
+
+                for (int i = 0; i < chunk.size(); i++)
+                {
+                    Response<?> rsp = responses.getResponses().get(i);
+                    if (rsp instanceof EthCall) complete(chunk.get(i), (EthCall) rsp, head);
+                    else fail(chunk.get(i), new IOException("Unexpected response"));
+                }
+            }
+            catch (ClassCastException | JsonProcessingException e)
+            {
+                //node answered the batch with a single response
+                return onBatchRefused(chainId, chainCalls.subList(start, chainCalls.size()), e);
+            }
+            catch (ClientConnectionException e)
+            {
+                if (isBatchRefused(e)) return onBatchRefused(chainId, chainCalls.subList(start, chainCalls.size()), e);
+                else return failAll(chainCalls.subList(start, chainCalls.size()), e);
+            }
+            catch (Exception e)
+            {
+                //node unreachable, timed out or rate limited; single calls won't do any better, batches are tried again next time
+                return failAll(chainCalls.subList(start, chainCalls.size()), e);
+            }
+        }
+
+        return new ArrayList<>();
+    }
+
+    private List<Call> onBatchRefused(long chainId, List<Call> unsent, Exception e)
+    {
+        Timber.tag(TAG).d("Batch refused on chain %d: %s", chainId, e.getMessage());
+        batchUnsupported.add(chainId);
+        return new ArrayList<>(unsent);
+    }
+
+    private List<Call> failAll(List<Call> calls, Exception error)
+    {
+        for (Call call : calls) fail(call, error);
+        return new ArrayList<>();
+    }
+
+    /**
+     * web3j reports a non-2xx answer as 'Invalid response received: code; body'. A 4xx for the batch is the node turning
+     * batches away; 408 and 429 (and any 5xx) are worth trying again
+     */
+    static boolean isBatchRefused(ClientConnectionException e)
+    {
+        Matcher matcher = HTTP_STATUS.matcher(String.valueOf(e.getMessage()));
+        if (!matcher.find()) return false;
+        int status = Integer.parseInt(matcher.group(1));
+        return status >= 400 && status < 500 && status != 408 && status != 429;
+    }
+
+    private void sendSingle(Web3j web3j, Call call, BigInteger head)
+    {
+        try
+        {
+            countRequest();
+            complete(call, web3j.ethCall(call.transaction, call.block).send(), head);
+        }
+        catch (Exception e)
+        {
+            fail(call, e);
+        }
+    }
+
+    private void complete(Call call, EthCall response, BigInteger head)
+    {
+        if (response.hasError() || response.getValue() == null)
+        {
+            fail(call, new Exception(response.hasError() ? response.getError().getMessage() : "No result"));
+            return;
+        }
+
+        String result = response.getValue();
+        synchronized (this)
+        {
+            inFlight.remove(call.key);
+            if (!PENDING.equals(call.block.getValue()))
+            {
+                boolean fixedBlock = call.block instanceof DefaultBlockParameterNumber;
+                cache.put(call.key, new Cached(result, head, scheduler.now(TimeUnit.MILLISECONDS), fixedBlock));
+            }
+        }
+        call.result.onSuccess(result);
+    }
+
+    private void fail(Call call, Throwable error)
+    {
+        synchronized (this)
+        {
+            inFlight.remove(call.key);
+        }
+        call.result.onError(error);
+    }
+
+    private synchronized void countRequest()
+    {
+        upstreamRequests++;
+    }
+
+    // call holding the lock
+    private boolean isCurrent(long chainId, Cached cached)
+    {
+        if (cached.fixedBlock) return true;
+        BigInteger head = nodeSource.getTrackedHead(chainId);
+        if (head != null) return head.equals(cached.head);
+        return cached.head == null && scheduler.now(TimeUnit.MILLISECONDS) < cached.readTime + UNTRACKED_CACHE_TIME;
+    }
+
+    private static String getKey(long chainId, Transaction tx, DefaultBlockParameter block)
+    {
+        return chainId + "|" + lower(tx.getFrom()) + "|" + lower(tx.getTo()) + "|" + lower(tx.getData())
+                + "|" + lower(tx.getValue()) + "|" + lower(tx.getGas()) + "|" + lower(block.getValue());
+    }
+
+    private static String lower(String value)
+    {
+        return value != null ? value.toLowerCase(Locale.ROOT) : "";
+    }
+}
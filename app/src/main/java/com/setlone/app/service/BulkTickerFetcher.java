@@ -0,0 +1,246 @@
+package com.setlone.app.service;
+
+import com.setlone.app.entity.ticker.CoinGeckoTicker;
+import com.setlone.app.entity.ticker.TNDiscoveryTicker;
+import com.setlone.app.entity.tokendata.TokenTicker;
+import com.setlone.app.entity.tokens.TokenCardMeta;
+import com.setlone.app.util.RateLimiter;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Prices newly discovered ERC20 tokens in bulk.
+ *
+ * Tokens are grouped by chain and priced with multi-contract CoinGecko token_price requests; any the bulk call
+ * doesn't know are then tried one by one against token discovery. Requests run concurrently, with each provider
+ * held to its own request rate. Results are returned per chain so each chain can be stored in one write.
+ *
+ * A token which a provider answered for but couldn't price gets a blank ticker, so it isn't queued again until the
+ * ticker goes stale. A token whose request failed is left out and will be queued again on the next sync.
+ */
+public class BulkTickerFetcher
+{
+    public static final String CHAIN_ID = "[CHAIN_ID]";
+    public static final String CONTRACT_ADDR = "[CONTRACT_ADDR]";
+    public static final String CURRENCY = "[CURRENCY]";
+    public static final String COINGECKO_TOKEN_PRICE = "https://api.coingecko.com/api/v3/simple/token_price/" + CHAIN_ID
+            + "?contract_addresses=" + CONTRACT_ADDR + "&vs_currencies=" + CURRENCY + "&include_24hr_change=true";
+    public static final String TOKEN_DISCOVERY_PRICE = "https://api.token-discovery.tokenscript.org/get-raw-token-price?blockchain=evm&smartContract="
+            + CONTRACT_ADDR + "&chain=" + CHAIN_ID;
+
+    public static final int BATCH_SIZE = 25;            // contracts per token_price call
+    public static final int MAX_CONCURRENT = 4;
+    public static final double COINGECKO_RATE = 0.5;    // requests per second; the demo key allows 30 a minute
+    public static final double DISCOVERY_RATE = 2.0;
+
+    public interface HeaderProvider
+    {
+        void addHeaders(Request.Builder builder);
+    }
+
+    private static class PricedSet
+    {
+        final long chainId;
+        final Map<String, TokenTicker> tickers = new HashMap<>();
+        final List<TokenCardMeta> unpriced = new ArrayList<>(); // provider answered, no price
+        final List<TokenCardMeta> retry = new ArrayList<>();    // try the next provider
+
+        PricedSet(long chainId)
+        {
+            this.chainId = chainId;
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final HeaderProvider coinGeckoHeaders;
+    private final Map<Long, String> chainNames;
+    private final String tokenPriceUrl;
+    private final String discoveryUrl;
+    private final RateLimiter coinGeckoLimit;
+    private final RateLimiter discoveryLimit;
+    private final int batchSize;
+    private final int maxConcurrent;
+
+    /**
+     * @param chainNames API platform name for each chain which can be priced
+     */
+    public BulkTickerFetcher(OkHttpClient httpClient, HeaderProvider coinGeckoHeaders, Map<Long, String> chainNames)
+    {
+        this(httpClient, coinGeckoHeaders, chainNames, COINGECKO_TOKEN_PRICE, TOKEN_DISCOVERY_PRICE, COINGECKO_RATE, DISCOVERY_RATE, BATCH_SIZE, MAX_CONCURRENT);
+    }
+
+    public BulkTickerFetcher(OkHttpClient httpClient, HeaderProvider coinGeckoHeaders, Map<Long, String> chainNames, String tokenPriceUrl,
+                             String discoveryUrl, double coinGeckoRate, double discoveryRate, int batchSize, int maxConcurrent)
+    {
+        this.httpClient = httpClient;
+        this.coinGeckoHeaders = coinGeckoHeaders;
+        this.chainNames = chainNames;
+        this.tokenPriceUrl = tokenPriceUrl;
+        this.discoveryUrl = discoveryUrl;
+        this.coinGeckoLimit = new RateLimiter(coinGeckoRate);
+        this.discoveryLimit = new RateLimiter(discoveryRate);
+        this.batchSize = batchSize;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Price a set of tokens, which may span several chains
+     *
+     * @return tickers keyed by chain, then token address
+     */
+    public Single<Map<Long, Map<String, TokenTicker>>> fetch(List<TokenCardMeta> tokens, String currency, double conversionRate)
+    {
+        Observable<PricedSet> bulk = Observable.fromIterable(batchByChain(tokens))
+                .flatMap(batch -> Observable.fromCallable(() -> fetchBulk(batch, currency, conversionRate))
+                        .subscribeOn(Schedulers.io()), maxConcurrent)
+                .cache();
+
+        //single token retries start once the bulk calls are done, so no more than maxConcurrent calls are ever open
+        Observable<PricedSet> singles = bulk.concatMapIterable(priced -> priced.retry)
+                .flatMap(tcm -> Observable.fromCallable(() -> fetchSingle(tcm, currency, conversionRate))
+                        .subscribeOn(Schedulers.io()), maxConcurrent);
+
+        return bulk.concatWith(singles)
+                .<Map<Long, Map<String, TokenTicker>>>collect(HashMap::new, BulkTickerFetcher::merge);
+    }
+
+    private static void merge(Map<Long, Map<String, TokenTicker>> result, PricedSet priced)
+    {
+        Map<String, TokenTicker> chainTickers = result.get(priced.chainId);
+        if (chainTickers == null)
+        {
+            chainTickers = new HashMap<>();
+            result.put(priced.chainId, chainTickers);
+        }
+
+        chainTickers.putAll(priced.tickers);
+        for (TokenCardMeta tcm : priced.unpriced)
+        {
+            if (!chainTickers.containsKey(tcm.getAddress()))
+            {
+                chainTickers.put(tcm.getAddress(), new TokenTicker(System.currentTimeMillis())); //blank, stops re-querying
+            }
+        }
+    }
+
+    private List<List<TokenCardMeta>> batchByChain(List<TokenCardMeta> tokens)
+    {
+        Map<Long, List<TokenCardMeta>> byChain = new LinkedHashMap<>();
+        for (TokenCardMeta tcm : tokens)
+        {
+            if (!chainNames.containsKey(tcm.getChain())) continue;
+            List<TokenCardMeta> chainTokens = byChain.get(tcm.getChain());
+            if (chainTokens == null)
+            {
+                chainTokens = new ArrayList<>();
+                byChain.put(tcm.getChain(), chainTokens);
+            }
+            chainTokens.add(tcm);
+        }
+
+        List<List<TokenCardMeta>> batches = new ArrayList<>();
+        for (List<TokenCardMeta> chainTokens : byChain.values())
+        {
+            for (int i = 0; i < chainTokens.size(); i += batchSize)
+            {
+                batches.add(chainTokens.subList(i, Math.min(i + batchSize, chainTokens.size())));
+            }
+        }
+
+        return batches;
+    }
+
+    private PricedSet fetchBulk(List<TokenCardMeta> batch, String currency, double conversionRate) throws InterruptedException
+    {
+        long chainId = batch.get(0).getChain();
+        PricedSet priced = new PricedSet(chainId);
+
+        StringBuilder addresses = new StringBuilder();
+        for (TokenCardMeta tcm : batch)
+        {
+            if (addresses.length() > 0) addresses.append(',');
+            addresses.append(tcm.getAddress().toLowerCase());
+        }
+
+        Request.Builder builder = new Request.Builder()
+                .url(tokenPriceUrl.replace(CHAIN_ID, chainNames.get(chainId))
+                        .replace(CONTRACT_ADDR, addresses.toString())
+                        .replace(CURRENCY, currency.toLowerCase()))
+                .get();
+        if (coinGeckoHeaders != null) coinGeckoHeaders.addHeaders(builder);
+
+        Map<String, TokenTicker> byAddress = new HashMap<>();
+        coinGeckoLimit.acquire();
+        try (Response response = httpClient.newCall(builder.build()).execute())
+        {
+            if (response.code() / 100 == 2)
+            {
+                for (CoinGeckoTicker ticker : CoinGeckoTicker.buildTickerList(response.body().string(), currency, conversionRate))
+                {
+                    byAddress.put(ticker.address.toLowerCase(), ticker.toTokenTicker(currency));
+                }
+            }
+            else
+            {
+                Timber.w("Bulk ticker fetch for %d tokens on %d failed: %d", batch.size(), chainId, response.code());
+            }
+        }
+        catch (Exception e)
+        {
+            Timber.w(e);
+        }
+
+        for (TokenCardMeta tcm : batch)
+        {
+            TokenTicker ticker = byAddress.get(tcm.getAddress().toLowerCase());
+            if (ticker != null) priced.tickers.put(tcm.getAddress(), ticker);
+            else priced.retry.add(tcm);
+        }
+
+        return priced;
+    }
+
+    private PricedSet fetchSingle(TokenCardMeta tcm, String currency, double conversionRate) throws InterruptedException
+    {
+        PricedSet priced = new PricedSet(tcm.getChain());
+        Request request = new Request.Builder()
+                .url(discoveryUrl.replace(CHAIN_ID, chainNames.get(tcm.getChain()))
+                        .replace(CONTRACT_ADDR, tcm.getAddress()))
+                .get()
+                .build();
+
+        discoveryLimit.acquire();
+        try (Response response = httpClient.newCall(request).execute())
+        {
+            if (response.code() / 100 != 2) return priced;
+
+            Map<String, TokenTicker> tickers = new HashMap<>();
+            TNDiscoveryTicker.toTokenTickers(tickers, new JSONArray(response.body().string()), currency, conversionRate);
+            for (Map.Entry<String, TokenTicker> entry : tickers.entrySet())
+            {
+                if (entry.getKey().equalsIgnoreCase(tcm.getAddress())) priced.tickers.put(tcm.getAddress(), entry.getValue());
+            }
+            if (priced.tickers.isEmpty()) priced.unpriced.add(tcm);
+        }
+        catch (Exception e)
+        {
+            Timber.w(e);
+        }
+
+        return priced;
+    }
+}
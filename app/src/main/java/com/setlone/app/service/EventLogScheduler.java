@@ -0,0 +1,366 @@
+package com.setlone.app.service;
+
+import com.setlone.token.entity.EventDefinition;
+
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.request.Filter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Reads the logs for TokenScript event definitions, one eth_getLogs per contract rather than one per definition.
+ *
+ * Definitions watching the same contract on the same chain are merged into one filter: the event signatures are
+ * OR'd in topic 0, and a later topic is only constrained where every definition constrains it, to the union of their
+ * values. Each log returned is then checked against the topics of each definition and handed to the ones it matches.
+ *
+ * The merged filter keeps the next block it needs to read, so a quiet contract is read from where it was left rather
+ * than from the last event seen. Where the node refuses a range (too many results, or too many blocks) the range is
+ * halved and read in parts, and the span grows back as reads succeed.
+ */
+public class EventLogScheduler
+{
+    private static final String TAG = "EVENTLOGS";
+
+    public static final int MAX_WINDOWS_PER_PASS = 16; //further ranges are read on the next pass
+    public static final int MAX_SPLITS = 12;
+
+    public interface LogHandler
+    {
+        /**
+         * @param logs logs for the definition, in block order
+         */
+        void onLogs(EventDefinition ev, List<EthLog.LogResult> logs);
+    }
+
+    private static class Watch
+    {
+        final EventDefinition ev;
+        final List<Set<String>> topics; //null at a position the definition doesn't constrain
+
+        Watch(EventDefinition ev, List<Set<String>> topics)
+        {
+            this.ev = ev;
+            this.topics = topics;
+        }
+
+        boolean matches(Log log)
+        {
+            List<String> logTopics = log.getTopics();
+            for (int i = 0; i < topics.size(); i++)
+            {
+                Set<String> allowed = topics.get(i);
+                if (allowed == null) continue;
+                if (logTopics == null || i >= logTopics.size()) return false;
+                if (!allowed.contains(logTopics.get(i).toLowerCase(Locale.ROOT))) return false;
+            }
+            return log.getBlockNumber() == null || log.getBlockNumber().compareTo(ev.readBlock) >= 0;
+        }
+    }
+
+    public static class MergedFilter
+    {
+        public final long chainId;
+        public final String address;
+        private final List<Watch> watches = new ArrayList<>();
+        private Set<List<Object>> members = new HashSet<>(); //event key and topics of each definition served
+        private BigInteger nextBlock = BigInteger.ZERO; //zero reads from the earliest block
+        private long span = 0; //blocks per request; zero for the whole range
+
+        MergedFilter(long chainId, String address)
+        {
+            this.chainId = chainId;
+            this.address = address;
+        }
+
+        public int getDefinitionCount()
+        {
+            return watches.size();
+        }
+
+        public BigInteger getNextBlock()
+        {
+            return nextBlock;
+        }
+
+        public long getSpan()
+        {
+            return span;
+        }
+
+        EthFilter build(DefaultBlockParameter from, DefaultBlockParameter to)
+        {
+            EthFilter filter = new EthFilter(from, to, address);
+            int positions = 0;
+            for (Watch w : watches)
+            {
+                positions = Math.max(positions, w.topics.size());
+            }
+
+            for (int i = 0; i < positions; i++)
+            {
+                Set<String> merged = new LinkedHashSet<>();
+                for (Watch w : watches)
+                {
+                    Set<String> allowed = i < w.topics.size() ? w.topics.get(i) : null;
+                    if (allowed == null)
+                    {
+                        merged = null;
+                        break;
+                    }
+                    merged.addAll(allowed);
+                }
+
+                if (merged == null) filter.addSingleTopic(null);
+                else if (merged.size() == 1) filter.addSingleTopic(merged.iterator().next());
+                else filter.addOptionalTopics(merged.toArray(new String[0]));
+            }
+
+            return filter;
+        }
+    }
+
+    public static class Stats
+    {
+        public final long requests;
+        public final long definitionReads; //requests there would have been with one filter per definition
+        public final long splits;
+
+        Stats(long requests, long definitionReads, long splits)
+        {
+            this.requests = requests;
+            this.definitionReads = definitionReads;
+            this.splits = splits;
+        }
+    }
+
+    private final Map<String, MergedFilter> filters = new LinkedHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong definitionReads = new AtomicLong();
+    private final AtomicLong splits = new AtomicLong();
+
+    /**
+     * Groups the definitions by chain and contract. A merged filter keeps its read position while the definitions it
+     * serves, and the topics each filters on, are unchanged; if either changes (eg a topic holding the wallet address)
+     * it starts again from the earliest block any of them still needs.
+     *
+     * @param eventFilters filter for each definition, as it would be read on its own
+     */
+    public synchronized List<MergedFilter> plan(Map<EventDefinition, EthFilter> eventFilters)
+    {
+        Map<String, List<Watch>> grouped = new LinkedHashMap<>();
+        Map<String, Long> chains = new LinkedHashMap<>();
+        for (Map.Entry<EventDefinition, EthFilter> entry : eventFilters.entrySet())
+        {
+            EventDefinition ev = entry.getKey();
+            EthFilter filter = entry.getValue();
+            if (filter == null || filter.getAddress() == null || filter.getAddress().isEmpty()) continue;
+
+            long chainId = ev.contract.addresses.keySet().iterator().next();
+            String key = chainId + "-" + filter.getAddress().get(0).toLowerCase(Locale.ROOT);
+            List<Watch> group = grouped.get(key);
+            if (group == null)
+            {
+                group = new ArrayList<>();
+                grouped.put(key, group);
+                chains.put(key, chainId);
+            }
+            group.add(new Watch(ev, getTopics(filter)));
+        }
+
+        filters.keySet().retainAll(grouped.keySet());
+        List<MergedFilter> planned = new ArrayList<>();
+        for (Map.Entry<String, List<Watch>> entry : grouped.entrySet())
+        {
+            String key = entry.getKey();
+            MergedFilter merged = filters.get(key);
+            if (merged == null)
+            {
+                merged = new MergedFilter(chains.get(key), key.substring(key.indexOf('-') + 1));
+                filters.put(key, merged);
+            }
+
+            Set<List<Object>> members = new HashSet<>();
+            for (Watch w : entry.getValue())
+            {
+                members.add(Arrays.asList(w.ev.getEventKey(), w.topics));
+            }
+
+            if (!members.equals(merged.members))
+            {
+                merged.nextBlock = earliestNeeded(entry.getValue());
+                merged.members = members;
+            }
+
+            merged.watches.clear();
+            merged.watches.addAll(entry.getValue());
+            planned.add(merged);
+        }
+
+        return planned;
+    }
+
+    /**
+     * Reads the merged filter from its next block up to the chain head, handing the logs out to the definitions
+     *
+     * @param head current block of the chain, zero if not known
+     * @param maxSpan most blocks the node allows in one request, zero if it doesn't limit them
+     * @return the number of eth_getLogs requests made
+     */
+    public int read(Web3j web3j, MergedFilter filter, BigInteger head, long maxSpan, LogHandler handler)
+    {
+        int made = 0;
+        if (maxSpan > 0 && (filter.span == 0 || filter.span > maxSpan)) filter.span = maxSpan;
+
+        if (head == null || head.signum() <= 0)
+        {
+            //no block height yet; read to latest without moving the read position
+            EthLog logs = getLogs(web3j, filter, fromBlock(filter.nextBlock), DefaultBlockParameterName.LATEST);
+            if (logs != null && !logs.hasError()) dispatch(filter, logs.getLogs(), handler);
+            return 1;
+        }
+
+        int splitCount = 0;
+        while (filter.nextBlock.compareTo(head) <= 0 && made < MAX_WINDOWS_PER_PASS)
+        {
+            BigInteger to = head;
+            if (filter.span > 0)
+            {
+                to = filter.nextBlock.add(BigInteger.valueOf(filter.span - 1)).min(head);
+            }
+
+            made++;
+            EthLog logs = getLogs(web3j, filter, fromBlock(filter.nextBlock), DefaultBlockParameter.valueOf(to));
+            if (logs == null) break; //node not reachable, try again next pass
+
+            if (logs.hasError())
+            {
+                long range = to.subtract(filter.nextBlock).longValue() + 1;
+                if (range <= 1 || splitCount++ >= MAX_SPLITS)
+                {
+                    Timber.tag(TAG).w("Unable to read logs for %s: %s", filter.address, logs.getError().getMessage());
+                    break;
+                }
+                filter.span = range / 2;
+                splits.incrementAndGet();
+                continue;
+            }
+
+            dispatch(filter, logs.getLogs(), handler);
+            filter.nextBlock = to.add(BigInteger.ONE);
+
+            if (filter.span > 0 && (maxSpan == 0 || filter.span < maxSpan))
+            {
+                //the range was accepted; try a larger one next
+                filter.span = maxSpan > 0 ? Math.min(maxSpan, filter.span * 2) : filter.span * 2;
+            }
+        }
+
+        return made;
+    }
+
+    private EthLog getLogs(Web3j web3j, MergedFilter filter, DefaultBlockParameter from, DefaultBlockParameter to)
+    {
+        requests.incrementAndGet();
+        definitionReads.addAndGet(filter.watches.size());
+        try
+        {
+            return web3j.ethGetLogs(filter.build(from, to)).send();
+        }
+        catch (IOException e)
+        {
+            Timber.tag(TAG).w(e);
+            return null;
+        }
+    }
+
+    private void dispatch(MergedFilter filter, List<EthLog.LogResult> logs, LogHandler handler)
+    {
+        if (logs == null || logs.isEmpty()) return;
+
+        for (Watch w : filter.watches)
+        {
+            List<EthLog.LogResult> matched = new ArrayList<>();
+            for (EthLog.LogResult<?> result : logs)
+            {
+                if (result.get() instanceof Log && w.matches((Log) result.get())) matched.add(result);
+            }
+
+            if (!matched.isEmpty())
+            {
+                try
+                {
+                    handler.onLogs(w.ev, matched);
+                }
+                catch (Exception e)
+                {
+                    Timber.tag(TAG).e(e);
+                }
+            }
+        }
+    }
+
+    private static DefaultBlockParameter fromBlock(BigInteger block)
+    {
+        return block.signum() > 0 ? DefaultBlockParameter.valueOf(block) : DefaultBlockParameterName.EARLIEST;
+    }
+
+    private static BigInteger earliestNeeded(Collection<Watch> watches)
+    {
+        BigInteger earliest = null;
+        for (Watch w : watches)
+        {
+            BigInteger readBlock = w.ev.readBlock != null ? w.ev.readBlock : BigInteger.ZERO;
+            if (earliest == null || readBlock.compareTo(earliest) < 0) earliest = readBlock;
+        }
+        return earliest != null ? earliest : BigInteger.ZERO;
+    }
+
+    private static List<Set<String>> getTopics(EthFilter filter)
+    {
+        List<Set<String>> topics = new ArrayList<>();
+        for (Filter.FilterTopic<?> topic : filter.getTopics())
+        {
+            Set<String> allowed = new HashSet<>();
+            Object value = topic.getValue();
+            if (value instanceof String)
+            {
+                allowed.add(((String) value).toLowerCase(Locale.ROOT));
+            }
+            else if (value instanceof List)
+            {
+                for (Object single : (List<?>) value)
+                {
+                    Object v = single instanceof Filter.FilterTopic ? ((Filter.FilterTopic<?>) single).getValue() : single;
+                    if (v instanceof String) allowed.add(((String) v).toLowerCase(Locale.ROOT));
+                }
+            }
+            topics.add(allowed.isEmpty() ? null : allowed);
+        }
+        return topics;
+    }
+
+    public Stats getStats()
+    {
+        return new Stats(requests.get(), definitionReads.get(), splits.get());
+    }
+}
@@ -0,0 +1,120 @@
+package com.setlone.app.service;
+
+import com.setlone.app.entity.CovalentTransaction;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import timber.log.Timber;
+
+/**
+ * Decodes block explorer API responses straight from the response stream.
+ *
+ * The rows of the 'result' array (Etherscan and Blockscout) or 'data.items' (Covalent) are bound one at a time by Gson, so
+ * the response is never held as a String or a JSONObject tree; only the decoded rows are kept.
+ */
+public class ExplorerResponseReader
+{
+    private final Gson gson;
+
+    public ExplorerResponseReader(Gson gson)
+    {
+        this.gson = gson;
+    }
+
+    /**
+     * Stream the 'result' array of an Etherscan style response. A 'result' which is a string (API error, rate limit or
+     * deprecation notice) yields no rows.
+     */
+    public <T> List<T> readEtherscanResult(Reader source, Class<T> type) throws Exception
+    {
+        List<T> rows = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(source))
+        {
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                String name = reader.nextName();
+                JsonToken token = reader.peek();
+                if (name.equals("message") && token == JsonToken.STRING)
+                {
+                    String message = reader.nextString();
+                    if (message.contains("deprecated") || message.contains("V1") || message.contains("V2"))
+                    {
+                        Timber.w("Etherscan API V1 deprecation warning: " + message);
+                    }
+                }
+                else if (name.equals("result") && token == JsonToken.BEGIN_ARRAY)
+                {
+                    readArray(reader, type, rows);
+                }
+                else if (name.equals("result") && token == JsonToken.STRING)
+                {
+                    Timber.w("Etherscan API error: " + reader.nextString());
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return rows;
+    }
+
+    /**
+     * Stream the 'data.items' array of a Covalent transactions_v2 response
+     */
+    public List<CovalentTransaction> readCovalentItems(Reader source) throws Exception
+    {
+        List<CovalentTransaction> rows = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(source))
+        {
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                if (reader.nextName().equals("data") && reader.peek() == JsonToken.BEGIN_OBJECT)
+                {
+                    reader.beginObject();
+                    while (reader.hasNext())
+                    {
+                        if (reader.nextName().equals("items") && reader.peek() == JsonToken.BEGIN_ARRAY)
+                        {
+                            readArray(reader, CovalentTransaction.class, rows);
+                        }
+                        else
+                        {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return rows;
+    }
+
+    private <T> void readArray(JsonReader reader, Class<T> type, List<T> rows) throws Exception
+    {
+        TypeAdapter<T> adapter = gson.getAdapter(type);
+        reader.beginArray();
+        while (reader.hasNext())
+        {
+            T row = adapter.read(reader);
+            if (row != null) rows.add(row);
+        }
+        reader.endArray();
+    }
+}
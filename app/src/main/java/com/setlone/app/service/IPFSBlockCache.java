@@ -0,0 +1,161 @@
+package com.setlone.app.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import timber.log.Timber;
+
+/**
+ * Content fetched from IPFS, kept on disk by CID path. IPFS content never changes, so an entry is good for as long as
+ * it is kept; the total size is bounded, evicting the least recently read entries first.
+ */
+public class IPFSBlockCache
+{
+    private static final String TAG = "IPFSCACHE";
+
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024L;
+
+    private final File dir;
+    private final long maxBytes;
+    private long totalBytes = -1; //counted on first use, to keep disk access off the thread which builds the cache
+
+    public IPFSBlockCache(File dir, long maxBytes)
+    {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param cidPath CID, and path within it if any
+     * @return the stored content, or null if it isn't cached
+     */
+    public byte[] get(String cidPath)
+    {
+        File file = new File(dir, fileName(cidPath));
+        if (!file.exists()) return null;
+
+        try (InputStream in = new FileInputStream(file))
+        {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length)
+            {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            if (!file.setLastModified(System.currentTimeMillis())) Timber.tag(TAG).d("Unable to touch %s", file);
+            return read == data.length ? data : null;
+        }
+        catch (IOException e)
+        {
+            Timber.tag(TAG).w(e);
+            return null;
+        }
+    }
+
+    public void put(String cidPath, byte[] content)
+    {
+        if (content.length > maxBytes / 4) return; //one large file shouldn't flush everything else
+
+        synchronized (this)
+        {
+            if (!dir.exists() && !dir.mkdirs())
+            {
+                Timber.tag(TAG).w("Unable to create %s", dir);
+                return;
+            }
+            countSize();
+        }
+
+        File file = new File(dir, fileName(cidPath));
+        File tmp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp))
+        {
+            out.write(content);
+        }
+        catch (IOException e)
+        {
+            Timber.tag(TAG).w(e);
+            if (!tmp.delete()) Timber.tag(TAG).w("Unable to delete %s", tmp);
+            return;
+        }
+
+        synchronized (this)
+        {
+            long replaced = file.length();
+            if (!tmp.renameTo(file))
+            {
+                Timber.tag(TAG).w("Unable to store %s", file);
+                if (!tmp.delete()) Timber.tag(TAG).w("Unable to delete %s", tmp);
+                return;
+            }
+
+            totalBytes += content.length - replaced;
+            if (totalBytes > maxBytes) trim();
+        }
+    }
+
+    public synchronized long getSize()
+    {
+        countSize();
+        return totalBytes;
+    }
+
+    private void countSize()
+    {
+        if (totalBytes >= 0) return;
+        totalBytes = 0;
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        for (File f : files)
+        {
+            totalBytes += f.length();
+        }
+    }
+
+    /**
+     * Removes the least recently read entries until the cache is back to three quarters of its limit
+     */
+    private void trim()
+    {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+
+        long target = maxBytes * 3 / 4;
+        for (File f : files)
+        {
+            if (totalBytes <= target) break;
+            if (f.getName().endsWith(".tmp")) continue;
+            long length = f.length();
+            if (f.delete()) totalBytes -= length;
+        }
+    }
+
+    private static String fileName(String key)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+            {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.setlone.app.service;
+
+import androidx.annotation.NonNull;
+
+import com.setlone.app.entity.QueryResponse;
+import com.setlone.app.util.IPFSCid;
+import com.setlone.app.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Fetches IPFS content through a pool of public gateways.
+ *
+ * Until one gateway has proved itself, a request is raced across the best few gateways and the first good answer wins;
+ * the winner is pinned and later requests go to it alone. If the pinned gateway hasn't answered within its p95
+ * latency, or fails, the request is hedged to the next best gateway, and whichever answers first becomes the pin.
+ * Gateway latency and failures are tracked by {@link RpcEndpointHealth}, so a failing gateway backs off the same way
+ * a failing RPC node does.
+ *
+ * Where the content is a whole CID (no path), the raw block is requested and checked against the CID's hash, so a
+ * gateway can't serve the wrong content. Fetched content is kept on disk by CID path in an {@link IPFSBlockCache}.
+ */
+public class IPFSGatewayPool
+{
+    private static final String TAG = "IPFSGW";
+
+    public static final int DEFAULT_RACE_WIDTH = 3;
+    public static final long DEFAULT_HEDGE_DELAY_MS = 2000; // until a pinned gateway has enough samples for a p95
+
+    private static final String IPFS_PATH = "/ipfs/";
+    private static final String RAW_BLOCK = "application/vnd.ipld.raw";
+
+    private static volatile String preferredGateway = Utils.IPFS_INFURA_RESOLVER;
+
+    private final OkHttpClient client;
+    private final String[] gateways;
+    private final IPFSBlockCache cache;
+    private final int raceWidth;
+    private final long hedgeDelay;
+    private final Random random = new Random();
+    private volatile String pinned;
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong races = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong integrityFailures = new AtomicLong();
+
+    private static class Attempt
+    {
+        final String gateway;
+        final int code;
+        final byte[] content;
+
+        Attempt(String gateway, int code, byte[] content)
+        {
+            this.gateway = gateway;
+            this.code = code;
+            this.content = content;
+        }
+
+        boolean isSuccessful()
+        {
+            return code >= 200 && code <= 299;
+        }
+    }
+
+    /**
+     * @param cacheDir directory for fetched content, or null to not keep it
+     */
+    public IPFSGatewayPool(OkHttpClient client, String[] gateways, File cacheDir)
+    {
+        this(client, gateways, cacheDir != null ? new IPFSBlockCache(cacheDir, IPFSBlockCache.DEFAULT_MAX_BYTES) : null,
+                DEFAULT_RACE_WIDTH, DEFAULT_HEDGE_DELAY_MS);
+    }
+
+    public IPFSGatewayPool(OkHttpClient client, String[] gateways, IPFSBlockCache cache, int raceWidth, long hedgeDelay)
+    {
+        this.client = client;
+        this.gateways = gateways;
+        this.cache = cache;
+        this.raceWidth = Math.max(1, raceWidth);
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * Gateway to use for IPFS links which are handed to something else to load, eg images
+     */
+    public static String getPreferredGateway()
+    {
+        return preferredGateway;
+    }
+
+    /**
+     * @return CID and path within it, from any of the ways an IPFS link is written
+     */
+    public static String ipfsPath(String url)
+    {
+        String resolved = Utils.resolveIPFS(url.trim(), "");
+        return resolved.startsWith(IPFS_PATH) ? resolved.substring(IPFS_PATH.length()) : resolved;
+    }
+
+    public QueryResponse get(String url) throws IOException
+    {
+        String path = ipfsPath(url);
+        if (cache != null)
+        {
+            byte[] content = cache.get(path);
+            if (content != null)
+            {
+                cacheHits.incrementAndGet();
+                return new QueryResponse(200, new String(content, StandardCharsets.UTF_8));
+            }
+        }
+
+        Attempt attempt = fetch(path);
+        if (attempt.isSuccessful() && cache != null)
+        {
+            cache.put(path, attempt.content);
+        }
+
+        return new QueryResponse(attempt.code, new String(attempt.content, StandardCharsets.UTF_8));
+    }
+
+    private Attempt fetch(String path) throws IOException
+    {
+        long now = System.currentTimeMillis();
+        List<String> ranked = RpcEndpointHealth.rank(gateways, random);
+        String pin = pinned;
+        int initial;
+        long delay;
+        if (pin != null && RpcEndpointHealth.get(pin).isAvailable(now))
+        {
+            ranked.remove(pin);
+            ranked.add(0, pin);
+            initial = 1;
+            long p95 = RpcEndpointHealth.get(pin).getHedgeDelay();
+            delay = p95 > 0 ? p95 : hedgeDelay;
+        }
+        else
+        {
+            initial = Math.min(raceWidth, ranked.size());
+            delay = hedgeDelay;
+            races.incrementAndGet();
+        }
+
+        String root = rootCid(path);
+        IPFSCid cid = root.equals(path) ? IPFSCid.parse(root) : null;
+
+        BlockingQueue<Object> results = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>();
+        int launched = 0;
+        int pending = 0;
+        Object lastFailure = null;
+
+        try
+        {
+            while (launched < initial)
+            {
+                calls.add(enqueue(ranked.get(launched++), path, cid, results));
+                pending++;
+            }
+
+            while (pending > 0 || launched < ranked.size())
+            {
+                Object result = launched < ranked.size() ? results.poll(delay, TimeUnit.MILLISECONDS) : results.take();
+                if (result == null)
+                {
+                    //nothing back in time; bring in the next gateway
+                    Timber.tag(TAG).d("Hedging to %s after %dms", ranked.get(launched), delay);
+                    calls.add(enqueue(ranked.get(launched++), path, cid, results));
+                    pending++;
+                    continue;
+                }
+
+                pending--;
+                if (result instanceof Attempt && ((Attempt) result).isSuccessful())
+                {
+                    pin(((Attempt) result).gateway);
+                    return (Attempt) result;
+                }
+
+                lastFailure = result;
+                if (pending == 0 && launched < ranked.size())
+                {
+                    calls.add(enqueue(ranked.get(launched++), path, cid, results));
+                    pending++;
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        finally
+        {
+            for (Call call : calls)
+            {
+                call.cancel();
+            }
+        }
+
+        if (lastFailure instanceof Attempt) return (Attempt) lastFailure; //every gateway answered, none had it
+        throw lastFailure instanceof IOException ? (IOException) lastFailure : new IOException("No IPFS gateway available");
+    }
+
+    private Call enqueue(String gateway, String path, IPFSCid cid, BlockingQueue<Object> results)
+    {
+        long startTime = System.currentTimeMillis();
+        Call call = client.newCall(buildRequest(gateway, path, cid != null));
+        call.enqueue(new Callback()
+        {
+            @Override
+            public void onFailure(@NonNull Call call, @NonNull IOException e)
+            {
+                //a losing call is cancelled, which says nothing about the gateway
+                if (!call.isCanceled()) RpcEndpointHealth.get(gateway).recordFailure();
+                results.add(e);
+            }
+
+            @Override
+            public void onResponse(@NonNull Call call, @NonNull Response response)
+            {
+                try
+                {
+                    results.add(handleResponse(call, gateway, path, cid, startTime, response));
+                }
+                catch (IOException e)
+                {
+                    if (!call.isCanceled()) RpcEndpointHealth.get(gateway).recordFailure();
+                    results.add(e);
+                }
+            }
+        });
+
+        return call;
+    }
+
+    private Request buildRequest(String gateway, String path, boolean rawBlock)
+    {
+        Request.Builder bld = new Request.Builder()
+                .url(gateway + IPFS_PATH + path + (rawBlock ? "?format=raw" : ""))
+                .get();
+        if (rawBlock) bld.addHeader("Accept", RAW_BLOCK);
+        return bld.build();
+    }
+
+    private Attempt handleResponse(Call call, String gateway, String path, IPFSCid cid, long startTime, Response response) throws IOException
+    {
+        RpcEndpointHealth health = RpcEndpointHealth.get(gateway);
+        try (Response r = response)
+        {
+            if (call.isCanceled()) throw new IOException("Canceled");
+
+            int code = r.code();
+            if (!r.isSuccessful())
+            {
+                if (code == 429 || code >= 500) health.recordBackoff(0);
+                else health.recordFailure();
+                return new Attempt(gateway, code, new byte[0]);
+            }
+
+            byte[] body = r.body().bytes();
+            byte[] content = cid != null ? checkContent(gateway, cid, body, r.header("Content-Type")) : body;
+            if (content == null)
+            {
+                //verified, but the file spans several blocks; the gateway has proved it holds the CID so take the file
+                try (Response file = client.newCall(buildRequest(gateway, path, false)).execute())
+                {
+                    if (!file.isSuccessful()) throw new IOException("Unsuccessful response: " + file.code());
+                    content = file.body().bytes();
+                }
+            }
+
+            health.recordSuccess(System.currentTimeMillis() - startTime);
+            return new Attempt(gateway, code, content);
+        }
+    }
+
+    /**
+     * @return the content of a block which matches the CID; null if the block is good but doesn't hold the whole file
+     * @throws IOException if the gateway served something other than the CID
+     */
+    private byte[] checkContent(String gateway, IPFSCid cid, byte[] body, String contentType) throws IOException
+    {
+        boolean isBlock = contentType != null && contentType.startsWith(RAW_BLOCK);
+        if (isBlock || cid.codec == IPFSCid.CODEC_RAW)
+        {
+            if (!cid.matches(body))
+            {
+                integrityFailures.incrementAndGet();
+                Timber.tag(TAG).w("Content from %s doesn't match its CID", gateway);
+                throw new IOException("CID mismatch");
+            }
+            verified.incrementAndGet();
+            return cid.extractContent(body);
+        }
+
+        //gateway ignored the raw block request and served the file; it can't be checked without the block
+        return body;
+    }
+
+    private void pin(String gateway)
+    {
+        if (!gateway.equals(pinned))
+        {
+            Timber.tag(TAG).d("Pinning %s", gateway);
+            pinned = gateway;
+            preferredGateway = gateway;
+        }
+    }
+
+    private static String rootCid(String path)
+    {
+        int end = path.length();
+        for (char c : new char[] { '/', '?', '#' })
+        {
+            int index = path.indexOf(c);
+            if (index >= 0) end = Math.min(end, index);
+        }
+        return path.substring(0, end);
+    }
+
+    public String getPinnedGateway()
+    {
+        return pinned;
+    }
+
+    public List<RpcEndpointHealth.Stats> getGatewayStats()
+    {
+        List<RpcEndpointHealth.Stats> stats = new ArrayList<>();
+        for (String gateway : gateways)
+        {
+            stats.add(RpcEndpointHealth.get(gateway).getStats());
+        }
+        return stats;
+    }
+
+    public long getCacheHits()
+    {
+        return cacheHits.get();
+    }
+
+    public long getRaces()
+    {
+        return races.get();
+    }
+
+    public long getVerified()
+    {
+        return verified.get();
+    }
+
+    public long getIntegrityFailures()
+    {
+        return integrityFailures.get();
+    }
+}
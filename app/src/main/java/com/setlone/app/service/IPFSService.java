@@ -6,8 +6,8 @@ import com.setlone.app.entity.QueryResponse;
 import com.setlone.app.entity.tokenscript.TestScript;
 import com.setlone.app.util.Utils;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.SocketTimeoutException;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -19,11 +19,40 @@ import timber.log.Timber;
  */
 public class IPFSService implements IPFSServiceType
 {
+    private static IPFSGatewayPool sharedPool;
+
     private final OkHttpClient client;
+    private final IPFSGatewayPool gatewayPool;
 
     public IPFSService(OkHttpClient okHttpClient)
+    {
+        this(okHttpClient, (File) null);
+    }
+
+    /**
+     * @param cacheDir directory to keep IPFS content in, or null to not keep it
+     */
+    public IPFSService(OkHttpClient okHttpClient, File cacheDir)
+    {
+        this(okHttpClient, getSharedPool(okHttpClient, cacheDir));
+    }
+
+    public IPFSService(OkHttpClient okHttpClient, IPFSGatewayPool gatewayPool)
     {
         this.client = okHttpClient;
+        this.gatewayPool = gatewayPool;
+    }
+
+    /**
+     * Every IPFSService shares one pool, so gateway health and the pinned gateway are learned once for the app
+     */
+    private static synchronized IPFSGatewayPool getSharedPool(OkHttpClient okHttpClient, File cacheDir)
+    {
+        if (sharedPool == null)
+        {
+            sharedPool = new IPFSGatewayPool(okHttpClient, Utils.IPFS_GATEWAYS, cacheDir);
+        }
+        return sharedPool;
     }
 
     public String getContent(String url)
@@ -74,30 +103,16 @@ public class IPFSService implements IPFSServiceType
 
         if (headers != null) addHeaders(bld, headers);
 
-        Response response = client.newCall(bld.build()).execute();
-        return new QueryResponse(response.code(), response.body().string());
+        try (Response response = client.newCall(bld.build()).execute())
+        {
+            return new QueryResponse(response.code(), response.body().string(), response.header("ETag"), response.header("Last-Modified"));
+        }
     }
 
     private QueryResponse getFromIPFS(String url) throws IOException
     {
         if (isTestCode(url)) return loadTestCode();
-
-        //try Infura first
-        String tryIPFS = Utils.resolveIPFS(url, Utils.IPFS_INFURA_RESOLVER);
-        //attempt to load content
-        QueryResponse r;
-        try
-        {
-            r = get(tryIPFS, null);
-        }
-        catch (SocketTimeoutException e)
-        {
-            //timeout, try second node. Any other failure simply throw back to calling function
-            tryIPFS = Utils.resolveIPFS(url, Utils.IPFS_INFURA_RESOLVER);
-            r = get(tryIPFS, null); //if this throws it will be picked up by calling function
-        }
-
-        return r;
+        return gatewayPool.get(url);
     }
 
     private void addHeaders(Request.Builder bld, String[] headers) throws IOException
@@ -1,7 +1,9 @@
 package com.setlone.app.service;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
@@ -91,10 +93,17 @@ public class JsonValidator
                 content.append(line);
             }
 
-            JSONObject thisObj = new JSONObject(content.toString());
+            //batch requests return an array of responses
+            Object json = new JSONTokener(content.toString()).nextValue();
+            if (!(json instanceof JSONObject) && !(json instanceof JSONArray))
+            {
+                return false;
+            }
+
+            JSONObject thisObj = json instanceof JSONObject ? (JSONObject) json : new JSONObject();
             if (thisObj.has(JSON_ERROR))
             {
-                String error = thisObj.getString(JSON_ERROR);
+                String error = thisObj.optString(JSON_ERROR);
                 if (error.toLowerCase().contains(UNAUTHORIZED_ERROR) || error.toLowerCase().contains(INTERNAL_ERROR))
                 {
                     return false;
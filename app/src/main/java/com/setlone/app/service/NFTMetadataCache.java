@@ -0,0 +1,514 @@
+package com.setlone.app.service;
+
+import com.google.gson.Gson;
+import com.setlone.app.entity.QueryResponse;
+import com.setlone.app.util.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Token metadata JSON, cached in memory and on disk.
+ *
+ * Content is keyed by where it comes from: IPFS content by its CID path, whichever gateway the token URI names, and
+ * anything else by the URI itself. A second index maps (chainId, contract, tokenId) to the token's URI, so a token
+ * which has been seen before needs no tokenURI call to find its metadata.
+ *
+ * IPFS content is immutable and is never fetched twice. HTTP metadata can change, so once it is older than
+ * {@link #REVALIDATE_AFTER} it is revalidated with If-None-Match / If-Modified-Since, and a stale copy is still served
+ * if the server can't be reached. Concurrent requests for the same token or content share one fetch, and the number
+ * of fetches in progress is bounded.
+ *
+ * The disk copy is bounded too: files unused for {@link #MAX_DISK_AGE} are dropped, and once the directory grows past
+ * its size limit the least recently used files go first.
+ */
+public class NFTMetadataCache
+{
+    private static final String TAG = "NFTMETA";
+
+    public static final int MAX_MEMORY_ENTRIES = 512;
+    public static final int MAX_CONCURRENT_FETCHES = 6;
+    public static final long REVALIDATE_AFTER = 30 * 60 * 1000L; // mutable metadata is rechecked after 30 minutes
+    public static final long TOKEN_URI_TTL = 24 * 60 * 60 * 1000L; // token URI re-read from the contract after a day
+    public static final long MAX_DISK_BYTES = 16 * 1024 * 1024L;
+    public static final long MAX_DISK_AGE = 30 * 24 * 60 * 60 * 1000L; // files not read or written for 30 days are dropped
+
+    private static final String CONTENT_DIR = "content";
+    private static final String TOKEN_DIR = "token";
+
+    public interface URILookup
+    {
+        /**
+         * @return the token's metadata URI, or inline metadata JSON; empty if the contract has none
+         */
+        String getTokenURI() throws Exception;
+    }
+
+    private static class Content
+    {
+        String uri;
+        String body;
+        String etag;
+        String lastModified;
+        long fetched;
+    }
+
+    private static class TokenURI
+    {
+        String uri;
+        long fetched;
+    }
+
+    private final IPFSServiceType fetcher;
+    private final File contentDir;
+    private final File tokenDir;
+    private final Gson gson = new Gson();
+    private final Semaphore fetchPermits;
+    private final long revalidateAfter;
+    private final long maxDiskBytes;
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final Map<String, FutureTask<String>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedHashMap<String, Content> contents = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final LinkedHashMap<String, TokenURI> tokenURIs = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong revalidated = new AtomicLong();
+
+    /**
+     * @param cacheDir directory for the persistent cache, or null to only cache in memory
+     */
+    public NFTMetadataCache(IPFSServiceType fetcher, File cacheDir)
+    {
+        this(fetcher, cacheDir, MAX_CONCURRENT_FETCHES, REVALIDATE_AFTER, MAX_DISK_BYTES);
+    }
+
+    public NFTMetadataCache(IPFSServiceType fetcher, File cacheDir, int maxConcurrentFetches, long revalidateAfter)
+    {
+        this(fetcher, cacheDir, maxConcurrentFetches, revalidateAfter, MAX_DISK_BYTES);
+    }
+
+    public NFTMetadataCache(IPFSServiceType fetcher, File cacheDir, int maxConcurrentFetches, long revalidateAfter, long maxDiskBytes)
+    {
+        this.fetcher = fetcher;
+        this.fetchPermits = new Semaphore(maxConcurrentFetches);
+        this.revalidateAfter = revalidateAfter;
+        this.maxDiskBytes = maxDiskBytes;
+        this.contentDir = cacheDir != null ? new File(cacheDir, CONTENT_DIR) : null;
+        this.tokenDir = cacheDir != null ? new File(cacheDir, TOKEN_DIR) : null;
+        if (contentDir != null && !contentDir.exists() && !contentDir.mkdirs()) Timber.tag(TAG).w("Unable to create %s", contentDir);
+        if (tokenDir != null && !tokenDir.exists() && !tokenDir.mkdirs()) Timber.tag(TAG).w("Unable to create %s", tokenDir);
+        trimDisk();
+    }
+
+    public static String tokenKey(long chainId, String contract, BigInteger tokenId)
+    {
+        return chainId + "-" + contract.toLowerCase() + "-" + tokenId.toString(Character.MAX_RADIX);
+    }
+
+    /**
+     * Fetches metadata for a token, reading its URI through the lookup only if it isn't already known
+     *
+     * @return metadata JSON, or empty string if none could be found
+     */
+    public String getTokenMetadata(long chainId, String contract, BigInteger tokenId, URILookup lookup)
+    {
+        String key = tokenKey(chainId, contract, tokenId);
+        return coalesce("t:" + key, () -> {
+            String uri = getTokenURI(key);
+            if (uri == null)
+            {
+                uri = lookup.getTokenURI();
+                putTokenURI(key, uri);
+            }
+
+            return getContent(uri);
+        });
+    }
+
+    /**
+     * Record a token URI read elsewhere, eg as part of a batch of tokenURI calls
+     */
+    public void putTokenURI(long chainId, String contract, BigInteger tokenId, String uri)
+    {
+        putTokenURI(tokenKey(chainId, contract, tokenId), uri);
+    }
+
+    public boolean hasTokenURI(long chainId, String contract, BigInteger tokenId)
+    {
+        return getTokenURI(tokenKey(chainId, contract, tokenId)) != null;
+    }
+
+    /**
+     * @return metadata at the URI; inline JSON is returned as is
+     */
+    public String getContent(String uri)
+    {
+        if (uri == null || uri.trim().isEmpty()) return "";
+        uri = uri.trim();
+        if (uri.startsWith("{")) return uri; //some tokens return the metadata directly
+
+        String contentKey = contentKey(uri);
+        String fetchUri = uri;
+        return coalesce("c:" + contentKey, () -> loadContent(contentKey, fetchUri));
+    }
+
+    private String coalesce(String key, Callable<String> load)
+    {
+        FutureTask<String> task = new FutureTask<>(load);
+        FutureTask<String> current = inFlight.putIfAbsent(key, task);
+        if (current == null)
+        {
+            //first caller does the load; anyone asking for the same key meanwhile waits on its result
+            current = task;
+            try
+            {
+                task.run();
+            }
+            finally
+            {
+                inFlight.remove(key, task);
+            }
+        }
+
+        try
+        {
+            return current.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return "";
+        }
+        catch (ExecutionException e)
+        {
+            Timber.tag(TAG).w(e.getCause());
+            return "";
+        }
+    }
+
+    private String loadContent(String contentKey, String uri)
+    {
+        Content cached = getCachedContent(contentKey);
+        boolean immutable = isImmutable(uri);
+        if (cached != null && (immutable || System.currentTimeMillis() - cached.fetched < revalidateAfter))
+        {
+            hits.incrementAndGet();
+            return cached.body;
+        }
+
+        String[] headers = cached != null && !immutable ? validators(cached) : null;
+        QueryResponse response;
+        try
+        {
+            fetchPermits.acquire();
+            try
+            {
+                fetches.incrementAndGet();
+                response = fetcher.performIO(uri, headers);
+            }
+            finally
+            {
+                fetchPermits.release();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return cached != null ? cached.body : "";
+        }
+        catch (Exception e)
+        {
+            //can't reach the server; a stale copy is better than none
+            Timber.tag(TAG).w(e);
+            return cached != null ? cached.body : "";
+        }
+
+        if (cached != null && response.isNotModified())
+        {
+            revalidated.incrementAndGet();
+            cached.fetched = System.currentTimeMillis();
+            putContent(contentKey, cached);
+            return cached.body;
+        }
+        else if (response.isSuccessful() && response.body != null && !response.body.isEmpty())
+        {
+            Content content = new Content();
+            content.uri = uri;
+            content.body = response.body;
+            content.etag = response.etag;
+            content.lastModified = response.lastModified;
+            content.fetched = System.currentTimeMillis();
+            putContent(contentKey, content);
+            return content.body;
+        }
+        else
+        {
+            return cached != null ? cached.body : "";
+        }
+    }
+
+    private static String[] validators(Content cached)
+    {
+        if (cached.etag != null && cached.lastModified != null)
+        {
+            return new String[] { "If-None-Match", cached.etag, "If-Modified-Since", cached.lastModified };
+        }
+        else if (cached.etag != null)
+        {
+            return new String[] { "If-None-Match", cached.etag };
+        }
+        else if (cached.lastModified != null)
+        {
+            return new String[] { "If-Modified-Since", cached.lastModified };
+        }
+        else
+        {
+            return null;
+        }
+    }
+
+    private static boolean isImmutable(String uri)
+    {
+        return Utils.isIPFS(uri);
+    }
+
+    /**
+     * IPFS content is addressed by CID, so the same path through any gateway is the same content
+     */
+    public static String contentKey(String uri)
+    {
+        final String designator = "/ipfs/";
+        final String prefix = "ipfs://";
+        int index = uri.lastIndexOf(designator);
+        if (index >= 0)
+        {
+            return "ipfs/" + uri.substring(index + designator.length());
+        }
+        else if (uri.startsWith(prefix))
+        {
+            String path = uri.substring(prefix.length());
+            return "ipfs/" + (path.startsWith("ipfs/") ? path.substring(5) : path);
+        }
+        else if (Utils.isIPFS(uri))
+        {
+            return "ipfs/" + uri;
+        }
+        else
+        {
+            return uri;
+        }
+    }
+
+    //Memory and disk layers
+
+    private Content getCachedContent(String contentKey)
+    {
+        synchronized (contents)
+        {
+            Content content = contents.get(contentKey);
+            if (content != null) return content;
+        }
+
+        Content content = read(new File(contentDir, fileName(contentKey)), Content.class);
+        if (content != null && content.body != null)
+        {
+            remember(contents, contentKey, content);
+            return content;
+        }
+
+        return null;
+    }
+
+    private void putContent(String contentKey, Content content)
+    {
+        remember(contents, contentKey, content);
+        write(new File(contentDir, fileName(contentKey)), content);
+    }
+
+    private String getTokenURI(String tokenKey)
+    {
+        TokenURI entry;
+        synchronized (tokenURIs)
+        {
+            entry = tokenURIs.get(tokenKey);
+        }
+
+        if (entry == null)
+        {
+            entry = read(new File(tokenDir, fileName(tokenKey)), TokenURI.class);
+            if (entry != null) remember(tokenURIs, tokenKey, entry);
+        }
+
+        if (entry == null || entry.uri == null || System.currentTimeMillis() - entry.fetched > TOKEN_URI_TTL) return null;
+        return entry.uri;
+    }
+
+    private void putTokenURI(String tokenKey, String uri)
+    {
+        if (uri == null || uri.isEmpty()) return; //not known yet; try again next time
+        TokenURI entry = new TokenURI();
+        entry.uri = uri;
+        entry.fetched = System.currentTimeMillis();
+        remember(tokenURIs, tokenKey, entry);
+        write(new File(tokenDir, fileName(tokenKey)), entry);
+    }
+
+    private static <T> void remember(LinkedHashMap<String, T> map, String key, T value)
+    {
+        synchronized (map)
+        {
+            map.put(key, value);
+            if (map.size() > MAX_MEMORY_ENTRIES)
+            {
+                map.remove(map.keySet().iterator().next());
+            }
+        }
+    }
+
+    private <T> T read(File file, Class<T> type)
+    {
+        if (contentDir == null || !file.exists()) return null;
+        try (InputStream in = new FileInputStream(file))
+        {
+            byte[] data = new byte[(int) file.length()];
+            int read = 0;
+            while (read < data.length)
+            {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            T value = gson.fromJson(new String(data, 0, read, StandardCharsets.UTF_8), type);
+            file.setLastModified(System.currentTimeMillis()); //recently used; kept longest when the disk cache is trimmed
+            return value;
+        }
+        catch (Exception e)
+        {
+            //corrupt entry, will be refetched
+            Timber.tag(TAG).w(e);
+            if (!file.delete()) Timber.tag(TAG).w("Unable to delete %s", file);
+            return null;
+        }
+    }
+
+    private void write(File file, Object value)
+    {
+        if (contentDir == null) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        long previous = file.length(); //zero if not yet on disk
+        try (OutputStream out = new FileOutputStream(tmp))
+        {
+            out.write(gson.toJson(value).getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            Timber.tag(TAG).w(e);
+            return;
+        }
+
+        if (!tmp.renameTo(file))
+        {
+            Timber.tag(TAG).w("Unable to store %s", file);
+            if (!tmp.delete()) Timber.tag(TAG).w("Unable to delete %s", tmp);
+        }
+        else if (diskBytes.addAndGet(file.length() - previous) > maxDiskBytes)
+        {
+            trimDisk();
+        }
+    }
+
+    /**
+     * Drops files unused for MAX_DISK_AGE, then the least recently used until the cache is back to three quarters
+     * of its limit, so a full cache isn't trimmed again on every write
+     */
+    private synchronized void trimDisk()
+    {
+        if (contentDir == null) return;
+        List<File> files = new ArrayList<>();
+        for (File dir : new File[] { contentDir, tokenDir })
+        {
+            File[] listed = dir.listFiles();
+            if (listed != null) files.addAll(Arrays.asList(listed));
+        }
+
+        long expired = System.currentTimeMillis() - MAX_DISK_AGE;
+        long total = 0;
+        List<File> kept = new ArrayList<>();
+        for (File file : files)
+        {
+            if (file.lastModified() < expired && file.delete()) continue;
+            total += file.length();
+            kept.add(file);
+        }
+
+        if (total > maxDiskBytes)
+        {
+            Collections.sort(kept, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            long target = maxDiskBytes * 3 / 4;
+            for (File file : kept)
+            {
+                if (total <= target) break;
+                long length = file.length();
+                if (file.delete()) total -= length;
+            }
+        }
+
+        diskBytes.set(total);
+    }
+
+    private static String fileName(String key)
+    {
+        try
+        {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash)
+            {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getFetches()
+    {
+        return fetches.get();
+    }
+
+    public long getRevalidated()
+    {
+        return revalidated.get();
+    }
+}
@@ -0,0 +1,77 @@
+package com.setlone.app.service;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.Reader;
+
+/**
+ * Reads a page of the OpenSea v2 account NFTs API straight from the response stream.
+ *
+ * Each entry of 'nfts' is handed to the consumer as soon as it has been read, so a page is never held as a String or a
+ * whole JSON tree, and the cursor for the following page is picked up wherever it appears in the response.
+ */
+public class OpenSeaAssetReader
+{
+    public interface AssetConsumer
+    {
+        void accept(JsonObject nft) throws Exception;
+    }
+
+    public static class Page
+    {
+        public int count;
+        public String next = ""; //empty on the last page
+    }
+
+    public static Page read(Reader source, AssetConsumer consumer) throws Exception
+    {
+        Page page = new Page();
+        try (JsonReader reader = new JsonReader(source))
+        {
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                String name = reader.nextName();
+                JsonToken token = reader.peek();
+                if (name.equals("nfts") && token == JsonToken.BEGIN_ARRAY)
+                {
+                    reader.beginArray();
+                    while (reader.hasNext())
+                    {
+                        JsonElement nft = JsonParser.parseReader(reader);
+                        if (nft.isJsonObject())
+                        {
+                            page.count++;
+                            consumer.accept(nft.getAsJsonObject());
+                        }
+                    }
+                    reader.endArray();
+                }
+                else if (name.equals("next") && token == JsonToken.STRING)
+                {
+                    page.next = reader.nextString();
+                }
+                else
+                {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return page;
+    }
+
+    /**
+     * @return the field as a string; empty if it is missing or null
+     */
+    public static String getString(JsonObject nft, String name)
+    {
+        JsonElement value = nft.get(name);
+        return value != null && value.isJsonPrimitive() ? value.getAsString() : "";
+    }
+}
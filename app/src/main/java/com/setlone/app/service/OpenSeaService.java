@@ -13,8 +13,8 @@ import static com.setlone.ethereum.EthereumNetworkBase.SEPOLIA_TESTNET_ID;
 import android.net.Uri;
 import android.text.TextUtils;
 import android.text.format.DateUtils;
-import android.util.LongSparseArray;
 
+import com.google.gson.JsonObject;
 import com.setlone.app.C;
 import com.setlone.app.entity.ContractType;
 import com.setlone.app.entity.nftassets.NFTAsset;
@@ -22,14 +22,15 @@ import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokens.TokenFactory;
 import com.setlone.app.entity.tokens.TokenInfo;
 import com.setlone.app.repository.KeyProviderFactory;
+import com.setlone.app.repository.entity.RealmOpenSeaCursor;
 import com.setlone.app.util.JsonUtils;
+import com.setlone.app.util.RateLimiter;
 import com.setlone.app.repository.EthereumNetworkBase;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -37,6 +38,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import io.reactivex.Single;
+import io.realm.Realm;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.ResponseBody;
@@ -49,12 +51,25 @@ import timber.log.Timber;
 
 public class OpenSeaService
 {
-    private final OkHttpClient httpClient;
+    private static final String TAG = "OPENSEA";
+
+    public static final int MAX_CONCURRENT_CHAINS = 3;
     private static final int PAGE_SIZE = 200;
-    private final Map<String, String> imageUrls = new HashMap<>();
+    private static final int MAX_PAGES_PER_PASS = 8;
+    private static final double OPENSEA_RATE = 2.0; // requests/sec shared by every chain, leaves headroom under the API key limit
+
+    private final OkHttpClient httpClient;
+    private final RealmManager realmManager;
     private static final TokenFactory tf = new TokenFactory();
-    private final LongSparseArray<Long> networkCheckTimes = new LongSparseArray<>();
-    private final Map<Long, String> pageOffsets = new ConcurrentHashMap<>();
+    private final Map<Long, Long> networkCheckTimes = new ConcurrentHashMap<>();
+    private final Map<String, String> pageOffsets = new ConcurrentHashMap<>(); //cursors, when there's no database
+    private final RateLimiter rateLimiter = new RateLimiter(OPENSEA_RATE);
+    private final Map<Long, DiscoveryStats> lastDiscoveries = new ConcurrentHashMap<>();
+
+    public interface PageConsumer
+    {
+        void accept(Token[] tokens) throws Exception;
+    }
 
     private final static Map<Long, String> API_CHAIN_MAP = Map.of(
             MAINNET_ID, "ethereum",
@@ -70,7 +85,15 @@ public class OpenSeaService
 
     public OpenSeaService()
     {
-        pageOffsets.clear();
+        this(null);
+    }
+
+    /**
+     * @param realmManager wallet databases to keep discovery cursors in, or null to only keep them in memory
+     */
+    public OpenSeaService(RealmManager realmManager)
+    {
+        this.realmManager = realmManager;
         httpClient = new OkHttpClient.Builder()
                 .connectTimeout(C.CONNECT_TIMEOUT, TimeUnit.SECONDS)
                 .connectTimeout(C.READ_TIMEOUT, TimeUnit.SECONDS)
@@ -122,104 +145,124 @@ public class OpenSeaService
         return JsonUtils.EMPTY_RESULT;
     }
 
-    public Single<Token[]> getTokens(String address,
-                                     long networkId,
-                                     String networkName,
-                                     TokensService tokensService)
+    /**
+     * Pages through a wallet's NFTs on one chain from where the last pass got to. Each page is read from the response
+     * stream, and the tokens it touched are handed to the consumer before the next page is requested, so a large
+     * collection shows up progressively. The cursor is stored after every page.
+     *
+     * @return number of pages read
+     */
+    public int discoverTokens(String address,
+                              long networkId,
+                              String networkName,
+                              TokensService tokensService,
+                              PageConsumer consumer) throws Exception
     {
-        return Single.fromCallable(() ->
+        long currentTime = System.currentTimeMillis();
+        if (!canCheckChain(networkId)) return 0;
+        networkCheckTimes.put(networkId, currentTime);
+
+        DiscoveryStats stats = new DiscoveryStats(networkId, currentTime);
+        String[] state = loadCursor(address, networkId);
+        String pageCursor = state[0];
+        boolean fromStart = TextUtils.isEmpty(pageCursor);
+        boolean passComplete = false;
+        Map<String, Token> foundTokens = new HashMap<>();
+        Map<String, Map<BigInteger, NFTAsset>> assetList = new HashMap<>();
+        Map<String, String> imageUrls = new HashMap<>(); //contract images found on this chain; several chains run at once
+
+        Timber.tag(TAG).d("Fetch from opensea : %s", networkName);
+
+        while (!passComplete && stats.getPages() < MAX_PAGES_PER_PASS)
         {
-            int receivedTokens;
-            int currentPage = 0;
-            Map<String, Token> foundTokens = new HashMap<>();
+            Map<String, Token> pageTokens = new LinkedHashMap<>();
+            String etag = fromStart && stats.getPages() == 0 ? state[1] : null;
+            PageResult result = fetchAssetsPage(networkId, address, pageCursor, etag,
+                    nft -> processAsset(nft, assetList, foundTokens, pageTokens, tokensService, networkId, networkName, address));
 
-            long currentTime = System.currentTimeMillis();
-            if (!canCheckChain(networkId)) return new Token[0];
-            networkCheckTimes.put(networkId, currentTime);
-
-            String pageCursor = pageOffsets.getOrDefault(networkId, "");
-
-            Timber.d("Fetch from opensea : %s", networkName);
-
-            do
+            if (result.code == 304)
             {
-                String jsonData = fetchAssets(networkId, address, pageCursor);
-                if (!JsonUtils.hasAssets(jsonData))
-                {
-                    return foundTokens.values().toArray(new Token[0]); //on error return results found so far
-                }
-
-                JSONObject result = new JSONObject(jsonData);
-                JSONArray assets = result.getJSONArray("nfts");
-
-                receivedTokens = assets.length();
-
-                //process this page of results
-                processOpenseaTokens(foundTokens, assets, address, networkId, networkName, tokensService);
-                currentPage++;
-                pageCursor = result.has("next") ? result.getString("next") : "";
-                if (TextUtils.isEmpty(pageCursor))
-                {
-                    break;
-                }
+                //wallet's only page hasn't changed since the last pass
+                passComplete = true;
+                break;
             }
-            while (currentPage <= 3); //fetch 4 pages for each loop
-
-            pageOffsets.put(networkId, pageCursor);
-
-            if (receivedTokens < PAGE_SIZE)
+            else if (result.page == null)
             {
-                Timber.d("Reset OpenSeaAPI reads at: %s", pageCursor);
-            }
-            else
-            {
-                networkCheckTimes.put(networkId, currentTime - 55 * DateUtils.SECOND_IN_MILLIS); //do another read within 5 seconds
+                //on error keep the cursor, the pass resumes from this page next time
+                if (result.code == 429) networkCheckTimes.put(networkId, currentTime - 9 * DateUtils.MINUTE_IN_MILLIS);
+                break;
             }
 
-            //now write the contract images
-            for (Map.Entry<String, String> entry : imageUrls.entrySet())
+            stats.addPage(result.page.count, System.currentTimeMillis());
+            if (!pageTokens.isEmpty())
             {
-                tokensService.addTokenImageUrl(networkId, entry.getKey(), entry.getValue());
+                consumer.accept(pageTokens.values().toArray(new Token[0]));
             }
-            imageUrls.clear();
 
-            return foundTokens.values().toArray(new Token[0]);
-        });
-    }
+            pageCursor = result.page.next;
+            passComplete = TextUtils.isEmpty(pageCursor);
+            //an unchanged first page only says nothing changed if it's the only page
+            storeCursor(address, networkId, pageCursor, passComplete && fromStart && stats.getPages() == 1 ? result.etag : null);
+        }
 
-    private void processOpenseaTokens(Map<String, Token> foundTokens,
-                                      JSONArray assets,
-                                      String address,
-                                      long networkId,
-                                      String networkName,
-                                      TokensService tokensService) throws Exception
-    {
-        final Map<String, Map<BigInteger, NFTAsset>> assetList = new HashMap<>();
+        if (!passComplete && stats.getPages() >= MAX_PAGES_PER_PASS)
+        {
+            networkCheckTimes.put(networkId, currentTime - 55 * DateUtils.SECOND_IN_MILLIS); //do another read within 5 seconds
+        }
+        else if (passComplete)
+        {
+            Timber.tag(TAG).d("Reset OpenSeaAPI reads for %s", networkName);
+        }
 
-        for (int i = 0; i < assets.length(); i++)
+        //now write the contract images
+        for (Map.Entry<String, String> entry : imageUrls.entrySet())
         {
-            JSONObject assetJSON = assets.getJSONObject(i);
-            String tokenStandard = assetJSON.getString("token_standard").toLowerCase(Locale.ROOT);
+            tokensService.addTokenImageUrl(networkId, entry.getKey(), entry.getValue());
+        }
 
-            if (!TextUtils.isEmpty(tokenStandard))
+        stats.finish(System.currentTimeMillis());
+        lastDiscoveries.put(networkId, stats);
+        if (stats.getPages() > 0) Timber.tag(TAG).d("%s", stats);
+
+        return stats.getPages();
+    }
+
+    private void processAsset(JsonObject assetJSON,
+                              Map<String, Map<BigInteger, NFTAsset>> assetList,
+                              Map<String, Token> foundTokens,
+                              Map<String, Token> pageTokens,
+                              TokensService tokensService,
+                              long networkId,
+                              String networkName,
+                              String address)
+    {
+        try
+        {
+            String tokenStandard = OpenSeaAssetReader.getString(assetJSON, "token_standard").toLowerCase(Locale.ROOT);
+            Token token = null;
+            switch (tokenStandard)
             {
-                switch (tokenStandard)
-                {
-                    case "erc721":
-                        handleERC721(assetList, assetJSON, networkId, foundTokens, tokensService,
-                                networkName, address);
-                        break;
-                    case "erc1155":
-                        handleERC1155(assetList, assetJSON, networkId, foundTokens, tokensService,
-                                networkName, address);
-                        break;
-                }
+                case "erc721":
+                    token = handleERC721(assetList, assetJSON, networkId, foundTokens, tokensService,
+                            networkName, address);
+                    break;
+                case "erc1155":
+                    token = handleERC1155(assetList, assetJSON, networkId, foundTokens, tokensService,
+                            networkName, address);
+                    break;
             }
+
+            if (token != null) pageTokens.put(token.getAddress(), token);
+        }
+        catch (Exception e)
+        {
+            //skip this asset, carry on with the page
+            Timber.tag(TAG).w(e);
         }
     }
 
-    private void handleERC721(Map<String, Map<BigInteger, NFTAsset>> assetList,
-                              JSONObject assetJSON,
+    private Token handleERC721(Map<String, Map<BigInteger, NFTAsset>> assetList,
+                              JsonObject assetJSON,
                               long networkId,
                               Map<String, Token> foundTokens,
                               TokensService svs,
@@ -228,13 +271,12 @@ public class OpenSeaService
     {
         NFTAsset asset = new NFTAsset(assetJSON.toString());
 
-        BigInteger tokenId = assetJSON.has("identifier") ?
-                new BigInteger(assetJSON.getString("identifier"))
-                : null;
-        if (tokenId == null) return;
+        String identifier = OpenSeaAssetReader.getString(assetJSON, "identifier");
+        BigInteger tokenId = !TextUtils.isEmpty(identifier) ? new BigInteger(identifier) : null;
+        if (tokenId == null) return null;
 
-        String contractAddress = assetJSON.getString("contract");
-        String collectionName = assetJSON.getString("collection");
+        String contractAddress = OpenSeaAssetReader.getString(assetJSON, "contract");
+        String collectionName = OpenSeaAssetReader.getString(assetJSON, "collection");
 
         Token token = foundTokens.get(contractAddress);
         if (token == null)
@@ -269,10 +311,11 @@ public class OpenSeaService
         }
         asset.updateAsset(tokenId, assetList.get(token.getAddress()));
         token.addAssetToTokenBalanceAssets(tokenId, asset);
+        return token;
     }
 
-    private void handleERC1155(Map<String, Map<BigInteger, NFTAsset>> assetList,
-                               JSONObject assetJSON,
+    private Token handleERC1155(Map<String, Map<BigInteger, NFTAsset>> assetList,
+                               JsonObject assetJSON,
                                long networkId,
                                Map<String, Token> foundTokens,
                                TokensService svs,
@@ -281,14 +324,12 @@ public class OpenSeaService
     {
         NFTAsset asset = new NFTAsset(assetJSON.toString());
 
-        BigInteger tokenId = assetJSON.has("identifier") ?
-                new BigInteger(assetJSON.getString("identifier"))
-                : null;
-
-        if (tokenId == null) return;
+        String identifier = OpenSeaAssetReader.getString(assetJSON, "identifier");
+        BigInteger tokenId = !TextUtils.isEmpty(identifier) ? new BigInteger(identifier) : null;
+        if (tokenId == null) return null;
 
-        String contractAddress = assetJSON.getString("contract");
-        String collectionName = assetJSON.getString("collection");
+        String contractAddress = OpenSeaAssetReader.getString(assetJSON, "contract");
+        String collectionName = OpenSeaAssetReader.getString(assetJSON, "collection");
 
         Token token = foundTokens.get(contractAddress);
         if (token == null)
@@ -317,9 +358,10 @@ public class OpenSeaService
         }
         asset.updateAsset(tokenId, assetList.get(token.getAddress()));
         token.addAssetToTokenBalanceAssets(tokenId, asset);
+        return token;
     }
 
-    private void addAssetImageToHashMap(String address, String imageUrl)
+    private static void addAssetImageToHashMap(Map<String, String> imageUrls, String address, String imageUrl)
     {
         if (!imageUrls.containsKey(address) && !TextUtils.isEmpty(imageUrl))
         {
@@ -338,15 +380,82 @@ public class OpenSeaService
                 offsetTime += 10 * DateUtils.SECOND_IN_MILLIS;
             }
         }
-        pageOffsets.clear();
+    }
+
+    /**
+     * Start discovery for the wallet again from the first page, eg when the user asks for a refresh
+     */
+    public void restartDiscovery(String address, List<Long> networkFilter)
+    {
+        resetOffsetRead(networkFilter);
+        if (TextUtils.isEmpty(address)) return;
+        for (long networkId : networkFilter)
+        {
+            if (EthereumNetworkBase.hasOpenseaAPI(networkId)) storeCursor(address, networkId, "", null);
+        }
     }
 
     public boolean canCheckChain(long networkId)
     {
-        long lastCheckTime = networkCheckTimes.get(networkId, 0L);
+        long lastCheckTime = networkCheckTimes.getOrDefault(networkId, 0L);
         return System.currentTimeMillis() > (lastCheckTime + 10 * DateUtils.MINUTE_IN_MILLIS);
     }
 
+    /**
+     * @return the last discovery pass of each chain
+     */
+    public List<DiscoveryStats> getDiscoveryStats()
+    {
+        return new ArrayList<>(lastDiscoveries.values());
+    }
+
+    /**
+     * @return cursor of the next page to read and the stored ETag of the first page
+     */
+    private String[] loadCursor(String address, long networkId)
+    {
+        if (realmManager == null)
+        {
+            return new String[] { pageOffsets.getOrDefault(address.toLowerCase() + "-" + networkId, ""), null };
+        }
+
+        try (Realm realm = realmManager.getRealmInstance(address))
+        {
+            RealmOpenSeaCursor stored = realm.where(RealmOpenSeaCursor.class)
+                    .equalTo("chainId", networkId)
+                    .findFirst();
+
+            if (stored == null) return new String[] { "", null };
+            return new String[] { stored.getCursor() != null ? stored.getCursor() : "", stored.getEtag() };
+        }
+    }
+
+    private void storeCursor(String address, long networkId, String cursor, String etag)
+    {
+        if (realmManager == null)
+        {
+            pageOffsets.put(address.toLowerCase() + "-" + networkId, cursor);
+            return;
+        }
+
+        try (Realm realm = realmManager.getRealmInstance(address))
+        {
+            realm.executeTransaction(r -> {
+                RealmOpenSeaCursor stored = r.where(RealmOpenSeaCursor.class)
+                        .equalTo("chainId", networkId)
+                        .findFirst();
+                if (stored == null) stored = r.createObject(RealmOpenSeaCursor.class, networkId);
+                stored.setCursor(cursor);
+                stored.setEtag(etag);
+                stored.setUpdated(System.currentTimeMillis());
+            });
+        }
+        catch (Exception e)
+        {
+            Timber.tag(TAG).w(e);
+        }
+    }
+
     public Single<String> getAsset(Token token, BigInteger tokenId)
     {
         if (!EthereumNetworkBase.hasOpenseaAPI(token.tokenInfo.chainId))
@@ -367,11 +476,22 @@ public class OpenSeaService
     }
 
     public String fetchAssets(long networkId, String address, String pageCursor)
+    {
+        String api = assetsUrl(networkId, address, pageCursor);
+        if (api == null)
+        {
+            return JsonUtils.EMPTY_RESULT;
+        }
+
+        return executeRequest(networkId, api);
+    }
+
+    private String assetsUrl(long networkId, String address, String pageCursor)
     {
         String mappingName = API_CHAIN_MAP.get(networkId);
         if (TextUtils.isEmpty(mappingName))
         {
-            return JsonUtils.EMPTY_RESULT;
+            return null;
         }
 
         String api = C.OPENSEA_ASSETS_API_V2.replace("{CHAIN}", mappingName).replace("{ADDRESS}", address);
@@ -385,7 +505,59 @@ public class OpenSeaService
             builder.appendQueryParameter("next", pageCursor);
         }
 
-        return executeRequest(networkId, builder.build().toString());
+        return builder.build().toString();
+    }
+
+    private static class PageResult
+    {
+        int code;
+        String etag;
+        OpenSeaAssetReader.Page page; //null if the page couldn't be read
+    }
+
+    /**
+     * Reads one page under the shared rate limit, handing each asset to the consumer as it streams in
+     *
+     * @param etag ETag to revalidate the page against, or null
+     */
+    private PageResult fetchAssetsPage(long networkId, String address, String pageCursor, String etag,
+                                       OpenSeaAssetReader.AssetConsumer consumer)
+    {
+        PageResult result = new PageResult();
+        String api = assetsUrl(networkId, address, pageCursor);
+        if (api == null) return result;
+
+        Request request = buildRequest(networkId, api);
+        if (!TextUtils.isEmpty(etag))
+        {
+            request = request.newBuilder().addHeader("If-None-Match", etag).build();
+        }
+
+        try
+        {
+            rateLimiter.acquire();
+            try (okhttp3.Response response = httpClient.newCall(request).execute())
+            {
+                result.code = response.code();
+                result.etag = response.header("ETag");
+                ResponseBody responseBody = response.body();
+                if (response.isSuccessful() && responseBody != null)
+                {
+                    result.page = OpenSeaAssetReader.read(responseBody.charStream(), consumer);
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        catch (Exception e)
+        {
+            Timber.tag(TAG).e(e);
+            result.page = null;
+        }
+
+        return result;
     }
 
     public String fetchAsset(long networkId, String contractAddress, String tokenId)
@@ -410,4 +582,54 @@ public class OpenSeaService
     {
         return API_CHAIN_MAP.containsKey(chainId);
     }
+
+    public static class DiscoveryStats
+    {
+        public final long chainId;
+        public final long startTime;
+        private long endTime;
+        private int pages;
+        private int assets;
+
+        DiscoveryStats(long chainId, long startTime)
+        {
+            this.chainId = chainId;
+            this.startTime = startTime;
+        }
+
+        synchronized void addPage(int pageAssets, long time)
+        {
+            pages++;
+            assets += pageAssets;
+            endTime = time;
+        }
+
+        synchronized void finish(long time)
+        {
+            endTime = time;
+        }
+
+        public synchronized int getPages()
+        {
+            return pages;
+        }
+
+        public synchronized long getDuration()
+        {
+            return endTime - startTime;
+        }
+
+        public synchronized double getPagesPerSecond()
+        {
+            long elapsed = endTime - startTime;
+            return elapsed > 0 ? (pages * 1000.0) / elapsed : 0;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return "Chain " + chainId + ": " + assets + " NFTs in " + pages + " pages, " + getDuration() + "ms, "
+                    + String.format(Locale.ROOT, "%.2f", getPagesPerSecond()) + " pages/s";
+        }
+    }
 }
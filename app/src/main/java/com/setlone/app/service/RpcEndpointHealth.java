@@ -0,0 +1,226 @@
+package com.setlone.app.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Health model of a single RPC node, shared by every client which uses the node URL.
+ *
+ * Tracks an EWMA of response latency and error rate, keeps a window of recent latencies for the p95, and blocks the
+ * node for a while after it rate limits (429), returns server errors (5xx), or fails several times in a row (circuit
+ * breaker). Once a block expires the node is tried again; a further failure re-opens the circuit for longer.
+ */
+public class RpcEndpointHealth
+{
+    public enum State
+    {
+        HEALTHY,
+        BACKOFF,
+        OPEN
+    }
+
+    private static final double ALPHA = 0.2;
+    private static final int LATENCY_WINDOW = 64;
+    private static final int MIN_HEDGE_SAMPLES = 5;
+    private static final long MIN_HEDGE_DELAY_MS = 100;
+    private static final long MAX_HEDGE_DELAY_MS = 3000;
+    private static final int CIRCUIT_THRESHOLD = 3;
+    private static final long BASE_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60 * 1000;
+    private static final long CIRCUIT_OPEN_MS = 30 * 1000;
+    private static final long MAX_CIRCUIT_OPEN_MS = 5 * 60 * 1000;
+
+    private static final Map<String, RpcEndpointHealth> endpoints = new ConcurrentHashMap<>();
+
+    private final String url;
+    private double ewmaLatency = -1;
+    private double errorRate = 0;
+    private long requests = 0;
+    private long failures = 0;
+    private int consecutiveFailures = 0;
+    private int backoffStreak = 0;
+    private int circuitTrips = 0;
+    private long blockedUntil = 0;
+    private State blockState = State.HEALTHY;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int latencyCount = 0;
+    private int latencyIndex = 0;
+
+    public static class Stats
+    {
+        public final String url;
+        public final State state;
+        public final long ewmaLatencyMs;
+        public final long p95LatencyMs;
+        public final double errorRate;
+        public final long requests;
+        public final long failures;
+        public final long blockedForMs;
+
+        Stats(String url, State state, long ewmaLatencyMs, long p95LatencyMs, double errorRate, long requests, long failures, long blockedForMs)
+        {
+            this.url = url;
+            this.state = state;
+            this.ewmaLatencyMs = ewmaLatencyMs;
+            this.p95LatencyMs = p95LatencyMs;
+            this.errorRate = errorRate;
+            this.requests = requests;
+            this.failures = failures;
+            this.blockedForMs = blockedForMs;
+        }
+
+        @Override
+        public String toString()
+        {
+            return url + " " + state + " latency: " + ewmaLatencyMs + "ms p95: " + p95LatencyMs + "ms errors: "
+                    + Math.round(errorRate * 100) + "% (" + failures + "/" + requests + ")";
+        }
+    }
+
+    private RpcEndpointHealth(String url)
+    {
+        this.url = url;
+    }
+
+    public static RpcEndpointHealth get(String url)
+    {
+        RpcEndpointHealth health = endpoints.get(url);
+        if (health == null)
+        {
+            endpoints.putIfAbsent(url, new RpcEndpointHealth(url));
+            health = endpoints.get(url);
+        }
+        return health;
+    }
+
+    /**
+     * Orders node URLs for a request: available nodes first, best score first; nodes which are backing off or have an
+     * open circuit go last, soonest available first, so they're only used when everything else has failed.
+     * Nodes with equal scores (eg none tried yet) keep a random order to spread the load.
+     */
+    public static List<String> rank(String[] urls, Random random)
+    {
+        List<String> shuffled = new ArrayList<>(Arrays.asList(urls));
+        Collections.shuffle(shuffled, random);
+
+        long now = System.currentTimeMillis();
+        List<String> available = new ArrayList<>();
+        List<String> blocked = new ArrayList<>();
+        for (String url : shuffled)
+        {
+            if (get(url).isAvailable(now)) available.add(url);
+            else blocked.add(url);
+        }
+
+        Collections.sort(available, (a, b) -> Double.compare(get(a).score(), get(b).score()));
+        Collections.sort(blocked, (a, b) -> Long.compare(get(a).getBlockedUntil(), get(b).getBlockedUntil()));
+        available.addAll(blocked);
+        return available;
+    }
+
+    public synchronized boolean isAvailable(long now)
+    {
+        return now >= blockedUntil;
+    }
+
+    /**
+     * Lower is better. Untried nodes score zero so they get a first sample.
+     */
+    public synchronized double score()
+    {
+        if (ewmaLatency < 0) return 0;
+        return ewmaLatency * (1.0 + 4.0 * errorRate);
+    }
+
+    public synchronized void recordSuccess(long latencyMs)
+    {
+        requests++;
+        ewmaLatency = ewmaLatency < 0 ? latencyMs : ALPHA * latencyMs + (1 - ALPHA) * ewmaLatency;
+        errorRate = (1 - ALPHA) * errorRate;
+        latencies[latencyIndex] = latencyMs;
+        latencyIndex = (latencyIndex + 1) % LATENCY_WINDOW;
+        latencyCount = Math.min(LATENCY_WINDOW, latencyCount + 1);
+        consecutiveFailures = 0;
+        backoffStreak = 0;
+        circuitTrips = 0;
+        blockState = State.HEALTHY;
+    }
+
+    /**
+     * Connection failure, timeout or invalid response
+     */
+    public synchronized void recordFailure()
+    {
+        addFailure();
+        if (consecutiveFailures >= CIRCUIT_THRESHOLD)
+        {
+            long openTime = Math.min(MAX_CIRCUIT_OPEN_MS, CIRCUIT_OPEN_MS << Math.min(circuitTrips, 10));
+            circuitTrips++;
+            block(State.OPEN, openTime);
+        }
+    }
+
+    /**
+     * Node returned 429 or 5xx
+     *
+     * @param retryAfterMs time requested by the node's Retry-After header, or zero
+     */
+    public synchronized void recordBackoff(long retryAfterMs)
+    {
+        addFailure();
+        long backoff = retryAfterMs > 0 ? Math.min(MAX_BACKOFF_MS, retryAfterMs)
+                : Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(backoffStreak, 10));
+        backoffStreak++;
+        block(State.BACKOFF, backoff);
+    }
+
+    /**
+     * Delay before a hedged request is sent to the next node; zero if there aren't enough samples yet
+     */
+    public synchronized long getHedgeDelay()
+    {
+        if (latencyCount < MIN_HEDGE_SAMPLES) return 0;
+        return Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, p95()));
+    }
+
+    public synchronized Stats getStats()
+    {
+        long now = System.currentTimeMillis();
+        State state = isAvailable(now) ? State.HEALTHY : blockState;
+        return new Stats(url, state, Math.round(Math.max(ewmaLatency, 0)), p95(), errorRate, requests, failures,
+                Math.max(0, blockedUntil - now));
+    }
+
+    private synchronized long getBlockedUntil()
+    {
+        return blockedUntil;
+    }
+
+    private void addFailure()
+    {
+        requests++;
+        failures++;
+        consecutiveFailures++;
+        errorRate = ALPHA + (1 - ALPHA) * errorRate;
+    }
+
+    private void block(State state, long durationMs)
+    {
+        blockState = state;
+        blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + durationMs);
+    }
+
+    private long p95()
+    {
+        if (latencyCount == 0) return 0;
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(0.95 * latencyCount) - 1;
+        return sorted[Math.max(0, index)];
+    }
+}
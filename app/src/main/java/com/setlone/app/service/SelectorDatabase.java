@@ -0,0 +1,172 @@
+package com.setlone.app.service;
+
+import com.setlone.app.entity.TransactionDecoder;
+
+import org.web3j.utils.Numeric;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Function signatures by 4-byte selector, answered without the network.
+ *
+ * The table shipped as assets/selectors.bin is laid out to be searched as read: a magic number and count, the
+ * selectors sorted as ints, one more offset than there are selectors, then the UTF-8 signatures the offsets point
+ * into. A lookup is a binary search and one String. Signatures learned since (see SignatureLookupService) are held
+ * alongside the table; write() builds a new table from a list of signatures.
+ */
+public class SelectorDatabase
+{
+    public static final String ASSET_NAME = "selectors.bin";
+    private static final int MAGIC = 0x53454c31; //"SEL1"
+
+    private final int[] selectors;
+    private final int[] offsets;
+    private final byte[] signatures;
+    private final Map<Integer, String> learned = new ConcurrentHashMap<>();
+
+    public SelectorDatabase()
+    {
+        selectors = new int[0];
+        offsets = new int[1];
+        signatures = new byte[0];
+    }
+
+    public SelectorDatabase(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) throw new IOException("Not a selector table");
+        int count = data.readInt();
+        selectors = new int[count];
+        for (int i = 0; i < count; i++)
+        {
+            selectors[i] = data.readInt();
+        }
+        offsets = new int[count + 1];
+        for (int i = 0; i <= count; i++)
+        {
+            offsets[i] = data.readInt();
+        }
+        signatures = new byte[offsets[count]];
+        data.readFully(signatures);
+    }
+
+    /**
+     * @param selector selector, or a payload starting with one
+     * @return the signature, or null if it isn't known
+     */
+    public String lookup(String selector)
+    {
+        try
+        {
+            return lookup(toSelector(selector));
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    public String lookup(int selector)
+    {
+        int index = Arrays.binarySearch(selectors, selector);
+        if (index >= 0)
+        {
+            return new String(signatures, offsets[index], offsets[index + 1] - offsets[index], StandardCharsets.UTF_8);
+        }
+
+        return learned.get(selector);
+    }
+
+    /**
+     * @return true if the signature wasn't already known
+     */
+    public boolean learn(int selector, String signature)
+    {
+        if (Arrays.binarySearch(selectors, selector) >= 0) return false;
+        return !signature.equals(learned.put(selector, signature));
+    }
+
+    public int size()
+    {
+        return selectors.length + learned.size();
+    }
+
+    /**
+     * Passes each selector, as '0x' and 8 hex digits, with its signature
+     */
+    public void forEach(BiConsumer<String, String> action)
+    {
+        for (int i = 0; i < selectors.length; i++)
+        {
+            action.accept(toHex(selectors[i]),
+                    new String(signatures, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8));
+        }
+
+        for (Map.Entry<Integer, String> entry : learned.entrySet())
+        {
+            action.accept(toHex(entry.getKey()), entry.getValue());
+        }
+    }
+
+    /**
+     * @param payload selector, or a payload starting with one, with or without '0x'
+     * @throws NumberFormatException if it doesn't start with 8 hex digits
+     */
+    public static int toSelector(String payload)
+    {
+        String hex = Numeric.cleanHexPrefix(payload);
+        if (hex.length() < 8) throw new NumberFormatException("No selector in: " + payload);
+        return Integer.parseUnsignedInt(hex.substring(0, 8), 16);
+    }
+
+    public static String toHex(int selector)
+    {
+        String hex = Integer.toHexString(selector);
+        return "0x00000000".substring(0, 10 - hex.length()) + hex;
+    }
+
+    /**
+     * Writes a table of the given signatures; where two share a selector the first is kept
+     */
+    public static void write(Collection<String> signatureList, OutputStream out) throws IOException
+    {
+        Map<Integer, byte[]> sorted = new TreeMap<>();
+        for (String signature : signatureList)
+        {
+            int selector = toSelector(TransactionDecoder.buildMethodId(signature));
+            if (!sorted.containsKey(selector)) sorted.put(selector, signature.getBytes(StandardCharsets.UTF_8));
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(sorted.size());
+        for (int selector : sorted.keySet())
+        {
+            data.writeInt(selector);
+        }
+        int offset = 0;
+        for (byte[] signature : sorted.values())
+        {
+            data.writeInt(offset);
+            offset += signature.length;
+        }
+        data.writeInt(offset);
+        for (byte[] signature : sorted.values())
+        {
+            data.write(signature);
+        }
+        data.flush();
+    }
+}
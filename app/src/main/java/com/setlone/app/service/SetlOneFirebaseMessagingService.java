@@ -52,6 +52,13 @@ public class SetlOneFirebaseMessagingService extends FirebaseMessagingService
         super.onMessageReceived(remoteMessage);
         DataMessage.Body body = new Gson().fromJson(remoteMessage.getData().get("body"), DataMessage.Body.class);
 
+        // Incoming transfer to the active wallet: check that chain's balance straight away
+        if (body != null && body.to != null && body.to.equalsIgnoreCase(preferenceRepository.getCurrentWalletAddress()))
+        {
+            long chainId = parseChainId(body.chain);
+            if (chainId > 0) tokensService.markChainPending(chainId);
+        }
+
         // If recipient is active wallet and app is on background, fetch transactions
         if (body != null &&
             body.to.equalsIgnoreCase(preferenceRepository.getCurrentWalletAddress()) &&
@@ -60,4 +67,16 @@ public class SetlOneFirebaseMessagingService extends FirebaseMessagingService
             transactionsService.fetchTransactionsFromBackground();
         }
     }
+
+    private long parseChainId(String chain)
+    {
+        try
+        {
+            return chain != null ? Long.parseLong(chain.trim()) : 0;
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
 }
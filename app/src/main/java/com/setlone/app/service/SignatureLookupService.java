@@ -1,44 +1,154 @@
 package com.setlone.app.service;
 
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
 import com.setlone.app.C;
 import com.setlone.app.entity.Result;
-import com.setlone.app.util.JsonUtils;
+import com.setlone.app.entity.Transaction;
+import com.setlone.app.entity.TransactionDecoder;
+import com.setlone.app.repository.entity.RealmSelector;
 import com.google.gson.Gson;
 
-import org.web3j.utils.Numeric;
-
-import java.util.Objects;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.SingleSubject;
+import io.realm.Realm;
+import io.realm.RealmResults;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.ResponseBody;
 import timber.log.Timber;
 
+/**
+ * Names the function a payload calls.
+ *
+ * Selectors are looked up in the SelectorDatabase first, so known functions are named offline. Misses are gathered
+ * for a short window and resolved together on one background thread against the 4byte directory, one request per
+ * distinct selector however many callers asked for it. What is found is stored, added to the database and fed to
+ * Transaction.decoder, so the next decode of that function carries its name.
+ */
 public class SignatureLookupService
 {
+    private static final String TAG = "SigLookup";
     private static final String BASE_API_URL = "https://www.4byte.directory/api/v1/signatures/?hex_signature=";
+    private static final long BATCH_WINDOW = 50; //ms to gather misses before resolving them
+    private static final Gson gson = new Gson();
+
+    private static SignatureLookupService instance;
+
+    /**
+     * Where the shipped table is read from
+     */
+    public interface TableSource
+    {
+        InputStream open() throws Exception;
+    }
+
+    /**
+     * Where learned signatures are kept between runs
+     */
+    public interface Store
+    {
+        Map<String, String> load();
+
+        void save(Map<String, String> learned);
+    }
+
     private final OkHttpClient httpClient;
+    private final String apiUrl;
+    private final Store store;
+    private final Scheduler scheduler;
+    private final long batchWindow;
+    private final TransactionDecoder decoder;
+    private TableSource table; //until the table is read
+    private volatile SelectorDatabase database;
 
-    public SignatureLookupService()
+    private final Map<Integer, SingleSubject<String>> pending = new HashMap<>(); //waiting for the next batch; guarded by this
+    private final Map<Integer, SingleSubject<String>> resolving = new HashMap<>(); //in the batch being resolved; guarded by this
+    private boolean drainScheduled = false;
+    private final Set<Integer> unresolved = ConcurrentHashMap.newKeySet(); //not in the directory; not asked again this run
+
+    public static synchronized SignatureLookupService getInstance(Context context)
     {
-        this.httpClient = new OkHttpClient.Builder()
-            .connectTimeout(C.CONNECT_TIMEOUT, TimeUnit.SECONDS)
-            .writeTimeout(C.WRITE_TIMEOUT, TimeUnit.SECONDS)
-            .retryOnConnectionFailure(true)
-            .build();
+        if (instance == null)
+        {
+            Context appContext = context.getApplicationContext();
+            OkHttpClient client = new OkHttpClient.Builder()
+                    .connectTimeout(C.CONNECT_TIMEOUT, TimeUnit.SECONDS)
+                    .writeTimeout(C.WRITE_TIMEOUT, TimeUnit.SECONDS)
+                    .retryOnConnectionFailure(true)
+                    .build();
+            instance = new SignatureLookupService(client, BASE_API_URL,
+                    () -> appContext.getAssets().open(SelectorDatabase.ASSET_NAME),
+                    new RealmStore(new RealmManager()), Schedulers.io(), BATCH_WINDOW, Transaction.decoder);
+        }
+
+        return instance;
+    }
+
+    public SignatureLookupService(OkHttpClient httpClient, String apiUrl, TableSource table, Store store,
+                                  Scheduler scheduler, long batchWindow, TransactionDecoder decoder)
+    {
+        this.httpClient = httpClient;
+        this.apiUrl = apiUrl;
+        this.table = table;
+        this.store = store;
+        this.scheduler = scheduler;
+        this.batchWindow = batchWindow;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Reads the table and learned signatures in the background, so the decoder has the names before they're needed
+     */
+    public void preload()
+    {
+        scheduler.scheduleDirect(this::getDatabase);
     }
 
     public Single<String> getFunctionName(String payload)
     {
-        return Single.fromCallable(() -> getTextSignature(executeRequest(buildRequest(payload))));
+        int selector;
+        try
+        {
+            selector = SelectorDatabase.toSelector(payload);
+        }
+        catch (NumberFormatException e)
+        {
+            return Single.just("");
+        }
+
+        return Single.defer(() -> {
+            String signature = getDatabase().lookup(selector);
+            if (signature != null) return Single.just(signature);
+            if (unresolved.contains(selector)) return Single.just("");
+            return resolve(selector);
+        });
     }
 
     public String getTextSignature(String response)
     {
-        Result result = new Gson().fromJson(response, Result.class);
-        if (result != null)
+        Result result;
+        try
+        {
+            result = gson.fromJson(response, Result.class);
+        }
+        catch (Exception e)
+        {
+            return "";
+        }
+
+        if (result != null && result.getFirst() != null && result.getFirst().text_signature != null)
         {
             return result.getFirst().text_signature;
         }
@@ -46,45 +156,231 @@ public class SignatureLookupService
         return "";
     }
 
-    private String getFirstFourBytes(String payload)
+    SelectorDatabase getDatabase()
     {
-        return (Numeric.prependHexPrefix(payload)).substring(0, 10);
+        SelectorDatabase db = database;
+        if (db != null) return db;
+
+        synchronized (this)
+        {
+            if (database != null) return database;
+
+            try (InputStream in = table.open())
+            {
+                db = new SelectorDatabase(in);
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e, "Selector table not read");
+                db = new SelectorDatabase();
+            }
+            table = null;
+
+            for (Map.Entry<String, String> entry : store.load().entrySet())
+            {
+                try
+                {
+                    db.learn(SelectorDatabase.toSelector(entry.getKey()), entry.getValue());
+                }
+                catch (NumberFormatException e)
+                {
+                    //not a selector; skip it
+                }
+            }
+
+            db.forEach(this::addToDecoder);
+            Timber.tag(TAG).d("%d selectors", db.size());
+            database = db;
+            return db;
+        }
     }
 
-    private String executeRequest(Request request)
+    private synchronized Single<String> resolve(int selector)
     {
-        try (okhttp3.Response response = httpClient.newCall(request).execute())
+        SingleSubject<String> result = pending.get(selector);
+        if (result == null) result = resolving.get(selector);
+        if (result != null) return result;
+
+        result = SingleSubject.create();
+        pending.put(selector, result);
+        if (!drainScheduled)
         {
-            if (response.isSuccessful())
+            drainScheduled = true;
+            scheduler.scheduleDirect(this::drain, batchWindow, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    private void drain()
+    {
+        Map<Integer, SingleSubject<String>> batch;
+        synchronized (this)
+        {
+            batch = new HashMap<>(pending);
+            resolving.putAll(pending);
+            pending.clear();
+            drainScheduled = false;
+        }
+
+        Map<Integer, String> found = new HashMap<>();
+        try
+        {
+            for (int selector : batch.keySet())
             {
-                ResponseBody responseBody = response.body();
-                if (responseBody != null)
+                String response = executeRequest(buildRequest(selector));
+                if (response == null) continue; //not reached; may be asked again
+
+                String signature = getTextSignature(response);
+                if (isSignature(signature))
+                {
+                    found.put(selector, signature);
+                }
+                else
                 {
-                    return responseBody.string();
+                    unresolved.add(selector);
                 }
             }
-            else
+
+            learn(found);
+        }
+        catch (Exception e)
+        {
+            Timber.tag(TAG).w(e);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                resolving.keySet().removeAll(batch.keySet());
+            }
+
+            for (Map.Entry<Integer, SingleSubject<String>> entry : batch.entrySet())
+            {
+                String signature = found.get(entry.getKey());
+                entry.getValue().onSuccess(signature != null ? signature : "");
+            }
+        }
+    }
+
+    private void learn(Map<Integer, String> found)
+    {
+        if (found.isEmpty()) return;
+
+        SelectorDatabase db = getDatabase();
+        Map<String, String> learned = new HashMap<>();
+        for (Map.Entry<Integer, String> entry : found.entrySet())
+        {
+            if (db.learn(entry.getKey(), entry.getValue()))
+            {
+                String selector = SelectorDatabase.toHex(entry.getKey());
+                learned.put(selector, entry.getValue());
+                addToDecoder(selector, entry.getValue());
+            }
+        }
+
+        if (learned.size() > 0) store.save(learned);
+    }
+
+    private void addToDecoder(String selector, String signature)
+    {
+        //the decoder's argument parser doesn't read tuples; those signatures are kept for naming only
+        if (decoder != null && isSignature(signature) && !hasTuple(signature))
+        {
+            decoder.addScanFunction(signature, selector);
+        }
+    }
+
+    // FunctionData needs a name and an argument list
+    private static boolean isSignature(String signature)
+    {
+        return signature != null && signature.indexOf('(') > 0 && signature.endsWith(")");
+    }
+
+    private static boolean hasTuple(String signature)
+    {
+        return signature.indexOf('(', signature.indexOf('(') + 1) >= 0;
+    }
+
+    @Nullable
+    private String executeRequest(Request request)
+    {
+        try (okhttp3.Response response = httpClient.newCall(request).execute())
+        {
+            ResponseBody responseBody = response.body();
+            if (response.isSuccessful() && responseBody != null)
             {
-                return Objects.requireNonNull(response.body()).string();
+                return responseBody.string();
             }
         }
         catch (Exception e)
         {
-            Timber.e(e);
-            return e.getMessage();
+            Timber.tag(TAG).w(e);
         }
 
-        return JsonUtils.EMPTY_RESULT;
+        return null;
     }
 
-    private Request buildRequest(String payload)
+    private Request buildRequest(int selector)
     {
         Request.Builder builder = new Request.Builder()
-            .url(BASE_API_URL + getFirstFourBytes(payload))
+            .url(apiUrl + SelectorDatabase.toHex(selector))
             .header("User-Agent", "Chrome/74.0.3729.169")
             .addHeader("Content-Type", "application/json")
             .get();
 
         return builder.build();
     }
+
+    private static class RealmStore implements Store
+    {
+        private final RealmManager realmManager;
+
+        RealmStore(RealmManager realmManager)
+        {
+            this.realmManager = realmManager;
+        }
+
+        @Override
+        public Map<String, String> load()
+        {
+            Map<String, String> learned = new HashMap<>();
+            try (Realm realm = realmManager.getWalletDataRealmInstance())
+            {
+                RealmResults<RealmSelector> stored = realm.where(RealmSelector.class).findAll();
+                for (RealmSelector selector : stored)
+                {
+                    learned.put(selector.getSelector(), selector.getSignature());
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e);
+            }
+
+            return learned;
+        }
+
+        @Override
+        public void save(Map<String, String> learned)
+        {
+            try (Realm realm = realmManager.getWalletDataRealmInstance())
+            {
+                realm.executeTransaction(r -> {
+                    for (Map.Entry<String, String> entry : learned.entrySet())
+                    {
+                        RealmSelector stored = r.where(RealmSelector.class)
+                                .equalTo("selector", entry.getKey())
+                                .findFirst();
+                        if (stored == null) stored = r.createObject(RealmSelector.class, entry.getKey());
+                        stored.setSignature(entry.getValue());
+                        stored.setUpdated(System.currentTimeMillis());
+                    }
+                });
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e);
+            }
+        }
+    }
 }
@@ -29,7 +29,6 @@ import android.text.format.DateUtils;
 
 import androidx.annotation.Nullable;
 
-import com.setlone.app.entity.ticker.TNDiscoveryTicker;
 import com.setlone.app.entity.tokendata.TokenTicker;
 import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokens.TokenCardMeta;
@@ -44,7 +43,6 @@ import com.setlone.app.util.BalanceUtils;
 import com.setlone.token.entity.ContractAddress;
 import com.setlone.token.entity.EthereumReadBuffer;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.web3j.abi.FunctionEncoder;
 import org.web3j.abi.FunctionReturnDecoder;
@@ -69,6 +67,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.TimeUnit;
@@ -92,11 +91,6 @@ public class TickerService
     private static final String CHAIN_IDS = "[CHAIN_ID]";
     private static final String CURRENCY_TOKEN = "[CURRENCY]";
     private static final String COINGECKO_CHAIN_CALL = "https://api.coingecko.com/api/v3/simple/price?ids=" + CHAIN_IDS + "&vs_currencies=" + CURRENCY_TOKEN + "&include_24hr_change=true";
-    private static final String COINGECKO_API = String.format("https://api.coingecko.com/api/v3/simple/token_price/%s?contract_addresses=%s&vs_currencies=%s&include_24hr_change=true",
-            CHAIN_IDS, CONTRACT_ADDR, CURRENCY_TOKEN);
-    private static final String TOKEN_DISCOVERY_API = String.format("https://api.token-discovery.tokenscript.org/get-raw-token-price?blockchain=evm&smartContract=%s&chain=%s",
-            CONTRACT_ADDR, CHAIN_IDS);
-    private static final int    COINGECKO_MAX_FETCH = 10;
     private static final String DEXGURU_API = "https://api.dex.guru/v1/tokens/" + CONTRACT_ADDR + "-" + CHAIN_IDS;
     private static final String CURRENCY_CONV = "currency";
     private static final boolean ALLOW_UNVERIFIED_TICKERS = false; //allows verified:false tickers from DEX.GURU. Not recommended
@@ -106,6 +100,7 @@ public class TickerService
     private final OkHttpClient httpClient;
     private final PreferenceRepositoryType sharedPrefs;
     private final TokenLocalSource localSource;
+    private final BulkTickerFetcher bulkTickerFetcher;
     private final Map<Long, TokenTicker> ethTickers = new ConcurrentHashMap<>();
     private double currentConversionRate = 0.0;
     private static String currentCurrencySymbolTxt;
@@ -113,6 +108,7 @@ public class TickerService
     private static final ConcurrentLinkedDeque<TokenCardMeta> tokenCheckQueue = new ConcurrentLinkedDeque<>();
     private static final ConcurrentLinkedDeque<ContractAddress> secondaryCheckQueue = new ConcurrentLinkedDeque<>();
     private static final Map<String, TokenCardMeta> dexGuruQuery = new ConcurrentHashMap<>();
+    private static final Set<String> tickerFetchInFlight = ConcurrentHashMap.newKeySet();
     private static long lastTickerUpdate;
     private static int keyCycle = 0;
 
@@ -130,6 +126,7 @@ public class TickerService
         this.httpClient = httpClient;
         this.sharedPrefs = sharedPrefs;
         this.localSource = localSource;
+        this.bulkTickerFetcher = new BulkTickerFetcher(httpClient, this::addAPIHeader, coinGeckoChainIdToAPIName);
 
         //deleteTickers();
 
@@ -307,7 +304,7 @@ public class TickerService
             }
         }
 
-        return dexGuruQuery.containsKey(tcm.tokenId);
+        return dexGuruQuery.containsKey(tcm.tokenId) || tickerFetchInFlight.contains(tcm.tokenId);
     }
 
     private List<TokenCardMeta> nextTickerSet(int count)
@@ -376,90 +373,83 @@ public class TickerService
         }
     }
 
-    private int beginTickerCheck()
+    /**
+     * Price everything in the check queue in one bulk pass. Anything queued while the pass runs is picked up by the
+     * next pass, which starts as soon as this one finishes.
+     */
+    private synchronized int beginTickerCheck()
     {
-        if (!tokenCheckQueue.isEmpty() && (erc20TickerCheck == null || erc20TickerCheck.isDisposed()))
+        if (tokenCheckQueue.isEmpty() || (erc20TickerCheck != null && !erc20TickerCheck.isDisposed()))
         {
-            erc20TickerCheck = Observable.interval(2, 2, TimeUnit.SECONDS)
-                    .doOnNext(l -> checkTokenDiscoveryTickers()).subscribe();
+            return tokenCheckQueue.size() + tickerFetchInFlight.size();
         }
 
-        return tokenCheckQueue.size();
+        List<TokenCardMeta> toPrice = new ArrayList<>();
+        TokenCardMeta tcm;
+        while ((tcm = tokenCheckQueue.pollFirst()) != null)
+        {
+            if (tickerFetchInFlight.add(tcm.tokenId)) toPrice.add(tcm);
+        }
+        if (toPrice.isEmpty()) return 0;
+
+        final long startTime = System.currentTimeMillis();
+        erc20TickerCheck = bulkTickerFetcher.fetch(toPrice, currentCurrencySymbolTxt, currentConversionRate)
+                .subscribeOn(Schedulers.io())
+                .observeOn(Schedulers.io())
+                .doOnSuccess(this::storeERC20Tickers)
+                .subscribe(tickers -> {
+                            Timber.d("Priced %d tokens in %dms", toPrice.size(), System.currentTimeMillis() - startTime);
+                            tickerCheckComplete(toPrice, true);
+                        },
+                        e -> {
+                            Timber.e(e);
+                            tickerCheckComplete(toPrice, false);
+                        });
+
+        return toPrice.size();
     }
 
-    private void stopTickerCheck()
+    /**
+     * Not called when the check is disposed, so stopTickerCheck isn't followed by another pass
+     */
+    private synchronized void tickerCheckComplete(List<TokenCardMeta> priced, boolean priceQueued)
     {
-        if (erc20TickerCheck != null && !erc20TickerCheck.isDisposed())
+        for (TokenCardMeta tcm : priced)
         {
-            erc20TickerCheck.dispose();
-            erc20TickerCheck = null;
+            tickerFetchInFlight.remove(tcm.tokenId);
         }
+        erc20TickerCheck = null;
+        if (priceQueued) beginTickerCheck(); //after an error the queue waits for the next scheduled check
     }
 
-    private long getChainId(List<TokenCardMeta> erc20Tokens)
+    //one ticker write per chain
+    private void storeERC20Tickers(Map<Long, Map<String, TokenTicker>> chainTickers)
     {
-        long chainId = 0;
-        if (!erc20Tokens.isEmpty())
+        for (Map.Entry<Long, Map<String, TokenTicker>> entry : chainTickers.entrySet())
         {
-            chainId = erc20Tokens.get(0).getChain();
+            if (!entry.getValue().isEmpty()) localSource.updateERC20Tickers(entry.getKey(), entry.getValue());
         }
-
-        return chainId;
     }
 
-    //call API using a Single and return a mapping of TokenTickers to a separate method
-    private Single<Map<String, TokenTicker>> fetchTickers(TokenCardMeta tcm)
+    private synchronized void stopTickerCheck()
     {
-        return Single.fromCallable(() -> {
-            final String apiChainName = coinGeckoChainIdToAPIName.get(tcm.getChain());
-            Map<String, TokenTicker> tickersMap = new HashMap<>(); //empty array of tickers
-
-            //fetch the ticker and process the result
-            Request.Builder buildRequestTN = new Request.Builder()
-                    .url(TOKEN_DISCOVERY_API.replace(CHAIN_IDS, apiChainName).replace(CONTRACT_ADDR, tcm.getContractAddress().address)).get();
-
-            try (okhttp3.Response response = httpClient.newCall(buildRequestTN.build())
-                    .execute())
-            {
-                int code = response.code();
-                if (code / 100 != 2)
-                {
-                    return tickersMap;
-                }
-
-                JSONArray result = new JSONArray(response.body().string());
-                TNDiscoveryTicker.toTokenTickers(tickersMap, result, currentCurrencySymbolTxt, currentConversionRate);
-            }
-            catch (Exception e)
-            {
-                Timber.e(e);
-            }
-
-            return tickersMap;
-        });
+        if (erc20TickerCheck != null && !erc20TickerCheck.isDisposed())
+        {
+            erc20TickerCheck.dispose();
+            erc20TickerCheck = null;
+        }
+        tickerFetchInFlight.clear(); //the stopped check won't report back; let these tokens be queued again
     }
 
-    private void checkTokenDiscoveryTickers()
+    private long getChainId(List<TokenCardMeta> erc20Tokens)
     {
-        TokenCardMeta thisTCM = tokenCheckQueue.pollFirst();
-        if (thisTCM == null)
+        long chainId = 0;
+        if (!erc20Tokens.isEmpty())
         {
-            //terminate the check cycle
-            if (erc20TickerCheck != null && !erc20TickerCheck.isDisposed()) erc20TickerCheck.dispose();
-            return;
+            chainId = erc20Tokens.get(0).getChain();
         }
 
-        fetchTickers(thisTCM)
-                .subscribeOn(Schedulers.io())
-                .observeOn(Schedulers.io())
-                .subscribe(tickers -> {
-                    //process ticker
-                    if (!tickers.isEmpty())
-                    {
-                        // update all the received tickers, tickers is an array of TokenTicker, how to convert this to a map?
-                        localSource.updateERC20Tickers(thisTCM.getChain(), tickers);
-                    }
-                }).isDisposed();
+        return chainId;
     }
 
     private void checkPeggedTickers(long chainId, TokenTicker ticker)
@@ -738,6 +728,7 @@ public class TickerService
     private void resetTickerUpdate()
     {
         //canUpdate.clear();
+        stopTickerCheck(); //a running check is priced at the old conversion rate
         ethTickers.clear();
         tokenCheckQueue.clear();
         dexGuruQuery.clear();
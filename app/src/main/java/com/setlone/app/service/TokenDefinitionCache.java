@@ -0,0 +1,195 @@
+package com.setlone.app.service;
+
+import com.setlone.token.tools.TokenDefinition;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed TokenScript definitions, least recently used first out.
+ *
+ * Entries are keyed by script file hash and the contract the script was loaded for ('address-chainId'), so a changed
+ * script file never returns the old parse. The cache is bounded both by entry count and by the size of the script
+ * sources held, since a definition keeps its views (HTML and JS) in memory. Lookups only hold the lock for the map
+ * access; parsing is done by the caller outside it.
+ */
+public class TokenDefinitionCache
+{
+    public static final int MAX_ENTRIES = 24;
+    public static final long MAX_WEIGHT = Math.min(4L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 64); // bytes of script source
+    public static final long DEFAULT_WEIGHT = 64 * 1024;  // when the source size isn't known, eg bundled assets
+
+    private static class Entry
+    {
+        final String fileHash;
+        final String contractKey;
+        final TokenDefinition definition;
+        final long weight;
+
+        Entry(String fileHash, String contractKey, TokenDefinition definition, long weight)
+        {
+            this.fileHash = fileHash;
+            this.contractKey = contractKey;
+            this.definition = definition;
+            this.weight = weight;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // access order
+    private final Map<String, String> contractHash = new HashMap<>(); // contract key -> hash of the latest entry
+    private long weight;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public TokenDefinitionCache()
+    {
+        this(MAX_ENTRIES, MAX_WEIGHT);
+    }
+
+    public TokenDefinitionCache(int maxEntries, long maxWeight)
+    {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    private static String key(String fileHash, String contractKey)
+    {
+        return fileHash + "|" + contractKey.toLowerCase();
+    }
+
+    /**
+     * @return definition parsed from the file with this hash for the contract, or null
+     */
+    public synchronized TokenDefinition get(String fileHash, String contractKey)
+    {
+        if (fileHash == null || contractKey == null)
+        {
+            misses++;
+            return null;
+        }
+
+        Entry entry = entries.get(key(fileHash, contractKey));
+        if (entry != null) hits++;
+        else misses++;
+        return entry != null ? entry.definition : null;
+    }
+
+    /**
+     * For callers which only have the script file and not its hash; returns the latest definition cached for the contract
+     */
+    public synchronized TokenDefinition getForContract(String contractKey)
+    {
+        String fileHash = contractKey != null ? contractHash.get(contractKey.toLowerCase()) : null;
+        if (fileHash == null)
+        {
+            misses++;
+            return null;
+        }
+
+        return get(fileHash, contractKey);
+    }
+
+    /**
+     * @param sourceSize size of the script source in bytes, or 0 if not known
+     */
+    public synchronized void put(String fileHash, String contractKey, TokenDefinition definition, long sourceSize)
+    {
+        if (fileHash == null || contractKey == null || definition == null) return;
+
+        Entry entry = new Entry(fileHash, contractKey.toLowerCase(), definition, sourceSize > 0 ? sourceSize : DEFAULT_WEIGHT);
+        Entry old = entries.put(key(fileHash, contractKey), entry);
+        if (old != null) weight -= old.weight;
+        weight += entry.weight;
+        contractHash.put(entry.contractKey, fileHash);
+
+        //evict least recently used, but always keep the entry just added
+        Iterator<Entry> itr = entries.values().iterator();
+        while ((entries.size() > maxEntries || weight > maxWeight) && itr.hasNext())
+        {
+            Entry eldest = itr.next();
+            if (eldest == entry) break;
+            itr.remove();
+            removed(eldest);
+            evictions++;
+        }
+    }
+
+    /**
+     * Drop every definition parsed from the file with this hash; call when its script data changes or is deleted
+     */
+    public synchronized void invalidate(String fileHash)
+    {
+        Iterator<Entry> itr = entries.values().iterator();
+        while (itr.hasNext())
+        {
+            Entry entry = itr.next();
+            if (entry.fileHash.equals(fileHash))
+            {
+                itr.remove();
+                removed(entry);
+            }
+        }
+    }
+
+    /**
+     * Drop the definitions held for a contract; call when its script data entry is rewritten
+     */
+    public synchronized void invalidateContract(String contractKey)
+    {
+        String contract = contractKey.toLowerCase();
+        Iterator<Entry> itr = entries.values().iterator();
+        while (itr.hasNext())
+        {
+            Entry entry = itr.next();
+            if (entry.contractKey.equals(contract))
+            {
+                itr.remove();
+                removed(entry);
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        contractHash.clear();
+        weight = 0;
+    }
+
+    private void removed(Entry entry)
+    {
+        weight -= entry.weight;
+        if (entry.fileHash.equals(contractHash.get(entry.contractKey))) contractHash.remove(entry.contractKey);
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized long getWeight()
+    {
+        return weight;
+    }
+
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+}
@@ -0,0 +1,427 @@
+package com.setlone.app.service;
+
+import android.text.format.DateUtils;
+
+import com.setlone.app.entity.ContractType;
+import com.setlone.app.entity.tokens.TokenCardMeta;
+import com.setlone.app.repository.TokensRealmSource;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * In-memory index of the tokens awaiting a balance check, so picking the next token doesn't need a database pass.
+ *
+ * Each token is scheduled at the time its update cutoff expires. Once due it moves into a bucket keyed by its update
+ * factor; within a bucket the token checked longest ago has the highest score (factor * time since last check), so the
+ * next token is the best of the bucket heads. There are only a handful of distinct factors, so selection is
+ * O(log n) and runs without touching Realm.
+ *
+ * Factors and cutoffs follow the rules TokensService has always used. They are fixed when a token is scheduled or
+ * falls due; anything which changes the rules for all tokens (focus token, pending chain) must call {@link #reschedule}.
+ * The index is fed from a full listing at the start of the update cycle, then kept current from Realm change
+ * notifications and balance checks.
+ */
+public class TokenUpdateIndex
+{
+    public interface Policy
+    {
+        /**
+         * @return database key of the token the user is looking at, or null
+         */
+        String getFocusKey();
+        boolean isChainPending(long chainId);
+    }
+
+    private static final int GROUP_BASE = 0;      // chain tokens
+    private static final int GROUP_FUNGIBLE = 1;  // enabled, non NFT tokens
+    private static final int GROUP_OTHER = 2;     // NFTs and hidden tokens; not checked until the wallet has synced
+    private static final int GROUP_COUNT = 3;
+
+    private static class Entry
+    {
+        final String key;
+        TokenCardMeta meta;
+        long checkTime;     // last time the balance was checked, or the realm update time
+        long realmUpdate;   // last time the token was written
+        long dueAt;
+        float factor;
+        int group;
+        boolean due;
+        boolean scheduled;
+
+        Entry(String key)
+        {
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<Entry> BY_DUE_TIME = (a, b) -> {
+        int cmp = Long.compare(a.dueAt, b.dueAt);
+        return cmp != 0 ? cmp : a.key.compareTo(b.key);
+    };
+
+    private static final Comparator<Entry> BY_CHECK_TIME = (a, b) -> {
+        int cmp = Long.compare(a.checkTime, b.checkTime);
+        return cmp != 0 ? cmp : a.key.compareTo(b.key);
+    };
+
+    private static class Group
+    {
+        final TreeSet<Entry> waiting = new TreeSet<>(BY_DUE_TIME);
+        final TreeMap<Float, TreeSet<Entry>> dueBuckets = new TreeMap<>();
+    }
+
+    private final Policy policy;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Group[] groups = new Group[GROUP_COUNT];
+
+    public TokenUpdateIndex(Policy policy)
+    {
+        this.policy = policy;
+        for (int i = 0; i < GROUP_COUNT; i++)
+        {
+            groups[i] = new Group();
+        }
+    }
+
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    public synchronized void clear()
+    {
+        entries.clear();
+        for (Group group : groups)
+        {
+            group.waiting.clear();
+            group.dueBuckets.clear();
+        }
+    }
+
+    /**
+     * Replace the index contents with a full listing from the database, keeping the check times of known tokens
+     */
+    public synchronized void rebuild(TokenCardMeta[] metas, long currentTime)
+    {
+        Map<String, Entry> previous = new HashMap<>(entries);
+        clear();
+        for (TokenCardMeta meta : metas)
+        {
+            Entry old = previous.get(key(meta));
+            putEntry(meta, old != null ? old.checkTime : 0, currentTime);
+        }
+    }
+
+    /**
+     * Add or refresh a single token, eg from a Realm change notification
+     */
+    public synchronized void put(TokenCardMeta meta, long currentTime)
+    {
+        Entry old = entries.get(key(meta));
+        if (old != null) detach(old);
+        putEntry(meta, old != null ? old.checkTime : 0, currentTime);
+    }
+
+    public synchronized void remove(long chainId, String address)
+    {
+        Entry entry = entries.remove(TokensRealmSource.databaseKey(chainId, address));
+        if (entry != null) detach(entry);
+    }
+
+    /**
+     * Record a balance check, which pushes the token to the back of the queue
+     */
+    public synchronized void markChecked(long chainId, String address, long checkTime)
+    {
+        Entry entry = entries.get(TokensRealmSource.databaseKey(chainId, address));
+        if (entry != null) markChecked(entry, checkTime);
+    }
+
+    /**
+     * Recalculate every token's cutoff and factor; call when the focus token or pending chains change
+     */
+    public synchronized void reschedule(long currentTime)
+    {
+        for (Group group : groups)
+        {
+            group.waiting.clear();
+            group.dueBuckets.clear();
+        }
+        for (Entry entry : entries.values())
+        {
+            entry.scheduled = false;
+            entry.due = false;
+            schedule(entry, currentTime);
+        }
+    }
+
+    /**
+     * Selects the token most in need of a balance check and marks it checked.
+     *
+     * @param currentTime time now
+     * @param isSynced true once the initial chain/ERC20 pass is complete; NFTs and hidden tokens wait until then
+     * @param syncStart start time of the current sync; tokens checked since then are skipped until synced
+     * @param appHasFocus if false only chain tokens and the focus token are checked
+     * @return the token meta, or null if nothing is due
+     */
+    public synchronized TokenCardMeta next(long currentTime, boolean isSynced, long syncStart, boolean appHasFocus)
+    {
+        Entry best = null;
+        float bestScore = 0;
+
+        for (int g = 0; g < GROUP_COUNT; g++)
+        {
+            if (g == GROUP_OTHER && !isSynced) continue;
+            if (g != GROUP_BASE && !appHasFocus) continue;
+            Group group = groups[g];
+            promote(group, currentTime);
+
+            for (Map.Entry<Float, TreeSet<Entry>> bucket : group.dueBuckets.entrySet())
+            {
+                Entry head = bucket.getValue().first();
+                if (!isSynced && head.checkTime > syncStart) continue; //head is the oldest, so all in this bucket are newer
+                float score = bucket.getKey() * (float) (currentTime - head.checkTime);
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    best = head;
+                }
+            }
+        }
+
+        if (!appHasFocus)
+        {
+            best = checkFocusEntry(best, bestScore, currentTime, isSynced, syncStart);
+        }
+
+        if (best == null) return null;
+
+        markChecked(best, currentTime);
+        return best.meta;
+    }
+
+    /**
+     * Earliest time {@link #next} could select a token, with the same arguments; lets the caller sleep until then.
+     *
+     * @return currentTime if a token is due now, Long.MAX_VALUE if nothing is scheduled
+     */
+    public synchronized long getNextDueTime(long currentTime, boolean isSynced, long syncStart, boolean appHasFocus)
+    {
+        long nextDue = Long.MAX_VALUE;
+        for (int g = 0; g < GROUP_COUNT; g++)
+        {
+            if (g == GROUP_OTHER && !isSynced) continue;
+            if (g != GROUP_BASE && !appHasFocus) continue;
+            Group group = groups[g];
+            promote(group, currentTime);
+
+            for (TreeSet<Entry> bucket : group.dueBuckets.values())
+            {
+                if (isSynced || bucket.first().checkTime <= syncStart) return currentTime;
+            }
+
+            if (!group.waiting.isEmpty())
+            {
+                nextDue = Math.min(nextDue, group.waiting.first().dueAt + 1);
+            }
+        }
+
+        if (!appHasFocus)
+        {
+            String focusKey = policy.getFocusKey();
+            Entry focus = focusKey != null ? entries.get(focusKey) : null;
+            if (focus != null && focus.group != GROUP_BASE && (isSynced || focus.group != GROUP_OTHER))
+            {
+                promote(groups[focus.group], currentTime);
+                if (focus.due && (isSynced || focus.checkTime <= syncStart)) return currentTime;
+                else if (focus.scheduled) nextDue = Math.min(nextDue, focus.dueAt + 1);
+            }
+        }
+
+        return nextDue;
+    }
+
+    /**
+     * Tokens on the chain which are due for a check, best first. Used to fill a batched balance read
+     */
+    public synchronized List<TokenCardMeta> getDue(long chainId, long currentTime, boolean isSynced, int limit)
+    {
+        List<TokenCardMeta> due = new ArrayList<>();
+        for (int g = 0; g < GROUP_COUNT; g++)
+        {
+            if (g == GROUP_OTHER && !isSynced) continue;
+            Group group = groups[g];
+            promote(group, currentTime);
+            for (TreeSet<Entry> bucket : group.dueBuckets.descendingMap().values())
+            {
+                for (Entry entry : bucket)
+                {
+                    if (due.size() >= limit) return due;
+                    if (entry.meta.getChain() == chainId) due.add(entry.meta);
+                }
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Number of chain and ERC20 tokens not yet checked since the sync started
+     */
+    public synchronized int countUnsynced(long syncStart)
+    {
+        int unSynced = 0;
+        for (Entry entry : entries.values())
+        {
+            TokenCardMeta meta = entry.meta;
+            if ((meta.type == ContractType.ERC20 || meta.type == ContractType.ETHEREUM)
+                    && entry.checkTime < syncStart && meta.isEnabled && meta.hasValidName())
+            {
+                unSynced++;
+            }
+        }
+        return unSynced;
+    }
+
+    public synchronized TokenCardMeta[] getMetas()
+    {
+        TokenCardMeta[] metas = new TokenCardMeta[entries.size()];
+        int i = 0;
+        for (Entry entry : entries.values())
+        {
+            metas[i++] = entry.meta;
+        }
+        return metas;
+    }
+
+    //out of focus the focus token is still checked along with the chain tokens
+    private Entry checkFocusEntry(Entry best, float bestScore, long currentTime, boolean isSynced, long syncStart)
+    {
+        String focusKey = policy.getFocusKey();
+        Entry focus = focusKey != null ? entries.get(focusKey) : null;
+        if (focus == null || focus.group == GROUP_BASE) return best;
+        if (focus.group == GROUP_OTHER && !isSynced) return best;
+        promote(groups[focus.group], currentTime);
+        if (!focus.due || (!isSynced && focus.checkTime > syncStart)) return best;
+
+        float score = focus.factor * (float) (currentTime - focus.checkTime);
+        return score > bestScore ? focus : best;
+    }
+
+    private void markChecked(Entry entry, long checkTime)
+    {
+        detach(entry);
+        entry.checkTime = checkTime;
+        entry.meta.lastUpdate = checkTime;
+        schedule(entry, checkTime);
+    }
+
+    private void putEntry(TokenCardMeta meta, long knownCheckTime, long currentTime)
+    {
+        Entry entry = new Entry(key(meta));
+        entry.realmUpdate = meta.lastUpdate;
+        entry.checkTime = Math.max(meta.lastUpdate, knownCheckTime);
+        meta.lastTxUpdate = entry.realmUpdate;
+        meta.lastUpdate = entry.checkTime;
+        entry.meta = meta;
+        entries.put(entry.key, entry);
+        schedule(entry, currentTime);
+    }
+
+    private void schedule(Entry entry, long currentTime)
+    {
+        TokenCardMeta meta = entry.meta;
+        entry.group = meta.isEthereum() ? GROUP_BASE : (meta.isEnabled && !meta.isNFT() ? GROUP_FUNGIBLE : GROUP_OTHER);
+        entry.dueAt = entry.checkTime + calculateCutoff(entry, currentTime);
+        entry.due = false;
+        entry.scheduled = true;
+        groups[entry.group].waiting.add(entry);
+    }
+
+    /**
+     * Move tokens whose cutoff has passed into the due buckets
+     */
+    private void promote(Group group, long currentTime)
+    {
+        while (!group.waiting.isEmpty() && group.waiting.first().dueAt < currentTime)
+        {
+            Entry entry = group.waiting.pollFirst();
+            entry.scheduled = false;
+            entry.factor = calculateFactor(entry, currentTime);
+            if (entry.factor <= 0) continue; //never selected, eg token with no name yet. Picked up again on the next put
+            entry.due = true;
+            TreeSet<Entry> bucket = group.dueBuckets.get(entry.factor);
+            if (bucket == null)
+            {
+                bucket = new TreeSet<>(BY_CHECK_TIME);
+                group.dueBuckets.put(entry.factor, bucket);
+            }
+            bucket.add(entry);
+        }
+    }
+
+    private void detach(Entry entry)
+    {
+        Group group = groups[entry.group];
+        if (entry.scheduled)
+        {
+            group.waiting.remove(entry);
+            entry.scheduled = false;
+        }
+        if (entry.due)
+        {
+            TreeSet<Entry> bucket = group.dueBuckets.get(entry.factor);
+            if (bucket != null)
+            {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) group.dueBuckets.remove(entry.factor);
+            }
+            entry.due = false;
+        }
+    }
+
+    private boolean isStale(Entry entry, long currentTime)
+    {
+        return !entry.meta.isEthereum() && entry.realmUpdate > 0 && (currentTime - entry.realmUpdate) > DateUtils.DAY_IN_MILLIS;
+    }
+
+    private boolean isFocusToken(Entry entry)
+    {
+        return entry.key.equals(policy.getFocusKey());
+    }
+
+    //cutoff, ie minimum time between checks
+    private long calculateCutoff(Entry entry, long currentTime)
+    {
+        TokenCardMeta meta = entry.meta;
+        if (isFocusToken(entry)) return 15 * DateUtils.SECOND_IN_MILLIS; //focus token when erc20 or chain clicked on in wallet
+        else if (meta.isEthereum() && policy.isChainPending(meta.getChain())) return 15 * DateUtils.SECOND_IN_MILLIS;
+        else if (meta.isEthereum()) return 20 * DateUtils.SECOND_IN_MILLIS; //update check limit for base chains is 20 seconds
+        else if (policy.getFocusKey() != null) return 60 * DateUtils.SECOND_IN_MILLIS; //update other tokens at 1 minute cycle while looking at token detail
+        else if (isStale(entry, currentTime)) return 120 * DateUtils.SECOND_IN_MILLIS;
+        else return meta.calculateUpdateFrequency(); //normal minimum update frequency for token 30 seconds, 5 minutes for hidden token
+    }
+
+    //multiplier of the time since last check, which gives the update priority
+    private float calculateFactor(Entry entry, long currentTime)
+    {
+        TokenCardMeta meta = entry.meta;
+        if (isFocusToken(entry)) return 3.0f;
+        else if (meta.isEthereum() && policy.isChainPending(meta.getChain())) return 4.0f; //chain has a recent transaction
+        else if (!meta.isEthereum() && policy.getFocusKey() != null) return 0.1f;
+
+        float factor = meta.calculateBalanceUpdateWeight(currentTime) * (meta.isEnabled ? 1 : 0.25f);
+        return isStale(entry, currentTime) ? 0.5f * factor : factor;
+    }
+
+    private static String key(TokenCardMeta meta)
+    {
+        return meta.tokenId;
+    }
+}
@@ -30,10 +30,12 @@ import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.entity.tokens.TokenCardMeta;
 import com.setlone.app.entity.tokens.TokenFactory;
 import com.setlone.app.entity.tokens.TokenInfo;
+import com.setlone.app.repository.BatchBalanceEngine;
 import com.setlone.app.repository.EthereumNetworkBase;
 import com.setlone.app.repository.EthereumNetworkRepository;
 import com.setlone.app.repository.EthereumNetworkRepositoryType;
 import com.setlone.app.repository.TokenRepositoryType;
+import com.setlone.app.repository.entity.RealmToken;
 import com.setlone.app.util.Utils;
 import com.setlone.token.entity.ContractAddress;
 
@@ -47,6 +49,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -57,8 +60,11 @@ import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
 import io.reactivex.schedulers.Schedulers;
+import io.realm.OrderedCollectionChangeSet;
 import io.realm.Realm;
+import io.realm.RealmResults;
 import okhttp3.OkHttpClient;
 import timber.log.Timber;
 
@@ -71,7 +77,18 @@ public class TokensService
 
     private static final Map<Long, Long> pendingChainMap = new ConcurrentHashMap<>();
     private final ConcurrentLinkedDeque<Token> tokenStoreList = new ConcurrentLinkedDeque<>(); //used to hold tokens that will be stored
-    private final Map<String, Long> pendingTokenMap = new ConcurrentHashMap<>(); //used to determine which token to update next
+    private final Map<Long, Disposable> openSeaQueries = new ConcurrentHashMap<>(); //NFT discovery in progress, by chain
+    private static final long INDEX_REFRESH_INTERVAL = DateUtils.MINUTE_IN_MILLIS; //full re-read of the update index as a backstop
+    private final TokenUpdateIndex updateIndex; //used to determine which token to update next
+    private final BalanceUpdateScheduler balanceScheduler; //runs the balance checks as they fall due
+    private final BlockHeadTracker blockHeads;
+    private final Map<String, BigInteger> checkedAtBlock = new ConcurrentHashMap<>(); //chain head at each token's last balance check
+    private volatile boolean updateIndexStale = true;
+    private long lastIndexBuild = 0;
+    @Nullable
+    private Realm indexRealm;
+    @Nullable
+    private RealmResults<RealmToken> indexRealmTokens;
     private String currentAddress = null;
     private final EthereumNetworkRepositoryType ethereumNetworkRepository;
     private final TokenRepositoryType tokenRepository;
@@ -85,10 +102,9 @@ public class TokensService
     private final ConcurrentLinkedQueue<Long> baseTokenCheck;
     private final ConcurrentLinkedQueue<ImageEntry> imagesForWrite;
     private final ConcurrentLinkedQueue<OkTokenCheck> chainCheckList;
-    private long openSeaCheckId;
     private boolean appHasFocus;
     private static boolean walletStartup = false;
-    private long transferCheckChain;
+    private final Set<Long> transferCheckChains = ConcurrentHashMap.newKeySet(); //chains whose NFT transfers are being read
     private final TokenFactory tokenFactory = new TokenFactory();
     private long syncTimer;
     private long syncStart;
@@ -108,8 +124,6 @@ public class TokensService
     @Nullable
     private Disposable tokenStoreDisposable;
     @Nullable
-    private Disposable openSeaQueryDisposable;
-    @Nullable
     private Disposable imageWriter;
     @Nullable
     private Disposable okDisposable;
@@ -127,6 +141,24 @@ public class TokensService
         this.tickerService = tickerService;
         this.openseaService = openseaService;
         this.analyticsService = analyticsService;
+        this.updateIndex = new TokenUpdateIndex(new TokenUpdateIndex.Policy()
+        {
+            @Override
+            public String getFocusKey()
+            {
+                ContractLocator focus = focusToken;
+                return focus != null ? databaseKey(focus.chainId, focus.address) : null;
+            }
+
+            @Override
+            public boolean isChainPending(long chainId)
+            {
+                return pendingChainMap.containsKey(chainId);
+            }
+        });
+        this.balanceScheduler = new BalanceUpdateScheduler(this::checkTokensBalance);
+        this.blockHeads = BlockHeadTracker.getInstance();
+        blockHeads.addListener(this::onNewHead);
         networkFilter = new ArrayList<>();
         setupFilter(ethereumNetworkRepository.hasSetNetworkFilters());
         focusToken = null;
@@ -137,7 +169,6 @@ public class TokensService
         this.httpClient = httpClient;
         setCurrentAddress(ethereumNetworkRepository.getCurrentWalletAddress()); //set current wallet address at service startup
         appHasFocus = true;
-        transferCheckChain = 0;
         completionCallback = null;
     }
 
@@ -252,9 +283,16 @@ public class TokensService
         syncStart = System.currentTimeMillis();
         syncTimer = syncStart + 5*DateUtils.SECOND_IN_MILLIS;
 
-        eventTimer = Observable.interval(1, 500, TimeUnit.MILLISECONDS)
-                .doOnNext(l -> checkTokensBalance())
-                .observeOn(Schedulers.newThread()).subscribe();
+        startUpdateIndexListener();
+
+        balanceScheduler.setBackground(!appHasFocus);
+        balanceScheduler.start();
+        trackBlockHeads();
+    }
+
+    private boolean isUpdateCycleActive()
+    {
+        return (eventTimer != null && !eventTimer.isDisposed()) || balanceScheduler.isRunning();
     }
 
     private long lastStartCycleTime = 0;
@@ -268,7 +306,7 @@ public class TokensService
 
     public void startUpdateCycleIfRequired()
     {
-        if (eventTimer == null || eventTimer.isDisposed())
+        if (!isUpdateCycleActive())
         {
             startUpdateCycle();
         }
@@ -276,7 +314,7 @@ public class TokensService
 
     public void startUpdateCycle()
     {
-        if ((eventTimer != null && !eventTimer.isDisposed() && (lastStartCycleTime + 10000) > System.currentTimeMillis())
+        if ((isUpdateCycleActive() && (lastStartCycleTime + 10000) > System.currentTimeMillis())
                 || (lastStartCycleTime + 2000) > System.currentTimeMillis())
         {
             return; // Block this refresh - we need to ensure the cycle restarts but within 1 second no need to restart
@@ -300,7 +338,8 @@ public class TokensService
         eventTimer = Single.fromCallable(() -> {
             startupPass();
             checkIssueTokens();
-            pendingTokenMap.clear();
+            updateIndex.clear();
+            rebuildUpdateIndex();
             checkTokensOnOKx();
             return true;
         }).subscribeOn(Schedulers.io())
@@ -308,40 +347,110 @@ public class TokensService
                 .subscribe(this::updateCycle, this::onError);
     }
 
-    // Constructs a map of tokens requiring update
-    private TokenCardMeta[] buildUpdateMap()
+    private void rebuildUpdateIndex()
     {
-        int unSynced = 0;
-        TokenCardMeta[] tokenList = tokenRepository.fetchTokenMetasForUpdate(new Wallet(currentAddress), networkFilter);
-        for (TokenCardMeta meta : tokenList)
+        updateIndexStale = false;
+        lastIndexBuild = System.currentTimeMillis();
+        updateIndex.rebuild(tokenRepository.fetchTokenMetasForUpdate(new Wallet(currentAddress), networkFilter), lastIndexBuild);
+        if (balanceScheduler.isRunning()) trackBlockHeads(); //filters may have changed
+    }
+
+    private void trackBlockHeads()
+    {
+        List<Long> chains = new ArrayList<>();
+        if (appHasFocus)
         {
-            meta.lastTxUpdate = meta.lastUpdate;
-            String key = databaseKey(meta.getChain(), meta.getAddress());
-            if (!pendingTokenMap.containsKey(key))
+            for (long chainId : networkFilter)
             {
-                if (meta.type == ContractType.ERC20 || meta.type == ContractType.ETHEREUM) unSynced++;
-                pendingTokenMap.put(key, meta.lastUpdate);
+                if (!EthereumNetworkBase.isTronNetwork(chainId)) chains.add(chainId);
             }
-            else if (meta.lastUpdate <= pendingTokenMap.get(key))
+        }
+        blockHeads.setTrackedChains(chains);
+    }
+
+    private void onNewHead(long chainId, BigInteger blockNumber)
+    {
+        //a pending transaction may just have been mined
+        if (pendingChainMap.containsKey(chainId)) balanceScheduler.wake("new head");
+    }
+
+    /**
+     * A balance can only change in a new block; tokens on a tracked chain whose head hasn't moved since their last
+     * check are passed over without a node call
+     */
+    private boolean hasNewBlock(TokenCardMeta meta)
+    {
+        BigInteger head = blockHeads.getTrackedHead(meta.getChain());
+        if (head == null) return true;
+        BigInteger checked = checkedAtBlock.put(meta.tokenId, head);
+        return checked == null || !checked.equals(head);
+    }
+
+    /**
+     * Keeps the update index current with token writes. Must be called on the main thread
+     */
+    private void startUpdateIndexListener()
+    {
+        stopUpdateIndexListener();
+        if (TextUtils.isEmpty(currentAddress)) return;
+
+        indexRealm = tokenRepository.getRealmInstance(new Wallet(currentAddress));
+        indexRealmTokens = indexRealm.where(RealmToken.class).findAllAsync();
+        indexRealmTokens.addChangeListener((realmTokens, changeSet) -> {
+            if (changeSet.getState() == OrderedCollectionChangeSet.State.INITIAL) return; //index already built
+            if (changeSet.getDeletions().length > 0)
             {
-                meta.lastUpdate = pendingTokenMap.get(key);
-                if ((meta.type == ContractType.ERC20 || meta.type == ContractType.ETHEREUM)
-                        && meta.lastUpdate < syncStart && meta.isEnabled && meta.hasValidName()) { unSynced++; }
+                updateIndexStale = true; //rebuild on the next pass
+                return;
             }
-            else if ((meta.type == ContractType.ERC20 || meta.type == ContractType.ETHEREUM)
-                    && meta.lastUpdate < syncStart && meta.isEnabled && meta.hasValidName()) { unSynced++; }
+
+            long currentTime = System.currentTimeMillis();
+            updateIndexFromRealm(realmTokens, changeSet.getInsertions(), currentTime);
+            updateIndexFromRealm(realmTokens, changeSet.getChanges(), currentTime);
+            if (changeSet.getInsertions().length > 0) balanceScheduler.wake("new token");
+        });
+    }
+
+    private void updateIndexFromRealm(RealmResults<RealmToken> realmTokens, int[] indices, long currentTime)
+    {
+        for (int index : indices)
+        {
+            RealmToken realmToken = realmTokens.get(index);
+            if (realmToken == null) continue;
+            TokenCardMeta meta = tokenRepository.getUpdateMeta(realmToken, networkFilter);
+            if (meta != null) updateIndex.put(meta, currentTime);
+            else updateIndex.remove(realmToken.getChainId(), realmToken.getTokenAddress());
         }
+    }
 
-        checkSyncStatus(unSynced, tokenList);
+    private void stopUpdateIndexListener()
+    {
+        final Realm realm = indexRealm;
+        final RealmResults<RealmToken> realmTokens = indexRealmTokens;
+        indexRealm = null;
+        indexRealmTokens = null;
+        if (realm == null) return;
 
-        return tokenList;
+        //realm must be closed on the thread which opened it
+        AndroidSchedulers.mainThread().scheduleDirect(() -> {
+            if (realmTokens != null) realmTokens.removeAllChangeListeners();
+            if (!realm.isClosed()) realm.close();
+        });
+    }
+
+    private void checkUpdateIndex(long currentTime)
+    {
+        if (updateIndexStale || currentTime > (lastIndexBuild + INDEX_REFRESH_INTERVAL))
+        {
+            rebuildUpdateIndex();
+        }
     }
 
-    private void checkSyncStatus(int unSynced, TokenCardMeta[] tokenList)
+    private void checkSyncStatus()
     {
         if (syncTimer > 0 && System.currentTimeMillis() > syncTimer)
         {
-            if (unSynced > 0)
+            if (updateIndex.countUnsynced(syncStart) > 0)
             {
                 syncTimer = System.currentTimeMillis() + 5*DateUtils.SECOND_IN_MILLIS;
             }
@@ -351,7 +460,7 @@ public class TokensService
                 //sync chain tickers
             }
 
-            syncChainTickers(tokenList, 0);
+            syncChainTickers(updateIndex.getMetas(), 0);
         }
     }
 
@@ -418,6 +527,7 @@ public class TokensService
         {
             networkFilter.add(chainId);
             ethereumNetworkRepository.setFilterNetworkList(networkFilter.toArray(new Long[0]));
+            updateIndexStale = true;
         }
 
         return tokenRepository.storeTokens(new Wallet(currentAddress), tok);
@@ -431,19 +541,23 @@ public class TokensService
             eventTimer = null;
         }
 
+        balanceScheduler.stop();
+        blockHeads.setTrackedChains(Collections.emptyList());
+        checkedAtBlock.clear();
+
         if (balanceCheckDisposable != null && !balanceCheckDisposable.isDisposed()) { balanceCheckDisposable.dispose(); }
         if (erc20CheckDisposable != null && !erc20CheckDisposable.isDisposed()) { erc20CheckDisposable.dispose(); }
         if (tokenStoreDisposable != null && !tokenStoreDisposable.isDisposed()) { tokenStoreDisposable.dispose(); }
-        if (openSeaQueryDisposable != null && !openSeaQueryDisposable.isDisposed()) { openSeaQueryDisposable.dispose(); }
+        stopOpenSeaQueries();
         if (checkUnknownTokenCycle != null && !checkUnknownTokenCycle.isDisposed()) { checkUnknownTokenCycle.dispose(); }
         if (queryUnknownTokensDisposable != null && !queryUnknownTokensDisposable.isDisposed()) { queryUnknownTokensDisposable.dispose(); }
-        if (openSeaQueryDisposable != null && !openSeaQueryDisposable.isDisposed()) { openSeaQueryDisposable.dispose(); }
         if (okDisposable != null && !okDisposable.isDisposed()) { okDisposable.dispose(); }
 
         pendingChainMap.clear();
         tokenStoreList.clear();
         baseTokenCheck.clear();
-        pendingTokenMap.clear();
+        updateIndex.clear();
+        stopUpdateIndexListener();
         unknownTokens.clear();
         chainCheckList.clear();
     }
@@ -510,6 +624,7 @@ public class TokensService
         }
 
         if (userUpdated) ethereumNetworkRepository.setHasSetNetworkFilters();
+        updateIndexStale = true;
         
         Timber.d("setupFilter: isTronWallet=%s, networkFilter=%s", isTronWallet, networkFilter);
     }
@@ -517,16 +632,20 @@ public class TokensService
     public void setFocusToken(@NotNull Token token)
     {
         focusToken = new ContractLocator(token.getAddress(), token.tokenInfo.chainId);
+        updateIndex.reschedule(System.currentTimeMillis());
+        balanceScheduler.wake("focus token");
     }
 
     public void clearFocusToken()
     {
         focusToken = null;
+        updateIndex.reschedule(System.currentTimeMillis());
+        balanceScheduler.wake("focus cleared");
     }
 
     public void onWalletRefreshSwipe()
     {
-        openseaService.resetOffsetRead(networkFilter);
+        openseaService.restartDiscovery(currentAddress, networkFilter);
     }
 
     private boolean isFocusToken(Token t)
@@ -726,20 +845,99 @@ public class TokensService
                 .isDisposed();
     }
 
-    private void checkTokensBalance()
+    /**
+     * One pass of the balance scheduler
+     * @return time in milliseconds until the next check is due
+     */
+    private long checkTokensBalance()
     {
         final Token t = getNextInBalanceUpdateQueue();
 
         if (t != null)
         {
-            Timber.tag(TAG).d("Updating: " + t.tokenInfo.chainId + (t.isEthereum() ? " (Base Chain) ":"") + " : " + t.getAddress() + " : " + t.getFullName());
-            balanceCheckDisposable = tokenRepository.updateTokenBalance(currentAddress, t)
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(AndroidSchedulers.mainThread())
-                    .subscribe(newBalance -> onBalanceChange(newBalance, t), this::onError);
+            List<Token> batch = getBalanceBatch(t);
+            if (batch.size() > 1)
+            {
+                Timber.tag(TAG).d("Updating batch: " + t.tokenInfo.chainId + " : " + batch.size() + " tokens");
+                balanceCheckDisposable = tokenRepository.updateTokenBalances(currentAddress, t.tokenInfo.chainId, batch)
+                        .subscribeOn(Schedulers.io())
+                        .observeOn(AndroidSchedulers.mainThread())
+                        .subscribe(this::onBalancesChange, this::onError);
+            }
+            else
+            {
+                Timber.tag(TAG).d("Updating: " + t.tokenInfo.chainId + (t.isEthereum() ? " (Base Chain) " : "") + " : " + t.getAddress() + " : " + t.getFullName());
+                balanceCheckDisposable = tokenRepository.updateTokenBalance(currentAddress, t)
+                        .subscribeOn(Schedulers.io())
+                        .observeOn(AndroidSchedulers.mainThread())
+                        .subscribe(newBalance -> onBalanceChange(newBalance, t), this::onError);
+            }
         }
 
         checkPendingChains();
+
+        return t != null ? 0 : getNextCheckDelay();
+    }
+
+    private long getNextCheckDelay()
+    {
+        if (!tokenStoreList.isEmpty() || !baseTokenCheck.isEmpty() || updateIndexStale) return 0;
+
+        long currentTime = System.currentTimeMillis();
+        long nextDue = updateIndex.getNextDueTime(currentTime, isSynced(), syncStart, appHasFocus);
+        nextDue = Math.min(nextDue, lastIndexBuild + INDEX_REFRESH_INTERVAL);
+        if (syncTimer > 0) nextDue = Math.min(nextDue, syncTimer);
+        for (Long pendingExpiry : pendingChainMap.values())
+        {
+            nextDue = Math.min(nextDue, pendingExpiry);
+        }
+
+        return Math.max(0, nextDue - currentTime);
+    }
+
+    /**
+     * If the chain supports batched reads, pull in the other tokens on the same chain which are also due for a balance check
+     * so they can share the node call(s) with the selected token
+     */
+    private List<Token> getBalanceBatch(Token selected)
+    {
+        List<Token> batch = new ArrayList<>();
+        batch.add(selected);
+        long chainId = selected.tokenInfo.chainId;
+        if (!BatchBalanceEngine.canBatch(selected)
+                || (!EthereumNetworkBase.hasMulticall(chainId) && EthereumNetworkBase.getBatchProcessingLimit(chainId) == 0))
+        {
+            return batch;
+        }
+
+        int limit = EthereumNetworkBase.getMulticallLimit(chainId);
+        long currentTime = System.currentTimeMillis();
+        for (TokenCardMeta tcm : updateIndex.getDue(chainId, currentTime, isSynced(), limit))
+        {
+            if (batch.size() >= limit) break;
+            if (tcm.getAddress().equalsIgnoreCase(selected.getAddress())) continue;
+            if (!hasNewBlock(tcm))
+            {
+                updateIndex.markChecked(tcm.getChain(), tcm.getAddress(), currentTime);
+                continue;
+            }
+            Token t = getToken(tcm.getChain(), tcm.getAddress());
+            if (t != null && BatchBalanceEngine.canBatch(t))
+            {
+                updateIndex.markChecked(tcm.getChain(), tcm.getAddress(), currentTime);
+                batch.add(t);
+            }
+        }
+
+        return batch;
+    }
+
+    private void onBalancesChange(List<Pair<Token, BigDecimal>> balances)
+    {
+        for (Pair<Token, BigDecimal> balance : balances)
+        {
+            onBalanceChange(balance.second, balance.first);
+        }
     }
 
     public Single<BigDecimal> getChainBalance(String walletAddress, long chainId)
@@ -828,7 +1026,7 @@ public class TokensService
         }
 
         //update check time
-        pendingTokenMap.put(databaseKey(t), System.currentTimeMillis());
+        updateIndex.markChecked(t.tokenInfo.chainId, t.getAddress(), System.currentTimeMillis());
 
         //Switch this token chain on
         if (t.isEthereum() && newBalance.compareTo(BigDecimal.ZERO) > 0)
@@ -855,6 +1053,7 @@ public class TokensService
             networkFilter.add(t.tokenInfo.chainId);
             //now update the default filters
             ethereumNetworkRepository.setFilterNetworkList(networkFilter.toArray(new Long[0]));
+            updateIndexStale = true;
         }
     }
 
@@ -866,6 +1065,7 @@ public class TokensService
             if (currentTime > pendingChainMap.get(chainId))
             {
                 pendingChainMap.remove(chainId);
+                updateIndex.reschedule(currentTime);
             }
         }
     }
@@ -877,25 +1077,35 @@ public class TokensService
 
     private void checkOpenSea(long chainId)
     {
-        if ((openSeaQueryDisposable != null && !openSeaQueryDisposable.isDisposed())
-            || openseaService == null || !EthereumNetworkBase.hasOpenseaAPI(chainId)
+        if (openseaService == null || !EthereumNetworkBase.hasOpenseaAPI(chainId)
+            || openSeaQueries.containsKey(chainId)
+            || openSeaQueries.size() >= OpenSeaService.MAX_CONCURRENT_CHAINS
             || !openseaService.canCheckChain(chainId)) return;
 
         NetworkInfo info = ethereumNetworkRepository.getNetworkByChain(chainId);
 
-        if (info.chainId == transferCheckChain) return; //currently checking this chainId in TransactionsNetworkClient
-        
-        Timber.tag(TAG).d("Fetch from opensea : " + currentAddress + " : " + info.getShortName());
+        if (transferCheckChains.contains(info.chainId)) return; //currently checking this chainId in TransactionsNetworkClient
 
-        openSeaCheckId = info.chainId;
+        //several chains page at once; OpenSeaService spaces their requests under the API rate limit
+        Disposable placeholder = Disposables.empty();
+        if (openSeaQueries.putIfAbsent(chainId, placeholder) != null) return;
 
-        openSeaQueryDisposable = callOpenSeaAPI(info)
+        Timber.tag(TAG).d("Fetch from opensea : " + currentAddress + " : " + info.getShortName());
+
+        Disposable query = callOpenSeaAPI(info)
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
-                .subscribe(r -> {
-                    openSeaQueryDisposable = null;
-                    openSeaCheckId = 0;
-                }, this::openSeaCallError);
+                .subscribe(r -> openSeaQueries.remove(chainId), e -> openSeaCallError(chainId, e));
+        openSeaQueries.replace(chainId, placeholder, query);
+    }
+
+    private void stopOpenSeaQueries()
+    {
+        for (Disposable query : openSeaQueries.values())
+        {
+            query.dispose();
+        }
+        openSeaQueries.clear();
     }
 
     private void checkOkTokens(long chainId, OkProtocolType tokenType)
@@ -960,37 +1170,37 @@ public class TokensService
         }
     }
 
-    private void openSeaCallError(Throwable error)
+    private void openSeaCallError(long chainId, Throwable error)
     {
         Timber.w(error);
-        openSeaQueryDisposable = null;
-        openSeaCheckId = 0;
+        openSeaQueries.remove(chainId);
     }
 
-    private Single<Boolean> callOpenSeaAPI(NetworkInfo info)
+    private Single<Integer> callOpenSeaAPI(NetworkInfo info)
     {
         final Wallet wallet = new Wallet(currentAddress);
 
-        return Single.fromCallable(() -> {
-            openseaService.getTokens(currentAddress, info.chainId, info.getShortName(), this).toObservable()
-                    .subscribeOn(Schedulers.io())
-                    .observeOn(Schedulers.io())
-                    .flatMap(Observable::fromArray)
-                    .blockingForEach(t -> tokenRepository.checkInterface(t, wallet)
-                            .map(token -> tokenRepository.initNFTAssets(wallet, token))
-                            .flatMap(token -> tokenRepository.storeTokens(wallet, new Token[]{token}))
-                            .subscribeOn(Schedulers.io())
-                            .observeOn(Schedulers.io())
-                            .blockingGet()
-                    );
+        return Single.fromCallable(() ->
+                openseaService.discoverTokens(wallet.address, info.chainId, info.getShortName(), this,
+                        tokens -> storeDiscoveredTokens(wallet, tokens)));
+    }
 
-            return true;
-        });
+    /**
+     * Store the tokens found on one page of discovery, in a single write, so the page shows up before the next is read
+     */
+    private void storeDiscoveredTokens(Wallet wallet, Token[] tokens)
+    {
+        Observable.fromArray(tokens)
+                .concatMapSingle(t -> tokenRepository.checkInterface(t, wallet)
+                        .map(token -> tokenRepository.initNFTAssets(wallet, token)))
+                .toList()
+                .flatMap(checked -> tokenRepository.storeTokens(wallet, checked.toArray(new Token[0])))
+                .blockingGet();
     }
 
     public boolean openSeaUpdateInProgress(long chainId)
     {
-        return openSeaQueryDisposable != null && !openSeaQueryDisposable.isDisposed() && openSeaCheckId == chainId;
+        return openSeaQueries.containsKey(chainId);
     }
 
     private void checkERC20(long chainId)
@@ -1059,6 +1269,8 @@ public class TokensService
     public void markChainPending(long chainId)
     {
         pendingChainMap.put(chainId, System.currentTimeMillis() + PENDING_TIME_LIMIT);
+        updateIndex.reschedule(System.currentTimeMillis());
+        balanceScheduler.wake("pending tx");
     }
 
     public Single<Pair<Double, Double>> getFiatValuePair()
@@ -1066,6 +1278,14 @@ public class TokensService
         return tokenRepository.getTotalValue(currentAddress, EthereumNetworkBase.getAllMainNetworks());
     }
 
+    /**
+     * Wallet value each time a ticker or balance update changes it, following {@link #getFiatValuePair()}
+     */
+    public Observable<Pair<Double, Double>> getFiatValueUpdates()
+    {
+        return tokenRepository.getTotalValueUpdates(currentAddress);
+    }
+
     public Single<List<String>> getTickerUpdateList()
     {
         return tokenRepository.getTickerUpdateList(networkFilter);
@@ -1108,70 +1328,23 @@ public class TokensService
     //TODO: If we have done a transfer check recently then we don't need to check balance here
     public Token getNextInBalanceUpdateQueue()
     {
-        //pull all tokens from this wallet out of DB
-        TokenCardMeta[] tokenList = buildUpdateMap();
-
-        //calculate update based on last update time & importance
-        float highestWeighting = 0;
         long currentTime = System.currentTimeMillis();
+        checkUpdateIndex(currentTime);
+        checkSyncStatus();
+
         Token storeToken = pendingBaseCheck();
         if (storeToken == null) { storeToken = tokenStoreList.poll(); }
         if (storeToken != null) { return storeToken; }
 
-        TokenCardMeta highestToken = null;
-
-        //this list will be in order of update.
-        for (TokenCardMeta check : tokenList)
+        //calculate update based on last update time & importance
+        TokenCardMeta highestToken = updateIndex.next(currentTime, isSynced(), syncStart, appHasFocus);
+        while (highestToken != null && !hasNewBlock(highestToken))
         {
-            long lastCheckDiff = currentTime - check.lastUpdate;
-            long lastUpdateDiff = check.lastTxUpdate > 0 ? currentTime - check.lastTxUpdate : 0;
-
-            float weighting = check.calculateBalanceUpdateWeight();
-
-            if ((!check.isEnabled || check.isNFT()) && !isSynced()) continue; //don't start looking at NFT balances until we sync the chain/ERC20 tokens
-            if (!isSynced() && check.lastUpdate > syncStart) continue; //don't start updating already updated tokens until all ERC20 are checked
-            if (!appHasFocus && (!check.isEthereum() && !isFocusToken(check))) continue; //only check chains when wallet out of focus
-
-            //simply multiply the weighting by the last diff.
-            float updateFactor = weighting * (float) lastCheckDiff * (check.isEnabled ? 1 : 0.25f);
-            long cutoffCheck = check.calculateUpdateFrequency(); //normal minimum update frequency for token 30 seconds, 5 minutes for hidden token
-
-            if (!check.isEthereum() && lastUpdateDiff > DateUtils.DAY_IN_MILLIS)
-            {
-                cutoffCheck = 120*DateUtils.SECOND_IN_MILLIS;
-                updateFactor = 0.5f * updateFactor;
-            }
-
-            if (isFocusToken(check))
-            {
-                updateFactor = 3.0f * (float) lastCheckDiff;
-                cutoffCheck = 15*DateUtils.SECOND_IN_MILLIS; //focus token can be checked every 15 seconds - focus token when erc20 or chain clicked on in wallet
-            }
-            else if (check.isEthereum() && pendingChainMap.containsKey(check.getChain())) //higher priority for checking balance of pending chain
-            {
-                cutoffCheck = 15*DateUtils.SECOND_IN_MILLIS;
-                updateFactor = 4.0f * (float) lastCheckDiff; //chain has a recent transaction
-            }
-            else if (check.isEthereum())
-            {
-                cutoffCheck = 20*DateUtils.SECOND_IN_MILLIS; //update check limit for base chains is 20 seconds
-            }
-            else if (focusToken != null)
-            {
-                updateFactor = 0.1f * (float) lastCheckDiff;
-                cutoffCheck = 60*DateUtils.SECOND_IN_MILLIS; //when looking at token in detail view (ERC20TokenDetail) update other tokens at 1 minute cycle
-            }
-
-            if (updateFactor > highestWeighting && (lastCheckDiff > (float)cutoffCheck))
-            {
-                highestWeighting = updateFactor;
-                highestToken = check;
-            }
+            highestToken = updateIndex.next(currentTime, isSynced(), syncStart, appHasFocus);
         }
 
         if (highestToken != null)
         {
-            pendingTokenMap.put(databaseKey(highestToken.getChain(), highestToken.getAddress()), System.currentTimeMillis());
             return getToken(highestToken.getChain(), highestToken.getAddress());
         }
         else
@@ -1269,6 +1442,7 @@ public class TokensService
 
         //set network filter prefs
         ethereumNetworkRepository.setFilterNetworkList(networkFilter.toArray(new Long[0]));
+        updateIndexStale = true;
     }
 
     /**
@@ -1330,6 +1504,8 @@ public class TokensService
     public void walletInFocus()
     {
         appHasFocus = true;
+        balanceScheduler.setBackground(false);
+        if (balanceScheduler.isRunning()) trackBlockHeads();
 
         //running or not?
     }
@@ -1337,6 +1513,16 @@ public class TokensService
     public void walletOutOfFocus()
     {
         appHasFocus = false;
+        balanceScheduler.setBackground(true);
+        blockHeads.setTrackedChains(Collections.emptyList());
+    }
+
+    /**
+     * Trace of recent balance check passes, for tuning the scheduler
+     */
+    public List<BalanceUpdateScheduler.TraceEntry> getBalanceSchedulerTrace()
+    {
+        return balanceScheduler.getTrace();
     }
 
     /**
@@ -1417,7 +1603,17 @@ public class TokensService
 
     public void checkingChain(long chainId)
     {
-        transferCheckChain = chainId;
+        transferCheckChains.add(chainId);
+    }
+
+    public void finishedCheckingChain(long chainId)
+    {
+        transferCheckChains.remove(chainId);
+    }
+
+    public void clearCheckingChains()
+    {
+        transferCheckChains.clear();
     }
 
     public void addBalanceCheck(Token token)
@@ -1428,6 +1624,7 @@ public class TokensService
         }
 
         tokenStoreList.add(token);
+        balanceScheduler.wake("balance check");
     }
 
     private Token createCurrencyToken(NetworkInfo network, Wallet wallet)
@@ -1473,6 +1670,8 @@ public class TokensService
                     baseTokenCheck.add(info.chainId);
                 }
             }
+            updateIndexStale = true;
+            balanceScheduler.wake("wallet sync");
         }
     }
 
@@ -1516,7 +1715,7 @@ public class TokensService
             tokenRepository.deleteRealmTokens(new Wallet(currentAddress), metasToDelete);
             for (TokenCardMeta tcm : metasToDelete)
             {
-                pendingTokenMap.remove(databaseKey(tcm.getChain(), tcm.getAddress()));
+                updateIndex.remove(tcm.getChain(), tcm.getAddress());
             }
             return true;
         });
@@ -0,0 +1,184 @@
+package com.setlone.app.service;
+
+import com.setlone.app.util.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import timber.log.Timber;
+
+/**
+ * Shared plumbing for syncing transactions of several chains at once.
+ *
+ * Each chain's sync is split into stages: page fetches run on the io pool, but every request first waits for a slot from
+ * the rate limiter of its API host (Etherscan V2 serves every chain from one host and one key, so chains must share its
+ * quota) and then for one of a fixed number of in-flight request slots. Rows are decoded as the response streams in
+ * and converted to transactions on the computation pool. Results are then processed on a single writer thread, which
+ * hands its Realm writes to the {@link com.setlone.app.repository.RealmWriteQueue} to be committed in batches.
+ *
+ * Per-chain timings are kept so the sync can be tuned: time to the first page and transactions per second.
+ */
+public class TransactionSyncPipeline
+{
+    private static final String TAG = "TXSYNC";
+
+    public static final int MAX_CONCURRENT_CHAINS = 4;
+    public static final int MAX_IN_FLIGHT = 6;
+
+    private static final double ETHERSCAN_RATE = 4.0;  // free tier allows 5 calls/sec per key, leave headroom for other callers
+    private static final double COVALENT_RATE = 4.0;
+    private static final double DEFAULT_RATE = 3.0;    // blockscout and other explorers
+
+    public interface ResponseHandler<T>
+    {
+        T handle(Response response) throws Exception;
+    }
+
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT, true);
+    private final Map<String, RateLimiter> hostLimiters = new ConcurrentHashMap<>();
+    private final Map<Long, ChainSyncStats> activeSyncs = new ConcurrentHashMap<>();
+    private final Map<Long, ChainSyncStats> lastSyncs = new ConcurrentHashMap<>();
+    private final Scheduler writer = Schedulers.from(Executors.newSingleThreadExecutor(r -> new Thread(r, "tx-sync-writer")));
+
+    /**
+     * Perform a request under the host rate limit and the in-flight cap; the response is closed once the handler returns
+     */
+    public <T> T execute(OkHttpClient client, Request request, ResponseHandler<T> handler) throws Exception
+    {
+        getLimiter(request.url().host()).acquire();
+        inFlight.acquire();
+        try (Response response = client.newCall(request).execute())
+        {
+            return handler.handle(response);
+        }
+        finally
+        {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Single thread all sync writes are observed on
+     */
+    public Scheduler getWriter()
+    {
+        return writer;
+    }
+
+    public void startSync(long chainId)
+    {
+        activeSyncs.put(chainId, new ChainSyncStats(chainId, System.currentTimeMillis()));
+    }
+
+    public void onPage(long chainId, int transactions)
+    {
+        ChainSyncStats stats = activeSyncs.get(chainId);
+        if (stats != null) stats.addPage(transactions, System.currentTimeMillis());
+    }
+
+    public void endSync(long chainId, int stored)
+    {
+        ChainSyncStats stats = activeSyncs.remove(chainId);
+        if (stats == null) return;
+        stats.finish(stored, System.currentTimeMillis());
+        lastSyncs.put(chainId, stats);
+        if (stats.transactions > 0) Timber.tag(TAG).d("%s", stats);
+    }
+
+    /**
+     * @return the last completed sync of each chain
+     */
+    public List<ChainSyncStats> getStats()
+    {
+        return new ArrayList<>(lastSyncs.values());
+    }
+
+    private RateLimiter getLimiter(String host)
+    {
+        return hostLimiters.computeIfAbsent(host, h -> new RateLimiter(getHostRate(h)));
+    }
+
+    static double getHostRate(String host)
+    {
+        if (host.contains("etherscan"))
+        {
+            return ETHERSCAN_RATE;
+        }
+        else if (host.contains("covalenthq"))
+        {
+            return COVALENT_RATE;
+        }
+        else
+        {
+            return DEFAULT_RATE;
+        }
+    }
+
+    public static class ChainSyncStats
+    {
+        public final long chainId;
+        public final long startTime;
+        private long firstPageTime;
+        private long endTime;
+        private int pages;
+        private int transactions;
+        private int stored;
+
+        ChainSyncStats(long chainId, long startTime)
+        {
+            this.chainId = chainId;
+            this.startTime = startTime;
+        }
+
+        synchronized void addPage(int pageTransactions, long time)
+        {
+            if (pages == 0) firstPageTime = time;
+            pages++;
+            transactions += pageTransactions;
+        }
+
+        synchronized void finish(int storedTransactions, long time)
+        {
+            stored = storedTransactions;
+            endTime = time;
+        }
+
+        public synchronized long getTimeToFirstPage()
+        {
+            return pages > 0 ? firstPageTime - startTime : -1;
+        }
+
+        public synchronized double getTransactionsPerSecond()
+        {
+            long elapsed = endTime - startTime;
+            return elapsed > 0 ? (transactions * 1000.0) / elapsed : 0;
+        }
+
+        public synchronized int getPages()
+        {
+            return pages;
+        }
+
+        public synchronized int getStored()
+        {
+            return stored;
+        }
+
+        @Override
+        public synchronized String toString()
+        {
+            return "Chain " + chainId + ": " + transactions + " tx in " + pages + " pages, first page "
+                    + getTimeToFirstPage() + "ms, " + String.format(Locale.ROOT, "%.1f", getTransactionsPerSecond()) + " tx/s, stored " + stored;
+        }
+    }
+}
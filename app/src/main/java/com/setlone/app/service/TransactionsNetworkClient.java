@@ -33,6 +33,7 @@ import com.setlone.app.entity.transactions.TransferEvent;
 import com.setlone.app.repository.EthereumNetworkBase;
 import com.setlone.app.repository.KeyProvider;
 import com.setlone.app.repository.KeyProviderFactory;
+import com.setlone.app.repository.RealmWriteQueue;
 import com.setlone.app.repository.TransactionsRealmCache;
 import com.setlone.app.repository.entity.RealmAuxData;
 import com.setlone.app.repository.entity.RealmToken;
@@ -42,10 +43,6 @@ import com.setlone.app.util.Utils;
 import com.setlone.token.entity.ContractAddress;
 import com.google.gson.Gson;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -56,6 +53,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 import io.realm.Case;
@@ -86,19 +84,24 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
     private final String POLYGONSCAN_API_KEY;
     private final String AURORASCAN_API_KEY;
     private final KeyProvider keyProvider = KeyProviderFactory.get();
-    private final String JSON_EMPTY_RESULT = "{\"result\":[]}";
 
     private final OkHttpClient httpClient;
     private final Gson gson;
     private final RealmManager realmManager;
+    private final TransactionSyncPipeline syncPipeline = new TransactionSyncPipeline();
+    private final ExplorerResponseReader responseReader;
+    private final RealmWriteQueue writeQueue;
 
     public TransactionsNetworkClient(
             OkHttpClient httpClient,
             Gson gson,
-            RealmManager realmManager) {
+            RealmManager realmManager,
+            RealmWriteQueue writeQueue) {
         this.httpClient = httpClient;
         this.gson = gson;
         this.realmManager = realmManager;
+        this.writeQueue = writeQueue;
+        this.responseReader = new ExplorerResponseReader(gson);
 
         BSC_EXPLORER_API_KEY = keyProvider.getBSCExplorerKey().length() > 0 ? "&apikey=" + keyProvider.getBSCExplorerKey() : "";
         ETHERSCAN_API_KEY = "&apikey=" + keyProvider.getEtherscanKey();
@@ -106,6 +109,12 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         AURORASCAN_API_KEY = keyProvider.getAuroraScanKey().length() > 3 ? "&apikey=" + keyProvider.getAuroraScanKey() : "";
     }
 
+    @Override
+    public List<TransactionSyncPipeline.ChainSyncStats> getSyncStats()
+    {
+        return syncPipeline.getStats();
+    }
+
     @Override
     public void checkRequiresAuxReset(String walletAddr)
     {
@@ -166,47 +175,53 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
     @Override
     public Single<Transaction[]> storeNewTransactions(TokensService svs, NetworkInfo networkInfo, String tokenAddress, final long lastBlock)
     {
+        final long chainId = networkInfo.chainId;
         return Single.fromCallable(() -> {
-            long lastBlockNumber = lastBlock + 1;
-            List<Transaction> sortedTx = null;
-            try (Realm instance = realmManager.getRealmInstance(svs.getCurrentAddress()))
+                    try (Realm instance = realmManager.getRealmInstance(svs.getCurrentAddress()))
+                    {
+                        return getTokenBlockRead(instance, chainId, TransferFetchType.ETHEREUM);
+                    }
+                })
+                .doOnSubscribe(d -> syncPipeline.startSync(chainId))
+                .flatMap(syncToBlock -> syncDownwards(svs, networkInfo, tokenAddress, syncToBlock == 0 ? 0 : lastBlock + 1, 999999999)
+                        .observeOn(syncPipeline.getWriter()) //all sync writes go through the one writer thread
+                        .map(sortedTx -> storeSyncedTransactions(svs, networkInfo, tokenAddress, syncToBlock, sortedTx)))
+                .onErrorReturn(e -> {
+                    Timber.e(e);
+                    return new Transaction[0];
+                })
+                .doOnSuccess(txs -> syncPipeline.endSync(chainId, txs.length))
+                .subscribeOn(Schedulers.io());
+    }
+
+    private Transaction[] storeSyncedTransactions(TokensService svs, NetworkInfo networkInfo, String tokenAddress, long syncToBlock, List<Transaction> sortedTx)
+    {
+        if (sortedTx.size() > 0)
+        {
+            String walletAddress = svs.getCurrentAddress();
+            try
             {
-                long syncToBlock = getTokenBlockRead(instance, networkInfo.chainId, TransferFetchType.ETHEREUM);
-                if (syncToBlock == 0)
-                {
-                    lastBlockNumber = 0;
-                }
+                String highestBlockStr = sortedTx.get(sortedTx.size() - 1).blockNumber;
 
-                sortedTx = syncDownwards(svs, networkInfo, tokenAddress, lastBlockNumber, 999999999);
+                storeLatestBlockRead(walletAddress, networkInfo.chainId, tokenAddress, highestBlockStr);
 
-                if (sortedTx.size() > 0)
+                if (syncToBlock == 0 || sortedTx.size() == PAGESIZE * SYNC_PAGECOUNT)
                 {
-                    String highestBlockStr = sortedTx.get(sortedTx.size() - 1).blockNumber;
-
-                    storeLatestBlockRead(svs.getCurrentAddress(), networkInfo.chainId, tokenAddress, highestBlockStr);
-
-                    if (syncToBlock == 0 || sortedTx.size() == PAGESIZE * SYNC_PAGECOUNT)
-                    {
-                        //blank all entries
-                        eraseAllTransactions(instance, networkInfo.chainId);
-                        writeTokenBlockRead(instance, networkInfo.chainId, Long.parseLong(sortedTx.get(0).blockNumber), TransferFetchType.ETHEREUM);
-                    }
-
-                    //now write transactions
-                    writeTransactions(instance, sortedTx);
+                    //blank all entries
+                    eraseAllTransactions(walletAddress, networkInfo.chainId);
+                    writeTokenBlockRead(walletAddress, networkInfo.chainId, Long.parseLong(sortedTx.get(0).blockNumber), TransferFetchType.ETHEREUM);
                 }
-            }
-            catch (JSONException e)
-            {
-                //silent fail
+
+                //now write transactions
+                writeTransactions(walletAddress, sortedTx);
             }
             catch (Exception e)
             {
                 Timber.e(e);
             }
+        }
 
-            return sortedTx != null ? sortedTx.toArray(new Transaction[0]) : new Transaction[0];
-        }).subscribeOn(Schedulers.io());
+        return sortedTx.toArray(new Transaction[0]);
     }
 
     /**
@@ -214,27 +229,15 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
      *
      * Note that this call is the only place that the 'earliest transaction' block can be written from.
      */
-    private List<Transaction> syncDownwards(TokensService svs, NetworkInfo networkInfo, String tokenAddress, long lowBlockNumber, long highBlockNumber) throws Exception
+    private Single<List<Transaction>> syncDownwards(TokensService svs, NetworkInfo networkInfo, String tokenAddress, long lowBlockNumber, long highBlockNumber)
     {
-        int page = 1;
-        HashMap<String, Transaction> txMap = new HashMap<>();
-        boolean continueReading = true;
-
-        while (continueReading) // only SYNC_PAGECOUNT pages at a time for each check, to avoid congestion
-        {
-            EtherscanTransaction[] myTxs = readTransactions(networkInfo, svs, tokenAddress, String.valueOf(lowBlockNumber), String.valueOf(highBlockNumber), false, page++);
-            if (myTxs.length == 0) break;
-            populateTransactionMap(txMap, myTxs, networkInfo.chainId); //use all transactions (wallet address null)
-
-            if (page > SYNC_PAGECOUNT) continueReading = false;
-
-            if (myTxs.length < PAGESIZE)
-            {
-                continueReading = false;
-            }
-        }
-
-        return sortTransactions(txMap.values());
+        // only SYNC_PAGECOUNT pages at a time for each check, to avoid congestion; the next page is only requested if this one was full
+        return Observable.range(1, SYNC_PAGECOUNT)
+                .concatMapSingle(page -> readTransactions(networkInfo, svs, tokenAddress, String.valueOf(lowBlockNumber), String.valueOf(highBlockNumber), false, page))
+                .takeUntil(myTxs -> myTxs.length < PAGESIZE)
+                .collect(() -> new HashMap<String, Transaction>(),
+                        (txMap, myTxs) -> populateTransactionMap(txMap, myTxs, networkInfo.chainId)) //use all transactions (wallet address null)
+                .map(txMap -> sortTransactions(txMap.values()));
     }
 
     private void populateTransactionMap(HashMap<String, Transaction> txMap, EtherscanTransaction[] myTxs, long chainId)
@@ -249,57 +252,8 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         }
     }
 
-    private EtherscanTransaction[] getEtherscanTransactions(String response) throws JSONException
+    private CovalentTransaction[] removeSeenTransactions(List<CovalentTransaction> ctxs, String walletAddress)
     {
-        JSONObject stateData;
-        try
-        {
-            stateData = new JSONObject(response);
-        }
-        catch (JSONException e)
-        {
-            Timber.w(e);
-            return new EtherscanTransaction[0];
-        }
-
-        // Check for V2 API error messages
-        if (stateData.has("message") && stateData.has("result"))
-        {
-            String message = stateData.optString("message", "");
-            if (message.contains("deprecated") || message.contains("V1") || message.contains("V2"))
-            {
-                Timber.w("Etherscan API V1 deprecation warning: " + message);
-                // Try to parse result anyway, might still be valid
-            }
-        }
-
-        // Handle V2 API response format
-        Object resultObj = stateData.opt("result");
-        if (resultObj instanceof String)
-        {
-            String resultStr = (String) resultObj;
-            // If result is an error message string, return empty array
-            if (resultStr.contains("deprecated") || resultStr.contains("V1") || resultStr.contains("V2"))
-            {
-                Timber.w("Etherscan API error: " + resultStr);
-                return new EtherscanTransaction[0];
-            }
-        }
-
-        JSONArray orders = stateData.getJSONArray("result");
-        return gson.fromJson(orders.toString(), EtherscanTransaction[].class);
-    }
-
-    private CovalentTransaction[] getCovalentTransactions(String response, String walletAddress) throws JSONException
-    {
-        if (response == null || response.length() < 80)
-        {
-            return new CovalentTransaction[0];
-        }
-        JSONObject stateData = new JSONObject(response);
-        JSONObject data = stateData.getJSONObject("data");
-        JSONArray orders = data.getJSONArray("items");
-        CovalentTransaction[] ctxs = gson.fromJson(orders.toString(), CovalentTransaction[].class);
         //reformat list to remove any transactions already seen
         List<CovalentTransaction> cvList = new ArrayList<>();
         try (Realm instance = realmManager.getRealmInstance(new Wallet(walletAddress)))
@@ -320,45 +274,11 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         return cvList.toArray(new CovalentTransaction[0]);
     }
 
-    private EtherscanEvent[] getEtherscanEvents(String response) throws JSONException
+    private void writeTransactions(String walletAddress, List<Transaction> txList)
     {
-        JSONObject stateData = new JSONObject(response);
-        
-        // Check for V2 API error messages
-        if (stateData.has("message") && stateData.has("result"))
-        {
-            String message = stateData.optString("message", "");
-            if (message.contains("deprecated") || message.contains("V1") || message.contains("V2"))
-            {
-                Timber.w("Etherscan API V1 deprecation warning: " + message);
-                // Try to parse result anyway, might still be valid
-            }
-        }
-        
-        // Handle V2 API response format
-        Object resultObj = stateData.opt("result");
-        if (resultObj instanceof String)
+        for (Transaction tx : txList)
         {
-            String resultStr = (String) resultObj;
-            // If result is an error message string, return empty array
-            if (resultStr.contains("deprecated") || resultStr.contains("V1") || resultStr.contains("V2"))
-            {
-                Timber.w("Etherscan API error: " + resultStr);
-                return new EtherscanEvent[0];
-            }
-        }
-        
-        JSONArray orders = stateData.getJSONArray("result");
-        return gson.fromJson(orders.toString(), EtherscanEvent[].class);
-    }
-
-    private void writeTransactions(Realm instance, List<Transaction> txList) throws Exception
-    {
-        if (txList.size() == 0) return;
-
-        instance.executeTransaction(r -> {
-            for (Transaction tx : txList)
-            {
+            writeQueue.enqueue(walletAddress, "tx-" + tx.hash, r -> {
                 String oldGasFeeMax = "";
                 String oldPriorityFee = "";
                 RealmTransaction realmTx = r.where(RealmTransaction.class)
@@ -379,103 +299,110 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
                 realmTx.setMaxFeePerGas(oldGasFeeMax);
                 realmTx.setMaxPriorityFee(oldPriorityFee);
                 r.insertOrUpdate(realmTx);
-            }
-        });
+            });
+        }
     }
 
-    private EtherscanTransaction[] readTransactions(NetworkInfo networkInfo, TokensService svs, String tokenAddress, String lowBlock, String highBlock, boolean ascending, int page) throws JSONException
+    /**
+     * Fetch and decode one page of transactions on the io pool
+     */
+    private Single<EtherscanTransaction[]> readTransactions(NetworkInfo networkInfo, TokensService svs, String tokenAddress, String lowBlock, String highBlock, boolean ascending, int page)
     {
-        if (networkInfo == null) return new EtherscanTransaction[0];
+        if (networkInfo == null) return Single.just(new EtherscanTransaction[0]);
         
         // TRON 주소인 경우 ETH 네트워크에서 사용할 수 없음
         if (tokenAddress != null && tokenAddress.startsWith("T") && !com.setlone.app.repository.EthereumNetworkBase.isTronNetwork(networkInfo.chainId))
         {
             Timber.w("readTransactions: TRON address %s cannot be used for ETH network %d", tokenAddress, networkInfo.chainId);
-            return new EtherscanTransaction[0];
+            return Single.just(new EtherscanTransaction[0]);
         }
         
         if (networkInfo.etherscanAPI.contains(COVALENT))
         {
-            return readCovalentTransactions(svs, tokenAddress, networkInfo, ascending, page, PAGESIZE);
+            //Covalent pages carry the transfers too, these are written as the page is read
+            return Single.fromCallable(() -> readCovalentTransactions(svs, tokenAddress, networkInfo, ascending, page, PAGESIZE))
+                    .subscribeOn(Schedulers.io())
+                    .doOnSuccess(myTxs -> syncPipeline.onPage(networkInfo.chainId, myTxs.length));
         }
-        else if (networkInfo.chainId == OKX_ID)
+
+        //rows are decoded as the response streams in
+        return Single.fromCallable(() -> fetchTransactions(networkInfo, tokenAddress, lowBlock, highBlock, ascending, page))
+                .subscribeOn(Schedulers.io())
+                .doOnSuccess(myTxs -> syncPipeline.onPage(networkInfo.chainId, myTxs.length));
+    }
+
+    private EtherscanTransaction[] fetchTransactions(NetworkInfo networkInfo, String tokenAddress, String lowBlock, String highBlock, boolean ascending, int page)
+    {
+        if (networkInfo.chainId == OKX_ID || TextUtils.isEmpty(networkInfo.etherscanAPI))
         {
             return new EtherscanTransaction[0];
         }
 
-        String result = null;
         String fullUrl;
 
         String sort = "asc";
         if (!ascending) sort = "desc";
 
-        if (!TextUtils.isEmpty(networkInfo.etherscanAPI))
+        StringBuilder sb = new StringBuilder();
+        sb.append(networkInfo.etherscanAPI);
+        // Etherscan V2 API requires chainid parameter
+        if (networkInfo.etherscanAPI.contains("api.etherscan.io/v2/api"))
         {
-            StringBuilder sb = new StringBuilder();
-            sb.append(networkInfo.etherscanAPI);
-            // Etherscan V2 API requires chainid parameter
-            if (networkInfo.etherscanAPI.contains("api.etherscan.io/v2/api"))
-            {
-                sb.append("chainid=");
-                sb.append(networkInfo.chainId);
-                sb.append("&");
-            }
-            sb.append("module=account&action=txlist&address=");
-            sb.append(tokenAddress);
-            if (ascending)
-            {
-                sb.append("&startblock=");
-                sb.append(lowBlock);
-                sb.append("&endblock=999999999&sort=");
-            }
-            else
-            {
-                sb.append("&startblock=");
-                sb.append(lowBlock);
-                sb.append("&endblock=");
-                sb.append(highBlock);
-                sb.append("&sort=");
-            }
+            sb.append("chainid=");
+            sb.append(networkInfo.chainId);
+            sb.append("&");
+        }
+        sb.append("module=account&action=txlist&address=");
+        sb.append(tokenAddress);
+        if (ascending)
+        {
+            sb.append("&startblock=");
+            sb.append(lowBlock);
+            sb.append("&endblock=999999999&sort=");
+        }
+        else
+        {
+            sb.append("&startblock=");
+            sb.append(lowBlock);
+            sb.append("&endblock=");
+            sb.append(highBlock);
+            sb.append("&sort=");
+        }
 
-            sb.append(sort);
-            if (page > 0)
-            {
-                sb.append("&page=");
-                sb.append(page);
-                sb.append("&offset=");
-                sb.append(PAGESIZE);
-            }
+        sb.append(sort);
+        if (page > 0)
+        {
+            sb.append("&page=");
+            sb.append(page);
+            sb.append("&offset=");
+            sb.append(PAGESIZE);
+        }
 
-            sb.append(getNetworkAPIToken(networkInfo));
+        sb.append(getNetworkAPIToken(networkInfo));
 
-            fullUrl = sb.toString();
+        fullUrl = sb.toString();
 
-            if (networkInfo.isCustom && !Utils.isValidUrl(networkInfo.etherscanAPI))
-            {
-                return new EtherscanTransaction[0];
-            }
+        if (networkInfo.isCustom && !Utils.isValidUrl(networkInfo.etherscanAPI))
+        {
+            return new EtherscanTransaction[0];
+        }
 
-            Request request = new Request.Builder()
-                .url(fullUrl)
-                .get()
-                .build();
+        Request request = new Request.Builder()
+            .url(fullUrl)
+            .get()
+            .build();
 
-            try (okhttp3.Response response = httpClient.newCall(request).execute())
-            {
-                if (response.body() == null) return new EtherscanTransaction[0];
-                if (response.code() / 200 == 1)
-                {
-                    result = response.body().string();
-                    if (result.length() >= 80 && !result.contains("No transactions found"))
-                    {
-                        return getEtherscanTransactions(result);
-                    }
-                }
-            }
-            catch (Exception e)
-            {
-                Timber.e(e);
-            }
+        try
+        {
+            return syncPipeline.execute(httpClient, request, response -> {
+                if (response.body() == null || response.code() / 200 != 1) return new EtherscanTransaction[0];
+                return responseReader.readEtherscanResult(response.body().charStream(), EtherscanTransaction.class)
+                        .toArray(new EtherscanTransaction[0]);
+            });
+        }
+        catch (Exception e)
+        {
+            Timber.e(e);
         }
 
         return new EtherscanTransaction[0];
@@ -508,8 +435,10 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
                     Timber.d("DIAGNOSE: " + oldestBlockRead + " : " + oldestPossibleBlock);
                     if (oldestBlockRead > 0 && oldestBlockRead != oldestPossibleBlock)
                     {
-                        List<Transaction> syncTx = syncDownwards(svs, network, svs.getCurrentAddress(), 0, oldestBlockRead);
-                        writeTransactions(instance, syncTx);
+                        List<Transaction> syncTx = syncDownwards(svs, network, svs.getCurrentAddress(), 0, oldestBlockRead).blockingGet();
+                        writeTransactions(svs.getCurrentAddress(), syncTx);
+                        writeQueue.flushAndWait();
+                        instance.refresh();
                     }
 
                     //now re-read last blocks from DB
@@ -537,22 +466,27 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
     public Single<Map<String, List<TransferEvent>>> readTransfers(String walletAddress, NetworkInfo networkInfo, TokensService svs, TransferFetchType tfType)
     {
         return Single.fromCallable(() -> {
-            //get latest block read
-            Map<String, List<TransferEvent>> tfMap = new HashMap<>();
-            try (Realm instance = realmManager.getRealmInstance(new Wallet(walletAddress)))
-            {
-                EtherscanEvent[] events = fetchEvents(instance, walletAddress, networkInfo, tfType);
-                tfMap = processEtherscanEvents(instance, walletAddress, networkInfo, svs, events, tfType);
-            }
-            catch (Exception e)
-            {
-                Timber.e(e);
-            }
-            return tfMap;
-        }).observeOn(Schedulers.io());
+                    //get latest block read
+                    try (Realm instance = realmManager.getRealmInstance(new Wallet(walletAddress)))
+                    {
+                        return fetchEvents(instance, walletAddress, networkInfo, tfType);
+                    }
+                })
+                .subscribeOn(Schedulers.io())
+                .observeOn(syncPipeline.getWriter())
+                .map(events -> {
+                    try (Realm instance = realmManager.getRealmInstance(new Wallet(walletAddress)))
+                    {
+                        return processEtherscanEvents(instance, walletAddress, networkInfo, svs, events, tfType);
+                    }
+                })
+                .onErrorReturn(e -> {
+                    Timber.e(e);
+                    return new HashMap<>();
+                });
     }
 
-    private EtherscanEvent[] fetchEvents(Realm instance, String walletAddress, NetworkInfo networkInfo, TransferFetchType tfType) throws JSONException
+    private EtherscanEvent[] fetchEvents(Realm instance, String walletAddress, NetworkInfo networkInfo, TransferFetchType tfType)
     {
         EtherscanEvent[] events;
         List<EtherscanEvent> eventList = new ArrayList<>();
@@ -572,8 +506,7 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
 
             while (true)
             {
-                String fetchTransactions = readNextTxBatch(walletAddress, networkInfo, upperBlock, lowerBlock, tfType.getValue());
-                events = getEtherscanEvents(fetchTransactions);
+                events = readNextTxBatch(walletAddress, networkInfo, upperBlock, lowerBlock, tfType.getValue());
 
                 if (events.length == 0)
                 {
@@ -587,7 +520,7 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
                     //If still above the last read, blank all following reads to avoid 'sync-holes'. The new events read above will be added on the return
                     //TODO: See above - need to sync the lowest block here to the lowest block in the transaction reads
                     //      This is so we can add a 'view all transactions' button which takes the user to the relevant Etherscan/Blockscout page.
-                    blankTransferData(instance, networkInfo.chainId);
+                    blankTransferData(walletAddress, networkInfo.chainId);
                 }
 
                 if (eventList.size() > TRANSFER_RESULT_MAX || events.length < TRANSFER_RESULT_MAX)
@@ -614,10 +547,10 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         Map<String, Boolean> tokenTypes = writeTokens(walletAddress, networkInfo, events, svs, tfType);
 
         //we know all these events are relevant to the wallet, and they are all ERC20 events
-        Pair<Long, Map<String, List<TransferEvent>>> txPair = writeEvents(instance, events, walletAddress, networkInfo, tokenTypes, lastBlockChecked);
+        Pair<Long, Map<String, List<TransferEvent>>> txPair = writeEvents(events, walletAddress, networkInfo, tokenTypes, lastBlockChecked);
 
         //and update the top block read
-        writeTokenBlockRead(instance, networkInfo.chainId, txPair.first + 1, tfType);
+        writeTokenBlockRead(walletAddress, networkInfo.chainId, txPair.first + 1, tfType);
 
         return txPair.second;
     }
@@ -742,18 +675,18 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         }
     }
 
-    private String readNextTxBatch(String walletAddress, NetworkInfo networkInfo, long upperBlock, long lowerBlock, String queryType)
+    private EtherscanEvent[] readNextTxBatch(String walletAddress, NetworkInfo networkInfo, long upperBlock, long lowerBlock, String queryType)
     {
-        if (TextUtils.isEmpty(networkInfo.etherscanAPI) || networkInfo.etherscanAPI.contains(COVALENT)) return JSON_EMPTY_RESULT; //Covalent transfers are handled elsewhere
+        if (TextUtils.isEmpty(networkInfo.etherscanAPI) || networkInfo.etherscanAPI.contains(COVALENT)) return new EtherscanEvent[0]; //Covalent transfers are handled elsewhere
         
         // TRON 주소인 경우 ETH 네트워크에서 사용할 수 없음
         if (walletAddress != null && walletAddress.startsWith("T") && !com.setlone.app.repository.EthereumNetworkBase.isTronNetwork(networkInfo.chainId))
         {
             Timber.w("readNextTxBatch: TRON address %s cannot be used for ETH network %d", walletAddress, networkInfo.chainId);
-            return JSON_EMPTY_RESULT;
+            return new EtherscanEvent[0];
         }
         
-        String result = JSON_EMPTY_RESULT;
+        EtherscanEvent[] result = new EtherscanEvent[0];
         if (lowerBlock == 0) lowerBlock = 1;
 
         StringBuilder sb = new StringBuilder();
@@ -781,7 +714,7 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
 
         if (networkInfo.isCustom && !Utils.isValidUrl(networkInfo.etherscanAPI))
         {
-            return JSON_EMPTY_RESULT;
+            return result;
         }
 
         Request request = new Request.Builder()
@@ -791,16 +724,13 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
             .addHeader("Content-Type", "application/json")
             .build();
 
-        try (okhttp3.Response response = httpClient.newCall(request).execute())
+        try
         {
-            if (response.code() / 200 == 1)
-            {
-                result = response.body().string();
-                if (result.length() < 80 && result.contains("No transactions found"))
-                {
-                    result = JSON_EMPTY_RESULT;
-                }
-            }
+            result = syncPipeline.execute(httpClient, request, response -> {
+                if (response.code() / 200 != 1) return new EtherscanEvent[0];
+                return responseReader.readEtherscanResult(response.body().charStream(), EtherscanEvent.class)
+                        .toArray(new EtherscanEvent[0]);
+            });
         }
         catch (Exception e)
         {
@@ -836,13 +766,13 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         }
     }
 
-    private EtherscanTransaction[] readCovalentTransactions(TokensService svs, String accountAddress, NetworkInfo networkInfo, boolean ascending, int page, int pageSize) throws JSONException
+    private EtherscanTransaction[] readCovalentTransactions(TokensService svs, String accountAddress, NetworkInfo networkInfo, boolean ascending, int page, int pageSize)
     {
         String covalent = "" + networkInfo.chainId + "/address/" + accountAddress.toLowerCase() + "/transactions_v2/?";
         String args = "block-signed-at-asc=" + (ascending ? "true" : "false") + "&page-number=" + (page - 1) + "&page-size=" +
                 pageSize + "&key=" + keyProvider.getCovalentKey(); //read logs to get all the transfers
         String fullUrl = networkInfo.etherscanAPI.replace(COVALENT, covalent);
-        String result = null;
+        List<CovalentTransaction> items;
 
         Request request = new Request.Builder()
                 .url(fullUrl + args)
@@ -850,15 +780,10 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
                 .addHeader("Content-Type", "application/json")
                 .build();
 
-        try (okhttp3.Response response = httpClient.newCall(request).execute())
+        try
         {
-            if (response.body() == null) return new EtherscanTransaction[0];
-
-            result = response.body().string();
-            if (result.length() < 80 && result.contains("No transactions found"))
-            {
-                return new EtherscanTransaction[0];
-            }
+            items = syncPipeline.execute(httpClient, request, response -> response.body() != null
+                    ? responseReader.readCovalentItems(response.body().charStream()) : new ArrayList<>());
         }
         catch (Exception e)
         {
@@ -866,7 +791,12 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
             return new EtherscanTransaction[0];
         }
 
-        CovalentTransaction[] covalentTransactions = getCovalentTransactions(result, svs.getCurrentAddress());
+        if (items.isEmpty())
+        {
+            return new EtherscanTransaction[0];
+        }
+
+        CovalentTransaction[] covalentTransactions = removeSeenTransactions(items, svs.getCurrentAddress());
 
         EtherscanTransaction[] unhandledTxs = processCovalentEvents(covalentTransactions, svs, networkInfo);
 
@@ -919,9 +849,9 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         }
     }
 
-    private void writeTokenBlockRead(Realm instance, long chainId, long lastBlockChecked, TransferFetchType tfType)
+    private void writeTokenBlockRead(String walletAddress, long chainId, long lastBlockChecked, TransferFetchType tfType)
     {
-        instance.executeTransaction(r -> {
+        writeQueue.enqueue(walletAddress, BLOCK_ENTRY + chainId + "-" + tfType.ordinal(), r -> {
             RealmAuxData rd = r.where(RealmAuxData.class)
                     .equalTo("instanceKey", BLOCK_ENTRY + chainId)
                     .findFirst();
@@ -1026,24 +956,18 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
 
     private void storeLatestBlockRead(String walletAddress, long chainId, String tokenAddress, String lastBlockRead)
     {
-        try (Realm instance = realmManager.getRealmInstance(walletAddress))
-        {
-            instance.executeTransactionAsync(r -> {
-                RealmToken realmToken = r.where(RealmToken.class)
-                        .equalTo("address", databaseKey(chainId, tokenAddress))
-                        .findFirst();
+        final long lastTxTime = System.currentTimeMillis();
+        writeQueue.enqueue(walletAddress, "lastBlock-" + databaseKey(chainId, tokenAddress), r -> {
+            RealmToken realmToken = r.where(RealmToken.class)
+                    .equalTo("address", databaseKey(chainId, tokenAddress))
+                    .findFirst();
 
-                if (realmToken != null)
-                {
-                    realmToken.setLastBlock(Long.parseLong(lastBlockRead));
-                    realmToken.setLastTxTime(System.currentTimeMillis());
-                }
-            });
-        }
-        catch (Exception e)
-        {
-            //
-        }
+            if (realmToken != null)
+            {
+                realmToken.setLastBlock(Long.parseLong(lastBlockRead));
+                realmToken.setLastTxTime(lastTxTime);
+            }
+        });
     }
 
     private void storeEarliestBlockRead(Realm instance, long chainId, String walletAddress, long earliestBlock)
@@ -1104,7 +1028,7 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         }
     }
 
-    private Pair<Long, Map<String, List<TransferEvent>>> writeEvents(Realm instance, EtherscanEvent[] events, String walletAddress,
+    private Pair<Long, Map<String, List<TransferEvent>>> writeEvents(EtherscanEvent[] events, String walletAddress,
                                                                      @NonNull NetworkInfo networkInfo, final Map<String, Boolean> tokenTypes, long lastBlockRead) throws Exception
     {
         String TO_TOKEN = "[TO_ADDRESS]";
@@ -1156,12 +1080,12 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
             }
         }
 
-        instance.executeTransaction(r -> {
+        //store the transaction data and initiate tx fetch if not already known, once the write is committed
+        writeQueue.enqueue(walletAddress, r -> {
             storeTransferData(r, networkInfo.chainId, transferEventMap);
-            storeTransactions(r, txWriteMap, networkInfo.etherscanAPI.contains(COVALENT) ? null : txFetches); //store the transaction data and initiate tx fetch if not already known
-        });
+            storeTransactions(r, txWriteMap, networkInfo.etherscanAPI.contains(COVALENT) ? null : txFetches);
+        }, () -> fetchRequiredTransactions(networkInfo.chainId, txFetches, walletAddress));
 
-        fetchRequiredTransactions(networkInfo.chainId, txFetches, walletAddress);
         return new Pair<>(highestBlockRead, transferEventMap);
     }
 
@@ -1216,9 +1140,9 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         }
     }
 
-    private void blankTransferData(Realm instance, long chainId)
+    private void blankTransferData(String walletAddress, long chainId)
     {
-        instance.executeTransaction(r -> {
+        writeQueue.enqueueBarrier(walletAddress, r -> {
             RealmResults<RealmTransfer> realmTx = r.where(RealmTransfer.class)
                     .like("hash", "*-" + chainId, Case.INSENSITIVE)
                     .findAll();
@@ -1336,9 +1260,9 @@ public class TransactionsNetworkClient implements TransactionsNetworkClientType
         return newToken;
     }
 
-    private void eraseAllTransactions(Realm instance, long chainId)
+    private void eraseAllTransactions(String walletAddress, long chainId)
     {
-        instance.executeTransaction(r -> {
+        writeQueue.enqueueBarrier(walletAddress, r -> {
             RealmResults<RealmTransaction> realmTx = r.where(RealmTransaction.class)
                     .equalTo("chainId", chainId)
                     .findAll();
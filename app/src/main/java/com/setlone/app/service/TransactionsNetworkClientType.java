@@ -20,4 +20,6 @@ public interface TransactionsNetworkClientType
     Single<Map<String, List<TransferEvent>>> readTransfers(String currentAddress, NetworkInfo networkByChain, TokensService tokensService, TransferFetchType tfType);
 
     void checkRequiresAuxReset(String walletAddr);
+
+    List<TransactionSyncPipeline.ChainSyncStats> getSyncStats();
 }
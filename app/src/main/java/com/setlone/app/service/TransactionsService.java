@@ -25,10 +25,7 @@ import com.setlone.token.entity.ContractAddress;
 
 import org.web3j.exceptions.MessageDecodingException;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.DefaultBlockParameterName;
-import org.web3j.protocol.core.methods.response.EthBlock;
 import org.web3j.protocol.core.methods.response.EthTransaction;
-import org.web3j.utils.Numeric;
 
 import java.io.IOException;
 import java.math.BigInteger;
@@ -36,6 +33,7 @@ import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
@@ -43,6 +41,7 @@ import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
 import io.reactivex.schedulers.Schedulers;
 import timber.log.Timber;
 
@@ -63,7 +62,7 @@ public class TransactionsService
     private boolean firstTxCycle;
     private final LongSparseArray<Long> chainTransferCheckTimes = new LongSparseArray<>(); //TODO: Use this to coordinate token checks on chains
     private final LongSparseArray<Long> chainTransactionCheckTimes = new LongSparseArray<>();
-    private static final LongSparseArray<CurrentBlockTime> currentBlocks = new LongSparseArray<>();
+    private final LongSparseArray<BigInteger> chainTransferCheckBlocks = new LongSparseArray<>(); //head block at the last transfer read of each chain
     private static final ConcurrentLinkedQueue<String> requiredTransactions = new ConcurrentLinkedQueue<>();
     private final LongSparseArray<TransferFetchType> apiFetchProgress = new LongSparseArray<>();
 
@@ -71,14 +70,12 @@ public class TransactionsService
     private final static int TRANSACTION_SEEN = -2;
     private final static long START_CHECK_DELAY = 3;
     private final static long CHECK_CYCLE = 15;
-    @Nullable
-    private Disposable fetchTransactionDisposable;
+    private final Map<Long, Disposable> transactionFetches = new ConcurrentHashMap<>(); //in-flight transaction syncs by chain
     @Nullable
     private Disposable transactionCheckCycle;
     @Nullable
     private Disposable tokenTransferCheckCycle;
-    @Nullable
-    private Disposable eventFetch;
+    private final Map<Long, Disposable> transferFetches = new ConcurrentHashMap<>(); //in-flight transfer reads by chain
     @Nullable
     private Disposable pendingTransactionCheckCycle;
     @Nullable
@@ -114,9 +111,7 @@ public class TransactionsService
 
         transactionsClient.checkRequiresAuxReset(tokensService.getCurrentAddress());
 
-        if (fetchTransactionDisposable != null && !fetchTransactionDisposable.isDisposed())
-            fetchTransactionDisposable.dispose();
-        fetchTransactionDisposable = null;
+        disposeFetches(transactionFetches);
         //reset transaction timers
         startTransactionCheckCycle(START_CHECK_DELAY);
 
@@ -158,6 +153,7 @@ public class TransactionsService
             startUpdateCycle();
         }
 
+        transactionsCache.flushWrites(); //show anything the sync has queued
         tokensService.clearFocusToken();
         tokensService.walletInFocus();
     }
@@ -166,6 +162,7 @@ public class TransactionsService
     {
         chainTransferCheckTimes.clear();
         chainTransactionCheckTimes.clear();
+        chainTransferCheckBlocks.clear();
         tokensService.startUpdateCycle();
         apiFetchProgress.clear();
 
@@ -181,21 +178,46 @@ public class TransactionsService
     private void checkTransfers()
     {
         List<Long> filters = tokensService.getNetworkFilters();
-        if (tokensService.getCurrentAddress() == null || filters.size() == 0 ||
-                (BuildConfig.DEBUG && eventFetch != null)) //don't allow multiple calls while debugging
+        if (tokensService.getCurrentAddress() == null || filters.size() == 0)
         {
             return; //skip check if the service isn't set up
         }
 
-        long chainId = filters.get(currentChainIndex);
-        boolean initiateRead = readTokenMoves(chainId); //check NFTs for same chain on next iteration or advance to next chain
-
-        if (initiateRead)
+        //start reads on up to MAX_CONCURRENT_CHAINS chains at once; each chain still steps through its transfer types in turn
+        for (int i = 0; i < filters.size() && transferFetches.size() < TransactionSyncPipeline.MAX_CONCURRENT_CHAINS; i++)
         {
-            currentChainIndex = getNextChainIndex(currentChainIndex, chainId, filters);
+            if (currentChainIndex >= filters.size()) currentChainIndex = 0;
+            long chainId = filters.get(currentChainIndex);
+            if (transferFetches.containsKey(chainId) || !hasNewBlock(chainId))
+            {
+                //already reading this chain, or nothing can have moved on it since the last read; try the next one
+                currentChainIndex = (currentChainIndex + 1) % filters.size();
+                continue;
+            }
+
+            boolean initiateRead = readTokenMoves(chainId); //check NFTs for same chain on next iteration or advance to next chain
+
+            if (initiateRead)
+            {
+                currentChainIndex = getNextChainIndex(currentChainIndex, chainId, filters);
+            }
         }
     }
 
+    /**
+     * A chain's transfer read only starts (from the ERC20 route) once its head has advanced since the last read.
+     * Untracked chains, and the first pass after startup, are always read.
+     */
+    private boolean hasNewBlock(long chainId)
+    {
+        if (firstCycle || apiFetchProgress.get(chainId, TransferFetchType.ERC_20) != TransferFetchType.ERC_20) return true;
+        BigInteger head = BlockHeadTracker.getInstance().getTrackedHead(chainId);
+        if (head == null) return true;
+        if (head.equals(chainTransferCheckBlocks.get(chainId))) return false;
+        chainTransferCheckBlocks.put(chainId, head);
+        return true;
+    }
+
     private int getNextChainIndex(int currentIndex, long chainId, List<Long> filters)
     {
         final NetworkInfo info = ethereumNetworkRepository.getNetworkByChain(chainId);
@@ -233,6 +255,7 @@ public class TransactionsService
         List<Long> filters = tokensService.getNetworkFilters();
         if (filters.contains(chainId))
         {
+            chainTransferCheckBlocks.remove(chainId);
             currentChainIndex = filters.indexOf(chainId);
             TransferFetchType nftSelection = ethereumNetworkRepository.getNetworkByChain(chainId).getTransferQueriesUsed().length > 1 ? TransferFetchType.ERC_721 : TransferFetchType.ERC_20;
             apiFetchProgress.put(chainId, isNft ? nftSelection : TransferFetchType.ERC_20);
@@ -248,7 +271,9 @@ public class TransactionsService
             return true;
         }
 
-        if (eventFetch != null && !eventFetch.isDisposed())
+        //hold the chain's slot before starting, as a read can complete before subscribe returns
+        Disposable placeholder = Disposables.empty();
+        if (transferFetches.putIfAbsent(chainId, placeholder) != null)
         {
             return false;
         }
@@ -260,25 +285,27 @@ public class TransactionsService
         }
 
         Timber.tag(TAG).d("Check transfers: %s : NFT=%s", chainId, tfType.getValue());
-        eventFetch = transactionsClient.readTransfers(tokensService.getCurrentAddress(), info, tokensService, tfType)
+        Disposable d = transactionsClient.readTransfers(tokensService.getCurrentAddress(), info, tokensService, tfType)
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(tfMap -> handleMoveCheck(info.chainId, tfType.ordinal() > 0, tfMap), this::gotReadErr);
+                .subscribe(tfMap -> handleMoveCheck(info.chainId, tfType.ordinal() > 0, tfMap), e -> gotReadErr(info.chainId, e));
+        transferFetches.replace(chainId, placeholder, d);
 
         return true;
     }
 
-    private void gotReadErr(Throwable e)
+    private void gotReadErr(long chainId, Throwable e)
     {
-        eventFetch = null;
+        transferFetches.remove(chainId);
+        tokensService.finishedCheckingChain(chainId);
         Timber.e(e);
     }
 
     private void handleMoveCheck(long chainId, boolean isNFT, Map<String, List<TransferEvent>> tfMap)
     {
         chainTransferCheckTimes.put(chainId, System.currentTimeMillis());
-        if (isNFT) tokensService.checkingChain(0); //this flags to TokensService that the check is complete. This avoids race condition
-        eventFetch = null;
+        if (isNFT) tokensService.finishedCheckingChain(chainId); //this flags to TokensService that the check is complete. This avoids race condition
+        transferFetches.remove(chainId);
 
         checkForIncomingTransfers(chainId, tfMap);
     }
@@ -304,24 +331,24 @@ public class TransactionsService
     private void checkTransactionQueue()
     {
         if (tokensService.getCurrentAddress() == null) return;
-        if (fetchTransactionDisposable == null)
+        //sync up to MAX_CONCURRENT_CHAINS chains at once, the client paces the requests to each API
+        while (transactionFetches.size() < TransactionSyncPipeline.MAX_CONCURRENT_CHAINS)
         {
             Token t = getRequiresTransactionUpdate();
+            if (t == null) break;
+
+            long chainId = t.tokenInfo.chainId;
+            String tick = (t.isEthereum() && getPendingChains().contains(chainId)) ? "*" : "";
+            if (BuildConfig.DEBUG)
+                Timber.tag(TAG).d("Transaction check for: %s (%s) %s", chainId, t.getNetworkName(), tick);
+            NetworkInfo network = ethereumNetworkRepository.getNetworkByChain(chainId);
+            Disposable d = transactionsClient.storeNewTransactions(tokensService, network, t.getAddress(), t.lastBlockCheck)
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(AndroidSchedulers.mainThread())
+                    .subscribe(transactions -> onUpdateTransactions(transactions, t), e -> onTxError(chainId, e));
+            if (!d.isDisposed()) transactionFetches.put(chainId, d);
 
-            if (t != null)
-            {
-                String tick = (t.isEthereum() && getPendingChains().contains(t.tokenInfo.chainId)) ? "*" : "";
-                if (BuildConfig.DEBUG)
-                    Timber.tag(TAG).d("Transaction check for: %s (%s) %s", t.tokenInfo.chainId, t.getNetworkName(), tick);
-                NetworkInfo network = ethereumNetworkRepository.getNetworkByChain(t.tokenInfo.chainId);
-                fetchTransactionDisposable =
-                        transactionsClient.storeNewTransactions(tokensService, network, t.getAddress(), t.lastBlockCheck)
-                                .subscribeOn(Schedulers.io())
-                                .observeOn(AndroidSchedulers.mainThread())
-                                .subscribe(transactions -> onUpdateTransactions(transactions, t), this::onTxError);
-
-                checkFirstCycleCompletion();
-            }
+            checkFirstCycleCompletion();
         }
     }
 
@@ -365,7 +392,7 @@ public class TransactionsService
         for (long chainId : chains)
         {
             NetworkInfo thisInfo = ethereumNetworkRepository.getNetworkByChain(chainId);
-            if (TextUtils.isEmpty(thisInfo.etherscanAPI))
+            if (TextUtils.isEmpty(thisInfo.etherscanAPI) || transactionFetches.containsKey(chainId))
             {
                 continue;
             }
@@ -393,40 +420,6 @@ public class TransactionsService
         }
     }
 
-    private static Single<BigInteger> fetchCurrentBlock(final long chainId)
-    {
-        return Single.fromCallable(() -> {
-            try {
-                Web3j web3j = TokenRepository.getWeb3jService(chainId);
-                EthBlock ethBlock =
-                        web3j.ethGetBlockByNumber(DefaultBlockParameterName.LATEST, false).send();
-                
-                // Check if block is null (can happen due to network issues or RPC node problems)
-                if (ethBlock == null || ethBlock.getBlock() == null)
-                {
-                    Timber.w("EthBlock or Block is null for chainId: %d, using cached value", chainId);
-                    return currentBlocks.get(chainId, new CurrentBlockTime(BigInteger.ZERO)).blockNumber;
-                }
-                
-                String blockValStr = ethBlock.getBlock().getNumberRaw();
-                if (!TextUtils.isEmpty(blockValStr) && blockValStr.length() > 2)
-                {
-                    return Numeric.toBigInt(blockValStr);
-                }
-                else
-                {
-                    return currentBlocks.get(chainId, new CurrentBlockTime(BigInteger.ZERO)).blockNumber;
-                }
-            }
-            catch (Exception e)
-            {
-                Timber.e(e, "Error fetching current block for chainId: %d", chainId);
-                // Return cached value on error
-                return currentBlocks.get(chainId, new CurrentBlockTime(BigInteger.ZERO)).blockNumber;
-            }
-        });
-    }
-
     public Single<TransactionMeta[]> fetchAndStoreTransactions(long chainId, long lastTxTime)
     {
         NetworkInfo network = ethereumNetworkRepository.getNetworkByChain(chainId);
@@ -457,15 +450,15 @@ public class TransactionsService
         }
     }
 
-    private void onTxError(Throwable throwable)
+    private void onTxError(long chainId, Throwable throwable)
     {
-        fetchTransactionDisposable = null;
+        transactionFetches.remove(chainId);
     }
 
     private void onUpdateTransactions(Transaction[] transactions, Token token)
     {
         //got a new transaction
-        fetchTransactionDisposable = null;
+        transactionFetches.remove(token.tokenInfo.chainId);
         if (transactions.length == 0) return;
 
         Timber.tag(TAG).d("Queried for %s : %s Network transactions", token.tokenInfo.name, transactions.length);
@@ -532,29 +525,47 @@ public class TransactionsService
         tokensService.stopUpdateCycle();
         stopAllChainUpdate();
         tokensService.walletOutOfFocus();
+        transactionsCache.flushWrites();
     }
 
     public void lostFocus()
     {
         tokensService.walletOutOfFocus();
+        transactionsCache.flushWrites(); //persist queued writes before going to the background
+    }
+
+    private void disposeFetches(Map<Long, Disposable> fetches)
+    {
+        for (Disposable d : fetches.values())
+        {
+            if (!d.isDisposed()) d.dispose();
+        }
+        fetches.clear();
+    }
+
+    /**
+     * @return timings of the last transaction sync of each chain: time to first page and transactions per second
+     */
+    public List<TransactionSyncPipeline.ChainSyncStats> getSyncStats()
+    {
+        return transactionsClient.getSyncStats();
     }
 
     private void stopAllChainUpdate()
     {
-        if (fetchTransactionDisposable != null && !fetchTransactionDisposable.isDisposed()) { fetchTransactionDisposable.dispose(); }
         if (transactionCheckCycle != null && !transactionCheckCycle.isDisposed()) { transactionCheckCycle.dispose(); }
         if (pendingTransactionCheckCycle != null && !pendingTransactionCheckCycle.isDisposed()) { pendingTransactionCheckCycle.dispose(); }
         if (tokenTransferCheckCycle != null && !tokenTransferCheckCycle.isDisposed()) { tokenTransferCheckCycle.dispose(); }
-        if (eventFetch != null && !eventFetch.isDisposed()) { eventFetch.dispose(); }
+        disposeFetches(transactionFetches);
+        disposeFetches(transferFetches);
 
-        fetchTransactionDisposable = null;
         transactionCheckCycle = null;
         pendingTransactionCheckCycle = null;
         tokenTransferCheckCycle = null;
-        eventFetch = null;
-        tokensService.checkingChain(0);
+        tokensService.clearCheckingChains();
         chainTransferCheckTimes.clear();
         chainTransactionCheckTimes.clear();
+        chainTransferCheckBlocks.clear();
 
         currentChainIndex = 0;
     }
@@ -614,7 +625,7 @@ public class TransactionsService
         final Web3j web3j = TokenRepository.getWeb3jService(chainId);
         return EventUtils.getTransactionDetails(txHash, web3j)
                 .map(this::getBlockNumber)
-                .flatMap(blockData -> joinBlockTimestamp(blockData, web3j))
+                .flatMap(blockData -> joinBlockTimestamp(blockData, chainId, web3j))
                 .map(blockData -> formTransaction(blockData, chainId))
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io());
@@ -637,12 +648,13 @@ public class TransactionsService
         return new Pair<>(etx, blockNumber);
     }
 
-    private Single<Pair<EthTransaction, Long>> joinBlockTimestamp(Pair<EthTransaction, BigInteger> txData, Web3j web3j)
+    private Single<Pair<EthTransaction, Long>> joinBlockTimestamp(Pair<EthTransaction, BigInteger> txData, long chainId, Web3j web3j)
     {
         if (txData.second.compareTo(BigInteger.ZERO) > 0)
         {
-            return EventUtils.getBlockDetails(txData.first.getResult().getBlockHash(), web3j)
-                        .map(blockReceipt -> new Pair<>(txData.first, blockReceipt.getBlock().getTimestamp().longValue()));
+            //usually already held, the event sync reads the block times for the transfers it finds
+            return EventUtils.getBlockTimestamp(chainId, txData.first.getResult().getBlockHash(), web3j)
+                        .map(blockTime -> new Pair<>(txData.first, blockTime));
         }
         else
         {
@@ -672,14 +684,7 @@ public class TransactionsService
 
     public static BigInteger getCurrentBlock(long chainId)
     {
-        CurrentBlockTime currentBlock = currentBlocks.get(chainId, new CurrentBlockTime(BigInteger.ZERO));
-        if (currentBlock.blockReadRequiresUpdate())
-        {
-            currentBlock = new CurrentBlockTime(fetchCurrentBlock(chainId).blockingGet());
-            currentBlocks.put(chainId, currentBlock);
-        }
-
-        return currentBlock.blockNumber;
+        return BlockHeadTracker.getInstance().getBlockNumber(chainId);
     }
 
     private void checkPendingTransactions()
@@ -786,22 +791,4 @@ public class TransactionsService
 
         return txHashData;
     }
-
-    private static class CurrentBlockTime
-    {
-        public final long readTime;
-        public final BigInteger blockNumber;
-
-        public CurrentBlockTime(BigInteger blockNo)
-        {
-            readTime = System.currentTimeMillis();
-            blockNumber = blockNo;
-        }
-
-        public boolean blockReadRequiresUpdate()
-        {
-            // update every 10 seconds if required
-            return blockNumber.equals(BigInteger.ZERO) || System.currentTimeMillis() > (readTime + 10 * DateUtils.SECOND_IN_MILLIS);
-        }
-    }
 }
@@ -80,9 +80,9 @@ import com.setlone.app.entity.analytics.QrScanResultType;
 import com.setlone.app.entity.tokens.Token;
 import com.setlone.app.repository.EthereumNetworkBase;
 import com.setlone.app.repository.EthereumNetworkRepository;
-import com.setlone.app.repository.TokenRepository;
 import com.setlone.app.repository.TokensRealmSource;
 import com.setlone.app.repository.entity.RealmToken;
+import com.setlone.app.service.BrowserRpcProxy;
 import com.setlone.app.service.GasService;
 import com.setlone.app.ui.QRScanning.QRScannerActivity;
 import com.setlone.app.ui.widget.OnDappHomeNavClickListener;
@@ -126,8 +126,6 @@ import com.setlone.token.tools.ParseMagicLink;
 
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
-import org.web3j.protocol.Web3j;
-import org.web3j.protocol.core.methods.response.EthCall;
 import org.web3j.utils.Numeric;
 
 import java.io.ByteArrayOutputStream;
@@ -144,7 +142,6 @@ import java.net.URLDecoder;
 import java.nio.charset.Charset;
 
 import dagger.hilt.android.AndroidEntryPoint;
-import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
 import io.realm.Realm;
@@ -1115,15 +1112,10 @@ public class DappBrowserFragment extends BaseFragment implements OnSignTransacti
     @Override
     public void onEthCall(Web3Call call)
     {
-        Single.fromCallable(() -> {
-                    //let's make the call
-                    Web3j web3j = TokenRepository.getWeb3jService(activeNetwork.chainId);
-                    //construct call
-                    org.web3j.protocol.core.methods.request.Transaction transaction
-                            = createFunctionCallTransaction(wallet.address, null, null, call.gasLimit, call.to.toString(), call.value, call.payload);
-                    return web3j.ethCall(transaction, call.blockParam).send();
-                }).map(EthCall::getValue)
-                .subscribeOn(Schedulers.io())
+        //construct call
+        org.web3j.protocol.core.methods.request.Transaction transaction
+                = createFunctionCallTransaction(wallet.address, null, null, call.gasLimit, call.to.toString(), call.value, call.payload);
+        BrowserRpcProxy.getInstance().ethCall(activeNetwork.chainId, transaction, call.blockParam)
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(result -> web3.onCallFunctionSuccessful(call.leafPosition, result),
                         error -> web3.onCallFunctionError(call.leafPosition, error.getMessage()))
@@ -33,6 +33,7 @@ import java.util.Map;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
+import timber.log.Timber;
 
 public class NFTAssetsAdapter extends RecyclerView.Adapter<NFTAssetsAdapter.ViewHolder>
 {
@@ -81,6 +82,29 @@ public class NFTAssetsAdapter extends RecyclerView.Adapter<NFTAssetsAdapter.View
         displayData.addAll(actualData);
         lastFilter = "";
         sortData();
+        prefetchMetadata();
+    }
+
+    /**
+     * Without an asset API each card reads its own tokenURI when bound; resolve the collection together instead so
+     * binding (and scrolling back) is served from the metadata cache
+     */
+    private void prefetchMetadata()
+    {
+        if (EthereumNetworkBase.hasOpenseaAPI(token.tokenInfo.chainId)) return;
+
+        List<BigInteger> required = new ArrayList<>();
+        for (Pair<BigInteger, NFTAsset> pair : actualData)
+        {
+            if (pair.second != null && pair.second.requiresReplacement()) required.add(pair.first);
+        }
+
+        if (required.size() < 2) return;
+
+        Single.fromCallable(() -> token.fetchTokenMetadata(required))
+                .subscribeOn(Schedulers.io())
+                .subscribe(assets -> { }, Timber::w) //assets left unfetched are read as their cards bind
+                .isDisposed();
     }
 
     //TODO: Attestations should be attached to the backing Token if available
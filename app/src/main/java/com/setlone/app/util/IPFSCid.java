@@ -0,0 +1,203 @@
+package com.setlone.app.util;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Just enough CID handling to check content fetched from an IPFS gateway against the hash it was requested by.
+ *
+ * Only sha2-256 multihashes are supported, which covers CIDv0 (Qm...) and the default CIDv1 encodings (bafy...,
+ * bafk...). A raw block (CIDv1 raw codec) is the content itself; a dag-pb block holds the content in a UnixFS
+ * envelope, which can only be unwrapped here if the whole file fits in that one block.
+ */
+public class IPFSCid
+{
+    public static final int CODEC_RAW = 0x55;
+    public static final int CODEC_DAG_PB = 0x70;
+
+    private static final int SHA2_256 = 0x12;
+    private static final int SHA2_256_LENGTH = 32;
+    private static final String BASE58_ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+    private static final String BASE32_ALPHABET = "abcdefghijklmnopqrstuvwxyz234567";
+
+    //UnixFS node types which hold file data
+    private static final int UNIXFS_RAW = 0;
+    private static final int UNIXFS_FILE = 2;
+
+    public final int codec;
+    private final byte[] digest;
+
+    private IPFSCid(int codec, byte[] digest)
+    {
+        this.codec = codec;
+        this.digest = digest;
+    }
+
+    /**
+     * @return the decoded CID, or null if it isn't a CID with a sha2-256 hash
+     */
+    public static IPFSCid parse(String cid)
+    {
+        try
+        {
+            if (cid.length() == 46 && cid.startsWith("Qm"))
+            {
+                byte[] multihash = decodeBase58(cid);
+                return fromMultihash(CODEC_DAG_PB, multihash, 0);
+            }
+            else if (cid.length() > 1 && cid.charAt(0) == 'b')
+            {
+                byte[] bytes = decodeBase32(cid.substring(1));
+                int[] pos = { 0 };
+                if (readVarint(bytes, pos) != 1) return null;
+                int codec = (int) readVarint(bytes, pos);
+                return fromMultihash(codec, bytes, pos[0]);
+            }
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+        {
+            //not a CID
+        }
+
+        return null;
+    }
+
+    private static IPFSCid fromMultihash(int codec, byte[] bytes, int offset)
+    {
+        int[] pos = { offset };
+        if (readVarint(bytes, pos) != SHA2_256 || readVarint(bytes, pos) != SHA2_256_LENGTH) return null;
+        if (bytes.length - pos[0] != SHA2_256_LENGTH) return null;
+        return new IPFSCid(codec, Arrays.copyOfRange(bytes, pos[0], bytes.length));
+    }
+
+    public boolean matches(byte[] block)
+    {
+        try
+        {
+            return MessageDigest.isEqual(digest, MessageDigest.getInstance("SHA-256").digest(block));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @param block a block which {@link #matches} this CID
+     * @return the file content held in the block, or null if the content spans several blocks or isn't a file
+     */
+    public byte[] extractContent(byte[] block)
+    {
+        if (codec == CODEC_RAW) return block;
+        if (codec != CODEC_DAG_PB) return null;
+
+        try
+        {
+            //PBNode { repeated PBLink Links = 2; optional bytes Data = 1; }
+            byte[] data = null;
+            int[] pos = { 0 };
+            while (pos[0] < block.length)
+            {
+                long tag = readVarint(block, pos);
+                if ((tag & 0x7) != 2) return null;
+                byte[] field = readBytes(block, pos);
+                if (tag >> 3 == 2) return null; //linked blocks: a large file or a directory
+                if (tag >> 3 == 1) data = field;
+            }
+
+            if (data == null) return null;
+
+            //UnixFS Data { required DataType Type = 1; optional bytes Data = 2; ... }
+            long type = -1;
+            byte[] content = new byte[0];
+            pos[0] = 0;
+            while (pos[0] < data.length)
+            {
+                long tag = readVarint(data, pos);
+                switch ((int) (tag & 0x7))
+                {
+                    case 0:
+                        long value = readVarint(data, pos);
+                        if (tag >> 3 == 1) type = value;
+                        break;
+                    case 2:
+                        byte[] field = readBytes(data, pos);
+                        if (tag >> 3 == 2) content = field;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+
+            return (type == UNIXFS_FILE || type == UNIXFS_RAW) ? content : null;
+        }
+        catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e)
+        {
+            return null;
+        }
+    }
+
+    private static long readVarint(byte[] bytes, int[] pos)
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = bytes[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private static byte[] readBytes(byte[] bytes, int[] pos)
+    {
+        long length = readVarint(bytes, pos);
+        if (length < 0 || length > bytes.length - pos[0]) throw new IllegalArgumentException("Truncated field");
+        byte[] field = Arrays.copyOfRange(bytes, pos[0], pos[0] + (int) length);
+        pos[0] += (int) length;
+        return field;
+    }
+
+    private static byte[] decodeBase58(String input)
+    {
+        BigInteger value = BigInteger.ZERO;
+        BigInteger base = BigInteger.valueOf(58);
+        for (char c : input.toCharArray())
+        {
+            int digit = BASE58_ALPHABET.indexOf(c);
+            if (digit < 0) throw new IllegalArgumentException("Invalid base58 character");
+            value = value.multiply(base).add(BigInteger.valueOf(digit));
+        }
+
+        byte[] bytes = value.toByteArray();
+        if (bytes.length > 1 && bytes[0] == 0) bytes = Arrays.copyOfRange(bytes, 1, bytes.length); //sign byte
+        int leadingZeros = 0;
+        while (leadingZeros < input.length() && input.charAt(leadingZeros) == '1') leadingZeros++;
+        byte[] result = new byte[leadingZeros + bytes.length];
+        System.arraycopy(bytes, 0, result, leadingZeros, bytes.length);
+        return result;
+    }
+
+    private static byte[] decodeBase32(String input)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int buffer = 0;
+        int bits = 0;
+        for (char c : input.toLowerCase().toCharArray())
+        {
+            int value = BASE32_ALPHABET.indexOf(c);
+            if (value < 0) throw new IllegalArgumentException("Invalid base32 character");
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            if (bits >= 8)
+            {
+                out.write((buffer >> (bits - 8)) & 0xFF);
+                bits -= 8;
+            }
+        }
+        return out.toByteArray();
+    }
+}
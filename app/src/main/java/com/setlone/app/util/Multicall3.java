@@ -0,0 +1,114 @@
+package com.setlone.app.util;
+
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.DynamicStruct;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for the Multicall3 contract, which is deployed at the same address on nearly every EVM chain.
+ * Calls are packed into a single aggregate3 eth_call, each call allowed to fail independently.
+ */
+public class Multicall3
+{
+    public static final String MULTICALL3_ADDRESS = "0xcA11bde05977b3631167028862bE2a173976CA11";
+
+    public static class Call3 extends DynamicStruct
+    {
+        public final String target;
+        public final String callData;
+
+        public Call3(String target, String callData)
+        {
+            super(new Address(target), new Bool(true), new DynamicBytes(Numeric.hexStringToByteArray(callData)));
+            this.target = target;
+            this.callData = callData;
+        }
+    }
+
+    public static class Result
+    {
+        public final boolean success;
+        public final String returnData;
+
+        public Result(boolean success, String returnData)
+        {
+            this.success = success;
+            this.returnData = returnData;
+        }
+    }
+
+    public static String encodeAggregate3(List<Call3> calls)
+    {
+        Function function = new Function("aggregate3",
+                Collections.singletonList(new DynamicArray<>(Call3.class, calls)),
+                Collections.emptyList());
+        return FunctionEncoder.encode(function);
+    }
+
+    /**
+     * Multicall3 exposes the native balance of an address, so base chain balances can share the aggregate call
+     */
+    public static Function getEthBalance(String address)
+    {
+        return new Function("getEthBalance",
+                Collections.singletonList(new Address(address)),
+                Collections.singletonList(new TypeReference<Uint256>() {}));
+    }
+
+    /**
+     * Decodes the (bool success, bytes returnData)[] output of aggregate3.
+     * Decoded manually as web3j's reflective struct decoding is unreliable for dynamic struct arrays.
+     *
+     * @param output hex output of the eth_call
+     * @return list of results in call order, or empty list if the output could not be decoded
+     */
+    public static List<Result> decodeAggregate3(String output)
+    {
+        List<Result> results = new ArrayList<>();
+        byte[] data = Numeric.hexStringToByteArray(output != null ? output : "0x");
+        if (data.length < 64) return results;
+
+        try
+        {
+            int arrayStart = readInt(data, 0);
+            int count = readInt(data, arrayStart);
+            int headStart = arrayStart + 32;
+            for (int i = 0; i < count; i++)
+            {
+                int structStart = headStart + readInt(data, headStart + i * 32);
+                boolean success = readInt(data, structStart) != 0;
+                int bytesStart = structStart + readInt(data, structStart + 32);
+                int length = readInt(data, bytesStart);
+                byte[] returnData = new byte[length];
+                System.arraycopy(data, bytesStart + 32, returnData, 0, length);
+                results.add(new Result(success, Numeric.toHexString(returnData)));
+            }
+        }
+        catch (ArithmeticException | IndexOutOfBoundsException e)
+        {
+            //malformed return, caller should treat as unsupported
+            results.clear();
+        }
+
+        return results;
+    }
+
+    private static int readInt(byte[] data, int offset)
+    {
+        byte[] word = new byte[32];
+        System.arraycopy(data, offset, word, 0, 32);
+        return new BigInteger(1, word).intValueExact();
+    }
+}
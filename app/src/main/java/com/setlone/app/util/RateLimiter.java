@@ -0,0 +1,33 @@
+package com.setlone.app.util;
+
+/**
+ * Spaces requests to one host evenly; callers block until their slot comes round
+ */
+public class RateLimiter
+{
+    private final long interval;
+    private long nextFree;
+
+    public RateLimiter(double perSecond)
+    {
+        interval = (long) (1000 / perSecond);
+    }
+
+    public void acquire() throws InterruptedException
+    {
+        long wait = reserve(System.currentTimeMillis());
+        if (wait > 0) Thread.sleep(wait);
+    }
+
+    /**
+     * Claim the next slot
+     *
+     * @return milliseconds the caller must wait before its request may go
+     */
+    public synchronized long reserve(long now)
+    {
+        long slot = Math.max(nextFree, now);
+        nextFree = slot + interval;
+        return slot - now;
+    }
+}
@@ -37,6 +37,7 @@ import com.setlone.app.C;
 import com.setlone.app.R;
 import com.setlone.app.entity.EasAttestation;
 import com.setlone.app.entity.tokens.Token;
+import com.setlone.app.service.IPFSGatewayPool;
 import com.setlone.app.util.pattern.Patterns;
 import com.setlone.app.util.TronUtils;
 import com.setlone.token.entity.ProviderTypedData;
@@ -1012,6 +1013,13 @@ public class Utils
     private static final String IPFS_PREFIX = "ipfs://";
     private static final String IPFS_DESIGNATOR = "/ipfs/";
     public static final String IPFS_INFURA_RESOLVER = "https://setlone.infura-ipfs.io";
+    public static final String[] IPFS_GATEWAYS = {
+            IPFS_INFURA_RESOLVER,
+            "https://ipfs.io",
+            "https://dweb.link",
+            "https://gateway.pinata.cloud",
+            "https://w3s.link"
+    };
     public static final String IPFS_MATCHER = "^Qm[1-9A-Za-z]{44}(\\/.*)?$";
 
     public static boolean isIPFS(String url)
@@ -1021,7 +1029,7 @@ public class Utils
 
     public static String parseIPFS(String URL)
     {
-        return resolveIPFS(URL, IPFS_INFURA_RESOLVER);
+        return resolveIPFS(URL, IPFSGatewayPool.getPreferredGateway());
     }
 
     public static String resolveIPFS(String URL, String resolver)
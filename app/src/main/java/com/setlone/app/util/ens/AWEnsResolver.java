@@ -1,6 +1,7 @@
 package com.setlone.app.util.ens;
 
 import static com.setlone.app.util.ens.EnsResolver.CANCELLED_REQUEST;
+import static com.setlone.app.util.ens.EnsResolver.USE_ENS_CHAIN;
 
 import android.content.Context;
 import android.text.TextUtils;
@@ -10,6 +11,7 @@ import androidx.preference.PreferenceManager;
 import com.setlone.app.C;
 import com.setlone.app.entity.UnableToResolveENS;
 import com.setlone.app.entity.nftassets.NFTAsset;
+import com.setlone.app.repository.EthereumNetworkBase;
 import com.setlone.app.service.OpenSeaService;
 import com.setlone.app.util.Utils;
 import com.setlone.app.web3j.ens.EnsResolutionException;
@@ -17,10 +19,15 @@ import org.web3j.utils.Numeric;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
+import org.web3j.crypto.Keys;
 import org.web3j.protocol.Web3j;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
@@ -42,8 +49,9 @@ public class AWEnsResolver
     private final Context context;
     private final OkHttpClient client;
     private final HashMap<String, Resolvable> resolvables;
-    private final EnsResolver ensResolver;
-    private final EnsResolver avatarEnsResolver;
+    private final EnsResolver ensResolver; //forward resolves, cancelled by the next
+    private final EnsResolver sharedResolver; //reverse and avatar reads
+    private final EnsCache cache;
     private final long chainId;
 
     public AWEnsResolver(Web3j web3j, Context context)
@@ -53,8 +61,14 @@ public class AWEnsResolver
 
     public AWEnsResolver(Web3j web3j, Context context, long chainId)
     {
-        this.ensResolver = new EnsResolver(web3j);
-        this.avatarEnsResolver = new EnsResolver(web3j);
+        this(web3j, context, chainId, EnsCache.getInstance());
+    }
+
+    public AWEnsResolver(Web3j web3j, Context context, long chainId, EnsCache cache)
+    {
+        this.ensResolver = new EnsResolver(web3j, Keys.ADDRESS_LENGTH_IN_HEX, USE_ENS_CHAIN);
+        this.sharedResolver = EnsResolver.shared(web3j, USE_ENS_CHAIN);
+        this.cache = cache;
         this.context = context;
         this.client = setupClient();
         this.chainId = chainId;
@@ -87,11 +101,13 @@ public class AWEnsResolver
     {
         return Single.fromCallable(() ->
         {
-            String ensName = "";
+            String ensName = cache.getName(address);
+            if (ensName != null) return ensName;
 
+            ensName = "";
             try
             {
-                ensName = ensResolver.reverseResolve(address); //no known ENS for this address, resolve from reverse resolver
+                ensName = sharedResolver.reverseResolve(address); //no known ENS for this address, resolve from reverse resolver
                 if (!TextUtils.isEmpty(ensName))
                 {
                     //check ENS name integrity - it must point to the wallet address
@@ -100,11 +116,17 @@ public class AWEnsResolver
                     {
                         ensName = "";
                     }
+                    else if (!resolveAddress.equals(CANCELLED_REQUEST))
+                    {
+                        //only verified names are kept; an empty name here may as well be a failed read
+                        cache.putName(address, ensName);
+                    }
                 }
             }
             catch (UnableToResolveENS resolve)
             {
                 ensName = fetchPreviouslyUsedENS(address);
+                if (!TextUtils.isEmpty(ensName)) cache.putName(address, ensName);
             }
             catch (EnsResolutionException e)
             {
@@ -119,7 +141,58 @@ public class AWEnsResolver
         }).onErrorReturnItem("");
     }
 
+    /**
+     * Given a list of addresses, such as the user's wallets, find their ENS names. Names already known are answered
+     * without the node; the rest are reverse resolved together (see EnsResolver.reverseResolveBatch), then any that
+     * couldn't be read that way one at a time as reverseResolveEns does.
+     *
+     * @param addresses Ethereum addresses
+     * @return lower case address to ENS name, or empty string where there is none
+     */
+    public Single<Map<String, String>> reverseResolveEns(List<String> addresses)
+    {
+        return Single.fromCallable(() ->
+        {
+            Map<String, String> names = new HashMap<>();
+            List<String> unknown = new ArrayList<>();
+            for (String address : new LinkedHashSet<>(addresses))
+            {
+                if (!Utils.isAddressValid(address)) continue;
+                String key = address.toLowerCase(Locale.ENGLISH);
+                String ensName = cache.getName(key);
+                if (ensName != null) names.put(key, ensName);
+                else if (!unknown.contains(key)) unknown.add(key);
+            }
+
+            if (unknown.size() > 1 && EthereumNetworkBase.hasMulticall(USE_ENS_CHAIN))
+            {
+                EnsResolver.ReverseBatch batch = sharedResolver.reverseResolveBatch(unknown,
+                        EthereumNetworkBase.getMulticallLimit(USE_ENS_CHAIN));
+                if (batch.multicallUnavailable) EthereumNetworkBase.setMulticallError(USE_ENS_CHAIN);
+                cache.putNames(batch.names);
+                names.putAll(batch.names);
+            }
+
+            for (String address : unknown)
+            {
+                if (!names.containsKey(address)) names.put(address, reverseResolveEns(address).blockingGet());
+            }
+
+            return names;
+        }).onErrorReturnItem(new HashMap<>());
+    }
+
     public Single<String> getENSUrl(String ensName)
+    {
+        return Single.defer(() ->
+        {
+            String url = TextUtils.isEmpty(ensName) ? null : cache.getAvatar(ensName);
+            if (url != null) return Single.just(url);
+            return readENSUrl(ensName).doOnSuccess(read -> cache.putAvatar(ensName, read));
+        });
+    }
+
+    private Single<String> readENSUrl(String ensName)
     {
         return Single.fromCallable(() ->
         {
@@ -339,7 +412,7 @@ public class AWEnsResolver
 
     public String resolveAvatar(String ensName)
     {
-        return new AvatarResolver(avatarEnsResolver).resolve(ensName);
+        return new AvatarResolver(sharedResolver).resolve(ensName);
     }
 
     public String resolveAvatarFromAddress(String address)
@@ -348,7 +421,7 @@ public class AWEnsResolver
         {
             try
             {
-                String ensName = ensResolver.reverseResolve(address);
+                String ensName = sharedResolver.reverseResolve(address);
                 return resolveAvatar(ensName);
             }
             catch (Exception e)
@@ -0,0 +1,215 @@
+package com.setlone.app.util.ens;
+
+import com.setlone.app.repository.entity.RealmEnsRecord;
+import com.setlone.app.service.RealmManager;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import io.realm.Realm;
+import io.realm.RealmResults;
+import timber.log.Timber;
+
+/**
+ * Reverse ENS names and avatars already read, kept across restarts.
+ *
+ * A name is held for a day, and an address found to have no name for an hour, so a newly set primary name shows up
+ * soon. Records are read from the database once, on first use, then answered from memory; callers should be off the
+ * main thread.
+ */
+public class EnsCache
+{
+    private static final String TAG = "EnsCache";
+    public static final long NAME_TTL = TimeUnit.HOURS.toMillis(24);
+    public static final long NO_NAME_TTL = TimeUnit.HOURS.toMillis(1);
+    public static final long AVATAR_TTL = TimeUnit.HOURS.toMillis(24);
+
+    private static final String NAME = "name:";
+    private static final String AVATAR = "avatar:";
+
+    private static EnsCache instance;
+
+    /**
+     * Where records are kept between runs
+     */
+    public interface Store
+    {
+        Map<String, Entry> load();
+
+        void save(Map<String, Entry> entries);
+    }
+
+    public static class Entry
+    {
+        public final String value;
+        public final long updated;
+
+        public Entry(String value, long updated)
+        {
+            this.value = value;
+            this.updated = updated;
+        }
+    }
+
+    private final Store store;
+    private final LongSupplier clock;
+    private volatile Map<String, Entry> entries;
+
+    public static synchronized EnsCache getInstance()
+    {
+        if (instance == null)
+        {
+            instance = new EnsCache(new RealmStore(new RealmManager()), System::currentTimeMillis);
+        }
+
+        return instance;
+    }
+
+    public EnsCache(Store store, LongSupplier clock)
+    {
+        this.store = store;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the name, empty string if the address is known to have none, or null if it needs resolving
+     */
+    public String getName(String address)
+    {
+        Entry entry = getEntries().get(NAME + key(address));
+        if (entry == null) return null;
+
+        long ttl = entry.value.isEmpty() ? NO_NAME_TTL : NAME_TTL;
+        return clock.getAsLong() < entry.updated + ttl ? entry.value : null;
+    }
+
+    public void putName(String address, String ensName)
+    {
+        Map<String, String> names = new HashMap<>();
+        names.put(address, ensName);
+        putNames(names);
+    }
+
+    /**
+     * @param names address to name, or empty string for an address with none
+     */
+    public void putNames(Map<String, String> names)
+    {
+        Map<String, Entry> update = new HashMap<>();
+        long now = clock.getAsLong();
+        for (Map.Entry<String, String> name : names.entrySet())
+        {
+            if (name.getValue() == null) continue;
+            update.put(NAME + key(name.getKey()), new Entry(name.getValue(), now));
+        }
+
+        put(update);
+    }
+
+    /**
+     * @param ensName the name, or address, the avatar was read for
+     * @return the avatar url, or null if it needs resolving
+     */
+    public String getAvatar(String ensName)
+    {
+        Entry entry = getEntries().get(AVATAR + key(ensName));
+        if (entry == null) return null;
+        return clock.getAsLong() < entry.updated + AVATAR_TTL ? entry.value : null;
+    }
+
+    public void putAvatar(String ensName, String url)
+    {
+        if (url == null || url.isEmpty()) return; //not kept: an empty read is as likely a failed one
+
+        Map<String, Entry> update = new HashMap<>();
+        update.put(AVATAR + key(ensName), new Entry(url, clock.getAsLong()));
+        put(update);
+    }
+
+    private void put(Map<String, Entry> update)
+    {
+        if (update.isEmpty()) return;
+
+        getEntries().putAll(update);
+        store.save(update);
+    }
+
+    private Map<String, Entry> getEntries()
+    {
+        Map<String, Entry> loaded = entries;
+        if (loaded != null) return loaded;
+
+        synchronized (this)
+        {
+            if (entries == null)
+            {
+                entries = new ConcurrentHashMap<>(store.load());
+                Timber.tag(TAG).d("%d records", entries.size());
+            }
+            return entries;
+        }
+    }
+
+    private static String key(String addressOrName)
+    {
+        return addressOrName.toLowerCase(Locale.ROOT);
+    }
+
+    private static class RealmStore implements Store
+    {
+        private final RealmManager realmManager;
+
+        RealmStore(RealmManager realmManager)
+        {
+            this.realmManager = realmManager;
+        }
+
+        @Override
+        public Map<String, Entry> load()
+        {
+            Map<String, Entry> loaded = new HashMap<>();
+            try (Realm realm = realmManager.getWalletDataRealmInstance())
+            {
+                RealmResults<RealmEnsRecord> stored = realm.where(RealmEnsRecord.class).findAll();
+                for (RealmEnsRecord record : stored)
+                {
+                    if (record.getValue() == null) continue;
+                    loaded.put(record.getKey(), new Entry(record.getValue(), record.getUpdated()));
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e);
+            }
+
+            return loaded;
+        }
+
+        @Override
+        public void save(Map<String, Entry> entries)
+        {
+            try (Realm realm = realmManager.getWalletDataRealmInstance())
+            {
+                realm.executeTransaction(r -> {
+                    for (Map.Entry<String, Entry> entry : entries.entrySet())
+                    {
+                        RealmEnsRecord stored = r.where(RealmEnsRecord.class)
+                                .equalTo("key", entry.getKey())
+                                .findFirst();
+                        if (stored == null) stored = r.createObject(RealmEnsRecord.class, entry.getKey());
+                        stored.setValue(entry.getValue().value);
+                        stored.setUpdated(entry.getValue().updated);
+                    }
+                });
+            }
+            catch (Exception e)
+            {
+                Timber.tag(TAG).w(e);
+            }
+        }
+    }
+}
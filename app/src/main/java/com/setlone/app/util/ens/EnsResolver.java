@@ -6,6 +6,7 @@ import static org.web3j.protocol.core.methods.request.Transaction.createEthCallT
 import android.text.TextUtils;
 
 import com.setlone.app.entity.tokenscript.TokenscriptFunction;
+import com.setlone.app.util.Multicall3;
 import com.setlone.app.util.Utils;
 import com.setlone.app.web3j.ens.Contracts;
 import com.setlone.app.web3j.ens.EnsGatewayRequestDTO;
@@ -47,8 +48,12 @@ import java.io.InterruptedIOException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -117,6 +122,34 @@ public class EnsResolver implements Resolvable
         this(web3j, Keys.ADDRESS_LENGTH_IN_HEX);
     }
 
+    /**
+     * For a node whose chain is already known, so it isn't asked
+     */
+    public EnsResolver(Web3j web3j, int addressLength, long chainId)
+    {
+        this.web3j = web3j;
+        this.addressLength = addressLength;
+        this.chainId = chainId;
+    }
+
+    private static final Map<Long, EnsResolver> sharedResolvers = new ConcurrentHashMap<>();
+
+    /**
+     * One resolver for every reverse and avatar read on a chain. Those reads don't take part in the cancellation
+     * forward resolves use, so callers that resolve names should keep their own instance for that.
+     */
+    public static EnsResolver shared(Web3j web3j, long chainId)
+    {
+        EnsResolver resolver = sharedResolvers.get(chainId);
+        if (resolver == null || resolver.web3j != web3j)
+        {
+            resolver = new EnsResolver(web3j, Keys.ADDRESS_LENGTH_IN_HEX, chainId);
+            sharedResolvers.put(chainId, resolver);
+        }
+
+        return resolver;
+    }
+
     protected ContractAddress obtainOffChainResolverAddress(String ensName) throws Exception
     {
         String resolverAddress = cachedResolver.containsKey(ensName) ? cachedResolver.get(ensName) : getResolverAddress(ensName);
@@ -482,6 +515,212 @@ public class EnsResolver implements Resolvable
         }
     }
 
+    public static class ReverseBatch
+    {
+        public final Map<String, String> names = new HashMap<>(); //lower case address to verified name, or empty string for none
+        public int nodeCalls = 0;
+        public boolean multicallUnavailable = false;
+    }
+
+    private static class ReverseRead
+    {
+        final String address;
+        final byte[] reverseNode;
+        String resolver;
+        String name;
+        byte[] nameNode;
+
+        ReverseRead(String address)
+        {
+            this.address = address;
+            this.reverseNode = NameHash.nameHashAsBytes(Numeric.cleanHexPrefix(address) + REVERSE_NAME_SUFFIX);
+        }
+    }
+
+    /**
+     * Reverse resolves many addresses together. Each step of reverseResolve, and of the forward check callers make on
+     * its name, is read for every address in one Multicall3 aggregate3 call: the reverse node's resolver, the name it
+     * holds, the name's resolver and the address that resolves to. A list of addresses costs four eth_calls for each
+     * multicallLimit of them.
+     *
+     * Only names held onchain are read this way. Addresses whose name needs a parent's wildcard resolver or an
+     * offchain lookup, or whose reads failed, are left out of names for the caller to resolve one at a time; so is
+     * every address if Multicall3 can't be used.
+     */
+    public ReverseBatch reverseResolveBatch(List<String> addresses, int multicallLimit)
+    {
+        ReverseBatch batch = new ReverseBatch();
+        Set<String> unique = new LinkedHashSet<>();
+        for (String address : addresses)
+        {
+            if (WalletUtils.isValidAddress(address, addressLength))
+            {
+                unique.add(Numeric.prependHexPrefix(address).toLowerCase(Locale.ROOT));
+            }
+        }
+        if (unique.isEmpty() || multicallLimit <= 0) return batch;
+
+        String registry = Contracts.resolveRegistryContract(chainId);
+        List<ReverseRead> reads = new ArrayList<>();
+        for (String address : unique)
+        {
+            reads.add(new ReverseRead(address));
+        }
+
+        //resolver of each reverse node; none means no primary name was set
+        List<Multicall3.Call3> calls = new ArrayList<>();
+        for (ReverseRead read : reads)
+        {
+            calls.add(new Multicall3.Call3(registry, FunctionEncoder.encode(getResolver(read.reverseNode))));
+        }
+        List<String> returns = aggregate(calls, multicallLimit, batch);
+        if (returns == null) return batch;
+
+        List<ReverseRead> next = new ArrayList<>();
+        for (int i = 0; i < reads.size(); i++)
+        {
+            ReverseRead read = reads.get(i);
+            read.resolver = (String) decodeReturn(returns.get(i), getResolver(read.reverseNode));
+            if (read.resolver == null) continue;
+            if (EnsUtils.isAddressEmpty(read.resolver)) batch.names.put(read.address, "");
+            else next.add(read);
+        }
+
+        //name held by the reverse node
+        reads = next;
+        calls.clear();
+        for (ReverseRead read : reads)
+        {
+            calls.add(new Multicall3.Call3(read.resolver, FunctionEncoder.encode(getName(read.reverseNode))));
+        }
+        returns = aggregate(calls, multicallLimit, batch);
+        if (returns == null) return batch;
+
+        next = new ArrayList<>();
+        for (int i = 0; i < reads.size(); i++)
+        {
+            ReverseRead read = reads.get(i);
+            read.name = (String) decodeReturn(returns.get(i), getName(read.reverseNode));
+            if (read.name == null) continue;
+            try
+            {
+                if (read.name.isEmpty() || !isValidEnsName(read.name, addressLength))
+                {
+                    batch.names.put(read.address, "");
+                    continue;
+                }
+                read.nameNode = NameHash.nameHashAsBytes(read.name);
+                next.add(read);
+            }
+            catch (EnsResolutionException e)
+            {
+                batch.names.put(read.address, "");
+            }
+        }
+
+        //resolver of the name; none here may still mean a wildcard resolver on a parent
+        reads = next;
+        calls.clear();
+        for (ReverseRead read : reads)
+        {
+            calls.add(new Multicall3.Call3(registry, FunctionEncoder.encode(getResolver(read.nameNode))));
+        }
+        returns = aggregate(calls, multicallLimit, batch);
+        if (returns == null) return batch;
+
+        next = new ArrayList<>();
+        for (int i = 0; i < reads.size(); i++)
+        {
+            ReverseRead read = reads.get(i);
+            read.resolver = (String) decodeReturn(returns.get(i), getResolver(read.nameNode));
+            if (read.resolver != null && !EnsUtils.isAddressEmpty(read.resolver)) next.add(read);
+        }
+
+        //the name is only kept if it resolves back to the address
+        reads = next;
+        calls.clear();
+        for (ReverseRead read : reads)
+        {
+            calls.add(new Multicall3.Call3(read.resolver, FunctionEncoder.encode(getAddr(read.nameNode))));
+        }
+        returns = aggregate(calls, multicallLimit, batch);
+        if (returns == null) return batch;
+
+        for (int i = 0; i < reads.size(); i++)
+        {
+            ReverseRead read = reads.get(i);
+            String resolved = (String) decodeReturn(returns.get(i), getAddr(read.nameNode));
+            if (resolved == null || EnsUtils.isAddressEmpty(resolved)) continue; //may be answered offchain
+            batch.names.put(read.address, resolved.equalsIgnoreCase(read.address) ? read.name : "");
+        }
+
+        return batch;
+    }
+
+    // returnData of each call in order, null where the call failed; or null if Multicall3 couldn't be used
+    private List<String> aggregate(List<Multicall3.Call3> calls, int limit, ReverseBatch batch)
+    {
+        List<String> returns = new ArrayList<>(calls.size());
+        for (int start = 0; start < calls.size(); start += limit)
+        {
+            List<Multicall3.Call3> chunk = calls.subList(start, Math.min(calls.size(), start + limit));
+            try
+            {
+                batch.nodeCalls++;
+                EthCall response = web3j.ethCall(createEthCallTransaction(TokenscriptFunction.ZERO_ADDRESS,
+                        Multicall3.MULTICALL3_ADDRESS, Multicall3.encodeAggregate3(chunk)), DefaultBlockParameterName.LATEST).send();
+
+                List<Multicall3.Result> results = response.hasError() ? new ArrayList<>() : Multicall3.decodeAggregate3(response.getValue());
+                if (results.size() != chunk.size())
+                {
+                    batch.multicallUnavailable = true;
+                    return null;
+                }
+
+                for (Multicall3.Result result : results)
+                {
+                    returns.add(result.success ? result.returnData : null);
+                }
+            }
+            catch (Exception e)
+            {
+                Timber.w(e);
+                return null;
+            }
+        }
+
+        return returns;
+    }
+
+    private static Object decodeReturn(String returnData, Function function)
+    {
+        if (returnData == null || returnData.length() <= 2) return null;
+
+        try
+        {
+            List<Type> values = FunctionReturnDecoder.decode(returnData, function.getOutputParameters());
+            return values.size() == 1 ? values.get(0).getValue() : null;
+        }
+        catch (Exception e)
+        {
+            return null;
+        }
+    }
+
+    private Function getName(byte[] node)
+    {
+        return new Function(FUNC_NAME,
+                Arrays.<Type>asList(new org.web3j.abi.datatypes.generated.Bytes32(node)),
+                Arrays.<TypeReference<?>>asList(new TypeReference<Utf8String>() {}));
+    }
+
+    private Function getAddr(byte[] node)
+    {
+        return new Function(FUNC_addr,
+                Arrays.<Type>asList(new org.web3j.abi.datatypes.generated.Bytes32(node)),
+                Arrays.<TypeReference<?>>asList(new TypeReference<Address>() {}));
+    }
+
     private Function getResolver(byte[] nameHash)
     {
         return new Function("resolver",
@@ -467,7 +467,7 @@ public class TokenFunctionViewModel extends BaseViewModel implements Transaction
             }
 
             //finished resolving attributes, blank definition cache so definition is re-loaded when next needed
-            getAssetDefinitionService().clearCache();
+            getAssetDefinitionService().clearCache(token);
 
             return buildWeb3Transaction(functionData, cAddr.address, functionEffect, value);
         }
@@ -512,7 +512,7 @@ public class TokenFunctionViewModel extends BaseViewModel implements Transaction
         String extraInfo = String.format(context.getString(R.string.tokenscript_send_native), valCorrected, token.getSymbol(), action.function.method, to);
 
         //Clear the cache to refresh any resolved values
-        getAssetDefinitionService().clearCache();
+        getAssetDefinitionService().clearCache(token);
 
         if (isValid)
         {
@@ -41,6 +41,7 @@ import com.setlone.hardware.SignatureFromKey;
 import org.web3j.protocol.Web3j;
 import org.web3j.protocol.core.methods.response.EthTransaction;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
@@ -270,8 +271,12 @@ public class TransactionDetailViewModel extends BaseViewModel implements Transac
         }
 
         org.web3j.protocol.core.methods.response.Transaction ethTx = rawTx.getTransaction().get();
-        disposable = EventUtils.getBlockDetails(ethTx.getBlockHash(), web3j)
-            .map(ethBlock -> new Transaction(ethTx, chainId, true, ethBlock.getBlock().getTimestamp().longValue()))
+        disposable = EventUtils.getBlockTimestamp(chainId, ethTx.getBlockHash(), web3j)
+            .map(blockTime -> {
+                //zero is a failed read; don't store the transaction as if mined at the epoch
+                if (blockTime <= 0) throw new IOException("No block time for " + ethTx.getHash());
+                return new Transaction(ethTx, chainId, true, blockTime);
+            })
             .map(tx -> writeTransaction(wallet, tx))
             .subscribeOn(Schedulers.io())
             .observeOn(AndroidSchedulers.mainThread())
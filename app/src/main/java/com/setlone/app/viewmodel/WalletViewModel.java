@@ -107,6 +107,8 @@ public class WalletViewModel extends BaseViewModel
     private final AWWalletConnectClient awWalletConnectClient;
     @Nullable
     private Disposable balanceUpdateCheck;
+    @Nullable
+    private Disposable fiatValueUpdates;
 
     @Inject
     WalletViewModel(
@@ -212,9 +214,26 @@ public class WalletViewModel extends BaseViewModel
         tokensService.setCurrentAddress(wallet.address);
         assetDefinitionService.startEventListener();
         defaultWallet.postValue(wallet);
+        listenForFiatValue();
         fetchTokens(wallet);
     }
 
+    //wallet value follows ticker and balance writes
+    private void listenForFiatValue()
+    {
+        if (fiatValueUpdates != null && !fiatValueUpdates.isDisposed()) fiatValueUpdates.dispose();
+        fiatValueUpdates = tokensService.getFiatValueUpdates()
+                .subscribeOn(Schedulers.io())
+                .subscribe(fiatValues::postValue, this::onError);
+    }
+
+    @Override
+    protected void onCleared()
+    {
+        super.onCleared();
+        if (fiatValueUpdates != null && !fiatValueUpdates.isDisposed()) fiatValueUpdates.dispose();
+    }
+
     private void fetchTokens(Wallet wallet)
     {
         disposable =
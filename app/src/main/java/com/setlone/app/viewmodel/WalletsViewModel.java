@@ -49,7 +49,10 @@ import org.web3j.utils.Numeric;
 
 import java.math.BigInteger;
 import java.security.SignatureException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -111,9 +114,6 @@ public class WalletsViewModel extends BaseViewModel implements ServiceSyncCallba
     @Nullable
     private Disposable walletBalanceUpdate;
 
-    @Nullable
-    private Disposable ensCheck;
-
     @Nullable
     private Disposable ensWrappingCheck;
 
@@ -401,18 +401,18 @@ public class WalletsViewModel extends BaseViewModel implements ServiceSyncCallba
     public void swipeRefreshWallets()
     {
         //check for updates
-        //check names first
-        ensWrappingCheck = fetchWalletsInteract.fetch().toObservable()
-                .flatMap(Observable::fromArray)
-                .forEach(wallet -> ensCheck = ensResolver.reverseResolveEns(wallet.address)
-                        .onErrorReturnItem(wallet.ENSname != null ? wallet.ENSname : "")
-                        .map(ensName -> {
-                            wallet.ENSname = ensName;
-                            return wallet;
-                        })
-                        .subscribeOn(Schedulers.io())
-                        .observeOn(AndroidSchedulers.mainThread())
-                        .subscribe(w -> fetchWalletsInteract.updateWalletData(w, () -> {}), this::onError));
+        //check names first, resolving all wallets together
+        ensWrappingCheck = fetchWalletsInteract.fetch()
+                .flatMap(wallets -> ensResolver.reverseResolveEns(getAddresses(wallets))
+                        .map(names -> updateENSNames(wallets, names)))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(wallets -> {
+                    for (Wallet w : wallets)
+                    {
+                        fetchWalletsInteract.updateWalletData(w, () -> {});
+                    }
+                }, this::onError);
 
         //now load the current wallets from database
         disposable = fetchWalletsInteract
@@ -420,6 +420,32 @@ public class WalletsViewModel extends BaseViewModel implements ServiceSyncCallba
                 .subscribe(this::startFullWalletSync, this::onError);
     }
 
+    private List<String> getAddresses(Wallet[] wallets)
+    {
+        List<String> addresses = new ArrayList<>(wallets.length);
+        for (Wallet wallet : wallets)
+        {
+            addresses.add(wallet.address);
+        }
+        return addresses;
+    }
+
+    // wallets whose name changed; those that couldn't be resolved keep theirs
+    private List<Wallet> updateENSNames(Wallet[] wallets, Map<String, String> names)
+    {
+        List<Wallet> updated = new ArrayList<>();
+        for (Wallet wallet : wallets)
+        {
+            String ensName = wallet.address != null ? names.get(wallet.address.toLowerCase(Locale.ENGLISH)) : null;
+            if (ensName != null && !ensName.equals(wallet.ENSname))
+            {
+                wallet.ENSname = ensName;
+                updated.add(wallet);
+            }
+        }
+        return updated;
+    }
+
     public void fetchWallets()
     {
         progress.postValue(true);
@@ -498,7 +524,6 @@ public class WalletsViewModel extends BaseViewModel implements ServiceSyncCallba
         if (disposable != null && !disposable.isDisposed()) disposable.dispose();
         if (balanceTimerDisposable != null && !balanceTimerDisposable.isDisposed()) balanceTimerDisposable.dispose();
         if (walletBalanceUpdate != null && !walletBalanceUpdate.isDisposed()) walletBalanceUpdate.dispose();
-        if (ensCheck != null && !ensCheck.isDisposed()) ensCheck.dispose();
         if (ensWrappingCheck != null && !ensWrappingCheck.isDisposed()) ensWrappingCheck.dispose();
     }
 
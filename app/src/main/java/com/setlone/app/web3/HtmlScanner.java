@@ -0,0 +1,96 @@
+package com.setlone.app.web3;
+
+/**
+ * Finds where script is spliced into a TokenScript view.
+ *
+ * Tags are matched case-insensitively in place, so the view isn't lowercased (and copied) to look for them, and
+ * a position found is always a position in the original view.
+ */
+public final class HtmlScanner
+{
+    private static final String SCRIPT_TAG = "<script";
+    private static final String SCRIPT_END_TAG = "</script";
+    private static final String IE_DETECT_TAG = "<!--[if";
+    private static final String HEAD_END_TAG = "</head";
+    private static final String CDATA_TAG = "<![cdata[";
+    private static final String WEB3 = "web3";
+
+    private HtmlScanner() { }
+
+    /**
+     * @return position of the first script or IE conditional, else the end of the head, else the start of the view
+     */
+    public static int getInjectionPosition(String body)
+    {
+        int headEnd = -1;
+        for (int i = body.indexOf('<'); i >= 0; i = body.indexOf('<', i + 1))
+        {
+            if (matchesAt(body, i, SCRIPT_TAG) || matchesAt(body, i, IE_DETECT_TAG))
+            {
+                return i;
+            }
+            else if (headEnd < 0 && matchesAt(body, i, HEAD_END_TAG))
+            {
+                headEnd = i;
+            }
+        }
+
+        return Math.max(headEnd, 0);
+    }
+
+    /**
+     * @return position of the end tag of the first script mentioning web3, or -1 if there isn't one
+     */
+    public static int getEndInjectionPosition(String body)
+    {
+        int firstIndex = Math.max(indexOfIgnoreCase(body, SCRIPT_TAG, 0), 0);
+        int nextIndex = Math.max(indexOfIgnoreCase(body, WEB3, firstIndex), 0);
+        return indexOfIgnoreCase(body, SCRIPT_END_TAG, nextIndex);
+    }
+
+    /**
+     * @return position just inside the first script, after its CDATA opening if it has one
+     */
+    public static int getEndScriptPosition(String body)
+    {
+        //<script type="text/javascript">//<![CDATA[
+        int scriptTag = indexOfIgnoreCase(body, SCRIPT_TAG, 0) + SCRIPT_TAG.length();
+        int endTag = body.indexOf('>', scriptTag) + 1;
+        int cData = indexOfIgnoreCase(body, CDATA_TAG, endTag);
+        return cData >= 0 ? cData + CDATA_TAG.length() : endTag;
+    }
+
+    /**
+     * Copies the view once, with the code inserted at the position
+     */
+    public static String splice(String body, int position, String code)
+    {
+        return new StringBuilder(body.length() + code.length())
+                .append(body, 0, position)
+                .append(code)
+                .append(body, position, body.length())
+                .toString();
+    }
+
+    /**
+     * @param needle lower case ASCII
+     */
+    public static int indexOfIgnoreCase(String body, String needle, int from)
+    {
+        char first = needle.charAt(0);
+        char firstUpper = Character.toUpperCase(first);
+        int last = body.length() - needle.length();
+        for (int i = Math.max(from, 0); i <= last; i++)
+        {
+            char c = body.charAt(i);
+            if ((c == first || c == firstUpper) && matchesAt(body, i, needle)) return i;
+        }
+
+        return -1;
+    }
+
+    private static boolean matchesAt(String body, int index, String needle)
+    {
+        return body.regionMatches(true, index, needle, 0, needle.length());
+    }
+}
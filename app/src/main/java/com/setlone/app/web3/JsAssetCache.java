@@ -0,0 +1,115 @@
+package com.setlone.app.web3;
+
+import android.content.Context;
+import android.webkit.WebResourceResponse;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RawRes;
+
+import com.setlone.app.R;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import timber.log.Timber;
+
+/**
+ * The JavaScript the app injects into web views, read from the raw resources once per process.
+ *
+ * Small scripts and templates are handed out as Strings. Large libraries are not inlined into each page at all:
+ * the page refers to them by a URL on a reserved host, and the web view client answers that request from here
+ * via {@link #intercept}, so the web view can cache the compiled script rather than parse a fresh copy per card.
+ */
+public final class JsAssetCache
+{
+    private static final String TAG = "JSASSETS";
+
+    // .invalid never resolves, so if a request isn't intercepted nothing leaves the device
+    public static final String ASSET_BASE = "https://assets.setlone.invalid/js/";
+    public static final String ETHERS_URL = ASSET_BASE + "ethers.min.js";
+
+    private static final String MIME_TYPE = "application/javascript";
+    private static final String ENCODING = "utf-8";
+
+    private static final Map<String, Integer> servedAssets;
+    static
+    {
+        Map<String, Integer> assets = new HashMap<>();
+        assets.put(ETHERS_URL, R.raw.ethers_js_min);
+        servedAssets = Collections.unmodifiableMap(assets);
+    }
+
+    private static final Map<Integer, byte[]> assetBytes = new ConcurrentHashMap<>();
+    private static final Map<Integer, String> assetText = new ConcurrentHashMap<>();
+
+    private JsAssetCache() { }
+
+    public static String getText(Context context, @RawRes int rawRes)
+    {
+        String text = assetText.get(rawRes);
+        if (text == null)
+        {
+            text = new String(getBytes(context, rawRes), StandardCharsets.UTF_8);
+            if (!text.isEmpty()) assetText.put(rawRes, text);
+        }
+        return text;
+    }
+
+    /**
+     * @return contents of the resource; not to be modified
+     */
+    public static byte[] getBytes(Context context, @RawRes int rawRes)
+    {
+        byte[] bytes = assetBytes.get(rawRes);
+        if (bytes == null)
+        {
+            bytes = read(context, rawRes);
+            if (bytes.length > 0) assetBytes.put(rawRes, bytes);
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the library for an asset URL, or null if the URL isn't one of ours
+     */
+    @Nullable
+    public static WebResourceResponse intercept(Context context, @Nullable String url)
+    {
+        if (url == null || !url.startsWith(ASSET_BASE)) return null;
+        Integer rawRes = servedAssets.get(url);
+        if (rawRes == null) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "public, max-age=31536000, immutable");
+        headers.put("Access-Control-Allow-Origin", "*");
+        return new WebResourceResponse(MIME_TYPE, ENCODING, 200, "OK", headers,
+                new ByteArrayInputStream(getBytes(context, rawRes)));
+    }
+
+    private static byte[] read(Context context, @RawRes int rawRes)
+    {
+        try (InputStream in = context.getResources().openRawResource(rawRes))
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+            byte[] buffer = new byte[16384];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            Timber.tag(TAG).w(e);
+            return new byte[0];
+        }
+    }
+}
@@ -22,15 +22,11 @@ import okhttp3.HttpUrl;
 import okhttp3.Request;
 import okhttp3.Response;
 
-import static com.setlone.app.util.Utils.loadFile;
-
 public class JsInjectorClient {
 
     private static final String DEFAULT_CHARSET = "utf-8";
     private static final String DEFAULT_MIME_TYPE = "text/html";
     private final static String JS_TAG_TEMPLATE = "<script type=\"text/javascript\">%1$s%2$s</script>";
-    final String SCRIPT_TAG = "<script";
-    final String CDATA_TAG = "<![cdata[";
 
     private long chainId;
     private Address walletAddress;
@@ -73,18 +69,19 @@ public class JsInjectorClient {
 
     public String providerJs(Context context)
     {
-        return loadFile(context, R.raw.setlone_min);
+        return JsAssetCache.getText(context, R.raw.setlone_min);
     }
 
     String injectWeb3TokenInit(Context ctx, String view, String tokenContent, BigInteger tokenId)
     {
-        String initSrc = loadFile(ctx, R.raw.init_token);
+        String initSrc = JsAssetCache.getText(ctx, R.raw.init_token);
         //put the view in here
         String tokenIdWrapperName = "token-card-" + tokenId.toString(10);
         initSrc = String.format(initSrc, tokenContent, walletAddress, rpcUrl, chainId, tokenIdWrapperName);
         //now insert this source into the view
         // note that the <div> is not closed because it is closed in injectStyleAndWrap().
-        String ethersMin = "<script>" + loadFile(ctx, R.raw.ethers_js_min) + "</script>";
+        // ethers is served by the web view client from JsAssetCache rather than copied into every card
+        String ethersMin = "<script src=\"" + JsAssetCache.ETHERS_URL + "\"></script>";
         String wrapper = "<div id=\"token-card-" + tokenId.toString(10) + "\" class=\"token-card\">";
         initSrc = ethersMin + "<script>\n" + initSrc + "</script>\n" + wrapper;
         return injectJS(view, initSrc);
@@ -92,22 +89,18 @@ public class JsInjectorClient {
 
     String injectJSAtEnd(String view, String newCode)
     {
-        int position = getEndInjectionPosition(view);
+        int position = HtmlScanner.getEndInjectionPosition(view);
         if (position >= 0) {
-            String beforeTag = view.substring(0, position);
-            String afterTab = view.substring(position);
-            return beforeTag + newCode + afterTab;
+            return HtmlScanner.splice(view, position, newCode);
         }
         return view;
     }
 
     String injectJSAtScriptEnd(String view, String newCode)
     {
-        int position = getEndScriptPosition(view);
+        int position = HtmlScanner.getEndScriptPosition(view);
         if (position >= 0) {
-            String beforeTag = view.substring(0, position);
-            String afterTab = view.substring(position);
-            return beforeTag + newCode + afterTab;
+            return HtmlScanner.splice(view, position, newCode);
         }
         return view;
     }
@@ -116,58 +109,7 @@ public class JsInjectorClient {
         if (TextUtils.isEmpty(html)) {
             return html;
         }
-        int position = getInjectionPosition(html);
-        if (position >= 0) {
-            String beforeTag = html.substring(0, position);
-            String afterTab = html.substring(position);
-            return beforeTag + js + afterTab;
-        }
-        return html;
-    }
-
-    private int getInjectionPosition(String body) {
-        body = body.toLowerCase();
-        int ieDetectTagIndex = body.indexOf("<!--[if");
-        int scriptTagIndex = body.indexOf("<script");
-
-        int index;
-        if (ieDetectTagIndex < 0) {
-            index = scriptTagIndex;
-        } else {
-            index = Math.min(scriptTagIndex, ieDetectTagIndex);
-        }
-        if (index < 0) {
-            index = body.indexOf("</head");
-        }
-        if (index < 0) {
-            index = 0; //just wrap whole view
-        }
-        return index;
-    }
-
-    private int getEndInjectionPosition(String body)
-    {
-        body = body.toLowerCase();
-        int firstIndex = body.indexOf(SCRIPT_TAG);
-        int nextIndex = body.indexOf("web3", firstIndex);
-        return body.indexOf("</script", nextIndex);
-    }
-
-    private int getEndScriptPosition(String body)
-    {
-        //<script type="text/javascript">//<![CDATA[
-        body = body.toLowerCase();
-        int scriptTag = body.indexOf(SCRIPT_TAG) + SCRIPT_TAG.length();
-        int endTag = body.indexOf(">", scriptTag) + 1;
-        int endCData = body.indexOf(CDATA_TAG, endTag) + CDATA_TAG.length();
-        if (endCData > -1)
-        {
-            return endCData;
-        }
-        else
-        {
-            return endTag;
-        }
+        return HtmlScanner.splice(html, HtmlScanner.getInjectionPosition(html), js);
     }
 
     @Nullable
@@ -187,7 +129,7 @@ public class JsInjectorClient {
     }
 
     private String loadInitJs(Context context) {
-        String initSrc = loadFile(context, R.raw.init);
+        String initSrc = JsAssetCache.getText(context, R.raw.init);
         String address = walletAddress == null ? Address.EMPTY.toString() : Keys.toChecksumAddress(walletAddress.toString());
         return String.format(initSrc, address, rpcUrl, chainId);
     }
@@ -16,6 +16,7 @@ import android.webkit.JsResult;
 import android.webkit.SslErrorHandler;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -398,6 +399,13 @@ public class Web3TokenView extends WebView
             super.onUnhandledKeyEvent(view, event);
         }
 
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request)
+        {
+            WebResourceResponse asset = JsAssetCache.intercept(getContext(), request.getUrl().toString());
+            return asset != null ? asset : super.shouldInterceptRequest(view, request);
+        }
+
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, WebResourceRequest request)
         {
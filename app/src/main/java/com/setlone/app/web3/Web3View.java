@@ -9,6 +9,7 @@ import android.view.View;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -21,6 +22,7 @@ import androidx.webkit.WebViewFeature;
 import com.setlone.app.BuildConfig;
 import com.setlone.app.entity.TransactionReturn;
 import com.setlone.app.entity.URLLoadInterface;
+import com.setlone.app.service.BrowserRpcProxy;
 import com.setlone.app.web3.entity.Address;
 import com.setlone.app.web3.entity.WalletAddEthereumChainObject;
 import com.setlone.app.web3.entity.Web3Call;
@@ -395,6 +397,7 @@ public class Web3View extends WebView {
                 view.evaluateJavascript(internalClient.getProviderString(view), null);
                 view.evaluateJavascript(internalClient.getInitString(view), null);
                 internalClient.resetInject();
+                BrowserRpcProxy.getInstance().startPage(url);
             }
 
             redirect = false;
@@ -431,6 +434,12 @@ public class Web3View extends WebView {
                     || internalClient.shouldOverrideUrlLoading(view, url);
         }
 
+        @Override
+        public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request)
+        {
+            return internalClient.shouldInterceptRequest(view, request);
+        }
+
         @Override
         public void onReceivedError(WebView view, WebResourceRequest request, WebResourceError error)
         {
@@ -51,7 +51,8 @@ public class Web3ViewClient extends WebViewClient {
             return null;
         }
 
-        return super.shouldInterceptRequest(view, request);
+        WebResourceResponse asset = JsAssetCache.intercept(context, request.getUrl().toString());
+        return asset != null ? asset : super.shouldInterceptRequest(view, request);
     }
 
     public String getInitString(WebView view)
@@ -79,8 +79,7 @@ public class TransactionDetailWidget extends LinearLayout
         }
         else
         {
-            SignatureLookupService svc = new SignatureLookupService();
-            disposable = svc.getFunctionName(w3tx.payload)
+            disposable = SignatureLookupService.getInstance(getContext()).getFunctionName(w3tx.payload)
                     .observeOn(AndroidSchedulers.mainThread())
                     .subscribeOn(Schedulers.io())
                     .subscribe(this::onResult, error -> { });
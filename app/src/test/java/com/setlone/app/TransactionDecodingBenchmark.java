@@ -0,0 +1,72 @@
+package com.setlone.app;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+import com.setlone.app.entity.TransactionDecoder;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decodes a corpus built from the TransactionDecodingTest soak inputs, reporting time and bytes allocated per decode.
+ */
+public class TransactionDecodingBenchmark
+{
+    private static final int CORPUS_COPIES = 50;
+
+    @Test
+    public void decodeCorpus()
+    {
+        List<String> corpus = new ArrayList<>();
+        for (int copy = 0; copy < CORPUS_COPIES; copy++)
+        {
+            for (String testInput : new TransactionDecodingTest().inputTestList)
+            {
+                //vary the last argument digit so no two inputs are the same string
+                if (testInput.length() > 10)
+                {
+                    int last = testInput.length() - 1;
+                    testInput = testInput.substring(0, last) + Character.forDigit((Character.digit(testInput.charAt(last), 16) + copy) & 0xf, 16);
+                }
+                corpus.add(testInput);
+            }
+        }
+
+        TransactionDecoder decoder = new TransactionDecoder();
+        for (int i = 0; i < 3; i++)
+        {
+            decodeAll(decoder, corpus);
+        }
+
+        long startBytes = allocatedBytes();
+        long start = System.nanoTime();
+        int decoded = decodeAll(decoder, corpus);
+        long nanos = System.nanoTime() - start;
+        long bytes = allocatedBytes() - startBytes;
+
+        System.out.println(String.format(Locale.ROOT, "%d inputs: %.2f us %d bytes per decode",
+                corpus.size(), nanos / 1e3 / corpus.size(), bytes / corpus.size()));
+        assertThat(decoded, equalTo(corpus.size()));
+    }
+
+    private static int decodeAll(TransactionDecoder decoder, List<String> corpus)
+    {
+        int decoded = 0;
+        for (String input : corpus)
+        {
+            if (decoder.decodeInput(input) != null) decoded++;
+        }
+        return decoded;
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
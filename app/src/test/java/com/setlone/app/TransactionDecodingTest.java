@@ -3,9 +3,12 @@ package com.setlone.app;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import androidx.annotation.NonNull;
 
+import com.setlone.app.entity.Transaction;
 import com.setlone.app.entity.TransactionDecoder;
 import com.setlone.app.entity.TransactionInput;
 import com.setlone.app.entity.TransactionType;
@@ -17,6 +20,12 @@ import java.io.IOException;
 import java.math.BigInteger;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Created by weiwu on 7/3/18.
@@ -24,6 +33,9 @@ import java.nio.charset.StandardCharsets;
 
 public class TransactionDecodingTest
 {
+    private static final int THREADS = 8;
+    private static final String WALLET = "0x951c19daead668bfa8391c94286f8ce7cbda2fe3";
+
 
     @Test
     public void testDecodeTransferTransaction()
@@ -100,6 +112,71 @@ public class TransactionDecodingTest
         assertThat(stringBuilder.toString(), equalTo(getBaseline()));
     }
 
+    /**
+     * One decoder shared by several threads gives each the result a sequential decode gives
+     */
+    @Test
+    public void testConcurrentDecode() throws Exception
+    {
+        TransactionDecoder decoder = new TransactionDecoder();
+        List<String> expected = new ArrayList<>();
+        for (String testInput : inputTestList)
+        {
+            expected.add(callText(decoder.decodeInput(testInput)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try
+        {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++)
+            {
+                results.add(executor.submit(() -> {
+                    List<String> decoded = new ArrayList<>();
+                    for (int pass = 0; pass < 20; pass++)
+                    {
+                        decoded.clear();
+                        for (String testInput : inputTestList)
+                        {
+                            decoded.add(callText(decoder.decodeInput(testInput)));
+                        }
+                    }
+                    return decoded;
+                }));
+            }
+
+            for (Future<List<String>> result : results)
+            {
+                assertThat(result.get(), equalTo(expected));
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMinedInputIsHeld()
+    {
+        TransactionDecoder decoder = new TransactionDecoder();
+        String input = inputTestList[1];
+        Transaction mined = new Transaction("0xabc1", "0", "100", 0, 1, WALLET, "0x0000000000000000000000000000000000000002",
+                "0", "21000", "1", input, "21000", 1, false);
+        Transaction pending = new Transaction("0xabc2", "0", "0", 0, 2, WALLET, "0x0000000000000000000000000000000000000002",
+                "0", "21000", "1", input, "0", 1, false);
+
+        TransactionInput first = decoder.decodeInput(mined, WALLET);
+        assertSame(first, decoder.decodeInput(mined, WALLET.toUpperCase(Locale.ROOT)));
+        assertNotSame(decoder.decodeInput(pending, WALLET), decoder.decodeInput(pending, WALLET));
+        assertThat(callText(first), equalTo(callText(decoder.decodeInput(input))));
+    }
+
+    private static String callText(TransactionInput transactionInput)
+    {
+        return transactionInput.functionData != null ? transactionInput.buildFunctionCallText() : "";
+    }
+
     @NonNull
     private String getBaseline() throws IOException
     {
@@ -0,0 +1,198 @@
+package com.setlone.app.entity;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import org.junit.Test;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backfills the transfer history of a busy collection from a simulated node which refuses ranges with too many logs
+ */
+public class EventBackfillTest
+{
+    private static final long CHAIN_HEAD = 2_000_000;
+    private static final int MAX_RESULTS = 1000;
+    private static final long WINDOW = 100_000;
+    private static final int SEGMENTS = 8; //as EventSync runs it
+    private static final int PARALLELISM = 3;
+    private static final int WINDOWS_PER_PASS = 4;
+
+    private final List<Long> chainLogs = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    public EventBackfillTest()
+    {
+        //a log every 500 blocks, and a busy mint around block 1,200,000
+        for (long block = 1; block <= CHAIN_HEAD; block += 500)
+        {
+            chainLogs.add(block);
+        }
+        for (long block = 1_200_000; block < 1_205_000; block++)
+        {
+            chainLogs.add(block);
+        }
+        chainLogs.sort(Long::compare);
+    }
+
+    private List<Long> read(long from, long to) throws LogOverflowException
+    {
+        reads.incrementAndGet();
+        int running = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(running, Math::max);
+        try
+        {
+            Thread.sleep(2); //simulated node latency
+            List<Long> logs = new ArrayList<>();
+            for (Long block : chainLogs)
+            {
+                if (block >= from && block <= to) logs.add(block);
+            }
+            if (logs.size() > MAX_RESULTS)
+            {
+                throw new LogOverflowException(new Response.Error(-32005, "query returned more than " + MAX_RESULTS + " results"));
+            }
+            return logs;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        }
+        finally
+        {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private EventBackfill<Long> backfill(int parallelism)
+    {
+        return new EventBackfill<>(this::read, Long::compare, parallelism, WINDOWS_PER_PASS, 0);
+    }
+
+    // what the caller stores after each pass, read back for the next
+    private static List<EventBackfill.Segment> checkpoint(List<EventBackfill.Segment> segments)
+    {
+        List<EventBackfill.Segment> stored = new ArrayList<>();
+        for (EventBackfill.Segment s : segments)
+        {
+            stored.add(new EventBackfill.Segment(s.start, s.end, s.next, s.window));
+        }
+        return stored;
+    }
+
+    @Test
+    public void historyIsReadInBlockOrderAcrossPasses() throws Exception
+    {
+        List<EventBackfill.Segment> segments = EventBackfill.split(1, CHAIN_HEAD, SEGMENTS, WINDOW);
+        assertThat(segments.size(), equalTo(SEGMENTS));
+
+        List<Long> read = new ArrayList<>();
+        int passes = 0;
+        boolean complete = false;
+        while (!complete && passes < 50)
+        {
+            passes++;
+            EventBackfill.Result<Long> result = backfill(PARALLELISM).run(segments);
+            for (int i = 1; i < result.logs.size(); i++)
+            {
+                assertThat(result.logs.get(i - 1), lessThanOrEqualTo(result.logs.get(i)));
+            }
+            read.addAll(result.logs);
+            complete = result.complete;
+            segments = checkpoint(segments);
+        }
+
+        read.sort(Long::compare);
+        assertThat(complete, equalTo(true));
+        assertThat(read, equalTo(chainLogs)); //all of it, once
+    }
+
+    @Test
+    public void segmentsAreReadConcurrently() throws Exception
+    {
+        List<EventBackfill.Segment> segments = EventBackfill.split(1, CHAIN_HEAD, SEGMENTS, WINDOW);
+        backfill(PARALLELISM).run(segments);
+
+        assertThat(maxInFlight.get(), greaterThan(1));
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(PARALLELISM));
+    }
+
+    @Test
+    public void busyRangeShrinksOnlyItsOwnWindow() throws Exception
+    {
+        List<EventBackfill.Segment> segments = EventBackfill.split(1, CHAIN_HEAD, SEGMENTS, WINDOW);
+        EventBackfill<Long> backfill = backfill(PARALLELISM);
+        boolean complete = false;
+        for (int pass = 0; pass < 50 && !complete; pass++)
+        {
+            complete = backfill.run(segments).complete;
+        }
+
+        assertThat(complete, equalTo(true));
+        //only the segment holding the mint had to read in smaller parts; the rest grew their windows from the start
+        for (EventBackfill.Segment s : segments)
+        {
+            if (s.start > 1_205_000 || s.end < 1_200_000) assertThat(s.window, greaterThan(WINDOW));
+        }
+    }
+
+    @Test
+    public void logsReadBeforeAnUncheckedFailureAreKept() throws Exception
+    {
+        //the node starts refusing requests on the second window, as web3j reports an HTTP 429
+        AtomicInteger windows = new AtomicInteger();
+        EventBackfill<Long> backfill = new EventBackfill<>((from, to) -> {
+            if (windows.incrementAndGet() > 1) throw new RuntimeException("Invalid response received: 429");
+            return read(from, to);
+        }, Long::compare, 1, WINDOWS_PER_PASS, 0);
+
+        List<EventBackfill.Segment> segments = EventBackfill.split(1, CHAIN_HEAD, 1, WINDOW);
+        EventBackfill.Result<Long> result = backfill.run(segments);
+
+        //the first window's logs come back with the segment moved past them, and no further
+        EventBackfill.Segment segment = segments.get(0);
+        assertThat(segment.next, equalTo(1 + WINDOW));
+        assertThat(result.complete, equalTo(false));
+        List<Long> expected = new ArrayList<>();
+        for (Long block : chainLogs)
+        {
+            if (block < segment.next) expected.add(block);
+        }
+        assertThat(result.logs, equalTo(expected));
+    }
+
+    @Test(expected = IOException.class)
+    public void failureIsReportedWhenNothingWasRead() throws Exception
+    {
+        EventBackfill<Long> backfill = new EventBackfill<>((from, to) -> {
+            throw new RuntimeException("Invalid response received: 429");
+        }, Long::compare, PARALLELISM, WINDOWS_PER_PASS, 0);
+
+        backfill.run(EventBackfill.split(1, CHAIN_HEAD, SEGMENTS, WINDOW));
+    }
+
+    @Test
+    public void splitCoversTheRange()
+    {
+        List<EventBackfill.Segment> segments = EventBackfill.split(1, 10, 4, 5);
+        assertThat(segments.get(0).start, equalTo(1L));
+        assertThat(segments.get(segments.size() - 1).end, equalTo(10L));
+        for (int i = 1; i < segments.size(); i++)
+        {
+            assertThat(segments.get(i).start, equalTo(segments.get(i - 1).end + 1));
+        }
+
+        assertThat(EventBackfill.split(5, 4, 4, 5).size(), equalTo(0));
+        assertThat(EventBackfill.split(1, 2, 8, 5).size(), equalTo(2));
+    }
+}
@@ -0,0 +1,107 @@
+package com.setlone.app.repository;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+
+import com.setlone.app.entity.tokendata.TokenTicker;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.observers.TestObserver;
+
+public class PortfolioValueIndexTest
+{
+    private static final String WALLET = "0xAbC0000000000000000000000000000000000001";
+    private static final String USDC = "0xa0b86991c6218b36c1d19d4a2e9eb0ce3606eb48";
+    private static final String NFT = "0x0000000000000000000000000000000000000721";
+    private static final List<Long> FILTERS = List.of(1L, 137L);
+
+    private final PortfolioValueIndex index = new PortfolioValueIndex();
+
+    private static TokenTicker ticker(String price, String change)
+    {
+        return new TokenTicker(price, change, "USD", "", 0);
+    }
+
+    @Before
+    public void setUp()
+    {
+        Map<String, TokenTicker> tickers = new HashMap<>();
+        tickers.put(TokensRealmSource.databaseKey(1, "eth"), ticker("2000", "10"));
+        tickers.put(TokensRealmSource.databaseKey(1, USDC), ticker("1", "0"));
+        tickers.put(TokensRealmSource.databaseKey(1, NFT), ticker("50", "0"));
+        tickers.put(TokensRealmSource.databaseKey(137, "eth"), ticker("", "")); //placeholder
+        index.loadTickers(tickers);
+
+        List<PortfolioValueIndex.Holding> holdings = new ArrayList<>();
+        holdings.add(new PortfolioValueIndex.Holding(1, "eth", 1.5, true, false));
+        holdings.add(new PortfolioValueIndex.Holding(1, USDC, 250, true, false));
+        holdings.add(new PortfolioValueIndex.Holding(1, NFT, 3, false, false));
+        holdings.add(new PortfolioValueIndex.Holding(137, "eth", 40, true, false));
+        holdings.add(new PortfolioValueIndex.Holding(56, "eth", 10, true, false)); //not in filters
+        index.loadWallet(WALLET, FILTERS, holdings);
+    }
+
+    @Test
+    public void totalsMatchFullCalculation()
+    {
+        PortfolioValueIndex.Totals totals = index.getTotals(WALLET.toLowerCase());
+        assertThat(totals.value, closeTo(3250.0, 1e-9));
+        //eth was 10% lower a day ago
+        assertThat(totals.historical, closeTo(3000.0 - 300.0 + 250.0, 1e-9));
+        assertThat(index.isLoaded(WALLET, FILTERS), equalTo(true));
+        assertThat(index.isLoaded(WALLET, List.of(1L)), equalTo(false));
+    }
+
+    @Test
+    public void tickerUpdateAdjustsOnlyItsHoldings()
+    {
+        TestObserver<PortfolioValueIndex.Totals> updates = index.observe(WALLET).test();
+
+        index.updateTickers(1, Collections.singletonMap("0xA0b86991c6218b36c1D19D4a2e9Eb0cE3606eB48", ticker("0.99", "0")));
+        index.updateTickers(137, Collections.singletonMap("eth", ticker("0.5", "0")));
+        index.updateTickers(1, Collections.singletonMap("0x0000000000000000000000000000000000000bad", ticker("3", "0")));
+
+        updates.assertValueCount(2);
+        assertThat(updates.values().get(1).value, closeTo(3000.0 + 247.5 + 20.0, 1e-9));
+    }
+
+    @Test
+    public void balanceWritesAndVisibility()
+    {
+        index.updateBalance(WALLET, 1, USDC, 100, true);
+        assertThat(index.getTotals(WALLET).value, closeTo(3100.0, 1e-9));
+
+        //new token picks up an existing ticker; chains outside the filters are ignored
+        index.updateTickers(1, Collections.singletonMap("0x00000000000000000000000000000000000000dd", ticker("2", "0")));
+        index.updateBalance(WALLET, 1, "0x00000000000000000000000000000000000000dd", 5, true);
+        index.updateBalance(WALLET, 56, "eth", 99, true);
+        assertThat(index.getTotals(WALLET).value, closeTo(3110.0, 1e-9));
+
+        index.setHidden(WALLET, 1, USDC, true);
+        assertThat(index.getTotals(WALLET).value, closeTo(3010.0, 1e-9));
+        index.setHidden(WALLET, 1, USDC, false);
+        index.updateBalance(WALLET, 1, USDC, 0, true);
+        assertThat(index.getTotals(WALLET).value, closeTo(3010.0, 1e-9));
+    }
+
+    @Test
+    public void unloadedWalletNeedsReload()
+    {
+        index.updateBalance("0x0000000000000000000000000000000000000002", 1, "eth", 1, true);
+        assertThat(index.getTotals("0x0000000000000000000000000000000000000002"), nullValue());
+
+        index.clear();
+        assertThat(index.getTotals(WALLET), nullValue());
+        assertThat(index.hasTickers(), equalTo(false));
+    }
+}
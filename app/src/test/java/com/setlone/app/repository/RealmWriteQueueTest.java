@@ -0,0 +1,113 @@
+package com.setlone.app.repository;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.schedulers.TestScheduler;
+
+public class RealmWriteQueueTest
+{
+    private static final String WALLET = "0xAbC0000000000000000000000000000000000001";
+
+    private final TestScheduler scheduler = new TestScheduler();
+    private final List<List<RealmWriteQueue.QueuedWrite>> commits = new ArrayList<>();
+
+    //records each commit rather than writing to Realm
+    private final RealmWriteQueue queue = new RealmWriteQueue(null, scheduler)
+    {
+        @Override
+        void commit(String walletAddress, List<RealmWriteQueue.QueuedWrite> writes)
+        {
+            commits.add(writes);
+        }
+    };
+
+    private static RealmWriteQueue.Write tagged(List<String> applied, String tag)
+    {
+        return r -> applied.add(tag);
+    }
+
+    private static void apply(List<RealmWriteQueue.QueuedWrite> writes)
+    {
+        for (RealmWriteQueue.QueuedWrite w : writes) w.write.apply(null);
+    }
+
+    @Test
+    public void holdsWritesForTheWindowThenCommitsOnce()
+    {
+        List<String> applied = new ArrayList<>();
+        queue.enqueue(WALLET, "tx-1", tagged(applied, "a"));
+        queue.enqueue(WALLET, "tx-2", tagged(applied, "b"));
+        queue.enqueue(WALLET.toLowerCase(), "tx-3", tagged(applied, "c"));
+
+        scheduler.advanceTimeBy(RealmWriteQueue.FLUSH_WINDOW - 1, TimeUnit.MILLISECONDS);
+        assertThat(commits.size(), equalTo(0));
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertThat(commits.size(), equalTo(1));
+        assertThat(commits.get(0).size(), equalTo(3));
+        assertThat(queue.getPendingCount(), equalTo(0));
+    }
+
+    @Test
+    public void laterWriteWithSameKeyReplacesEarlier()
+    {
+        List<String> applied = new ArrayList<>();
+        queue.enqueue(WALLET, "lastBlock-1", tagged(applied, "100"));
+        queue.enqueue(WALLET, "lastBlock-1", tagged(applied, "200"));
+        assertThat(queue.getPendingCount(), equalTo(1));
+
+        scheduler.advanceTimeBy(RealmWriteQueue.FLUSH_WINDOW, TimeUnit.MILLISECONDS);
+        apply(commits.get(0));
+        assertThat(applied, equalTo(List.of("200")));
+    }
+
+    @Test
+    public void barrierKeepsOrderAndStopsCoalescing()
+    {
+        List<String> applied = new ArrayList<>();
+        queue.enqueue(WALLET, "tx-1", tagged(applied, "before"));
+        queue.enqueueBarrier(WALLET, tagged(applied, "erase"));
+        queue.enqueue(WALLET, "tx-1", tagged(applied, "after"));
+
+        scheduler.advanceTimeBy(RealmWriteQueue.FLUSH_WINDOW, TimeUnit.MILLISECONDS);
+        apply(commits.get(0));
+        assertThat(applied, equalTo(List.of("before", "erase", "after")));
+    }
+
+    @Test
+    public void fullBatchFlushesWithoutWaiting()
+    {
+        for (int i = 0; i < RealmWriteQueue.FLUSH_BATCH; i++)
+        {
+            queue.enqueue(WALLET, "tx-" + i, r -> { });
+        }
+
+        scheduler.triggerActions();
+        assertThat(commits.size(), equalTo(1));
+        assertThat(commits.get(0).size(), equalTo(RealmWriteQueue.FLUSH_BATCH));
+    }
+
+    @Test
+    public void callbacksRunAfterCommitAndFlushCanBeRequested()
+    {
+        AtomicInteger committed = new AtomicInteger();
+        queue.enqueue(WALLET, r -> { }, committed::incrementAndGet);
+        queue.enqueue("0x0000000000000000000000000000000000000002", r -> { }, committed::incrementAndGet);
+
+        queue.requestFlush();
+        assertThat(committed.get(), equalTo(0));
+        scheduler.triggerActions();
+
+        //one commit per wallet
+        assertThat(commits.size(), equalTo(2));
+        assertThat(committed.get(), equalTo(2));
+    }
+}
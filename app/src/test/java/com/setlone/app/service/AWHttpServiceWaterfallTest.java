@@ -0,0 +1,264 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.web3j.protocol.Web3j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs the waterfall against local mock JSON-RPC nodes to check the node health routing
+ */
+public class AWHttpServiceWaterfallTest
+{
+    private static final String RESULT = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"MockNode/v1.0\"}";
+
+    private final List<MockNode> nodes = new ArrayList<>();
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .connectTimeout(2, TimeUnit.SECONDS)
+            .readTimeout(5, TimeUnit.SECONDS)
+            .build();
+
+    private static class MockNode
+    {
+        final HttpServer server;
+        final AtomicInteger requests = new AtomicInteger(0);
+        final AtomicInteger authorized = new AtomicInteger(0); //requests carrying an Authorization header
+        volatile int status = 200;
+        volatile long delayMs = 0;
+
+        MockNode() throws IOException
+        {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(java.util.concurrent.Executors.newCachedThreadPool());
+            server.createContext("/", exchange -> {
+                requests.incrementAndGet();
+                if (exchange.getRequestHeaders().containsKey("Authorization")) authorized.incrementAndGet();
+                try
+                {
+                    if (delayMs > 0) Thread.sleep(delayMs);
+                }
+                catch (InterruptedException e)
+                {
+                    //finish up
+                }
+                byte[] body = status == 200 ? RESULT.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+                try (OutputStream os = exchange.getResponseBody())
+                {
+                    os.write(body);
+                }
+                catch (IOException e)
+                {
+                    //client went away, eg cancelled hedge
+                }
+            });
+            server.start();
+        }
+
+        String url()
+        {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (MockNode node : nodes)
+        {
+            node.server.stop(0);
+        }
+    }
+
+    private MockNode startNode() throws IOException
+    {
+        MockNode node = new MockNode();
+        nodes.add(node);
+        return node;
+    }
+
+    private AWHttpServiceWaterfall buildService(MockNode... mockNodes)
+    {
+        String[] urls = new String[mockNodes.length];
+        for (int i = 0; i < mockNodes.length; i++)
+        {
+            urls[i] = mockNodes[i].url();
+        }
+        return new AWHttpServiceWaterfall(urls, 1, client, "", "", "", false);
+    }
+
+    @Test
+    public void prefersFastestNode() throws Exception
+    {
+        MockNode fast = startNode();
+        MockNode slow = startNode();
+        slow.delayMs = 150;
+
+        AWHttpServiceWaterfall service = buildService(fast, slow);
+        Web3j web3j = Web3j.build(service);
+        for (int i = 0; i < 20; i++)
+        {
+            assertThat(web3j.web3ClientVersion().send().getWeb3ClientVersion(), equalTo("MockNode/v1.0"));
+        }
+
+        //each node gets its first sample, after which the fast node takes everything
+        assertThat(slow.requests.get(), lessThan(3));
+        assertThat(fast.requests.get(), greaterThan(17));
+
+        RpcEndpointHealth.Stats fastStats = RpcEndpointHealth.get(fast.url()).getStats();
+        RpcEndpointHealth.Stats slowStats = RpcEndpointHealth.get(slow.url()).getStats();
+        assertThat(fastStats.ewmaLatencyMs, lessThan(slowStats.ewmaLatencyMs));
+        assertThat(service.getEndpointStats().size(), equalTo(2));
+    }
+
+    @Test
+    public void backsOffRateLimitedNode() throws Exception
+    {
+        MockNode limited = startNode();
+        MockNode good = startNode();
+        limited.status = 429;
+
+        Web3j web3j = Web3j.build(buildService(limited, good));
+        for (int i = 0; i < 10; i++)
+        {
+            assertThat(web3j.web3ClientVersion().send().getWeb3ClientVersion(), equalTo("MockNode/v1.0"));
+        }
+
+        //hit once at most, then left alone during the backoff window
+        assertThat(limited.requests.get(), lessThan(2));
+        assertThat(good.requests.get(), equalTo(10));
+        if (limited.requests.get() == 1)
+        {
+            RpcEndpointHealth.Stats stats = RpcEndpointHealth.get(limited.url()).getStats();
+            assertThat(stats.state, equalTo(RpcEndpointHealth.State.BACKOFF));
+            assertThat(stats.blockedForMs, greaterThan(0L));
+        }
+    }
+
+    @Test
+    public void opensCircuitOnRepeatedFailure() throws Exception
+    {
+        MockNode broken = startNode();
+        broken.status = 404;
+        MockNode good = startNode();
+
+        AWHttpServiceWaterfall service = new AWHttpServiceWaterfall(new String[] { broken.url() }, 1, client, "", "", "", false);
+        Web3j brokenOnly = Web3j.build(service);
+        for (int i = 0; i < 3; i++)
+        {
+            try
+            {
+                brokenOnly.web3ClientVersion().send();
+            }
+            catch (IOException e)
+            {
+                //expected
+            }
+        }
+
+        RpcEndpointHealth.Stats stats = RpcEndpointHealth.get(broken.url()).getStats();
+        assertThat(stats.state, equalTo(RpcEndpointHealth.State.OPEN));
+        assertThat(stats.failures, equalTo(3L));
+
+        Web3j web3j = Web3j.build(buildService(broken, good));
+        for (int i = 0; i < 5; i++)
+        {
+            web3j.web3ClientVersion().send();
+        }
+        assertThat(broken.requests.get(), equalTo(3));
+        assertThat(good.requests.get(), equalTo(5));
+    }
+
+    @Test
+    public void hedgesSlowRequest() throws Exception
+    {
+        MockNode primary = startNode();
+        MockNode secondary = startNode();
+        secondary.delayMs = 40;
+
+        AWHttpServiceWaterfall service = buildService(primary, secondary);
+        service.setHedgedRequests(true);
+        Web3j web3j = Web3j.build(service);
+        for (int i = 0; i < 10; i++)
+        {
+            web3j.web3ClientVersion().send();
+        }
+
+        //primary stalls; the hedge to the secondary should answer long before it does
+        primary.delayMs = 3000;
+        int secondaryRequests = secondary.requests.get();
+        long start = System.currentTimeMillis();
+        assertThat(web3j.web3ClientVersion().send().getWeb3ClientVersion(), equalTo("MockNode/v1.0"));
+        assertThat(System.currentTimeMillis() - start, lessThan(2000L));
+        assertThat(secondary.requests.get(), equalTo(secondaryRequests + 1));
+    }
+
+    @Test
+    public void doesNotHedgeWrites() throws Exception
+    {
+        MockNode primary = startNode();
+        MockNode secondary = startNode();
+        secondary.delayMs = 40;
+
+        AWHttpServiceWaterfall service = buildService(primary, secondary);
+        service.setHedgedRequests(true);
+        Web3j web3j = Web3j.build(service);
+        for (int i = 0; i < 10; i++)
+        {
+            web3j.web3ClientVersion().send();
+        }
+
+        //a slow primary is waited for rather than the transaction being sent twice
+        primary.delayMs = 300;
+        int primaryRequests = primary.requests.get();
+        int secondaryRequests = secondary.requests.get();
+        web3j.ethSendRawTransaction("0x00").send();
+        assertThat(primary.requests.get(), equalTo(primaryRequests + 1));
+        assertThat(secondary.requests.get(), equalTo(secondaryRequests));
+
+        assertThat(AWHttpServiceWaterfall.isHedgeable("[{\"jsonrpc\":\"2.0\",\"method\":\"eth_call\",\"params\":[],\"id\":1},"
+                + "{\"jsonrpc\":\"2.0\",\"method\":\"eth_sendRawTransaction\",\"params\":[],\"id\":2}]"), equalTo(false));
+        assertThat(AWHttpServiceWaterfall.isHedgeable("{\"jsonrpc\":\"2.0\",\"method\":\"eth_getBalance\",\"params\":[],\"id\":1}"), equalTo(true));
+    }
+
+    @Test
+    public void secretOnlyGoesToItsOwnNode() throws Exception
+    {
+        MockNode infura = startNode();
+        MockNode failover = startNode();
+
+        AWHttpServiceWaterfall service = new AWHttpServiceWaterfall(new String[] { infura.url() + "v3/key1", failover.url() },
+                1, client, "key1", "secret", "", false);
+        Web3j web3j = Web3j.build(service);
+        web3j.web3ClientVersion().send();
+        assertThat(infura.authorized.get(), equalTo(1));
+
+        //Infura starts failing; requests move to the failover node, which never sees the secret
+        infura.status = 503;
+        for (int i = 0; i < 5; i++)
+        {
+            web3j.web3ClientVersion().send();
+        }
+        assertThat(failover.requests.get(), greaterThan(0));
+        assertThat(failover.authorized.get(), equalTo(0));
+        assertThat(service.getHeaders().containsKey("Authorization"), equalTo(false));
+    }
+}
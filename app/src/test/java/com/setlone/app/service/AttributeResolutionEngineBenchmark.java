@@ -0,0 +1,91 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction;
+
+import com.setlone.token.entity.Attribute;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Times resolving a collection's attributes through the engine against one eth_call per attribute, on the stub node
+ * from AttributeResolutionEngineTest.
+ */
+public class AttributeResolutionEngineBenchmark
+{
+    private final AttributeResolutionEngineTest node = new AttributeResolutionEngineTest();
+    private final AttributeResolutionEngine engine = new AttributeResolutionEngine();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        node.setUp();
+    }
+
+    @After
+    public void tearDown()
+    {
+        node.tearDown();
+    }
+
+    @Test
+    public void engineAgainstSingleCalls()
+    {
+        List<Attribute> attrs = node.attributes();
+        List<BigInteger> tokenIds = AttributeResolutionEngineTest.tokenIds();
+
+        //warm up both paths so class loading and JIT aren't counted
+        singleCalls(attrs, tokenIds.subList(0, 20));
+        engine.execute(node.web3j, AttributeResolutionEngineTest.CHAIN_ID, AttributeResolutionEngineTest.WALLET,
+                engine.plan(attrs, tokenIds.subList(0, 20), AttributeResolutionEngineTest::build), AttributeResolutionEngineTest.BATCH_LIMIT);
+        node.requests.set(0);
+
+        //previous path: one eth_call and subscription per attribute per tokenId
+        long start = System.nanoTime();
+        List<String> singleResults = singleCalls(attrs, tokenIds);
+        long singleTime = System.nanoTime() - start;
+        int singleRequests = node.requests.getAndSet(0);
+
+        start = System.nanoTime();
+        AttributeResolutionEngine.Plan plan = engine.plan(attrs, tokenIds, AttributeResolutionEngineTest::build);
+        AttributeResolutionEngine.Result result = engine.execute(node.web3j, AttributeResolutionEngineTest.CHAIN_ID,
+                AttributeResolutionEngineTest.WALLET, plan, AttributeResolutionEngineTest.BATCH_LIMIT);
+        long engineTime = System.nanoTime() - start;
+
+        assertThat(singleResults.size(), equalTo(plan.calls.size()));
+        System.out.println(String.format(Locale.ROOT, "%d tokens x %d attributes: single calls %d RPC requests in %.1f ms, "
+                        + "engine %d RPC requests (%d reads) in %.1f ms",
+                tokenIds.size(), attrs.size(), singleRequests, singleTime / 1e6, result.nodeCalls, plan.getReadCount(), engineTime / 1e6));
+    }
+
+    private List<String> singleCalls(List<Attribute> attrs, List<BigInteger> tokenIds)
+    {
+        List<Single<String>> singles = new ArrayList<>();
+        for (Attribute attr : attrs)
+        {
+            for (BigInteger tokenId : attr.usesTokenId() ? tokenIds : Collections.singletonList(BigInteger.ZERO))
+            {
+                String data = FunctionEncoder.encode(AttributeResolutionEngineTest.build(attr, tokenId));
+                singles.add(Single.fromCallable(() -> node.web3j.ethCall(createEthCallTransaction(AttributeResolutionEngineTest.WALLET,
+                        AttributeResolutionEngineTest.CONTRACT, data), DefaultBlockParameterName.LATEST).send().getValue())
+                        .subscribeOn(Schedulers.io()));
+            }
+        }
+        return Single.merge(singles).toList().blockingGet();
+    }
+}
@@ -0,0 +1,342 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.setlone.token.entity.As;
+import com.setlone.token.entity.Attribute;
+import com.setlone.token.entity.ContractInfo;
+import com.setlone.token.entity.FunctionDefinition;
+import com.setlone.token.entity.MethodArg;
+import com.setlone.token.entity.TokenscriptElement;
+import com.setlone.token.tools.TokenDefinition;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.abi.datatypes.generated.Uint256;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Resolves the attributes of an NFT collection against a local stub node, counting the requests it takes.
+ * The stub answers some functions by the caller, so reads must be made from the wallet
+ */
+public class AttributeResolutionEngineTest
+{
+    static final long CHAIN_ID = 1;
+    static final String CONTRACT = "0x63cCEF733a093E5Bd773b41C96D3eCE361464942";
+    static final String WALLET = "0x951c19daead668bfa8391c94286f8ce7cbda2fe3";
+    static final int TOKEN_COUNT = 500;
+    static final int BATCH_LIMIT = 100;
+    private static final BigInteger SUPPLY = BigInteger.valueOf(10000);
+
+    private HttpServer server;
+    Web3j web3j;
+    final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger ethCalls = new AtomicInteger(); //calls the node executes, including those inside a batch
+    private final Set<String> callers = ConcurrentHashMap.newKeySet();
+    private volatile boolean acceptsBatch = true;
+
+    private final ContractInfo contract = new ContractInfo("erc721");
+    private final AttributeResolutionEngine engine = new AttributeResolutionEngine();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/", this::rpc);
+        server.start();
+
+        web3j = Web3j.build(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+        contract.addresses.put(CHAIN_ID, Collections.singletonList(CONTRACT));
+    }
+
+    @After
+    public void tearDown()
+    {
+        web3j.shutdown();
+        server.stop(0);
+    }
+
+    private Attribute attribute(String name, String method, boolean takesTokenId)
+    {
+        Attribute attr = new Attribute(name, name, TokenDefinition.Syntax.Integer, As.Unsigned);
+        attr.function = new FunctionDefinition();
+        attr.function.contract = contract;
+        attr.function.method = method;
+        if (takesTokenId)
+        {
+            MethodArg arg = new MethodArg();
+            arg.parameterType = "uint256";
+            arg.element = new TokenscriptElement();
+            arg.element.ref = "tokenId";
+            attr.function.parameters.add(arg);
+        }
+        return attr;
+    }
+
+    // 5 attributes: three read per tokenId, two read the same collection-wide value
+    List<Attribute> attributes()
+    {
+        List<Attribute> attrs = new ArrayList<>();
+        attrs.add(attribute("level", "level", true));
+        attrs.add(attribute("power", "power", true));
+        attrs.add(attribute("generation", "generation", true));
+        attrs.add(attribute("supply", "totalSupply", false));
+        attrs.add(attribute("remaining", "totalSupply", false));
+        return attrs;
+    }
+
+    static List<BigInteger> tokenIds()
+    {
+        List<BigInteger> tokenIds = new ArrayList<>();
+        for (int i = 1; i <= TOKEN_COUNT; i++)
+        {
+            tokenIds.add(BigInteger.valueOf(i * 7L));
+        }
+        return tokenIds;
+    }
+
+    static Function build(Attribute attr, BigInteger tokenId)
+    {
+        List<Type> params = new ArrayList<>();
+        if (attr.usesTokenId()) params.add(new Uint256(tokenId));
+        return new Function(attr.function.method, params, Collections.singletonList(new TypeReference<Uint256>() {}));
+    }
+
+    private static String expected(Attribute attr, BigInteger tokenId)
+    {
+        BigInteger value = attr.usesTokenId() ? tokenId.multiply(BigInteger.valueOf(3)) : SUPPLY;
+        return Numeric.toHexStringWithPrefixZeroPadded(value, 64);
+    }
+
+    @Test
+    public void resolvesCollectionInFewNodeCalls() throws Exception
+    {
+        List<Attribute> attrs = attributes();
+        List<BigInteger> tokenIds = tokenIds();
+
+        AttributeResolutionEngine.Plan plan = engine.plan(attrs, tokenIds, AttributeResolutionEngineTest::build);
+        AttributeResolutionEngine.Result result = engine.execute(web3j, CHAIN_ID, WALLET, plan, BATCH_LIMIT);
+
+        int reads = 3 * TOKEN_COUNT + 1; //both supply attributes share one read
+        assertThat(plan.calls.size(), equalTo(3 * TOKEN_COUNT + 2));
+        assertThat(plan.getReadCount(), equalTo(reads));
+        assertThat(ethCalls.get(), equalTo(reads));
+        assertThat(result.nodeCalls, equalTo((reads + BATCH_LIMIT - 1) / BATCH_LIMIT));
+        assertThat(requests.get(), equalTo(result.nodeCalls));
+        for (AttributeResolutionEngine.AttributeCall call : plan.calls)
+        {
+            assertThat(call.returnData, equalTo(expected(call.attr, call.tokenId)));
+        }
+    }
+
+    @Test
+    public void fallsBackToSingleCalls()
+    {
+        List<Attribute> attrs = attributes();
+        List<BigInteger> tokenIds = tokenIds().subList(0, 40);
+        int reads = 3 * 40 + 1;
+
+        acceptsBatch = false;
+        AttributeResolutionEngine.Plan plan = engine.plan(attrs, tokenIds, AttributeResolutionEngineTest::build);
+        AttributeResolutionEngine.Result result = engine.execute(web3j, CHAIN_ID, WALLET, plan, BATCH_LIMIT);
+        assertThat(result.batchUnavailable, equalTo(true));
+        assertThat(result.nodeCalls, equalTo(1 + reads));
+        for (AttributeResolutionEngine.AttributeCall call : plan.calls)
+        {
+            assertThat(call.returnData, equalTo(expected(call.attr, call.tokenId)));
+        }
+    }
+
+    @Test
+    public void revertedAndUnresolvedCalls()
+    {
+        Attribute broken = attribute("broken", "broken", true);
+        Attribute noInput = attribute("noInput", "noInput", false);
+        List<Attribute> attrs = new ArrayList<>();
+        attrs.add(broken);
+        attrs.add(noInput);
+
+        AttributeResolutionEngine.Plan plan = engine.plan(attrs, tokenIds().subList(0, 3), (attr, tokenId) ->
+                attr == noInput ? new Function("noInput", null, Collections.emptyList()) : build(attr, tokenId));
+        AttributeResolutionEngine.Result result = engine.execute(web3j, CHAIN_ID, WALLET, plan, BATCH_LIMIT);
+
+        assertThat(plan.calls.size(), equalTo(4));
+        assertThat(plan.getReadCount(), equalTo(3));
+        assertThat(result.nodeCalls, equalTo(1));
+        for (AttributeResolutionEngine.AttributeCall call : plan.calls)
+        {
+            //reverted calls have no value; calls whose inputs couldn't be resolved are never sent
+            assertThat(call.returnData, call.attr == noInput ? equalTo("") : nullValue());
+        }
+    }
+
+    @Test
+    public void readsAreMadeFromTheWallet()
+    {
+        //isOwner(tokenId) is true only when the wallet calls it
+        Attribute owner = attribute("owner", "isOwner", true);
+        List<BigInteger> tokenIds = tokenIds().subList(0, 10);
+
+        for (boolean batch : new boolean[] { true, false })
+        {
+            acceptsBatch = batch;
+            callers.clear();
+            AttributeResolutionEngine.Plan plan = engine.plan(Collections.singletonList(owner), tokenIds, AttributeResolutionEngineTest::build);
+            engine.execute(web3j, CHAIN_ID, WALLET, plan, BATCH_LIMIT);
+
+            assertThat(plan.calls.size(), equalTo(tokenIds.size()));
+            for (AttributeResolutionEngine.AttributeCall call : plan.calls)
+            {
+                assertThat(call.returnData, equalTo(Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64)));
+            }
+            assertThat(callers, equalTo(Collections.singleton(WALLET)));
+        }
+    }
+
+    //Stub node
+
+    private void rpc(HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        String body;
+        try (InputStream in = exchange.getRequestBody())
+        {
+            body = new String(readAll(in), StandardCharsets.UTF_8);
+        }
+
+        JsonElement request = JsonParser.parseString(body);
+        String response;
+        if (request.isJsonArray())
+        {
+            if (!acceptsBatch)
+            {
+                response = "[]";
+            }
+            else
+            {
+                JsonArray responses = new JsonArray();
+                for (JsonElement r : request.getAsJsonArray())
+                {
+                    responses.add(JsonParser.parseString(handle(r.getAsJsonObject())));
+                }
+                response = responses.toString();
+            }
+        }
+        else
+        {
+            response = handle(request.getAsJsonObject());
+        }
+
+        try
+        {
+            Thread.sleep(2); //simulated node latency
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+
+    private String handle(JsonObject request)
+    {
+        String id = request.get("id").toString();
+        JsonObject tx = request.getAsJsonArray("params").get(0).getAsJsonObject();
+        String from = tx.has("from") ? tx.get("from").getAsString().toLowerCase(Locale.ROOT) : "";
+        String data = tx.get("data").getAsString();
+        callers.add(from);
+
+        String result = call(from, data);
+
+        if (result == null)
+        {
+            return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"error\":{\"code\":3,\"message\":\"execution reverted\"}}";
+        }
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":\"" + result + "\"}";
+    }
+
+    private static final Map<String, String> SELECTORS = new HashMap<>();
+    static
+    {
+        for (String method : new String[] { "level", "power", "generation", "isOwner" })
+        {
+            SELECTORS.put(FunctionEncoder.encode(build(tokenIdAttr(method), BigInteger.ONE)).substring(0, 10), method);
+        }
+        SELECTORS.put(FunctionEncoder.encode(new Function("totalSupply", Collections.emptyList(), Collections.emptyList())), "totalSupply");
+    }
+
+    private static Attribute tokenIdAttr(String method)
+    {
+        Attribute attr = new Attribute(method, method, TokenDefinition.Syntax.Integer, As.Unsigned);
+        attr.function = new FunctionDefinition();
+        attr.function.method = method;
+        MethodArg arg = new MethodArg();
+        arg.element = new TokenscriptElement();
+        arg.element.ref = "tokenId";
+        attr.function.parameters.add(arg);
+        return attr;
+    }
+
+    // level/power/generation(tokenId) return tokenId * 3, totalSupply() returns SUPPLY, isOwner(tokenId) whether the
+    // caller is WALLET; anything else reverts
+    private String call(String from, String data)
+    {
+        ethCalls.incrementAndGet();
+        String method = SELECTORS.get(data.substring(0, 10));
+        if (method == null) return null;
+        if (method.equals("totalSupply")) return Numeric.toHexStringWithPrefixZeroPadded(SUPPLY, 64);
+        if (method.equals("isOwner")) return Numeric.toHexStringWithPrefixZeroPadded(from.equals(WALLET) ? BigInteger.ONE : BigInteger.ZERO, 64);
+        BigInteger tokenId = Numeric.toBigInt(data.substring(10, 74));
+        return Numeric.toHexStringWithPrefixZeroPadded(tokenId.multiply(BigInteger.valueOf(3)), 64);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,137 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.schedulers.TestScheduler;
+
+/**
+ * Drives the balance scheduler on virtual time to check when passes run
+ */
+public class BalanceUpdateSchedulerTest
+{
+    private final TestScheduler testScheduler = new TestScheduler();
+    private final AtomicInteger passes = new AtomicInteger(0);
+    private final AtomicLong nextDelay = new AtomicLong(BalanceUpdateScheduler.IDLE);
+
+    private BalanceUpdateScheduler buildScheduler()
+    {
+        return new BalanceUpdateScheduler(() -> {
+            passes.incrementAndGet();
+            return nextDelay.get();
+        }, testScheduler);
+    }
+
+    private void advance(long millis)
+    {
+        testScheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void sleepsUntilNextDue()
+    {
+        nextDelay.set(10_000);
+        BalanceUpdateScheduler scheduler = buildScheduler();
+        scheduler.start();
+        advance(0);
+        assertThat(passes.get(), equalTo(1));
+
+        advance(9_999);
+        assertThat(passes.get(), equalTo(1));
+        advance(1);
+        assertThat(passes.get(), equalTo(2));
+    }
+
+    @Test
+    public void pacesBackedUpWork()
+    {
+        nextDelay.set(0);
+        BalanceUpdateScheduler scheduler = buildScheduler();
+        scheduler.start();
+        advance(5_000);
+        assertThat(passes.get(), equalTo(11)); //first pass at start, then every 500ms like the old poll
+    }
+
+    @Test
+    public void wakeRunsPassStraightAway()
+    {
+        BalanceUpdateScheduler scheduler = buildScheduler();
+        scheduler.start();
+        advance(5_000);
+        assertThat(passes.get(), equalTo(1));
+
+        scheduler.wake("pending tx");
+        advance(0);
+        assertThat(passes.get(), equalTo(2));
+
+        //wakes straight after a pass are held to the pacing interval, and coalesce
+        scheduler.wake("focus token");
+        scheduler.wake("balance check");
+        advance(499);
+        assertThat(passes.get(), equalTo(2));
+        advance(1);
+        assertThat(passes.get(), equalTo(3));
+
+        List<BalanceUpdateScheduler.TraceEntry> trace = scheduler.getTrace();
+        assertThat(trace.size(), equalTo(3));
+        assertThat(trace.get(1).reason, equalTo("pending tx"));
+        assertThat(trace.get(2).reason, equalTo("focus token"));
+    }
+
+    @Test
+    public void idleWalletRarelyWakes()
+    {
+        BalanceUpdateScheduler scheduler = buildScheduler();
+        scheduler.start();
+        advance(10 * 60 * 1000);
+        //the old 500ms poll would have run 1200 times
+        assertThat(passes.get(), equalTo(11));
+    }
+
+    @Test
+    public void backsOffInBackground()
+    {
+        nextDelay.set(0);
+        BalanceUpdateScheduler scheduler = buildScheduler();
+        scheduler.setBackground(true);
+        scheduler.start();
+        advance(0);
+
+        long[] expected = { 30_000, 60_000, 120_000, 240_000, 300_000, 300_000 };
+        List<BalanceUpdateScheduler.TraceEntry> trace;
+        for (long sleep : expected)
+        {
+            trace = scheduler.getTrace();
+            assertThat(trace.get(trace.size() - 1).nextDelay, equalTo(sleep));
+            advance(sleep);
+        }
+
+        //back in the foreground the pass runs without waiting out the back-off, and the pacing returns to normal
+        int before = passes.get();
+        scheduler.setBackground(false);
+        advance(BalanceUpdateScheduler.MIN_INTERVAL);
+        assertThat(passes.get(), equalTo(before + 1));
+        trace = scheduler.getTrace();
+        assertThat(trace.get(trace.size() - 1).nextDelay, equalTo(BalanceUpdateScheduler.MIN_INTERVAL));
+    }
+
+    @Test
+    public void stopCancelsPendingPass()
+    {
+        nextDelay.set(1_000);
+        BalanceUpdateScheduler scheduler = buildScheduler();
+        scheduler.start();
+        advance(0);
+        scheduler.stop();
+        scheduler.wake("pending tx");
+        advance(10_000);
+        assertThat(passes.get(), equalTo(1));
+    }
+}
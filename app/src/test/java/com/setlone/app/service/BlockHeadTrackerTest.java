@@ -0,0 +1,157 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.schedulers.TestScheduler;
+
+/**
+ * Runs the block head poller on virtual time against a fake node
+ */
+public class BlockHeadTrackerTest
+{
+    private static final long CHAIN_ID = 1;
+
+    private final TestScheduler testScheduler = new TestScheduler();
+    private final AtomicInteger reads = new AtomicInteger(0);
+    private volatile long blockTime = 12000;
+    private volatile boolean nodeDown;
+
+    private final BlockHeadTracker.NodeSource node = new BlockHeadTracker.NodeSource()
+    {
+        @Override
+        public BigInteger fetchBlockNumber(long chainId) throws Exception
+        {
+            reads.incrementAndGet();
+            if (nodeDown) throw new Exception("Invalid response received: 503");
+            return BigInteger.valueOf(1000 + testScheduler.now(TimeUnit.MILLISECONDS) / blockTime);
+        }
+
+        @Override
+        public String getWebSocketUrl(long chainId)
+        {
+            return null;
+        }
+    };
+
+    private void advance(long millis)
+    {
+        testScheduler.advanceTimeBy(millis, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void notifiesOnlyWhenHeadAdvances()
+    {
+        BlockHeadTracker tracker = new BlockHeadTracker(node, null, testScheduler);
+        List<BigInteger> heads = new ArrayList<>();
+        tracker.addListener((chainId, blockNumber) -> heads.add(blockNumber));
+        tracker.setTrackedChains(Collections.singletonList(CHAIN_ID));
+
+        advance(66_000);
+        //five more blocks by then, each seen once
+        assertThat(heads.size(), equalTo(6));
+        assertThat(heads.get(0), equalTo(BigInteger.valueOf(1000)));
+        assertThat(tracker.getTrackedHead(CHAIN_ID), equalTo(BigInteger.valueOf(1005)));
+    }
+
+    @Test
+    public void pollsAtChainBlockTime()
+    {
+        BlockHeadTracker tracker = new BlockHeadTracker(node, null, testScheduler);
+        tracker.setTrackedChains(Collections.singletonList(CHAIN_ID));
+        advance(2 * 60_000); //settle the block time estimate
+
+        int before = reads.get();
+        advance(10 * 60_000);
+        //slow L1 style chain: two reads per 12s block rather than one per second
+        assertThat(reads.get() - before, lessThan(110));
+        assertThat(reads.get() - before, greaterThan(75));
+
+        blockTime = 2000;
+        advance(3 * 60_000);
+        before = reads.get();
+        advance(60_000);
+        //fast chain is kept fresh
+        assertThat(reads.get() - before, greaterThan(25));
+    }
+
+    @Test
+    public void backsOffWhileNodeFails()
+    {
+        BlockHeadTracker tracker = new BlockHeadTracker(node, null, testScheduler);
+        tracker.setTrackedChains(Collections.singletonList(CHAIN_ID));
+        advance(2 * 60_000);
+
+        nodeDown = true;
+        int before = reads.get();
+        advance(10 * 60_000);
+        //one read per six seconds would be 100; backing off to two minutes between reads is a handful
+        assertThat(reads.get() - before, lessThan(15));
+
+        nodeDown = false;
+        advance(2 * 60_000); //next scheduled read finds the node back
+        before = reads.get();
+        advance(60_000);
+        assertThat(reads.get() - before, greaterThan(7));
+    }
+
+    @Test
+    public void untrackedChainReadsOnDemand()
+    {
+        BlockHeadTracker tracker = new BlockHeadTracker(node, null, testScheduler);
+        advance(1000);
+        assertThat(tracker.getTrackedHead(CHAIN_ID), nullValue());
+        assertThat(tracker.getBlockNumber(CHAIN_ID), equalTo(BigInteger.valueOf(1000)));
+        assertThat(reads.get(), equalTo(1));
+
+        //cached for 10 seconds
+        advance(9000);
+        tracker.getBlockNumber(CHAIN_ID);
+        assertThat(reads.get(), equalTo(1));
+        advance(2000);
+        assertThat(tracker.getBlockNumber(CHAIN_ID), equalTo(BigInteger.valueOf(1001)));
+        assertThat(reads.get(), equalTo(2));
+    }
+
+    @Test
+    public void stopsPollingWhenUntracked()
+    {
+        BlockHeadTracker tracker = new BlockHeadTracker(node, null, testScheduler);
+        tracker.setTrackedChains(Collections.singletonList(CHAIN_ID));
+        advance(30_000);
+        tracker.setTrackedChains(Collections.emptyList());
+        int before = reads.get();
+        advance(10 * 60_000);
+        assertThat(reads.get(), equalTo(before));
+        assertThat(tracker.isTracking(CHAIN_ID), equalTo(false));
+    }
+
+    @Test
+    public void parsesNewHeadsNotification()
+    {
+        String notification = "{\"jsonrpc\":\"2.0\",\"method\":\"eth_subscription\",\"params\":{\"subscription\":\"0x9ce59a13059e417087c02d3236a0b1cc\","
+                + "\"result\":{\"hash\":\"0x7736fab79e05dc611604d22470dadad26f56fe494421b5b333de816ce1f25701\",\"number\":\"0x1b4\"}}}";
+        assertThat(BlockHeadTracker.parseHeadNotification(notification), equalTo(BigInteger.valueOf(436)));
+        assertThat(BlockHeadTracker.parseHeadNotification("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"0xcd0c3e8af590364c09d0fa6a1210faf5\"}"), nullValue());
+        assertThat(BlockHeadTracker.parseHeadNotification("not json"), nullValue());
+    }
+
+    @Test
+    public void derivesInfuraWebSocketUrl()
+    {
+        assertThat(BlockHeadTracker.toWebSocketUrl("https://mainnet.infura.io/v3/abc123"), equalTo("wss://mainnet.infura.io/ws/v3/abc123"));
+        assertThat(BlockHeadTracker.toWebSocketUrl("https://rpc.ankr.com/eth"), nullValue());
+    }
+}
@@ -0,0 +1,241 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads block times for a set of event logs against a local stub node, counting the requests the node sees
+ */
+public class BlockTimestampCacheTest
+{
+    private static final long CHAIN_ID = 1;
+    private static final int LOG_COUNT = 300;
+    private static final int BLOCK_COUNT = 25;
+    private static final int BATCH_LIMIT = 100;
+    private static final long GENESIS_TIME = 1_700_000_000L;
+
+    private HttpServer server;
+    private Web3j web3j;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger blockReads = new AtomicInteger();
+    private volatile boolean acceptsBatch = true;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", this::rpc);
+        server.start();
+
+        web3j = Web3j.build(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @After
+    public void tearDown()
+    {
+        web3j.shutdown();
+        server.stop(0);
+    }
+
+    private static String blockHash(int block)
+    {
+        return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(1000 + block), 64);
+    }
+
+    private static long blockTime(int block)
+    {
+        return GENESIS_TIME + block * 12L;
+    }
+
+    // several logs per block, as an event-heavy script would see
+    private static List<String> logBlockHashes()
+    {
+        List<String> hashes = new ArrayList<>();
+        for (int i = 0; i < LOG_COUNT; i++)
+        {
+            hashes.add(blockHash(i % BLOCK_COUNT));
+        }
+        return hashes;
+    }
+
+    @Test
+    public void distinctBlocksAreReadInOneBatch()
+    {
+        BlockTimestampCache cache = new BlockTimestampCache(BlockTimestampCache.DEFAULT_CAPACITY);
+
+        Map<String, Long> times = cache.enrich(web3j, CHAIN_ID, logBlockHashes(), BATCH_LIMIT);
+
+        assertThat(requests.get(), equalTo(1));
+        assertThat(blockReads.get(), equalTo(BLOCK_COUNT));
+        assertThat(times.size(), equalTo(BLOCK_COUNT));
+        for (int block = 0; block < BLOCK_COUNT; block++)
+        {
+            assertThat(times.get(blockHash(block)), equalTo(blockTime(block)));
+            assertThat(cache.getByNumber(CHAIN_ID, BigInteger.valueOf(block)), equalTo(blockTime(block)));
+        }
+
+        //the same blocks again, eg the transaction fetches for these logs, cost nothing
+        cache.enrich(web3j, CHAIN_ID, logBlockHashes(), BATCH_LIMIT);
+        assertThat(cache.getTimestamp(web3j, CHAIN_ID, blockHash(3).toUpperCase().replace("0X", "0x")), equalTo(blockTime(3)));
+        assertThat(requests.get(), equalTo(1));
+        assertThat(cache.getNodeCalls(), equalTo(1L));
+    }
+
+    @Test
+    public void onlyMissingBlocksAreFetched()
+    {
+        BlockTimestampCache cache = new BlockTimestampCache(BlockTimestampCache.DEFAULT_CAPACITY);
+        cache.put(CHAIN_ID, blockHash(0), BigInteger.ZERO, blockTime(0));
+        cache.put(CHAIN_ID, blockHash(1), BigInteger.ONE, blockTime(1));
+
+        Map<String, Long> times = cache.enrich(web3j, CHAIN_ID, logBlockHashes(), BATCH_LIMIT);
+
+        assertThat(times.size(), equalTo(BLOCK_COUNT));
+        assertThat(blockReads.get(), equalTo(BLOCK_COUNT - 2));
+    }
+
+    @Test
+    public void fallsBackToSingleCallsWithoutBatches()
+    {
+        acceptsBatch = false;
+        BlockTimestampCache cache = new BlockTimestampCache(BlockTimestampCache.DEFAULT_CAPACITY);
+
+        Map<String, Long> times = cache.enrich(web3j, CHAIN_ID, logBlockHashes(), BATCH_LIMIT);
+
+        assertThat(times.size(), equalTo(BLOCK_COUNT));
+        assertThat(requests.get(), equalTo(1 + BLOCK_COUNT)); //the refused batch, then one per distinct block
+    }
+
+    @Test
+    public void unknownBlockIsNotHeld()
+    {
+        BlockTimestampCache cache = new BlockTimestampCache(BlockTimestampCache.DEFAULT_CAPACITY);
+        String unknown = blockHash(BLOCK_COUNT + 1);
+        List<String> hashes = new ArrayList<>();
+        hashes.add(unknown);
+        hashes.add(blockHash(2));
+
+        Map<String, Long> times = cache.enrich(web3j, CHAIN_ID, hashes, BATCH_LIMIT);
+
+        assertThat(times.get(unknown), nullValue());
+        assertThat(times.get(blockHash(2)), equalTo(blockTime(2)));
+        assertThat(cache.get(CHAIN_ID, unknown), equalTo(0L));
+
+        //asked for again, as it may have been mined since
+        cache.enrich(web3j, CHAIN_ID, hashes, BATCH_LIMIT);
+        assertThat(blockReads.get(), equalTo(3));
+    }
+
+    @Test
+    public void leastRecentlyUsedBlocksAreEvicted()
+    {
+        BlockTimestampCache cache = new BlockTimestampCache(4);
+        for (int block = 0; block < 4; block++)
+        {
+            cache.put(CHAIN_ID, blockHash(block), null, blockTime(block));
+        }
+        cache.get(CHAIN_ID, blockHash(0));
+        cache.put(CHAIN_ID, blockHash(4), null, blockTime(4));
+
+        assertThat(cache.get(CHAIN_ID, blockHash(0)), equalTo(blockTime(0)));
+        assertThat(cache.get(CHAIN_ID, blockHash(1)), equalTo(0L));
+        assertThat(cache.get(2, blockHash(4)), equalTo(0L)); //chains are kept apart
+    }
+
+    private void rpc(HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        String body;
+        try (InputStream in = exchange.getRequestBody())
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        JsonElement request = JsonParser.parseString(body);
+        String response;
+        if (request.isJsonArray())
+        {
+            if (!acceptsBatch)
+            {
+                response = "[]";
+            }
+            else
+            {
+                JsonArray responses = new JsonArray();
+                for (JsonElement r : request.getAsJsonArray())
+                {
+                    responses.add(JsonParser.parseString(handle(r.getAsJsonObject())));
+                }
+                response = responses.toString();
+            }
+        }
+        else
+        {
+            response = handle(request.getAsJsonObject());
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+
+    private String handle(JsonObject request)
+    {
+        blockReads.incrementAndGet();
+        String id = request.get("id").toString();
+        String hash = request.getAsJsonArray("params").get(0).getAsString();
+        int block = Numeric.toBigInt(hash).intValue() - 1000;
+        if (block < 0 || block >= BLOCK_COUNT)
+        {
+            return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":null}";
+        }
+
+        JsonObject result = new JsonObject();
+        result.addProperty("hash", hash);
+        result.addProperty("number", Numeric.toHexStringWithPrefix(BigInteger.valueOf(block)));
+        result.addProperty("timestamp", Numeric.toHexStringWithPrefix(BigInteger.valueOf(blockTime(block))));
+        result.add("transactions", new JsonArray());
+        result.add("uncles", new JsonArray());
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":" + result + "}";
+    }
+}
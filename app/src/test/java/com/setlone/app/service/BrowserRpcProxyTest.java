@@ -0,0 +1,357 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameter;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+import org.web3j.protocol.http.HttpService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Sends the eth_calls of a busy dapp page through the proxy to a local stub node, counting what the node sees
+ */
+public class BrowserRpcProxyTest
+{
+    private static final long CHAIN_ID = 1;
+    private static final int BATCH_LIMIT = 100;
+    private static final long WINDOW = 50;
+    private static final String WALLET = "0x0000000000000000000000000000000000000001";
+    private static final String POOL = "0x00000000000000000000000000000000000000aa";
+    private static final String REVERTS = "0xdeadbeef";
+
+    private HttpServer server;
+    private Web3j web3j;
+    private BrowserRpcProxy proxy;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger ethCalls = new AtomicInteger();
+    private final AtomicReference<BigInteger> head = new AtomicReference<>(BigInteger.valueOf(100));
+    private volatile boolean acceptsBatch = true;
+    private volatile String batchRejection = "[]";    // what a node which doesn't take batches answers with
+    private volatile int batchStatus = 200;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", this::rpc);
+        server.start();
+
+        web3j = Web3j.build(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+        proxy = new BrowserRpcProxy(new BrowserRpcProxy.NodeSource()
+        {
+            @Override
+            public Web3j getWeb3j(long chainId)
+            {
+                return web3j;
+            }
+
+            @Override
+            public int getBatchLimit(long chainId)
+            {
+                return BATCH_LIMIT;
+            }
+
+            @Override
+            public BigInteger getTrackedHead(long chainId)
+            {
+                return head.get();
+            }
+        }, Schedulers.io(), WINDOW);
+    }
+
+    @After
+    public void tearDown()
+    {
+        web3j.shutdown();
+        server.stop(0);
+    }
+
+    private static Transaction call(int selector)
+    {
+        return Transaction.createEthCallTransaction(WALLET, POOL, String.format(Locale.ROOT, "0x%08x", selector));
+    }
+
+    private static String expected(Transaction tx)
+    {
+        return "0x" + String.format(Locale.ROOT, "%064x", new BigInteger(tx.getData().substring(2), 16));
+    }
+
+    private List<String> send(List<Transaction> txs, DefaultBlockParameter block)
+    {
+        List<Single<String>> pending = new ArrayList<>();
+        for (Transaction tx : txs)
+        {
+            pending.add(proxy.ethCall(CHAIN_ID, tx, block));
+        }
+
+        List<String> results = new ArrayList<>();
+        for (Single<String> single : pending)
+        {
+            results.add(single.blockingGet());
+        }
+        return results;
+    }
+
+    @Test
+    public void identicalCallsShareOneRequest()
+    {
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+        {
+            txs.add(call(7));
+        }
+
+        List<String> results = send(txs, DefaultBlockParameterName.LATEST);
+
+        assertThat(requests.get(), equalTo(1));
+        assertThat(ethCalls.get(), equalTo(1));
+        for (String result : results) assertThat(result, equalTo(expected(call(7))));
+
+        BrowserRpcProxy.PageStats stats = proxy.getPageStats();
+        assertThat(stats.calls, equalTo(100L));
+        assertThat(stats.coalesced, equalTo(99L));
+        assertThat(stats.getSaved(), equalTo(99L));
+        assertThat(stats.getHitRatio(), equalTo(0.99));
+    }
+
+    @Test
+    public void distinctCallsGoInOneBatch()
+    {
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            txs.add(call(i));
+        }
+
+        List<String> results = send(txs, DefaultBlockParameterName.LATEST);
+
+        assertThat(requests.get(), equalTo(1));
+        assertThat(ethCalls.get(), equalTo(50));
+        for (int i = 0; i < txs.size(); i++) assertThat(results.get(i), equalTo(expected(txs.get(i))));
+    }
+
+    @Test
+    public void latestResultIsHeldUntilTheNextHead()
+    {
+        List<Transaction> txs = new ArrayList<>();
+        txs.add(call(1));
+        txs.add(call(2));
+
+        send(txs, DefaultBlockParameterName.LATEST);
+        send(txs, DefaultBlockParameterName.LATEST);
+        assertThat(ethCalls.get(), equalTo(2));
+        assertThat(proxy.getPageStats().cacheHits, equalTo(2L));
+
+        head.set(BigInteger.valueOf(101));
+        send(txs, DefaultBlockParameterName.LATEST);
+        assertThat(ethCalls.get(), equalTo(4));
+
+        //a fixed block holds across heads; pending is never held
+        DefaultBlockParameter block = DefaultBlockParameter.valueOf(BigInteger.valueOf(90));
+        send(txs, block);
+        head.set(BigInteger.valueOf(102));
+        send(txs, block);
+        assertThat(ethCalls.get(), equalTo(6));
+
+        send(txs, DefaultBlockParameterName.PENDING);
+        send(txs, DefaultBlockParameterName.PENDING);
+        assertThat(ethCalls.get(), equalTo(10));
+
+        BrowserRpcProxy.PageStats page = proxy.startPage("https://next.page");
+        assertThat(page.calls, equalTo(14L));
+        assertThat(proxy.getPageStats().calls, equalTo(0L));
+    }
+
+    @Test
+    public void singleCallsWhereTheNodeRefusesBatches()
+    {
+        acceptsBatch = false;
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            txs.add(call(i));
+        }
+
+        List<String> results = send(txs, DefaultBlockParameterName.LATEST);
+        for (int i = 0; i < txs.size(); i++) assertThat(results.get(i), equalTo(expected(txs.get(i))));
+        assertThat(requests.get(), equalTo(1 + 10)); //the refused batch, then one per call
+
+        //not tried again
+        txs.clear();
+        for (int i = 10; i < 20; i++)
+        {
+            txs.add(call(i));
+        }
+        send(txs, DefaultBlockParameterName.LATEST);
+        assertThat(requests.get(), equalTo(1 + 20));
+    }
+
+    @Test
+    public void singleCallsWhereTheNodeAnswersABatchWithAnError()
+    {
+        acceptsBatch = false;
+        batchRejection = "{\"jsonrpc\":\"2.0\",\"id\":null,\"error\":{\"code\":-32600,\"message\":\"batch requests are not supported\"}}";
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            txs.add(call(i));
+        }
+
+        List<String> results = send(txs, DefaultBlockParameterName.LATEST);
+        for (int i = 0; i < txs.size(); i++) assertThat(results.get(i), equalTo(expected(txs.get(i))));
+        assertThat(requests.get(), equalTo(1 + 10));
+    }
+
+    @Test
+    public void rateLimitedBatchIsTriedAgain()
+    {
+        batchStatus = 429;
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+        {
+            txs.add(call(i));
+        }
+        for (Transaction tx : txs)
+        {
+            proxy.ethCall(CHAIN_ID, tx, DefaultBlockParameterName.LATEST).subscribe((r, e) -> { });
+        }
+        Throwable error = proxy.ethCall(CHAIN_ID, call(10), DefaultBlockParameterName.LATEST)
+                .map(r -> (Throwable) null)
+                .onErrorReturn(e -> e)
+                .blockingGet();
+        assertThat(error == null, equalTo(false));
+        assertThat(requests.get(), equalTo(1)); //the calls fail with the batch rather than each going singly
+
+        //the node takes batches again once it stops limiting
+        batchStatus = 200;
+        List<String> results = send(txs, DefaultBlockParameterName.LATEST);
+        for (int i = 0; i < txs.size(); i++) assertThat(results.get(i), equalTo(expected(txs.get(i))));
+        assertThat(requests.get(), equalTo(2));
+    }
+
+    @Test
+    public void onlyAClientErrorRefusesBatches()
+    {
+        assertThat(BrowserRpcProxy.isBatchRefused(new ClientConnectionException("Invalid response received: 405; Method Not Allowed")), equalTo(true));
+        assertThat(BrowserRpcProxy.isBatchRefused(new ClientConnectionException("Invalid response received: 429; Too Many Requests")), equalTo(false));
+        assertThat(BrowserRpcProxy.isBatchRefused(new ClientConnectionException("Invalid response received: 503; ")), equalTo(false));
+    }
+
+    @Test
+    public void failedCallIsNotHeld()
+    {
+        Transaction tx = Transaction.createEthCallTransaction(WALLET, POOL, REVERTS);
+        for (int i = 0; i < 2; i++)
+        {
+            Throwable error = proxy.ethCall(CHAIN_ID, tx, DefaultBlockParameterName.LATEST)
+                    .map(r -> (Throwable) null)
+                    .onErrorReturn(e -> e)
+                    .blockingGet();
+            assertThat(error.getMessage(), equalTo("execution reverted"));
+        }
+
+        assertThat(ethCalls.get(), equalTo(2));
+        assertThat(proxy.getPageStats().upstreamRequests, greaterThan(1L));
+    }
+
+    private void rpc(HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        String body;
+        try (InputStream in = exchange.getRequestBody())
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        JsonElement request = JsonParser.parseString(body);
+        String response;
+        if (request.isJsonArray())
+        {
+            if (batchStatus != 200)
+            {
+                exchange.sendResponseHeaders(batchStatus, -1);
+                exchange.close();
+                return;
+            }
+            else if (!acceptsBatch)
+            {
+                response = batchRejection;
+            }
+            else
+            {
+                JsonArray responses = new JsonArray();
+                for (JsonElement r : request.getAsJsonArray())
+                {
+                    responses.add(JsonParser.parseString(handle(r.getAsJsonObject())));
+                }
+                response = responses.toString();
+            }
+        }
+        else
+        {
+            response = handle(request.getAsJsonObject());
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+
+    // answers each call with its selector as a uint256
+    private String handle(JsonObject request)
+    {
+        ethCalls.incrementAndGet();
+        String id = request.get("id").toString();
+        String data = request.getAsJsonArray("params").get(0).getAsJsonObject().get("data").getAsString();
+        if (data.equals(REVERTS))
+        {
+            return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"error\":{\"code\":3,\"message\":\"execution reverted\"}}";
+        }
+
+        String result = "0x" + String.format(Locale.ROOT, "%064x", new BigInteger(data.substring(2), 16));
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":\"" + result + "\"}";
+    }
+}
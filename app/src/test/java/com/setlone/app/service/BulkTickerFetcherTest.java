@@ -0,0 +1,201 @@
+package com.setlone.app.service;
+
+import static com.setlone.ethereum.EthereumNetworkBase.MAINNET_ID;
+import static com.setlone.ethereum.EthereumNetworkBase.POLYGON_ID;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import com.setlone.app.entity.ContractType;
+import com.setlone.app.entity.tokendata.TokenGroup;
+import com.setlone.app.entity.tokendata.TokenTicker;
+import com.setlone.app.entity.tokens.TokenCardMeta;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Runs the bulk ticker fetch against a local stub price server
+ */
+public class BulkTickerFetcherTest
+{
+    private static final int TOKEN_COUNT = 500;
+    private static final double BULK_RATE = 20.0;
+    private static final double SINGLE_RATE = 50.0;
+
+    private HttpServer server;
+    private final AtomicInteger bulkCalls = new AtomicInteger();
+    private final AtomicInteger singleCalls = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private BulkTickerFetcher fetcher;
+
+    private static String address(int i)
+    {
+        return String.format(Locale.ROOT, "0x%040x", i + 1);
+    }
+
+    //every 10th token is unknown to the bulk endpoint; of those, every other one is unknown everywhere
+    private static boolean bulkPriced(int i)
+    {
+        return i % 10 != 0;
+    }
+
+    private static boolean discoveryPriced(int i)
+    {
+        return i % 20 != 0;
+    }
+
+    private static int index(String address)
+    {
+        return Integer.parseInt(address.substring(2), 16) - 1;
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/token_price/", this::tokenPrice);
+        server.createContext("/raw-token-price", this::discoveryPrice);
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        Map<Long, String> chainNames = new HashMap<>();
+        chainNames.put(MAINNET_ID, "ethereum");
+        chainNames.put(POLYGON_ID, "polygon-pos");
+        fetcher = new BulkTickerFetcher(new OkHttpClient(), null, chainNames,
+                base + "/token_price/" + BulkTickerFetcher.CHAIN_ID + "?contract_addresses=" + BulkTickerFetcher.CONTRACT_ADDR + "&vs_currencies=" + BulkTickerFetcher.CURRENCY,
+                base + "/raw-token-price?contract=" + BulkTickerFetcher.CONTRACT_ADDR + "&chain=" + BulkTickerFetcher.CHAIN_ID,
+                BULK_RATE, SINGLE_RATE, BulkTickerFetcher.BATCH_SIZE, BulkTickerFetcher.MAX_CONCURRENT);
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    private void tokenPrice(HttpExchange exchange) throws IOException
+    {
+        bulkCalls.incrementAndGet();
+        String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+        String contracts = query.substring(query.indexOf("contract_addresses=") + 19, query.indexOf('&'));
+        StringBuilder sb = new StringBuilder("{");
+        for (String contract : contracts.split(","))
+        {
+            int i = index(contract);
+            if (!bulkPriced(i)) continue;
+            if (sb.length() > 1) sb.append(',');
+            sb.append('"').append(contract).append("\":{\"usd\":").append(i + 1).append(",\"usd_24h_change\":1.5}");
+        }
+        sb.append('}');
+        respond(exchange, sb.toString());
+    }
+
+    private void discoveryPrice(HttpExchange exchange) throws IOException
+    {
+        singleCalls.incrementAndGet();
+        String query = exchange.getRequestURI().getQuery();
+        String contract = query.substring(query.indexOf("contract=") + 9, query.indexOf('&'));
+        int i = index(contract);
+        respond(exchange, discoveryPriced(i)
+                ? "[{\"contract\":\"" + contract + "\",\"usdPrice\":" + (i + 1) + ",\"24hrPercentChange\":\"-2.0\"}]"
+                : "[]");
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException
+    {
+        int now = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(now, Math::max);
+        try
+        {
+            Thread.sleep(20); //simulated provider latency
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private static List<TokenCardMeta> tokens(long chainId, int count)
+    {
+        List<TokenCardMeta> tokens = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            tokens.add(new TokenCardMeta(chainId, address(i), "1", 0, 0, ContractType.ERC20, TokenGroup.ASSET));
+        }
+        return tokens;
+    }
+
+    @Test
+    public void pricesFiveHundredTokens()
+    {
+        Map<Long, Map<String, TokenTicker>> result = fetcher.fetch(tokens(MAINNET_ID, TOKEN_COUNT), "USD", 1.0).blockingGet();
+
+        Map<String, TokenTicker> tickers = result.get(MAINNET_ID);
+        assertThat(result.size(), equalTo(1));
+        assertThat(tickers.size(), equalTo(TOKEN_COUNT)); //every token priced, or marked as unpriceable
+
+        for (int i = 0; i < TOKEN_COUNT; i++)
+        {
+            TokenTicker ticker = tickers.get(address(i));
+            if (bulkPriced(i) || discoveryPriced(i))
+            {
+                assertThat(Double.parseDouble(ticker.price), equalTo((double) (i + 1)));
+            }
+            else
+            {
+                assertThat(ticker.price, equalTo("")); //blank placeholder
+            }
+        }
+        assertThat(tickers.get(address(1)).percentChange24h, equalTo("1.500"));
+        assertThat(tickers.get(address(10)).percentChange24h, equalTo("-2.000"));
+
+        int batches = TOKEN_COUNT / BulkTickerFetcher.BATCH_SIZE;
+        assertThat(bulkCalls.get(), equalTo(batches));
+        assertThat(singleCalls.get(), equalTo(TOKEN_COUNT / 10));
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(BulkTickerFetcher.MAX_CONCURRENT));
+    }
+
+    @Test
+    public void groupsByChain()
+    {
+        List<TokenCardMeta> tokens = tokens(MAINNET_ID, 30);
+        tokens.addAll(tokens(POLYGON_ID, 30));
+        tokens.add(new TokenCardMeta(999999L, address(1), "1", 0, 0, ContractType.ERC20, TokenGroup.ASSET)); //no price API
+
+        Map<Long, Map<String, TokenTicker>> result = fetcher.fetch(tokens, "USD", 1.0).blockingGet();
+
+        assertThat(result.size(), equalTo(2));
+        assertThat(result.get(MAINNET_ID).size(), equalTo(30));
+        assertThat(result.get(POLYGON_ID).size(), equalTo(30));
+        //30 tokens per chain is two requests each
+        assertThat(bulkCalls.get(), equalTo(4));
+    }
+}
@@ -0,0 +1,377 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.setlone.token.entity.ContractInfo;
+import com.setlone.token.entity.EventDefinition;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.methods.request.EthFilter;
+import org.web3j.protocol.core.methods.response.EthLog;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads several event definitions against a local stub node, comparing against one eth_getLogs per definition
+ */
+public class EventLogSchedulerTest
+{
+    private static final long CHAIN_ID = 1;
+    private static final long HEAD = 1000;
+    private static final String CONTRACT_A = "0x63ccef733a093e5bd773b41c96d3ece361464942";
+    private static final String CONTRACT_B = "0x951c19daead668bfa8391c94286f8ce7cbda2fe3";
+    private static final String TRANSFER = "0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef";
+    private static final String APPROVAL = "0x8c5be1e5ebec7d5bd14f71427d1e84f3dd0314c0f7b2291e5b200ac8c7c3b925";
+    private static final String HOLDER = "0x000000000000000000000000" + "5b38da6a701c568545dcfcb03fcb875f56beddc4";
+
+    private HttpServer server;
+    private Web3j web3j;
+    private final List<JsonObject> chainLogs = new ArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile int maxResults = Integer.MAX_VALUE;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        for (long block = 1; block <= HEAD; block++)
+        {
+            chainLogs.add(log(block, 0, CONTRACT_A, TRANSFER, HOLDER, HOLDER, topic(block % 12)));
+            if (block % 3 == 0) chainLogs.add(log(block, 1, CONTRACT_A, APPROVAL, HOLDER, HOLDER, topic(block % 12)));
+            if (block % 2 == 0) chainLogs.add(log(block, 2, CONTRACT_B, TRANSFER, HOLDER, HOLDER, topic(block % 7)));
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.createContext("/", this::rpc);
+        server.start();
+
+        web3j = Web3j.build(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+    }
+
+    @After
+    public void tearDown()
+    {
+        web3j.shutdown();
+        server.stop(0);
+    }
+
+    private static String topic(long value)
+    {
+        return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(value), 64);
+    }
+
+    private static EventDefinition definition(String address, String name)
+    {
+        EventDefinition ev = new EventDefinition();
+        ev.contract = new ContractInfo("erc721");
+        ev.contract.addresses.put(CHAIN_ID, Collections.singletonList(address));
+        ev.attributeName = name;
+        return ev;
+    }
+
+    private static EthFilter filter(String address, String event)
+    {
+        return new EthFilter(DefaultBlockParameterName.EARLIEST, DefaultBlockParameterName.LATEST, address)
+                .addSingleTopic(event);
+    }
+
+    // three definitions on one contract, two of them narrowed to tokenIds, and one on another contract
+    private Map<EventDefinition, EthFilter> definitions()
+    {
+        Map<EventDefinition, EthFilter> defs = new LinkedHashMap<>();
+        defs.put(definition(CONTRACT_A, "owned"), filter(CONTRACT_A, TRANSFER)
+                .addSingleTopic(null).addSingleTopic(null).addOptionalTopics(topic(1), topic(2), topic(3)));
+        defs.put(definition(CONTRACT_A, "staked"), filter(CONTRACT_A, TRANSFER)
+                .addSingleTopic(null).addSingleTopic(null).addOptionalTopics(topic(7), topic(8)));
+        defs.put(definition(CONTRACT_A, "approved"), filter(CONTRACT_A, APPROVAL));
+        defs.put(definition(CONTRACT_B, "moved"), filter(CONTRACT_B, TRANSFER));
+        return defs;
+    }
+
+    private Map<EventDefinition, List<String>> readSeparately(Map<EventDefinition, EthFilter> defs) throws IOException
+    {
+        Map<EventDefinition, List<String>> results = new HashMap<>();
+        for (Map.Entry<EventDefinition, EthFilter> entry : defs.entrySet())
+        {
+            results.put(entry.getKey(), ids(web3j.ethGetLogs(entry.getValue()).send().getLogs()));
+        }
+        return results;
+    }
+
+    private static List<String> ids(List<EthLog.LogResult> logs)
+    {
+        List<String> ids = new ArrayList<>();
+        for (EthLog.LogResult<?> result : logs)
+        {
+            Log log = (Log) result.get();
+            ids.add(log.getBlockNumber() + "/" + log.getLogIndex());
+        }
+        return ids;
+    }
+
+    private Map<EventDefinition, List<String>> readMerged(EventLogScheduler scheduler, Map<EventDefinition, EthFilter> defs, long head, long maxSpan)
+    {
+        Map<EventDefinition, List<String>> results = new HashMap<>();
+        for (EventLogScheduler.MergedFilter filter : scheduler.plan(defs))
+        {
+            scheduler.read(web3j, filter, BigInteger.valueOf(head), maxSpan, (ev, logs) -> {
+                List<String> received = results.get(ev);
+                if (received == null)
+                {
+                    received = new ArrayList<>();
+                    results.put(ev, received);
+                }
+                received.addAll(ids(logs));
+            });
+        }
+        return results;
+    }
+
+    @Test
+    public void definitionsOnOneContractShareARead() throws IOException
+    {
+        Map<EventDefinition, EthFilter> defs = definitions();
+        Map<EventDefinition, List<String>> expected = readSeparately(defs);
+        assertThat(requests.get(), equalTo(defs.size()));
+
+        requests.set(0);
+        EventLogScheduler scheduler = new EventLogScheduler();
+        Map<EventDefinition, List<String>> merged = readMerged(scheduler, defs, HEAD, 0);
+
+        assertThat(requests.get(), equalTo(2)); //one per contract
+        for (EventDefinition ev : defs.keySet())
+        {
+            assertThat(ev.attributeName, merged.get(ev), equalTo(expected.get(ev)));
+        }
+        assertThat(scheduler.getStats().definitionReads, equalTo((long) defs.size()));
+    }
+
+    @Test
+    public void rangeIsSplitWhenTheNodeRefusesIt() throws IOException
+    {
+        Map<EventDefinition, EthFilter> defs = definitions();
+        Map<EventDefinition, List<String>> expected = readSeparately(defs);
+
+        maxResults = 200;
+        EventLogScheduler scheduler = new EventLogScheduler();
+        Map<EventDefinition, List<String>> merged = new HashMap<>();
+        for (int pass = 0; pass < 5; pass++) //a pass reads a bounded number of ranges; the rest follow on later passes
+        {
+            for (Map.Entry<EventDefinition, List<String>> read : readMerged(scheduler, defs, HEAD, 0).entrySet())
+            {
+                if (!merged.containsKey(read.getKey())) merged.put(read.getKey(), new ArrayList<>());
+                merged.get(read.getKey()).addAll(read.getValue());
+            }
+        }
+
+        for (EventDefinition ev : defs.keySet())
+        {
+            assertThat(ev.attributeName, merged.get(ev), equalTo(expected.get(ev)));
+        }
+        assertThat(scheduler.getStats().splits, greaterThan(0L));
+        for (EventLogScheduler.MergedFilter filter : scheduler.plan(defs))
+        {
+            assertThat(filter.getNextBlock(), equalTo(BigInteger.valueOf(HEAD + 1)));
+        }
+    }
+
+    @Test
+    public void readPositionIsKeptBetweenPasses()
+    {
+        Map<EventDefinition, EthFilter> defs = definitions();
+        EventLogScheduler scheduler = new EventLogScheduler();
+        readMerged(scheduler, defs, HEAD - 100, 0);
+
+        //nothing new: nothing read
+        requests.set(0);
+        readMerged(scheduler, defs, HEAD - 100, 0);
+        assertThat(requests.get(), equalTo(0));
+
+        //only the new blocks are read, and only their logs handed out
+        Map<EventDefinition, List<String>> update = readMerged(scheduler, defs, HEAD, 0);
+        assertThat(requests.get(), equalTo(2));
+        for (List<String> received : update.values())
+        {
+            for (String id : received)
+            {
+                assertThat(Long.parseLong(id.split("/")[0]), greaterThan(HEAD - 100));
+            }
+        }
+
+        //a definition added to a contract is read from the start
+        defs.put(definition(CONTRACT_B, "approvedB"), filter(CONTRACT_B, APPROVAL));
+        for (EventLogScheduler.MergedFilter filter : scheduler.plan(defs))
+        {
+            BigInteger expected = filter.address.equals(CONTRACT_B) ? BigInteger.ZERO : BigInteger.valueOf(HEAD + 1);
+            assertThat(filter.getNextBlock(), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void changedTopicsAreReadFromTheStart()
+    {
+        Map<EventDefinition, EthFilter> defs = definitions();
+        EventLogScheduler scheduler = new EventLogScheduler();
+        readMerged(scheduler, defs, HEAD, 0);
+
+        //same definitions, but one now filters on a different holder, as after a wallet switch
+        EventDefinition approved = null;
+        for (EventDefinition ev : defs.keySet())
+        {
+            if (ev.attributeName.equals("approved")) approved = ev;
+        }
+        defs.put(approved, filter(CONTRACT_A, APPROVAL).addSingleTopic(HOLDER));
+
+        for (EventLogScheduler.MergedFilter filter : scheduler.plan(defs))
+        {
+            BigInteger expected = filter.address.equals(CONTRACT_A) ? BigInteger.ZERO : BigInteger.valueOf(HEAD + 1);
+            assertThat(filter.getNextBlock(), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void spanLimitIsRespected()
+    {
+        Map<EventDefinition, EthFilter> defs = new LinkedHashMap<>();
+        defs.put(definition(CONTRACT_B, "moved"), filter(CONTRACT_B, TRANSFER));
+        EventLogScheduler scheduler = new EventLogScheduler();
+        Map<EventDefinition, List<String>> merged = readMerged(scheduler, defs, HEAD, 100);
+
+        assertThat(requests.get(), equalTo(11)); //blocks 0 to 1000 in windows of 100
+        assertThat(merged.values().iterator().next().size(), equalTo((int) HEAD / 2));
+    }
+
+    private static JsonObject log(long block, int index, String address, String... topics)
+    {
+        JsonObject log = new JsonObject();
+        log.addProperty("address", address);
+        log.addProperty("blockHash", topic(1_000_000 + block));
+        log.addProperty("blockNumber", Numeric.toHexStringWithPrefix(BigInteger.valueOf(block)));
+        log.addProperty("data", "0x");
+        log.addProperty("logIndex", Numeric.toHexStringWithPrefix(BigInteger.valueOf(index)));
+        log.addProperty("removed", false);
+        JsonArray t = new JsonArray();
+        for (String topic : topics)
+        {
+            t.add(topic);
+        }
+        log.add("topics", t);
+        log.addProperty("transactionHash", topic(2_000_000 + block * 10 + index));
+        log.addProperty("transactionIndex", "0x0");
+        return log;
+    }
+
+    private void rpc(HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        String body;
+        try (InputStream in = exchange.getRequestBody())
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0)
+            {
+                out.write(buffer, 0, n);
+            }
+            body = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        JsonObject request = JsonParser.parseString(body).getAsJsonObject();
+        String response = getLogs(request.get("id").toString(), request.getAsJsonArray("params").get(0).getAsJsonObject());
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+
+    private String getLogs(String id, JsonObject filter)
+    {
+        long from = blockParam(filter.get("fromBlock").getAsString());
+        long to = blockParam(filter.get("toBlock").getAsString());
+        String address = filter.get("address").getAsString().toLowerCase(Locale.ROOT);
+        JsonArray topics = filter.has("topics") ? filter.getAsJsonArray("topics") : new JsonArray();
+
+        JsonArray result = new JsonArray();
+        for (JsonObject log : chainLogs)
+        {
+            long block = Numeric.toBigInt(log.get("blockNumber").getAsString()).longValue();
+            if (block < from || block > to || !log.get("address").getAsString().equals(address)) continue;
+            if (matches(log.getAsJsonArray("topics"), topics)) result.add(log);
+        }
+
+        if (result.size() > maxResults)
+        {
+            return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"error\":{\"code\":-32005,\"message\":\"query returned more than "
+                    + maxResults + " results\"}}";
+        }
+
+        return "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":" + result + "}";
+    }
+
+    private static boolean matches(JsonArray logTopics, JsonArray filterTopics)
+    {
+        for (int i = 0; i < filterTopics.size(); i++)
+        {
+            JsonElement wanted = filterTopics.get(i);
+            if (wanted.isJsonNull()) continue;
+            if (i >= logTopics.size()) return false;
+            String topic = logTopics.get(i).getAsString();
+            if (wanted.isJsonArray())
+            {
+                boolean found = false;
+                for (JsonElement option : wanted.getAsJsonArray())
+                {
+                    if (option.getAsString().equalsIgnoreCase(topic)) found = true;
+                }
+                if (!found) return false;
+            }
+            else if (!wanted.getAsString().equalsIgnoreCase(topic))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long blockParam(String value)
+    {
+        if (value.equals("earliest")) return 0;
+        if (value.equals("latest")) return HEAD;
+        return Numeric.toBigInt(value).longValue();
+    }
+}
@@ -0,0 +1,131 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import com.setlone.app.entity.CovalentTransaction;
+import com.setlone.app.entity.EtherscanEvent;
+import com.google.gson.Gson;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Compares decoding recorded explorer pages the old way (whole body to String, JSONObject tree, back to a String for
+ * Gson) against streaming the rows with {@link ExplorerResponseReader}. Reports time and bytes allocated per page.
+ */
+public class ExplorerResponseReaderBenchmark
+{
+    private static final int PAGE_ROWS = 10000;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+
+    private final Gson gson = new Gson();
+    private final ExplorerResponseReader reader = new ExplorerResponseReader(gson);
+
+    private interface Decoder
+    {
+        int decode(byte[] body) throws Exception;
+    }
+
+    private static class Result
+    {
+        long nanos;
+        long bytes;
+    }
+
+    @Test
+    public void tokenTransferPage() throws Exception
+    {
+        byte[] body = buildTokenTxPage(PAGE_ROWS);
+
+        Result tree = measure(body, b -> {
+            String response = new String(b, StandardCharsets.UTF_8);
+            JSONArray rows = new JSONObject(response).getJSONArray("result");
+            return gson.fromJson(rows.toString(), EtherscanEvent[].class).length;
+        });
+        Result streamed = measure(body, b -> reader.readEtherscanResult(
+                new InputStreamReader(new ByteArrayInputStream(b), StandardCharsets.UTF_8), EtherscanEvent.class).size());
+
+        report("tokentx " + PAGE_ROWS + " rows", body.length, tree, streamed);
+        assertThat(streamed.bytes, lessThan(tree.bytes));
+    }
+
+    @Test
+    public void covalentPage() throws Exception
+    {
+        byte[] body = ExplorerResponseReaderTest.loadFixture("covalenttxs.json").getBytes(StandardCharsets.UTF_8);
+
+        Result tree = measure(body, b -> {
+            String response = new String(b, StandardCharsets.UTF_8);
+            JSONArray items = new JSONObject(response).getJSONObject("data").getJSONArray("items");
+            return gson.fromJson(items.toString(), CovalentTransaction[].class).length;
+        });
+        Result streamed = measure(body, b -> reader.readCovalentItems(
+                new InputStreamReader(new ByteArrayInputStream(b), StandardCharsets.UTF_8)).size());
+
+        report("covalent fixture", body.length, tree, streamed);
+        assertThat(streamed.bytes, lessThan(tree.bytes));
+    }
+
+    private Result measure(byte[] body, Decoder decoder) throws Exception
+    {
+        int rows = decoder.decode(body);
+        for (int i = 0; i < WARMUP; i++)
+        {
+            assertThat(decoder.decode(body), equalTo(rows));
+        }
+
+        Result result = new Result();
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            decoder.decode(body);
+            result.nanos += System.nanoTime() - start;
+            result.bytes += allocatedBytes() - startBytes;
+        }
+        result.nanos /= ITERATIONS;
+        result.bytes /= ITERATIONS;
+        return result;
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void report(String name, int size, Result tree, Result streamed)
+    {
+        System.out.println(String.format(Locale.ROOT, "%s (%d KB): tree %.1f ms %d KB, streamed %.1f ms %d KB",
+                name, size / 1024, tree.nanos / 1e6, tree.bytes / 1024, streamed.nanos / 1e6, streamed.bytes / 1024));
+    }
+
+    /**
+     * Repeat the recorded rows up to a full page, varying block and hash so no two rows are identical
+     */
+    private static byte[] buildTokenTxPage(int rowCount) throws Exception
+    {
+        JSONArray recorded = new JSONObject(ExplorerResponseReaderTest.loadFixture("etherscan-tokentx.json")).getJSONArray("result");
+        StringBuilder sb = new StringBuilder("{\"status\":\"1\",\"message\":\"OK\",\"result\":[");
+        for (int i = 0; i < rowCount; i++)
+        {
+            JSONObject row = new JSONObject(recorded.getJSONObject(i % recorded.length()).toString());
+            row.put("blockNumber", String.valueOf(18000000 - i));
+            row.put("hash", String.format(Locale.ROOT, "0x%064x", i));
+            if (i > 0) sb.append(',');
+            sb.append(row);
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,88 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.setlone.app.entity.CovalentTransaction;
+import com.setlone.app.entity.EtherscanEvent;
+import com.setlone.app.entity.EtherscanTransaction;
+import com.google.common.io.Resources;
+import com.google.gson.Gson;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class ExplorerResponseReaderTest
+{
+    private final Gson gson = new Gson();
+    private final ExplorerResponseReader reader = new ExplorerResponseReader(gson);
+
+    static String loadFixture(String name) throws IOException
+    {
+        return Resources.toString(Resources.getResource(name), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void decodesTransactionsLikeTreeParse() throws Exception
+    {
+        String page = loadFixture("etherscan-txlist.json");
+        List<EtherscanTransaction> streamed = reader.readEtherscanResult(new StringReader(page), EtherscanTransaction.class);
+        EtherscanTransaction[] tree = gson.fromJson(new JSONObject(page).getJSONArray("result").toString(), EtherscanTransaction[].class);
+
+        assertThat(streamed.size(), equalTo(2));
+        for (int i = 0; i < tree.length; i++)
+        {
+            assertThat(gson.toJson(streamed.get(i)), equalTo(gson.toJson(tree[i])));
+        }
+        assertThat(streamed.get(1).getHash(), equalTo("0xaa45b4858ba44230a5fce5a29570a5dec2bf1f0ba95bacdec4fe8f2c4fa99338"));
+        assertThat(streamed.get(1).nonce, equalTo(2));
+    }
+
+    @Test
+    public void decodesEvents() throws Exception
+    {
+        String page = loadFixture("etherscan-tokentx.json");
+        List<EtherscanEvent> events = reader.readEtherscanResult(new StringReader(page), EtherscanEvent.class);
+
+        assertThat(events.size(), equalTo(3));
+        assertThat(events.get(2).tokenSymbol, equalTo("USDC"));
+        assertThat(events.get(2).value, equalTo("2700000000"));
+        assertThat(events.get(0).timeStamp, equalTo(1513240363L));
+    }
+
+    @Test
+    public void errorResultYieldsNoRows() throws Exception
+    {
+        String rateLimited = "{\"status\":\"0\",\"message\":\"NOTOK\",\"result\":\"Max rate limit reached\"}";
+        assertThat(reader.readEtherscanResult(new StringReader(rateLimited), EtherscanEvent.class).size(), equalTo(0));
+
+        String noTx = "{\"status\":\"0\",\"message\":\"No transactions found\",\"result\":[]}";
+        assertThat(reader.readEtherscanResult(new StringReader(noTx), EtherscanTransaction.class).size(), equalTo(0));
+    }
+
+    @Test
+    public void decodesCovalentItems() throws Exception
+    {
+        String page = loadFixture("covalenttxs.json");
+        List<CovalentTransaction> streamed = reader.readCovalentItems(new StringReader(page));
+        JSONArray items = new JSONObject(page).getJSONObject("data").getJSONArray("items");
+        CovalentTransaction[] tree = gson.fromJson(items.toString(), CovalentTransaction[].class);
+
+        assertThat(streamed.size(), equalTo(tree.length));
+        for (int i = 0; i < tree.length; i++)
+        {
+            assertThat(streamed.get(i).tx_hash, equalTo(tree[i].tx_hash));
+        }
+
+        //same events come out of the conversion as from the tree parse (see CovalentProcessingTest)
+        EtherscanEvent[] events = CovalentTransaction.toEtherscanEvents(streamed.toArray(new CovalentTransaction[0]));
+        assertThat(events.length, equalTo(517));
+        assertThat(events[516].tokenID, equalTo("20007"));
+    }
+}
@@ -0,0 +1,349 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import com.setlone.app.entity.QueryResponse;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Races local stand-in gateways with injected delays
+ */
+public class IPFSGatewayPoolTest
+{
+    private static final long HEDGE_DELAY = 200;
+
+    private final List<Gateway> gateways = new ArrayList<>();
+    private final OkHttpClient client = new OkHttpClient.Builder().readTimeout(10, TimeUnit.SECONDS).build();
+    private File cacheDir;
+
+    /**
+     * Serves files by CID path, and the raw block for a whole CID if asked with ?format=raw
+     */
+    private static class Gateway
+    {
+        final HttpServer server;
+        final AtomicInteger requests = new AtomicInteger();
+        final Map<String, byte[]> files = new ConcurrentHashMap<>();
+        final Map<String, byte[]> blocks = new ConcurrentHashMap<>();
+        volatile long delay;
+        volatile boolean tamper;
+        volatile int status = 200;
+
+        Gateway(long delay) throws IOException
+        {
+            this.delay = delay;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/ipfs/", this::serve);
+            server.start();
+        }
+
+        String url()
+        {
+            return "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+
+        void serve(HttpExchange exchange) throws IOException
+        {
+            requests.incrementAndGet();
+            try
+            {
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            String path = exchange.getRequestURI().getPath().substring("/ipfs/".length());
+            String query = exchange.getRequestURI().getQuery();
+            byte[] body = query != null && query.contains("format=raw") ? blocks.get(path) : null;
+            if (body != null) exchange.getResponseHeaders().add("Content-Type", "application/vnd.ipld.raw");
+            else body = files.get(path);
+
+            if (body == null || status != 200)
+            {
+                exchange.sendResponseHeaders(status != 200 ? status : 404, -1);
+                exchange.close();
+                return;
+            }
+
+            if (tamper) body = "{\"name\":\"not what you asked for\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody())
+            {
+                out.write(body);
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        cacheDir = Files.createTempDirectory("ipfs").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        for (Gateway gateway : gateways)
+        {
+            gateway.server.stop(0);
+        }
+        File[] files = cacheDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        cacheDir.delete();
+    }
+
+    private Gateway gateway(long delay) throws IOException
+    {
+        Gateway gateway = new Gateway(delay);
+        gateways.add(gateway);
+        return gateway;
+    }
+
+    private IPFSGatewayPool pool(IPFSBlockCache cache)
+    {
+        String[] urls = new String[gateways.size()];
+        for (int i = 0; i < urls.length; i++)
+        {
+            urls[i] = gateways.get(i).url();
+        }
+        return new IPFSGatewayPool(client, urls, cache, 3, HEDGE_DELAY);
+    }
+
+    private void publish(String path, byte[] file, byte[] block)
+    {
+        for (Gateway gateway : gateways)
+        {
+            gateway.files.put(path, file);
+            if (block != null) gateway.blocks.put(path, block);
+        }
+    }
+
+    private int requestsExcept(Gateway winner)
+    {
+        int count = 0;
+        for (Gateway gateway : gateways)
+        {
+            if (gateway != winner) count += gateway.requests.get();
+        }
+        return count;
+    }
+
+    @Test
+    public void firstRequestRacesAndPinsFastest() throws IOException
+    {
+        gateway(600);
+        Gateway fast = gateway(20);
+        gateway(300);
+        for (int i = 0; i < 6; i++)
+        {
+            publish("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/" + i, ("{\"id\":" + i + "}").getBytes(StandardCharsets.UTF_8), null);
+        }
+
+        IPFSGatewayPool pool = pool(null);
+        QueryResponse response = pool.get("ipfs://QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/0");
+        assertThat(response.body, equalTo("{\"id\":0}"));
+        assertThat(pool.getPinnedGateway(), equalTo(fast.url()));
+        int raced = requestsExcept(fast);
+
+        //later requests only go to the pinned gateway
+        for (int i = 1; i < 6; i++)
+        {
+            assertThat(pool.get("https://ipfs.io/ipfs/QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/" + i).body, equalTo("{\"id\":" + i + "}"));
+        }
+        assertThat(fast.requests.get(), equalTo(6));
+        assertThat(requestsExcept(fast), equalTo(raced));
+        assertThat(pool.getRaces(), equalTo(1L));
+    }
+
+    @Test
+    public void stalledPinnedGatewayIsHedged() throws IOException
+    {
+        Gateway first = gateway(10);
+        Gateway second = gateway(100);
+        publish("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/a", "a".getBytes(StandardCharsets.UTF_8), null);
+        publish("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/b", "b".getBytes(StandardCharsets.UTF_8), null);
+
+        IPFSGatewayPool pool = pool(null);
+        pool.get("ipfs://QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/a");
+        assertThat(pool.getPinnedGateway(), equalTo(first.url()));
+
+        //pinned gateway stalls; the request goes to the next gateway after the hedge delay, which becomes the pin
+        first.delay = 3000;
+        long start = System.currentTimeMillis();
+        assertThat(pool.get("ipfs://QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/b").body, equalTo("b"));
+        assertThat(System.currentTimeMillis() - start, lessThan(1500L));
+        assertThat(pool.getPinnedGateway(), equalTo(second.url()));
+
+        //pinned gateway errors; the request moves on straight away
+        second.status = 502;
+        first.delay = 10;
+        assertThat(pool.get("ipfs://QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/a").body, equalTo("a"));
+        assertThat(pool.getPinnedGateway(), equalTo(first.url()));
+
+        //nobody has it
+        second.status = 200;
+        assertThat(pool.get("ipfs://QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/c").code, equalTo(404));
+    }
+
+    @Test
+    public void contentIsCheckedAgainstCid() throws Exception
+    {
+        Gateway liar = gateway(10);
+        gateway(150);
+
+        byte[] script = "<ts:token>...</ts:token>".getBytes(StandardCharsets.UTF_8);
+        String cidV0 = base58(multihash(dagPbFile(script)));
+        publish(cidV0, script, dagPbFile(script));
+        byte[] metadata = "{\"name\":\"raw\"}".getBytes(StandardCharsets.UTF_8);
+        String cidV1 = rawCid(metadata);
+        publish(cidV1, metadata, metadata);
+
+        liar.tamper = true;
+        IPFSGatewayPool pool = pool(null);
+        assertThat(pool.get("ipfs://" + cidV0).body, equalTo("<ts:token>...</ts:token>"));
+        assertThat(pool.get("ipfs://" + cidV1).body, equalTo("{\"name\":\"raw\"}"));
+        assertThat(pool.getIntegrityFailures(), greaterThan(0L));
+        assertThat(pool.getVerified(), equalTo(2L));
+        assertThat(pool.getPinnedGateway().equals(liar.url()), equalTo(false));
+    }
+
+    @Test
+    public void contentIsCachedOnDisk() throws IOException
+    {
+        Gateway gateway = gateway(10);
+        publish("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/1", "{\"id\":1}".getBytes(StandardCharsets.UTF_8), null);
+
+        IPFSGatewayPool pool = pool(new IPFSBlockCache(cacheDir, 1024 * 1024));
+        pool.get("ipfs://QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/1");
+        assertThat(pool.get("https://gateway.pinata.cloud/ipfs/QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/1").body, equalTo("{\"id\":1}"));
+        assertThat(pool(new IPFSBlockCache(cacheDir, 1024 * 1024)).get("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/1").body, equalTo("{\"id\":1}"));
+        assertThat(gateway.requests.get(), equalTo(1));
+        assertThat(pool.getCacheHits(), equalTo(1L));
+
+        //size is bounded
+        IPFSBlockCache small = new IPFSBlockCache(cacheDir, 4096);
+        for (int i = 0; i < 40; i++)
+        {
+            small.put("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/big" + i, new byte[512]);
+        }
+        assertThat(small.getSize(), lessThanOrEqualTo(4096L));
+        assertThat(small.get("QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq/big39").length, equalTo(512));
+    }
+
+    // Encoding for the CIDs the stand-in gateways serve
+
+    private static byte[] dagPbFile(byte[] content)
+    {
+        ByteArrayOutputStream unixfs = new ByteArrayOutputStream();
+        unixfs.write(0x08); //Type = File
+        unixfs.write(0x02);
+        unixfs.write(0x12); //Data
+        writeVarint(unixfs, content.length);
+        unixfs.write(content, 0, content.length);
+        unixfs.write(0x18); //filesize
+        writeVarint(unixfs, content.length);
+
+        ByteArrayOutputStream node = new ByteArrayOutputStream();
+        node.write(0x0A); //PBNode.Data
+        writeVarint(node, unixfs.size());
+        node.write(unixfs.toByteArray(), 0, unixfs.size());
+        return node.toByteArray();
+    }
+
+    private static byte[] multihash(byte[] block) throws Exception
+    {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(block);
+        byte[] multihash = new byte[34];
+        multihash[0] = 0x12;
+        multihash[1] = 0x20;
+        System.arraycopy(digest, 0, multihash, 2, 32);
+        return multihash;
+    }
+
+    private static String rawCid(byte[] content) throws Exception
+    {
+        byte[] multihash = multihash(content);
+        byte[] cid = new byte[multihash.length + 2];
+        cid[0] = 0x01;
+        cid[1] = 0x55;
+        System.arraycopy(multihash, 0, cid, 2, multihash.length);
+
+        String alphabet = "abcdefghijklmnopqrstuvwxyz234567";
+        StringBuilder sb = new StringBuilder("b");
+        int buffer = 0;
+        int bits = 0;
+        for (byte b : cid)
+        {
+            buffer = (buffer << 8) | (b & 0xFF);
+            bits += 8;
+            while (bits >= 5)
+            {
+                sb.append(alphabet.charAt((buffer >> (bits - 5)) & 0x1F));
+                bits -= 5;
+            }
+        }
+        if (bits > 0) sb.append(alphabet.charAt((buffer << (5 - bits)) & 0x1F));
+        return sb.toString();
+    }
+
+    private static String base58(byte[] bytes)
+    {
+        String alphabet = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+        BigInteger value = new BigInteger(1, bytes);
+        StringBuilder sb = new StringBuilder();
+        BigInteger base = BigInteger.valueOf(58);
+        while (value.signum() > 0)
+        {
+            BigInteger[] qr = value.divideAndRemainder(base);
+            sb.append(alphabet.charAt(qr[1].intValue()));
+            value = qr[0];
+        }
+        for (byte b : bytes)
+        {
+            if (b != 0) break;
+            sb.append('1');
+        }
+        return sb.reverse().toString();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
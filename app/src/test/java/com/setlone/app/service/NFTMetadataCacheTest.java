@@ -0,0 +1,239 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import com.setlone.app.entity.QueryResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NFTMetadataCacheTest
+{
+    private static final String CONTRACT = "0x63cCEF733a093E5Bd773b41C96D3eCE361464942";
+    private static final String CID = "QmXXLFBeSjXAwAhbo1344wJSjLgoUrfUK9LE57oVubaRRq";
+
+    private File cacheDir;
+    private final StubServer server = new StubServer();
+
+    /**
+     * Serves metadata for any URL, honouring If-None-Match against the current ETag
+     */
+    private static class StubServer implements IPFSServiceType
+    {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger conditional = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Map<String, String> etags = new ConcurrentHashMap<>();
+        volatile long latency = 0;
+
+        @Override
+        public String getContent(String url)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public QueryResponse performIO(String url, String[] headers) throws IOException
+        {
+            requests.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try
+            {
+                if (latency > 0) Thread.sleep(latency);
+            }
+            catch (InterruptedException e)
+            {
+                throw new IOException(e);
+            }
+            finally
+            {
+                inFlight.decrementAndGet();
+            }
+
+            String etag = etags.getOrDefault(url, "\"v1\"");
+            if (headers != null)
+            {
+                conditional.incrementAndGet();
+                List<String> h = Arrays.asList(headers);
+                int index = h.indexOf("If-None-Match");
+                if (index >= 0 && h.get(index + 1).equals(etag)) return new QueryResponse(304, "", etag, null);
+            }
+
+            return new QueryResponse(200, "{\"name\":\"" + url + " " + etag + "\"}", etag, "Tue, 13 Oct 2026 10:00:00 GMT");
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException
+    {
+        cacheDir = Files.createTempDirectory("nftmeta").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        delete(cacheDir);
+    }
+
+    private static void delete(File file)
+    {
+        File[] files = file.listFiles();
+        if (files != null) for (File f : files) delete(f);
+        file.delete();
+    }
+
+    @Test
+    public void ipfsContentIsFetchedOnce()
+    {
+        NFTMetadataCache cache = new NFTMetadataCache(server, cacheDir, 4, 0);
+        String body = cache.getContent("ipfs://" + CID + "/1.json");
+        assertThat(cache.getContent("https://gateway.pinata.cloud/ipfs/" + CID + "/1.json"), equalTo(body));
+        assertThat(cache.getContent("ipfs://ipfs/" + CID + "/1.json"), equalTo(body));
+        assertThat(server.requests.get(), equalTo(1));
+
+        //persisted across restarts
+        NFTMetadataCache restarted = new NFTMetadataCache(server, cacheDir, 4, 0);
+        assertThat(restarted.getContent("ipfs://" + CID + "/1.json"), equalTo(body));
+        assertThat(server.requests.get(), equalTo(1));
+        assertThat(server.conditional.get(), equalTo(0));
+    }
+
+    @Test
+    public void httpMetadataIsRevalidated()
+    {
+        String url = "https://api.example.com/token/1";
+        NFTMetadataCache fresh = new NFTMetadataCache(server, cacheDir, 4, TimeUnit.HOURS.toMillis(1));
+        String body = fresh.getContent(url);
+        assertThat(fresh.getContent(url), equalTo(body));
+        assertThat(server.requests.get(), equalTo(1));
+
+        //always stale: revalidated with the stored ETag, unchanged content comes back as 304
+        NFTMetadataCache stale = new NFTMetadataCache(server, cacheDir, 4, 0);
+        assertThat(stale.getContent(url), equalTo(body));
+        assertThat(server.conditional.get(), equalTo(1));
+        assertThat(stale.getRevalidated(), equalTo(1L));
+
+        server.etags.put(url, "\"v2\"");
+        String updated = stale.getContent(url);
+        assertThat(updated.contains("v2"), equalTo(true));
+        assertThat(server.requests.get(), equalTo(3));
+    }
+
+    @Test
+    public void tokenURIIsRemembered()
+    {
+        NFTMetadataCache cache = new NFTMetadataCache(server, cacheDir, 4, TimeUnit.HOURS.toMillis(1));
+        AtomicInteger lookups = new AtomicInteger();
+        NFTMetadataCache.URILookup lookup = () -> {
+            lookups.incrementAndGet();
+            return "ipfs://" + CID + "/7";
+        };
+
+        String body = cache.getTokenMetadata(1, CONTRACT, BigInteger.valueOf(7), lookup);
+        assertThat(cache.getTokenMetadata(1, CONTRACT.toLowerCase(), BigInteger.valueOf(7), lookup), equalTo(body));
+        assertThat(new NFTMetadataCache(server, cacheDir).getTokenMetadata(1, CONTRACT, BigInteger.valueOf(7), lookup), equalTo(body));
+        assertThat(lookups.get(), equalTo(1));
+        assertThat(server.requests.get(), equalTo(1));
+
+        //inline metadata needs no fetch, an empty URI isn't remembered
+        assertThat(cache.getTokenMetadata(1, CONTRACT, BigInteger.ONE, () -> "{\"name\":\"inline\"}"), equalTo("{\"name\":\"inline\"}"));
+        assertThat(cache.getTokenMetadata(1, CONTRACT, BigInteger.TEN, () -> ""), equalTo(""));
+        assertThat(cache.hasTokenURI(1, CONTRACT, BigInteger.TEN), equalTo(false));
+        assertThat(server.requests.get(), equalTo(1));
+    }
+
+    @Test
+    public void concurrentRequestsShareOneFetch() throws InterruptedException
+    {
+        server.latency = 50;
+        NFTMetadataCache cache = new NFTMetadataCache(server, cacheDir, 4, TimeUnit.HOURS.toMillis(1));
+        AtomicInteger lookups = new AtomicInteger();
+
+        //a grid binding the same token many times at once
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+        {
+            pool.execute(() -> {
+                String body = cache.getTokenMetadata(1, CONTRACT, BigInteger.ONE, () -> {
+                    lookups.incrementAndGet();
+                    return "https://api.example.com/token/1";
+                });
+                synchronized (results)
+                {
+                    results.add(body);
+                }
+                done.countDown();
+            });
+        }
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(lookups.get(), equalTo(1));
+        assertThat(server.requests.get(), equalTo(1));
+        for (String body : results) assertThat(body, equalTo(results.get(0)));
+
+        //fetches of distinct content are bounded
+        CountDownLatch all = new CountDownLatch(40);
+        for (int i = 0; i < 40; i++)
+        {
+            int id = i;
+            pool.execute(() -> {
+                cache.getContent("https://api.example.com/token/x" + id);
+                all.countDown();
+            });
+        }
+        assertThat(all.await(10, TimeUnit.SECONDS), equalTo(true));
+        pool.shutdown();
+        assertThat(server.requests.get(), equalTo(41));
+        assertThat(server.maxInFlight.get(), lessThanOrEqualTo(4));
+    }
+
+    @Test
+    public void diskCacheIsBounded()
+    {
+        long limit = 4096;
+        NFTMetadataCache cache = new NFTMetadataCache(server, cacheDir, 4, TimeUnit.HOURS.toMillis(1), limit);
+        for (int i = 0; i < 200; i++)
+        {
+            cache.getContent("https://api.example.com/token/" + i);
+        }
+        assertThat(diskSize(cacheDir), lessThanOrEqualTo(limit));
+
+        //files left unused past the age limit are dropped on the next start
+        File[] stored = new File(cacheDir, "content").listFiles();
+        assertThat(stored.length > 0, equalTo(true));
+        File old = stored[0];
+        old.setLastModified(System.currentTimeMillis() - NFTMetadataCache.MAX_DISK_AGE - 1000);
+        new NFTMetadataCache(server, cacheDir, 4, TimeUnit.HOURS.toMillis(1), limit);
+        assertThat(old.exists(), equalTo(false));
+    }
+
+    private static long diskSize(File file)
+    {
+        File[] files = file.listFiles();
+        if (files == null) return file.length();
+        long size = 0;
+        for (File f : files) size += diskSize(f);
+        return size;
+    }
+}
@@ -0,0 +1,70 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OpenSeaAssetReaderTest
+{
+    @Test
+    public void readsAssetsAndCursor() throws Exception
+    {
+        String page = ExplorerResponseReaderTest.loadFixture("opensea-account-nfts.json");
+        List<JsonObject> nfts = new ArrayList<>();
+        OpenSeaAssetReader.Page result = OpenSeaAssetReader.read(new StringReader(page), nfts::add);
+
+        assertThat(result.count, equalTo(3));
+        assertThat(result.next, equalTo("LXBrPTEyMzQ1Njc4OQ=="));
+        assertThat(nfts.size(), equalTo(3));
+
+        //each asset is whole, as the tree parse would give it
+        JsonObject tree = JsonParser.parseString(page).getAsJsonObject();
+        for (int i = 0; i < nfts.size(); i++)
+        {
+            assertThat(nfts.get(i), equalTo(tree.getAsJsonArray("nfts").get(i).getAsJsonObject()));
+        }
+
+        assertThat(OpenSeaAssetReader.getString(nfts.get(0), "identifier"), equalTo("4640"));
+        assertThat(OpenSeaAssetReader.getString(nfts.get(1), "collection"), equalTo(""));
+        assertThat(OpenSeaAssetReader.getString(nfts.get(1), "traits"), equalTo(""));
+        assertThat(OpenSeaAssetReader.getString(nfts.get(2), "collection"), equalTo(""));
+    }
+
+    @Test
+    public void lastPageHasNoCursor() throws Exception
+    {
+        OpenSeaAssetReader.Page result = OpenSeaAssetReader.read(new StringReader(
+                "{\"nfts\":[{\"identifier\":\"1\",\"token_standard\":\"erc721\"}],\"next\":null}"), nft -> {});
+        assertThat(result.count, equalTo(1));
+        assertThat(result.next, equalTo(""));
+
+        result = OpenSeaAssetReader.read(new StringReader("{\"nfts\":[]}"), nft -> {});
+        assertThat(result.count, equalTo(0));
+        assertThat(result.next, equalTo(""));
+    }
+
+    @Test
+    public void assetsAreHandedOnAsTheyStream() throws Exception
+    {
+        //the consumer sees the first asset even though the page is cut off after it
+        List<String> seen = new ArrayList<>();
+        try
+        {
+            OpenSeaAssetReader.read(new StringReader("{\"nfts\":[{\"identifier\":\"1\"},{\"identifier\":\"2\""),
+                    nft -> seen.add(OpenSeaAssetReader.getString(nft, "identifier")));
+        }
+        catch (Exception e)
+        {
+            //truncated page
+        }
+        assertThat(seen, equalTo(List.of("1")));
+    }
+}
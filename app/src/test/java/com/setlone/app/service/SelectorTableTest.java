@@ -0,0 +1,51 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.setlone.app.entity.TransactionDecoder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Checks the selector table shipped in assets against the signature list it's built from
+ */
+public class SelectorTableTest
+{
+    @Test
+    public void everyShippedSelectorMatchesItsSignature() throws Exception
+    {
+        SelectorDatabase db;
+        try (InputStream in = new FileInputStream(WriteSelectorTable.SHIPPED_TABLE))
+        {
+            db = new SelectorDatabase(in);
+        }
+
+        Set<String> listed = new HashSet<>(WriteSelectorTable.readSignatures(WriteSelectorTable.SIGNATURE_LIST));
+        Set<String> shipped = new HashSet<>();
+        db.forEach((selector, signature) -> {
+            assertThat(signature, selector, equalTo(TransactionDecoder.buildMethodId(signature)));
+            shipped.add(signature);
+        });
+        assertThat(shipped, equalTo(listed));
+    }
+
+    @Test
+    public void shippedTableIsBuiltFromTheList() throws Exception
+    {
+        List<String> signatures = WriteSelectorTable.readSignatures(WriteSelectorTable.SIGNATURE_LIST);
+        ByteArrayOutputStream built = new ByteArrayOutputStream();
+        SelectorDatabase.write(signatures, built);
+
+        //if this fails, run WriteSelectorTable after editing src/main/selectors.txt
+        assertThat(Files.readAllBytes(WriteSelectorTable.SHIPPED_TABLE.toPath()), equalTo(built.toByteArray()));
+    }
+}
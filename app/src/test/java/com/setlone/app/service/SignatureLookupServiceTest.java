@@ -0,0 +1,202 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.setlone.app.entity.TransactionDecoder;
+import com.setlone.app.entity.TransactionInput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
+
+/**
+ * Looks up selectors against a table built here and a local stub of the 4byte directory, counting what it's asked
+ */
+public class SignatureLookupServiceTest
+{
+    private static final List<String> TABLE = Arrays.asList(
+            "transfer(address,uint256)",
+            "multicall(bytes[])",
+            "swapExactTokensForTokens(uint256,uint256,address[],address,uint256)",
+            "exactInputSingle((address,address,uint24,address,uint256,uint256,uint256,uint160))");
+    private static final String REMOTE = "claimTokens(address,uint256)";
+    private static final String REMOTE_PAYLOAD = TransactionDecoder.buildMethodId(REMOTE)
+            + "000000000000000000000000951c19daead668bfa8391c94286f8ce7cbda2fe3"
+            + "0000000000000000000000000000000000000000000000000000000000000004";
+    private static final String NOT_LISTED = "0x12345678";
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final Map<String, String> stored = new ConcurrentHashMap<>();
+    private final TransactionDecoder decoder = new TransactionDecoder();
+    private SignatureLookupService service;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::directory);
+        server.start();
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        SelectorDatabase.write(TABLE, table);
+        service = new SignatureLookupService(new OkHttpClient(),
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/?hex_signature=",
+                () -> new ByteArrayInputStream(table.toByteArray()),
+                new SignatureLookupService.Store()
+                {
+                    @Override
+                    public Map<String, String> load()
+                    {
+                        return new HashMap<>(stored);
+                    }
+
+                    @Override
+                    public void save(Map<String, String> learned)
+                    {
+                        stored.putAll(learned);
+                    }
+                }, Schedulers.io(), 20, decoder);
+    }
+
+    @After
+    public void tearDown()
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void tableRoundTrip() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SelectorDatabase.write(TABLE, out);
+        SelectorDatabase db = new SelectorDatabase(new ByteArrayInputStream(out.toByteArray()));
+
+        assertThat(db.size(), equalTo(TABLE.size()));
+        for (String signature : TABLE)
+        {
+            assertThat(db.lookup(TransactionDecoder.buildMethodId(signature)), equalTo(signature));
+        }
+        assertThat(db.lookup("0xa9059cbb000000000000000000000000951c19daead668bfa8391c94286f8ce7cbda2fe3"), equalTo(TABLE.get(0)));
+        assertThat(db.lookup("A9059CBB"), equalTo(TABLE.get(0)));
+        assertThat(db.lookup(NOT_LISTED), nullValue());
+        assertThat(db.lookup("0x12"), nullValue());
+        assertThat(SelectorDatabase.toHex(0x00ab0001), equalTo("0x00ab0001"));
+        assertThat(SelectorDatabase.toHex(0xfb3bdb41), equalTo("0xfb3bdb41"));
+    }
+
+    @Test
+    public void tableIsAnsweredOffline()
+    {
+        for (String signature : TABLE)
+        {
+            assertThat(service.getFunctionName(TransactionDecoder.buildMethodId(signature) + "00").blockingGet(), equalTo(signature));
+        }
+        assertThat(requests.get(), equalTo(0));
+
+        //and the decoder knows them
+        TransactionInput input = decoder.decodeInput(TransactionDecoder.buildMethodId(TABLE.get(1)));
+        assertThat(input.functionData.functionName, equalTo("multicall"));
+
+        //except tuple signatures, which are only named
+        String tupleSelector = TransactionDecoder.buildMethodId(TABLE.get(3));
+        input = decoder.decodeInput(tupleSelector);
+        assertThat(input.functionData.functionName, not(equalTo("exactInputSingle")));
+    }
+
+    @Test
+    public void missesShareOneRequestAndAreLearned()
+    {
+        List<Single<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+        {
+            lookups.add(service.getFunctionName(REMOTE_PAYLOAD));
+            lookups.add(service.getFunctionName(NOT_LISTED));
+        }
+
+        for (int i = 0; i < lookups.size(); i++)
+        {
+            assertThat(lookups.get(i).blockingGet(), equalTo(i % 2 == 0 ? REMOTE : ""));
+        }
+        assertThat(requests.get(), equalTo(2));
+
+        //neither is asked for again
+        assertThat(service.getFunctionName(REMOTE_PAYLOAD).blockingGet(), equalTo(REMOTE));
+        assertThat(service.getFunctionName(NOT_LISTED).blockingGet(), equalTo(""));
+        assertThat(requests.get(), equalTo(2));
+
+        assertThat(stored.get(TransactionDecoder.buildMethodId(REMOTE)), equalTo(REMOTE));
+        TransactionInput input = decoder.decodeInput(REMOTE_PAYLOAD);
+        assertThat(input.functionData.functionName, equalTo("claimTokens"));
+        assertThat(input.getFirstAddress(), equalTo("0x951c19daead668bfa8391c94286f8ce7cbda2fe3"));
+    }
+
+    @Test
+    public void learnedSignaturesAreReadBack()
+    {
+        stored.put(TransactionDecoder.buildMethodId(REMOTE), REMOTE);
+        assertThat(service.getFunctionName(REMOTE_PAYLOAD).blockingGet(), equalTo(REMOTE));
+        assertThat(requests.get(), equalTo(0));
+    }
+
+    @Test
+    public void unreachableDirectoryIsAskedAgain()
+    {
+        server.stop(0);
+        assertThat(service.getFunctionName(REMOTE_PAYLOAD).blockingGet(), equalTo(""));
+
+        assertThat(service.getTextSignature("<html>not json</html>"), equalTo(""));
+        assertThat(service.getTextSignature("{\"count\":0,\"results\":[]}"), equalTo(""));
+    }
+
+    // answers REMOTE's selector; anything else has no results
+    private void directory(HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        String query = exchange.getRequestURI().getQuery();
+        String hex = query.substring(query.indexOf('=') + 1).toLowerCase(Locale.ROOT);
+        String response;
+        if (hex.equals(TransactionDecoder.buildMethodId(REMOTE)))
+        {
+            response = "{\"count\":2,\"next\":null,\"previous\":null,\"results\":["
+                    + "{\"id\":9001,\"text_signature\":\"claimTokens_collision(bytes)\",\"hex_signature\":\"" + hex + "\"},"
+                    + "{\"id\":412,\"text_signature\":\"" + REMOTE + "\",\"hex_signature\":\"" + hex + "\"}]}";
+        }
+        else
+        {
+            response = "{\"count\":0,\"next\":null,\"previous\":null,\"results\":[]}";
+        }
+
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.setlone.token.tools.TokenDefinition;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TokenDefinitionCacheTest
+{
+    private static final String TOKEN_A = "0xaaaa000000000000000000000000000000000001-1";
+    private static final String TOKEN_B = "0xbbbb000000000000000000000000000000000002-137";
+    private static final String TOKEN_C = "0xcccc000000000000000000000000000000000003-1";
+
+    @Test
+    public void switchingBetweenTokensHitsCache()
+    {
+        TokenDefinitionCache cache = new TokenDefinitionCache();
+        TokenDefinition a = new TokenDefinition();
+        TokenDefinition b = new TokenDefinition();
+        cache.put("hashA", TOKEN_A, a, 20000);
+        cache.put("hashB", TOKEN_B, b, 20000);
+
+        for (int i = 0; i < 5; i++)
+        {
+            assertThat(cache.get("hashA", TOKEN_A), sameInstance(a));
+            assertThat(cache.get("hashB", TOKEN_B.toUpperCase()), sameInstance(b));
+        }
+
+        assertThat(cache.getHits(), equalTo(10L));
+        assertThat(cache.getMisses(), equalTo(0L));
+        assertThat(cache.getForContract(TOKEN_A), sameInstance(a));
+    }
+
+    @Test
+    public void changedFileHashMisses()
+    {
+        TokenDefinitionCache cache = new TokenDefinitionCache();
+        cache.put("hashA", TOKEN_A, new TokenDefinition(), 1000);
+
+        assertThat(cache.get("hashA2", TOKEN_A), nullValue());
+        assertThat(cache.get("hashA", TOKEN_B), nullValue());
+        assertThat(cache.getMisses(), equalTo(2L));
+
+        //newer parse for the contract replaces the contract lookup
+        TokenDefinition updated = new TokenDefinition();
+        cache.put("hashA2", TOKEN_A, updated, 1000);
+        assertThat(cache.getForContract(TOKEN_A), sameInstance(updated));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedByCountAndSize()
+    {
+        TokenDefinitionCache cache = new TokenDefinitionCache(2, 100000);
+        TokenDefinition a = new TokenDefinition();
+        cache.put("hashA", TOKEN_A, a, 1000);
+        cache.put("hashB", TOKEN_B, new TokenDefinition(), 1000);
+        cache.get("hashA", TOKEN_A); //A is now most recent
+        cache.put("hashC", TOKEN_C, new TokenDefinition(), 1000);
+
+        assertThat(cache.size(), equalTo(2));
+        assertThat(cache.get("hashB", TOKEN_B), nullValue());
+        assertThat(cache.get("hashA", TOKEN_A), sameInstance(a));
+        assertThat(cache.getEvictions(), equalTo(1L));
+        assertThat(cache.getForContract(TOKEN_B), nullValue());
+
+        //one large script pushes out the rest, but is itself kept
+        cache.put("hashBig", TOKEN_B, new TokenDefinition(), 250000);
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.getWeight(), equalTo(250000L));
+        assertThat(cache.getEvictions(), equalTo(3L));
+    }
+
+    @Test
+    public void invalidation()
+    {
+        TokenDefinitionCache cache = new TokenDefinitionCache();
+        cache.put("shared", TOKEN_A, new TokenDefinition(), 1000);
+        cache.put("shared", TOKEN_B, new TokenDefinition(), 1000);
+        cache.put("hashC", TOKEN_C, new TokenDefinition(), 0);
+        assertThat(cache.getWeight(), equalTo(2000L + TokenDefinitionCache.DEFAULT_WEIGHT));
+
+        cache.invalidate("shared");
+        assertThat(cache.size(), equalTo(1));
+        assertThat(cache.getForContract(TOKEN_A), nullValue());
+
+        cache.invalidateContract(TOKEN_C.toUpperCase());
+        assertThat(cache.size(), equalTo(0));
+        assertThat(cache.getWeight(), equalTo(0L));
+    }
+
+    @Test
+    public void concurrentReaders() throws InterruptedException
+    {
+        TokenDefinitionCache cache = new TokenDefinitionCache();
+        List<TokenDefinition> defs = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+        {
+            TokenDefinition td = new TokenDefinition();
+            defs.add(td);
+            cache.put("hash" + i, "0x" + i + "-1", td, 10000);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        CountDownLatch done = new CountDownLatch(8);
+        AtomicInteger wrong = new AtomicInteger();
+        for (int t = 0; t < 8; t++)
+        {
+            pool.execute(() -> {
+                for (int n = 0; n < 10000; n++)
+                {
+                    int i = n % 8;
+                    if (cache.get("hash" + i, "0x" + i + "-1") != defs.get(i)) wrong.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        pool.shutdown();
+        assertThat(wrong.get(), equalTo(0));
+        assertThat(cache.getHits(), equalTo(80000L));
+    }
+}
@@ -0,0 +1,49 @@
+package com.setlone.app.service;
+
+import static com.setlone.app.service.TokenUpdateIndexTest.START_TIME;
+import static com.setlone.app.service.TokenUpdateIndexTest.TICK;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * Compares the per-tick cost of picking the next token from the update index against scanning every token, using the
+ * rows from TokenUpdateIndexTest. The scan figure excludes the Realm query itself, so it understates the old path.
+ */
+public class TokenUpdateIndexBenchmark
+{
+    @Test
+    public void indexAgainstScan()
+    {
+        for (int count : new int[] { 100, 1000, 10000 })
+        {
+            int ticks = count >= 10000 ? 200 : 2000;
+            List<TokenUpdateIndexTest.TokenRow> rows = TokenUpdateIndexTest.buildRows(count, 7);
+            long currentTime = START_TIME;
+            for (int i = 0; i < ticks / 4; i++) TokenUpdateIndexTest.scanForNext(rows, currentTime += TICK); //warm up
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ticks; i++)
+            {
+                TokenUpdateIndexTest.scanForNext(rows, currentTime += TICK);
+            }
+            long scanTime = (System.nanoTime() - start) / ticks;
+
+            TokenUpdateIndex index = TokenUpdateIndexTest.buildIndex(TokenUpdateIndexTest.buildRows(count, 7));
+            currentTime = START_TIME;
+            for (int i = 0; i < ticks / 4; i++) index.next(currentTime += TICK, true, 0, true);
+
+            start = System.nanoTime();
+            for (int i = 0; i < ticks; i++)
+            {
+                index.next(currentTime += TICK, true, 0, true);
+            }
+            long indexTime = (System.nanoTime() - start) / ticks;
+
+            assertThat("ns per tick for " + count + " tokens", indexTime, lessThan(scanTime));
+        }
+    }
+}
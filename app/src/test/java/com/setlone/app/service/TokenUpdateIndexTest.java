@@ -0,0 +1,176 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.setlone.app.entity.ContractType;
+import com.setlone.app.entity.tokendata.TokenGroup;
+import com.setlone.app.entity.tokens.TokenCardMeta;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks the update index picks the same tokens as the per-tick scan it replaces
+ */
+public class TokenUpdateIndexTest
+{
+    static final long START_TIME = 1_700_000_000_000L;
+    static final long TICK = 500;
+    private static final String WALLET = "0x951c19daead668bfa8391c94286f8ce7cbda2fe3";
+
+    private static final TokenUpdateIndex.Policy NO_FOCUS = new TokenUpdateIndex.Policy()
+    {
+        @Override
+        public String getFocusKey()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isChainPending(long chainId)
+        {
+            return false;
+        }
+    };
+
+    //a database row, as the old scan would read it
+    static class TokenRow
+    {
+        final long chainId;
+        final String address;
+        final String balance;
+        final long updateTime;
+        final ContractType type;
+        final boolean enabled;
+        long checkTime;
+
+        TokenRow(long chainId, String address, String balance, long updateTime, ContractType type, boolean enabled)
+        {
+            this.chainId = chainId;
+            this.address = address;
+            this.balance = balance;
+            this.updateTime = updateTime;
+            this.type = type;
+            this.enabled = enabled;
+            this.checkTime = updateTime;
+        }
+
+        TokenCardMeta toMeta()
+        {
+            TokenCardMeta meta = new TokenCardMeta(chainId, address, balance, Math.max(updateTime, checkTime), updateTime, type, TokenGroup.ASSET);
+            meta.isEnabled = enabled;
+            return meta;
+        }
+    }
+
+    static List<TokenRow> buildRows(int count, long seed)
+    {
+        Random random = new Random(seed);
+        List<TokenRow> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            String address = String.format("0x%040x", i + 1);
+            long updateTime = START_TIME - 1000 - random.nextInt(600_000);
+            String balance = random.nextInt(4) == 0 ? "0" : "1000";
+            rows.add(new TokenRow(1 + (i % 5), address, balance, updateTime, ContractType.ERC20, true));
+        }
+        return rows;
+    }
+
+    static TokenUpdateIndex buildIndex(List<TokenRow> rows)
+    {
+        TokenUpdateIndex index = new TokenUpdateIndex(NO_FOCUS);
+        TokenCardMeta[] metas = new TokenCardMeta[rows.size()];
+        for (int i = 0; i < rows.size(); i++)
+        {
+            metas[i] = rows.get(i).toMeta();
+        }
+        index.rebuild(metas, START_TIME);
+        return index;
+    }
+
+    /**
+     * The selection loop the index replaces: read every token, score it, keep the best
+     */
+    static TokenRow scanForNext(List<TokenRow> rows, long currentTime)
+    {
+        float highestWeighting = 0;
+        TokenRow highestToken = null;
+        for (TokenRow row : rows)
+        {
+            TokenCardMeta check = row.toMeta();
+            long lastCheckDiff = currentTime - check.lastUpdate;
+            float weighting = check.calculateBalanceUpdateWeight(currentTime);
+            float updateFactor = weighting * (float) lastCheckDiff * (check.isEnabled ? 1 : 0.25f);
+            long cutoffCheck = check.calculateUpdateFrequency();
+
+            if (lastCheckDiff > (float) cutoffCheck && updateFactor > highestWeighting)
+            {
+                highestWeighting = updateFactor;
+                highestToken = row;
+            }
+        }
+
+        if (highestToken != null) highestToken.checkTime = currentTime;
+        return highestToken;
+    }
+
+    @Test
+    public void selectsOldestDueToken()
+    {
+        List<TokenRow> rows = new ArrayList<>();
+        rows.add(new TokenRow(1, "0x0000000000000000000000000000000000000001", "10", START_TIME - 40_000, ContractType.ERC20, true));
+        rows.add(new TokenRow(1, "0x0000000000000000000000000000000000000002", "10", START_TIME - 90_000, ContractType.ERC20, true));
+        rows.add(new TokenRow(1, "0x0000000000000000000000000000000000000003", "10", START_TIME - 10_000, ContractType.ERC20, true));
+
+        TokenUpdateIndex index = buildIndex(rows);
+        assertThat(index.next(START_TIME, true, 0, true).getAddress(), equalTo("0x0000000000000000000000000000000000000002"));
+        assertThat(index.next(START_TIME, true, 0, true).getAddress(), equalTo("0x0000000000000000000000000000000000000001"));
+        //third token is inside its 30 second cutoff
+        assertThat(index.next(START_TIME, true, 0, true), nullValue());
+        assertThat(index.next(START_TIME + 21_000, true, 0, true).getAddress(), equalTo("0x0000000000000000000000000000000000000003"));
+    }
+
+    @Test
+    public void onlyChainTokensOutOfFocus()
+    {
+        TokenUpdateIndex index = new TokenUpdateIndex(NO_FOCUS);
+        TokenCardMeta erc20 = new TokenCardMeta(1, "0x0000000000000000000000000000000000000001", "10", START_TIME - 600_000, 0, ContractType.ERC20, TokenGroup.ASSET);
+        erc20.isEnabled = true;
+        TokenCardMeta eth = new TokenCardMeta(1, WALLET, "10", START_TIME - 60_000, 0, ContractType.ETHEREUM, TokenGroup.ASSET);
+        eth.isEnabled = true;
+        index.rebuild(new TokenCardMeta[] { erc20, eth }, START_TIME);
+
+        assertThat(index.next(START_TIME, true, 0, false).getAddress(), equalTo(WALLET));
+        assertThat(index.next(START_TIME, true, 0, false), nullValue());
+        assertThat(index.next(START_TIME, true, 0, true).getAddress(), equalTo("0x0000000000000000000000000000000000000001"));
+    }
+
+    @Test
+    public void matchesScanSelection()
+    {
+        List<TokenRow> rows = buildRows(1000, 42);
+        TokenUpdateIndex index = buildIndex(rows);
+
+        long currentTime = START_TIME;
+        for (int tick = 0; tick < 2000; tick++)
+        {
+            TokenRow expected = scanForNext(rows, currentTime);
+            TokenCardMeta selected = index.next(currentTime, true, 0, true);
+            if (expected == null)
+            {
+                assertThat(selected, nullValue());
+            }
+            else
+            {
+                assertThat(selected.getAddress(), equalTo(expected.address));
+            }
+            currentTime += TICK;
+        }
+    }
+}
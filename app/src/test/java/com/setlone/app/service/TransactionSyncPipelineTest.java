@@ -0,0 +1,52 @@
+package com.setlone.app.service;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class TransactionSyncPipelineTest
+{
+    @Test
+    public void etherscanHostSharesOneQuota()
+    {
+        assertThat(TransactionSyncPipeline.getHostRate("api.etherscan.io"), equalTo(4.0));
+        assertThat(TransactionSyncPipeline.getHostRate("api.covalenthq.com"), equalTo(4.0));
+        assertThat(TransactionSyncPipeline.getHostRate("explorer.example.org"), equalTo(3.0));
+    }
+
+    @Test
+    public void reportsPerChainStats()
+    {
+        TransactionSyncPipeline pipeline = new TransactionSyncPipeline();
+        pipeline.startSync(1);
+        pipeline.startSync(137);
+        pipeline.onPage(1, 800);
+        pipeline.onPage(1, 120);
+        pipeline.onPage(137, 0);
+        assertThat(pipeline.getStats().size(), equalTo(0)); //only completed syncs are reported
+
+        pipeline.endSync(1, 920);
+        pipeline.endSync(137, 0);
+        pipeline.onPage(1, 10); //late page after the sync ended is ignored
+
+        List<TransactionSyncPipeline.ChainSyncStats> stats = pipeline.getStats();
+        assertThat(stats.size(), equalTo(2));
+        for (TransactionSyncPipeline.ChainSyncStats s : stats)
+        {
+            if (s.chainId == 1)
+            {
+                assertThat(s.getPages(), equalTo(2));
+                assertThat(s.getStored(), equalTo(920));
+                assertThat(s.getTimeToFirstPage() >= 0, equalTo(true));
+            }
+            else
+            {
+                assertThat(s.getPages(), equalTo(1));
+                assertThat(s.getStored(), equalTo(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.setlone.app.service;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rebuilds the shipped selector table from src/main/selectors.txt. Run from the app directory
+ */
+public class WriteSelectorTable
+{
+    static final File SIGNATURE_LIST = new File("src/main/selectors.txt");
+    static final File SHIPPED_TABLE = new File("src/main/assets", SelectorDatabase.ASSET_NAME);
+
+    /**
+     * Signatures from the list, skipping blank and '#' lines
+     */
+    static List<String> readSignatures(File list) throws IOException
+    {
+        List<String> signatures = new ArrayList<>();
+        for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8))
+        {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) signatures.add(line);
+        }
+        return signatures;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        List<String> signatures = readSignatures(SIGNATURE_LIST);
+        try (OutputStream out = new FileOutputStream(SHIPPED_TABLE))
+        {
+            SelectorDatabase.write(signatures, out);
+        }
+        System.out.println("Wrote " + signatures.size() + " signatures to " + SHIPPED_TABLE);
+    }
+}
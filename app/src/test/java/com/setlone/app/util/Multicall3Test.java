@@ -0,0 +1,65 @@
+package com.setlone.app.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.DynamicStruct;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class Multicall3Test
+{
+    private static final String OWNER = "0x951c19daead668bfa8391c94286f8ce7cbda2fe3";
+
+    //mirrors the (bool success, bytes returnData) output struct of aggregate3
+    public static class CallResult extends DynamicStruct
+    {
+        public CallResult(Bool success, DynamicBytes returnData)
+        {
+            super(success, returnData);
+        }
+    }
+
+    @Test
+    public void encodesAggregate3()
+    {
+        List<Multicall3.Call3> calls = new ArrayList<>();
+        calls.add(new Multicall3.Call3("0x879230570f360424bc5baa99906d5f640a75551e",
+                FunctionEncoder.encode(Multicall3.getEthBalance(OWNER))));
+
+        String encoded = Multicall3.encodeAggregate3(calls);
+        assertThat(encoded.substring(0, 10), equalTo("0x82ad56cb"));
+    }
+
+    @Test
+    public void decodesAggregate3Results()
+    {
+        List<CallResult> results = new ArrayList<>();
+        results.add(new CallResult(new Bool(true), new DynamicBytes(new byte[] { 0x01, 0x02, 0x03 })));
+        results.add(new CallResult(new Bool(false), new DynamicBytes(new byte[0])));
+        String output = "0x" + FunctionEncoder.encodeConstructor(
+                Collections.singletonList(new DynamicArray<>(CallResult.class, results)));
+
+        List<Multicall3.Result> decoded = Multicall3.decodeAggregate3(output);
+        assertThat(decoded.size(), equalTo(2));
+        assertThat(decoded.get(0).success, equalTo(true));
+        assertThat(decoded.get(0).returnData, equalTo("0x010203"));
+        assertThat(decoded.get(1).success, equalTo(false));
+        assertThat(decoded.get(1).returnData, equalTo("0x"));
+    }
+
+    @Test
+    public void malformedOutputIsEmpty()
+    {
+        assertThat(Multicall3.decodeAggregate3("0x").size(), equalTo(0));
+        assertThat(Multicall3.decodeAggregate3(null).size(), equalTo(0));
+        assertThat(Multicall3.decodeAggregate3("0x00000000000000000000000000000000000000000000000000000000000000200000000000000000000000000000000000000000000000000000000000000005").size(), equalTo(0));
+    }
+}
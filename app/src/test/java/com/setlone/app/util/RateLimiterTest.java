@@ -0,0 +1,24 @@
+package com.setlone.app.util;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+public class RateLimiterTest
+{
+    @Test
+    public void spacesRequests()
+    {
+        RateLimiter limiter = new RateLimiter(4.0);
+        //four chains asking at once are queued a quarter second apart
+        assertThat(limiter.reserve(1000), equalTo(0L));
+        assertThat(limiter.reserve(1000), equalTo(250L));
+        assertThat(limiter.reserve(1000), equalTo(500L));
+        assertThat(limiter.reserve(1100), equalTo(650L));
+
+        //once idle there's no wait, and no burst is banked
+        assertThat(limiter.reserve(5000), equalTo(0L));
+        assertThat(limiter.reserve(5000), equalTo(250L));
+    }
+}
@@ -0,0 +1,83 @@
+package com.setlone.app.util.ens;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.crypto.Keys;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Compares the batched reverse lookup against reverse resolving and verifying each wallet one at a time, on the stub
+ * node from ReverseEnsBatchTest.
+ */
+public class ReverseEnsBatchBenchmark
+{
+    private final ReverseEnsBatchTest node = new ReverseEnsBatchTest();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        node.setUp();
+    }
+
+    @After
+    public void tearDown()
+    {
+        node.tearDown();
+    }
+
+    @Test
+    public void batchAgainstOneAtATime()
+    {
+        EnsResolver resolver = new EnsResolver(node.web3j, Keys.ADDRESS_LENGTH_IN_HEX, ReverseEnsBatchTest.CHAIN_ID);
+        EnsResolver.ReverseBatch batch = resolver.reverseResolveBatch(node.wallets, ReverseEnsBatchTest.MULTICALL_LIMIT);
+        assertThat(batch.names, equalTo(node.expected));
+
+        //previous path: reverse resolve each wallet, then resolve its name to check it
+        node.requests.set(0);
+        List<Single<String[]>> lookups = new ArrayList<>();
+        for (String wallet : node.wallets)
+        {
+            lookups.add(Single.fromCallable(() -> new String[] { wallet.toLowerCase(Locale.ROOT), reverseResolve(resolver, wallet) })
+                    .subscribeOn(Schedulers.io()));
+        }
+        Map<String, String> single = new HashMap<>();
+        for (String[] lookup : Single.merge(lookups).toList().blockingGet())
+        {
+            single.put(lookup[0], lookup[1]);
+        }
+        for (Map.Entry<String, String> entry : node.expected.entrySet())
+        {
+            assertThat(single.get(entry.getKey()), equalTo(entry.getValue()));
+        }
+
+        System.out.println(String.format(Locale.ROOT, "%d wallets: one at a time %d RPC requests, batched %d",
+                ReverseEnsBatchTest.WALLET_COUNT, node.requests.get(), batch.nodeCalls));
+    }
+
+    private static String reverseResolve(EnsResolver resolver, String address)
+    {
+        try
+        {
+            String name = resolver.reverseResolve(address);
+            if (name.isEmpty()) return "";
+            return resolver.resolve(name).equalsIgnoreCase(address) ? name : "";
+        }
+        catch (Exception e)
+        {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.setlone.app.util.ens;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.setlone.app.util.Multicall3;
+import com.setlone.app.util.Multicall3Test;
+import com.setlone.app.web3j.ens.Contracts;
+import com.setlone.app.web3j.ens.NameHash;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Bool;
+import org.web3j.abi.datatypes.DynamicArray;
+import org.web3j.abi.datatypes.DynamicBytes;
+import org.web3j.abi.datatypes.Utf8String;
+import org.web3j.crypto.Hash;
+import org.web3j.crypto.Keys;
+import org.web3j.protocol.Web3j;
+import org.web3j.protocol.http.HttpService;
+import org.web3j.utils.Numeric;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reverse resolves a list of wallets against a local stub of the ENS registry and a resolver, counting the requests it
+ * takes
+ */
+public class ReverseEnsBatchTest
+{
+    static final long CHAIN_ID = 1;
+    static final int WALLET_COUNT = 50;
+    static final int MULTICALL_LIMIT = 128;
+    private static final String REGISTRY = Contracts.resolveRegistryContract(CHAIN_ID);
+    private static final String RESOLVER = "0x231b0ee14048e9dccd1d247744d114a4eb5e8e63";
+    private static final String OTHER = "0x000000000000000000000000000000000000dead";
+
+    private static final String RESOLVER_SELECTOR = selector("resolver(bytes32)");
+    private static final String NAME_SELECTOR = selector("name(bytes32)");
+    private static final String ADDR_SELECTOR = selector("addr(bytes32)");
+    private static final String SUPPORTS_SELECTOR = selector("supportsInterface(bytes4)");
+
+    private HttpServer server;
+    Web3j web3j;
+    final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger netVersions = new AtomicInteger();
+    private volatile boolean multicallDeployed = true;
+
+    //the chain: registry node to resolver, and the resolver's name and addr records
+    private final Map<String, String> registry = new ConcurrentHashMap<>();
+    private final Map<String, String> names = new ConcurrentHashMap<>();
+    private final Map<String, String> addrs = new ConcurrentHashMap<>();
+
+    final List<String> wallets = new ArrayList<>();
+    final Map<String, String> expected = new HashMap<>(); //wallets the batch can answer
+
+    @Before
+    public void setUp() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/", this::rpc);
+        server.start();
+        web3j = Web3j.build(new HttpService("http://127.0.0.1:" + server.getAddress().getPort()));
+
+        // by i % 5: 0, 1 have a primary name; 2 a name whose resolver is on a parent; 3 no reverse record;
+        // 4 a reverse record naming someone else's name
+        for (int i = 0; i < WALLET_COUNT; i++)
+        {
+            String wallet = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(0x1000 + i), 40);
+            wallets.add(i % 2 == 0 ? wallet : Keys.toChecksumAddress(wallet));
+            String reverseNode = NameHash.nameHash(Numeric.cleanHexPrefix(wallet) + EnsResolver.REVERSE_NAME_SUFFIX);
+            String name = "wallet" + i + ".eth";
+            String nameNode = NameHash.nameHash(name);
+            switch (i % 5)
+            {
+                case 0:
+                case 1:
+                    registry.put(reverseNode, RESOLVER);
+                    names.put(reverseNode, name);
+                    registry.put(nameNode, RESOLVER);
+                    addrs.put(nameNode, wallet);
+                    expected.put(wallet, name);
+                    break;
+                case 2:
+                    registry.put(reverseNode, RESOLVER);
+                    names.put(reverseNode, name);
+                    break;
+                case 3:
+                    expected.put(wallet, "");
+                    break;
+                case 4:
+                    registry.put(reverseNode, RESOLVER);
+                    names.put(reverseNode, name);
+                    registry.put(nameNode, RESOLVER);
+                    addrs.put(nameNode, OTHER);
+                    expected.put(wallet, "");
+                    break;
+            }
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        web3j.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    public void resolvesWalletListInFourCalls()
+    {
+        EnsResolver resolver = new EnsResolver(web3j, Keys.ADDRESS_LENGTH_IN_HEX, CHAIN_ID);
+        EnsResolver.ReverseBatch batch = resolver.reverseResolveBatch(wallets, MULTICALL_LIMIT);
+
+        assertThat(batch.multicallUnavailable, equalTo(false));
+        assertThat(batch.nodeCalls, equalTo(4));
+        assertThat(requests.get(), equalTo(4));
+        assertThat(netVersions.get(), equalTo(0));
+        assertThat(batch.names, equalTo(expected));
+    }
+
+    @Test
+    public void chunksAndFallsBack()
+    {
+        EnsResolver resolver = new EnsResolver(web3j, Keys.ADDRESS_LENGTH_IN_HEX, CHAIN_ID);
+        EnsResolver.ReverseBatch batch = resolver.reverseResolveBatch(wallets, 16);
+
+        //50 reverse nodes, 40 names, 40 name resolvers, 30 addrs
+        assertThat(batch.nodeCalls, equalTo(4 + 3 + 3 + 2));
+        assertThat(batch.names, equalTo(expected));
+
+        //repeats and invalid addresses aren't read
+        requests.set(0);
+        List<String> repeated = new ArrayList<>(wallets.subList(0, 3));
+        repeated.add(wallets.get(0).toUpperCase(Locale.ROOT).replace("0X", "0x"));
+        repeated.add("0x1234");
+        batch = resolver.reverseResolveBatch(repeated, MULTICALL_LIMIT);
+        assertThat(batch.names.size(), equalTo(2)); //the third is left to the caller
+
+        multicallDeployed = false;
+        requests.set(0);
+        batch = resolver.reverseResolveBatch(wallets, MULTICALL_LIMIT);
+        assertThat(batch.multicallUnavailable, equalTo(true));
+        assertThat(batch.names.isEmpty(), equalTo(true));
+        assertThat(requests.get(), equalTo(1));
+    }
+
+    @Test
+    public void cacheKeepsNamesAcrossRestarts()
+    {
+        Map<String, EnsCache.Entry> stored = new HashMap<>();
+        EnsCache.Store store = new EnsCache.Store()
+        {
+            @Override
+            public Map<String, EnsCache.Entry> load()
+            {
+                return new HashMap<>(stored);
+            }
+
+            @Override
+            public void save(Map<String, EnsCache.Entry> entries)
+            {
+                stored.putAll(entries);
+            }
+        };
+        AtomicLong now = new AtomicLong(1_700_000_000_000L);
+
+        EnsCache cache = new EnsCache(store, now::get);
+        Map<String, String> read = new HashMap<>();
+        read.put(wallets.get(0), "wallet0.eth");
+        read.put(wallets.get(3), "");
+        cache.putNames(read);
+        cache.putAvatar("wallet0.eth", "https://example.com/avatar.png");
+        cache.putAvatar("wallet1.eth", "");
+
+        cache = new EnsCache(store, now::get);
+        assertThat(cache.getName(wallets.get(0).toUpperCase(Locale.ROOT).replace("0X", "0x")), equalTo("wallet0.eth"));
+        assertThat(cache.getName(wallets.get(3)), equalTo(""));
+        assertThat(cache.getName(wallets.get(1)), nullValue());
+        assertThat(cache.getAvatar("wallet0.eth"), equalTo("https://example.com/avatar.png"));
+        assertThat(cache.getAvatar("wallet1.eth"), nullValue());
+
+        //no name is asked again sooner than a name
+        now.addAndGet(EnsCache.NO_NAME_TTL);
+        assertThat(cache.getName(wallets.get(3)), nullValue());
+        assertThat(cache.getName(wallets.get(0)), equalTo("wallet0.eth"));
+
+        now.addAndGet(EnsCache.NAME_TTL);
+        assertThat(cache.getName(wallets.get(0)), nullValue());
+        assertThat(cache.getAvatar("wallet0.eth"), nullValue());
+    }
+
+    //Stub node
+
+    private void rpc(HttpExchange exchange) throws IOException
+    {
+        requests.incrementAndGet();
+        String body;
+        try (InputStream in = exchange.getRequestBody())
+        {
+            body = new String(readAll(in), StandardCharsets.UTF_8);
+        }
+
+        JsonObject request = JsonParser.parseString(body).getAsJsonObject();
+        String id = request.get("id").toString();
+        String result;
+        if (request.get("method").getAsString().equals("net_version"))
+        {
+            netVersions.incrementAndGet();
+            result = "1";
+        }
+        else
+        {
+            JsonObject tx = request.getAsJsonArray("params").get(0).getAsJsonObject();
+            String to = tx.get("to").getAsString();
+            String data = tx.get("data").getAsString();
+            if (to.equalsIgnoreCase(Multicall3.MULTICALL3_ADDRESS))
+            {
+                result = multicallDeployed ? aggregate3(data) : "0x";
+            }
+            else
+            {
+                result = call(to, data);
+            }
+        }
+
+        String response = result == null
+                ? "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"error\":{\"code\":3,\"message\":\"execution reverted\"}}"
+                : "{\"jsonrpc\":\"2.0\",\"id\":" + id + ",\"result\":\"" + result + "\"}";
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream os = exchange.getResponseBody())
+        {
+            os.write(bytes);
+        }
+    }
+
+    // the registry answers resolver(node), the resolver name(node), addr(node) and supportsInterface; anything else reverts
+    private String call(String to, String data)
+    {
+        String selector = data.substring(0, 10);
+        String node = data.length() >= 74 ? "0x" + data.substring(10, 74) : "";
+        if (to.equalsIgnoreCase(REGISTRY) && selector.equals(RESOLVER_SELECTOR))
+        {
+            return encodeAddress(registry.getOrDefault(node, Address.DEFAULT.getValue()));
+        }
+        else if (to.equalsIgnoreCase(RESOLVER))
+        {
+            if (selector.equals(NAME_SELECTOR))
+            {
+                return "0x" + FunctionEncoder.encodeConstructor(
+                        Collections.singletonList(new Utf8String(names.getOrDefault(node, ""))));
+            }
+            else if (selector.equals(ADDR_SELECTOR))
+            {
+                return encodeAddress(addrs.getOrDefault(node, Address.DEFAULT.getValue()));
+            }
+            else if (selector.equals(SUPPORTS_SELECTOR))
+            {
+                return Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64);
+            }
+        }
+
+        return null;
+    }
+
+    private String aggregate3(String data)
+    {
+        byte[] input = Numeric.hexStringToByteArray(data.substring(10));
+        int arrayStart = word(input, 0);
+        int count = word(input, arrayStart);
+        int headStart = arrayStart + 32;
+        List<Multicall3Test.CallResult> results = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+        {
+            int structStart = headStart + word(input, headStart + i * 32);
+            byte[] target = new byte[20];
+            System.arraycopy(input, structStart + 12, target, 0, 20);
+            int bytesStart = structStart + word(input, structStart + 64);
+            int length = word(input, bytesStart);
+            byte[] callData = new byte[length];
+            System.arraycopy(input, bytesStart + 32, callData, 0, length);
+
+            String r = call(Numeric.toHexString(target), Numeric.toHexString(callData));
+            results.add(new Multicall3Test.CallResult(new Bool(r != null),
+                    new DynamicBytes(r != null ? Numeric.hexStringToByteArray(r) : new byte[0])));
+        }
+
+        return "0x" + FunctionEncoder.encodeConstructor(
+                Collections.singletonList(new DynamicArray<>(Multicall3Test.CallResult.class, results)));
+    }
+
+    private static String encodeAddress(String address)
+    {
+        return "0x" + FunctionEncoder.encodeConstructor(Collections.singletonList(new Address(address)));
+    }
+
+    private static String selector(String signature)
+    {
+        return Hash.sha3String(signature).substring(0, 10);
+    }
+
+    private static int word(byte[] data, int offset)
+    {
+        byte[] w = new byte[32];
+        System.arraycopy(data, offset, w, 0, 32);
+        return new BigInteger(1, w).intValueExact();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) out.write(buf, 0, n);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,108 @@
+package com.setlone.app.web3;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks the in-place scanner finds the same positions the lowercasing search did
+ */
+public class HtmlScannerTest
+{
+    private static final String SCRIPT_TAG = "<script";
+    private static final String CDATA_TAG = "<![cdata[";
+
+    private static final List<String> VIEWS = Arrays.asList(
+            "<div>plain</div>",
+            "<html><head><title>t</title></head><body>no script</body></html>",
+            "<html><HEAD><Title>t</Title></HEAD><body>upper</body></html>",
+            "<p>card</p><SCRIPT type=\"text/javascript\">//<![CDATA[\nweb3.tokens.dataChanged = () => {}\n//]]></SCRIPT>",
+            "<!--[if IE]><p>old</p><![endif]--><script>web3.x()</script>",
+            "<head></head><Script>let a = 1;</Script><script>//<![CData[\nWeb3.ready()\n</script>",
+            "<style>.a { }</style><div><svg></svg></div><script src=\"a.js\"></script><script>web3</script>",
+            "");
+
+    @Test
+    public void injectionPositionMatchesLowercasedSearch()
+    {
+        for (String view : VIEWS)
+        {
+            assertThat(view, HtmlScanner.getInjectionPosition(view), equalTo(lowercasedInjectionPosition(view)));
+        }
+    }
+
+    @Test
+    public void endInjectionPositionMatchesLowercasedSearch()
+    {
+        for (String view : VIEWS)
+        {
+            assertThat(view, HtmlScanner.getEndInjectionPosition(view), equalTo(lowercasedEndInjectionPosition(view)));
+        }
+    }
+
+    @Test
+    public void endScriptPositionIsAfterCData()
+    {
+        String view = VIEWS.get(3);
+        int expected = view.toLowerCase().indexOf(CDATA_TAG) + CDATA_TAG.length();
+        assertThat(HtmlScanner.getEndScriptPosition(view), equalTo(expected));
+        assertThat(view.substring(expected), equalTo("\nweb3.tokens.dataChanged = () => {}\n//]]></SCRIPT>"));
+
+        //without a CDATA section the code goes straight after the opening tag
+        String noCData = "<div></div><script type=\"module\">run()</script>";
+        assertThat(noCData.substring(HtmlScanner.getEndScriptPosition(noCData)), equalTo("run()</script>"));
+    }
+
+    @Test
+    public void positionsStayInTheOriginalView()
+    {
+        //'İ' lowercases to two chars, so a search of the lowercased view lands one char late
+        String view = "<p>İstanbul</p><script>web3</script>";
+        assertThat(HtmlScanner.getInjectionPosition(view), equalTo(view.indexOf("<script")));
+        assertThat(HtmlScanner.splice(view, HtmlScanner.getInjectionPosition(view), "<b/>"),
+                equalTo("<p>İstanbul</p><b/><script>web3</script>"));
+    }
+
+    @Test
+    public void indexOfIgnoreCase()
+    {
+        assertThat(HtmlScanner.indexOfIgnoreCase("abc<SCRIPT>", SCRIPT_TAG, 0), equalTo(3));
+        assertThat(HtmlScanner.indexOfIgnoreCase("abc<SCRIPT>", SCRIPT_TAG, 4), equalTo(-1));
+        assertThat(HtmlScanner.indexOfIgnoreCase("<scrip", SCRIPT_TAG, 0), equalTo(-1));
+        assertThat(HtmlScanner.indexOfIgnoreCase("x<script", SCRIPT_TAG, -5), equalTo(1));
+    }
+
+    // as JsInjectorClient searched before
+    static int lowercasedInjectionPosition(String body)
+    {
+        body = body.toLowerCase();
+        int ieDetectTagIndex = body.indexOf("<!--[if");
+        int scriptTagIndex = body.indexOf("<script");
+
+        int index;
+        if (ieDetectTagIndex < 0) {
+            index = scriptTagIndex;
+        } else {
+            index = Math.min(scriptTagIndex, ieDetectTagIndex);
+        }
+        if (index < 0) {
+            index = body.indexOf("</head");
+        }
+        if (index < 0) {
+            index = 0;
+        }
+        return index;
+    }
+
+    static int lowercasedEndInjectionPosition(String body)
+    {
+        body = body.toLowerCase();
+        int firstIndex = body.indexOf(SCRIPT_TAG);
+        int nextIndex = body.indexOf("web3", firstIndex);
+        return body.indexOf("</script", nextIndex);
+    }
+}
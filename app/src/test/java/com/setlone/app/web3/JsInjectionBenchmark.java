@@ -0,0 +1,145 @@
+package com.setlone.app.web3;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Builds the page for a list of TokenScript cards the way Web3TokenView.displayTokenView does, first as it was
+ * (scripts read per card, ethers inlined, view lowercased to search it) and then with the scripts held in memory,
+ * ethers referenced by URL and the view scanned in place. Reports time and bytes allocated per card.
+ */
+public class JsInjectionBenchmark
+{
+    private static final int CARDS = 50;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 5;
+    private static final int ETHERS_SIZE = 505_755; //size of res/raw/ethers_js_min.js
+    private static final String ETHERS_URL = "https://assets.setlone.invalid/js/ethers.min.js"; //as JsAssetCache serves it
+
+    private static final String INIT_TOKEN = "const currentTokenInstance = {\n%1$s\n}\nconst walletAddress = '%2$s'\n"
+            + "const rpcURL = \"%3$s\";\nconst chainID = \"%4$s\";\nfunction refresh() { web3.tokens.dataChanged('test', web3.tokens.data, '%5$s') }\n";
+    private static final String VIEW = "<div class=\"card\"><h3 id=\"name\"></h3><img id=\"img\"/></div>"
+            + "<script type=\"text/javascript\">//<![CDATA[\nclass Token { constructor(t) { this.props = t } render() { return '<p>' + this.props.name + '</p>' } }\n"
+            + "web3.tokens.dataChanged = (oldTokens, updatedTokens, tokenCardId) => { document.getElementById(tokenCardId).innerHTML = new Token(updatedTokens.currentInstance).render() }\n//]]></script>";
+    private static final String STYLE = ".card { padding: 4px; } h3 { font-size: 14px; }";
+    private static final String ATTRS = "name: \"Ticket\", tokenId: \"1\", balance: \"1\", ownerAddress: \"0x0000000000000000000000000000000000000001\",";
+
+    private final byte[] ethersResource;
+    private final byte[] initTokenResource = INIT_TOKEN.getBytes(StandardCharsets.UTF_8);
+
+    private static class Result
+    {
+        long nanos;
+        long bytes;
+        int pageLength;
+    }
+
+    private interface CardRenderer
+    {
+        String render(BigInteger tokenId);
+    }
+
+    public JsInjectionBenchmark()
+    {
+        StringBuilder sb = new StringBuilder(ETHERS_SIZE);
+        while (sb.length() < ETHERS_SIZE)
+        {
+            sb.append("var e").append(sb.length()).append("=function(t){return t&&t.toString(16)};");
+        }
+        ethersResource = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void cardList()
+    {
+        Result inlined = measure(this::renderInlined);
+        Result cached = measure(this::renderCached);
+
+        System.out.println(String.format(Locale.ROOT, "%d cards: inlined %.2f ms %d KB per card (page %d KB), cached %.2f ms %d KB per card (page %d KB)",
+                CARDS, inlined.nanos / 1e6, inlined.bytes / 1024, inlined.pageLength / 1024,
+                cached.nanos / 1e6, cached.bytes / 1024, cached.pageLength / 1024));
+        assertThat(cached.bytes, lessThan(inlined.bytes / 10));
+    }
+
+    private String renderInlined(BigInteger tokenId)
+    {
+        //each card read its scripts from the resource
+        String initSrc = new String(initTokenResource.clone(), StandardCharsets.UTF_8);
+        initSrc = String.format(initSrc, ATTRS, "0x1", "https://rpc", 1, "token-card-" + tokenId);
+        String ethersMin = "<script>" + new String(ethersResource.clone(), StandardCharsets.UTF_8) + "</script>";
+        String wrapper = "<div id=\"token-card-" + tokenId + "\" class=\"token-card\">";
+        initSrc = ethersMin + "<script>\n" + initSrc + "</script>\n" + wrapper;
+
+        int position = HtmlScannerTest.lowercasedInjectionPosition(VIEW);
+        String page = VIEW.substring(0, position) + initSrc + VIEW.substring(position);
+        return encode(wrap(page));
+    }
+
+    private String renderCached(BigInteger tokenId)
+    {
+        String initSrc = String.format(INIT_TOKEN, ATTRS, "0x1", "https://rpc", 1, "token-card-" + tokenId);
+        String ethersMin = "<script src=\"" + ETHERS_URL + "\"></script>";
+        String wrapper = "<div id=\"token-card-" + tokenId + "\" class=\"token-card\">";
+        initSrc = ethersMin + "<script>\n" + initSrc + "</script>\n" + wrapper;
+
+        String page = HtmlScanner.splice(VIEW, HtmlScanner.getInjectionPosition(VIEW), initSrc);
+        return encode(wrap(page));
+    }
+
+    private static String wrap(String view)
+    {
+        return "<head><meta name=\"viewport\" content=\"width=device-width\" /><style type=\"text/css\">\n" + STYLE
+                + "</style></head><body>\n" + view + "</div></body>";
+    }
+
+    // as handed to loadData
+    private static String encode(String page)
+    {
+        return Base64.getMimeEncoder().encodeToString(page.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Result measure(CardRenderer renderer)
+    {
+        for (int i = 0; i < WARMUP; i++)
+        {
+            renderList(renderer);
+        }
+
+        Result result = new Result();
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            result.pageLength = renderList(renderer);
+            result.nanos += System.nanoTime() - start;
+            result.bytes += allocatedBytes() - startBytes;
+        }
+        result.nanos /= (long) ITERATIONS * CARDS;
+        result.bytes /= (long) ITERATIONS * CARDS;
+        return result;
+    }
+
+    private static int renderList(CardRenderer renderer)
+    {
+        int length = 0;
+        for (int card = 0; card < CARDS; card++)
+        {
+            length = renderer.render(BigInteger.valueOf(card)).length();
+        }
+        return length;
+    }
+
+    private static long allocatedBytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
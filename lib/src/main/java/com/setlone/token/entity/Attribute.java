@@ -44,6 +44,17 @@ public class Attribute {
     public EventDefinition event = null;
     public boolean userInput = false;
 
+    /**
+     * Restore an attribute from a precompiled script; the caller fills in the remaining fields
+     */
+    public Attribute(String name, String label, TokenDefinition.Syntax syntax, As as)
+    {
+        this.name = name;
+        this.label = label;
+        this.syntax = syntax;
+        this.as = as;
+    }
+
     public Attribute(Element attr, TokenDefinition def) throws SAXException
     {
         originContract = def.contracts.get(def.holdingToken);
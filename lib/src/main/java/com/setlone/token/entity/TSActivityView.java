@@ -1,5 +1,7 @@
 package com.setlone.token.entity;
 
+import java.util.Map;
+
 /**
  * Created by JB on 27/07/2020.
  */
@@ -29,6 +31,16 @@ public class TSActivityView
         return tokenViews.views.get(viewType);
     }
 
+    public TSOrigins getOrigins()
+    {
+        return eventOrigins;
+    }
+
+    public Map<String, TSTokenView> getViews()
+    {
+        return tokenViews.views;
+    }
+
     public String getEventName()
     {
         return eventOrigins.getOriginName();
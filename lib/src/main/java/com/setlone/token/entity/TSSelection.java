@@ -19,11 +19,13 @@ public class TSSelection
     public Map<String, String> names = null; //use these names if the selection filter is true
     private boolean negate = false;
     public String name = null;
+    public final String filterExpression;
 
     public static final Pattern decodeParam = Pattern.compile("[$][{](\\w*)[}]$");
 
     public TSSelection(String filterExpression) throws SAXException
     {
+        this.filterExpression = filterExpression;
         //tokenise
         List<String> tokens = tokeniseExpression(filterExpression);
         ListIterator<String> tokenItr = tokens.listIterator();
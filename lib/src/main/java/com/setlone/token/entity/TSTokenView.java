@@ -25,6 +25,15 @@ public class TSTokenView
     private String label = "";
     private String url;
     private String urlFragment;
+    private Source source;
+
+    /**
+     * View content held outside the heap until it's first needed, see TokenScriptSnapshot
+     */
+    public interface Source
+    {
+        String[] load(); // { view, style }
+    }
 
     public TSTokenView(Element element, TokenDefinition td) throws SAXException
     {
@@ -146,11 +155,13 @@ public class TSTokenView
 
     public String getTokenView()
     {
+        materialise();
         return tokenView;
     }
 
     public String getStyle()
     {
+        materialise();
         return style;
     }
 
@@ -170,6 +181,30 @@ public class TSTokenView
         this.tokenView = view;
     }
 
+    public TSTokenView(String label, String url, String urlFragment, Source source)
+    {
+        this.label = label;
+        this.url = url;
+        this.urlFragment = urlFragment;
+        this.source = source;
+    }
+
+    public boolean isMaterialised()
+    {
+        return source == null;
+    }
+
+    private synchronized void materialise()
+    {
+        if (source != null)
+        {
+            String[] content = source.load();
+            tokenView = content[0];
+            style = content[1];
+            source = null;
+        }
+    }
+
     private String getElementHTML(Node content)
     {
         StringBuilder sb = new StringBuilder();
@@ -66,18 +66,19 @@ public class TokenDefinition
     public final Map<String, ContractInfo> contracts = new HashMap<>();
     public final Map<String, AttestationDefinition> attestations = new HashMap<>();
     public final Map<String, TSAction> actions = new HashMap<>();
-    private final Map<String, String> labels = new HashMap<>(); // store plural etc for token name
-    private final Map<String, NamedType> namedTypeLookup = new HashMap<>(); //used to protect against name collision
-    private final TSTokenViewHolder tokenViews = new TSTokenViewHolder();
-    private final Map<String, TSSelection> selections = new HashMap<>();
-    private final Map<String, TSActivityView> activityCards = new HashMap<>();
+    //package access for TokenScriptSnapshot
+    final Map<String, String> labels = new HashMap<>(); // store plural etc for token name
+    final Map<String, NamedType> namedTypeLookup = new HashMap<>(); //used to protect against name collision
+    final TSTokenViewHolder tokenViews = new TSTokenViewHolder();
+    final Map<String, TSSelection> selections = new HashMap<>();
+    final Map<String, TSActivityView> activityCards = new HashMap<>();
     private final Map<String, Element> viewContent = new HashMap<>();
 
     public String nameSpace;
     public TokenscriptContext context;
     public String holdingToken = null;
-    private int actionCount;
-    private TSOrigins defaultOrigin = null;
+    int actionCount;
+    TSOrigins defaultOrigin = null;
 
     public static final String TOKENSCRIPT_MINIMUM_SCHEMA = "2020/06";
     public static final String TOKENSCRIPT_CURRENT_SCHEMA = "2024/01";
@@ -0,0 +1,737 @@
+package com.setlone.token.tools;
+
+import com.setlone.token.entity.ActionModifier;
+import com.setlone.token.entity.As;
+import com.setlone.token.entity.AttestationDefinition;
+import com.setlone.token.entity.Attribute;
+import com.setlone.token.entity.ContractInfo;
+import com.setlone.token.entity.EthereumTransaction;
+import com.setlone.token.entity.EventDefinition;
+import com.setlone.token.entity.FunctionDefinition;
+import com.setlone.token.entity.MethodArg;
+import com.setlone.token.entity.NamedType;
+import com.setlone.token.entity.ParseResult;
+import com.setlone.token.entity.TSAction;
+import com.setlone.token.entity.TSActivityView;
+import com.setlone.token.entity.TSOriginType;
+import com.setlone.token.entity.TSOrigins;
+import com.setlone.token.entity.TSSelection;
+import com.setlone.token.entity.TSTokenView;
+import com.setlone.token.entity.TokenscriptElement;
+
+import org.xml.sax.SAXException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Precompiled form of a TokenScript, so a script only goes through the DOM parser once per version of the file.
+ *
+ * After the first parse the definition is written next to the script as '[script].tsb', tagged with the script's MD5,
+ * size and modified time, and the language it was parsed for (labels are localised at parse time). Loading maps the snapshot read-only and
+ * rebuilds the attributes, contracts, actions and selections directly. View HTML and style aren't decoded: each view,
+ * including action and activity card views, reads its content from the mapped file the first time it's shown.
+ *
+ * A snapshot is ignored (and rewritten on the next load) if the script, language or format version doesn't match.
+ */
+public class TokenScriptSnapshot
+{
+    public static final String EXTENSION = ".tsb";
+    private static final int MAGIC = 0x54534231; // "TSB1"
+    private static final int VERSION = 1;
+
+    public static File snapshotFile(File script)
+    {
+        return new File(script.getAbsolutePath() + EXTENSION);
+    }
+
+    /**
+     * Load a script from its snapshot if there's a current one, otherwise parse it and write the snapshot for next time
+     *
+     * @param fileHash MD5 of the script file
+     */
+    public static TokenDefinition load(File script, String fileHash, Locale locale, ParseResult result) throws IOException, SAXException
+    {
+        TokenDefinition td = read(script, fileHash, locale, result);
+        if (td != null) return td;
+
+        final ParseResult.ParseResultId[] parseResult = { ParseResult.ParseResultId.OK };
+        try (InputStream in = new FileInputStream(script))
+        {
+            td = new TokenDefinition(in, locale, id -> {
+                parseResult[0] = id;
+                if (result != null) result.parseMessage(id);
+            });
+        }
+
+        if (td.isChanged() && parseResult[0] != ParseResult.ParseResultId.PARSE_FAILED)
+        {
+            try
+            {
+                write(td, fileHash, parseResult[0], script);
+            }
+            catch (IOException e)
+            {
+                //script directory may be read only; the script just won't be precompiled
+                delete(script);
+            }
+        }
+
+        return td;
+    }
+
+    public static void delete(File script)
+    {
+        File snapshot = snapshotFile(script);
+        if (snapshot.exists()) snapshot.delete();
+    }
+
+    /**
+     * @return the definition from the script's snapshot, or null if there's no current snapshot or it can't be read
+     */
+    public static TokenDefinition read(File script, String fileHash, Locale locale, ParseResult result)
+    {
+        File snapshot = snapshotFile(script);
+        if (!snapshot.exists()) return null;
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "r"))
+        {
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Reader reader = new Reader(buffer);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != script.length() || buffer.getLong() != script.lastModified()
+                    || !fileHash.equals(reader.string()) || !locale.getLanguage().equals(reader.string()))
+            {
+                return null;
+            }
+
+            ParseResult.ParseResultId parseResult = reader.enumValue(ParseResult.ParseResultId.class);
+            TokenDefinition td = reader.definition(locale);
+            if (result != null && parseResult != null) result.parseMessage(parseResult);
+            return td;
+        }
+        catch (IOException | SAXException | RuntimeException e)
+        {
+            return null; // corrupt or truncated, reparse
+        }
+    }
+
+    public static void write(TokenDefinition td, String fileHash, ParseResult.ParseResultId parseResult, File script) throws IOException
+    {
+        //write alongside and rename, so a reader never maps a half written file
+        File snapshot = snapshotFile(script);
+        File temp = new File(snapshot.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp))))
+        {
+            Writer writer = new Writer(out, td);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(script.length());
+            out.writeLong(script.lastModified());
+            writer.string(fileHash);
+            writer.string(td.locale.getLanguage());
+            writer.enumValue(parseResult);
+            writer.definition();
+        }
+
+        if (!temp.renameTo(snapshot))
+        {
+            temp.delete();
+            throw new IOException("Unable to store " + snapshot.getName());
+        }
+    }
+
+    private static class Writer
+    {
+        private final DataOutputStream out;
+        private final TokenDefinition td;
+        private final Map<ContractInfo, String> contractNames = new IdentityHashMap<>();
+
+        Writer(DataOutputStream out, TokenDefinition td)
+        {
+            this.out = out;
+            this.td = td;
+            for (Map.Entry<String, ContractInfo> entry : td.contracts.entrySet())
+            {
+                contractNames.put(entry.getValue(), entry.getKey());
+            }
+        }
+
+        void definition() throws IOException
+        {
+            string(td.nameSpace);
+            string(td.holdingToken);
+            string(td.keyName);
+            out.writeInt(td.actionCount);
+            stringMap(td.labels);
+
+            out.writeInt(td.contracts.size());
+            for (Map.Entry<String, ContractInfo> entry : td.contracts.entrySet())
+            {
+                string(entry.getKey());
+                string(entry.getValue().contractInterface);
+                out.writeInt(entry.getValue().addresses.size());
+                for (Map.Entry<Long, List<String>> addresses : entry.getValue().addresses.entrySet())
+                {
+                    out.writeLong(addresses.getKey());
+                    stringList(addresses.getValue());
+                }
+            }
+
+            out.writeInt(td.namedTypeLookup.size());
+            for (NamedType namedType : td.namedTypeLookup.values())
+            {
+                string(namedType.name);
+                out.writeInt(namedType.sequence.size());
+                for (NamedType.SequenceElement se : namedType.sequence)
+                {
+                    string(se.name);
+                    string(se.type);
+                    out.writeBoolean(se.indexed);
+                }
+            }
+
+            attributes(td.attributes);
+            attributes(td.tokenViews.localAttributeTypes);
+
+            out.writeInt(td.selections.size());
+            for (Map.Entry<String, TSSelection> entry : td.selections.entrySet())
+            {
+                TSSelection selection = entry.getValue();
+                string(entry.getKey());
+                string(selection.name);
+                string(selection.filterExpression);
+                string(selection.denialMessage);
+                stringMap(selection.names);
+            }
+
+            out.writeInt(td.attestations.size());
+            for (Map.Entry<String, AttestationDefinition> entry : td.attestations.entrySet())
+            {
+                AttestationDefinition attn = entry.getValue();
+                string(entry.getKey());
+                string(attn.name);
+                function(attn.function);
+                stringMap(attn.metadata);
+                stringMap(attn.attributes);
+                out.writeLong(attn.chainId);
+                bytes(attn.issuerKey);
+                stringList(attn.collectionKeys);
+                stringList(attn.collectionText);
+                stringList(attn.replacementFieldIds);
+                string(attn.schemaUID);
+            }
+
+            origins(td.defaultOrigin);
+
+            out.writeInt(td.actions.size());
+            for (Map.Entry<String, TSAction> entry : td.actions.entrySet())
+            {
+                TSAction action = entry.getValue();
+                string(entry.getKey());
+                out.writeInt(action.order);
+                string(action.exclude);
+                string(action.style);
+                string(action.name);
+                out.writeBoolean(action.attributes != null);
+                if (action.attributes != null) attributes(action.attributes);
+                function(action.function);
+                enumValue(action.modifier);
+                view(action.view);
+            }
+
+            //views last; a loaded definition only decodes these when they're shown
+            string(td.tokenViews.globalStyle);
+            views(td.tokenViews.views);
+            out.writeInt(td.activityCards.size());
+            for (Map.Entry<String, TSActivityView> entry : td.activityCards.entrySet())
+            {
+                string(entry.getKey());
+                origins(entry.getValue().getOrigins());
+                views(entry.getValue().getViews());
+            }
+        }
+
+        private void attributes(Map<String, Attribute> attributes) throws IOException
+        {
+            out.writeInt(attributes.size());
+            for (Map.Entry<String, Attribute> entry : attributes.entrySet())
+            {
+                string(entry.getKey());
+                attribute(entry.getValue());
+            }
+        }
+
+        private void attribute(Attribute attr) throws IOException
+        {
+            string(attr.name);
+            string(attr.label);
+            enumValue(attr.syntax);
+            enumValue(attr.as);
+            string(attr.bitmask != null ? attr.bitmask.toString(16) : null);
+            out.writeInt(attr.bitshift);
+            out.writeBoolean(attr.userInput);
+            contract(attr.originContract);
+            out.writeInt(attr.members != null ? attr.members.size() : -1);
+            if (attr.members != null)
+            {
+                for (Map.Entry<BigInteger, String> member : attr.members.entrySet())
+                {
+                    string(member.getKey().toString(16));
+                    string(member.getValue());
+                }
+            }
+            function(attr.function);
+            event(attr.event);
+            out.writeBoolean(attr.event != null && attr.event.parentAttribute == attr);
+        }
+
+        private void function(FunctionDefinition fd) throws IOException
+        {
+            out.writeBoolean(fd != null);
+            if (fd == null) return;
+            contract(fd.contract);
+            string(fd.method);
+            enumValue(fd.syntax);
+            enumValue(fd.as);
+            string(fd.namedTypeReturn);
+            out.writeInt(fd.parameters.size());
+            for (MethodArg arg : fd.parameters)
+            {
+                string(arg.parameterType);
+                element(arg.element);
+            }
+            out.writeInt(fd.tx != null ? fd.tx.args.size() : -1);
+            if (fd.tx != null)
+            {
+                for (Map.Entry<String, TokenscriptElement> entry : fd.tx.args.entrySet())
+                {
+                    string(entry.getKey());
+                    element(entry.getValue());
+                }
+            }
+        }
+
+        private void element(TokenscriptElement element) throws IOException
+        {
+            out.writeBoolean(element != null);
+            if (element == null) return;
+            string(element.localRef);
+            string(element.ref);
+            string(element.value);
+        }
+
+        private void event(EventDefinition ev) throws IOException
+        {
+            out.writeBoolean(ev != null);
+            if (ev == null) return;
+            contract(ev.contract);
+            string(ev.attributeName);
+            string(ev.type != null ? ev.type.name : null);
+            string(ev.filter);
+            string(ev.select);
+            string(ev.activityName);
+        }
+
+        private void origins(TSOrigins origins) throws IOException
+        {
+            out.writeBoolean(origins != null);
+            if (origins == null) return;
+            TSOriginType type = null;
+            for (TSOriginType t : TSOriginType.values())
+            {
+                if (origins.isType(t)) type = t;
+            }
+            enumValue(type);
+            string(origins.getOriginName());
+            event(origins.getOriginEvent());
+        }
+
+        private void views(Map<String, TSTokenView> views) throws IOException
+        {
+            out.writeInt(views.size());
+            for (Map.Entry<String, TSTokenView> entry : views.entrySet())
+            {
+                string(entry.getKey());
+                view(entry.getValue());
+            }
+        }
+
+        private void view(TSTokenView view) throws IOException
+        {
+            out.writeBoolean(view != null);
+            if (view == null) return;
+            string(view.getLabel());
+            string(view.getUrl());
+            string(view.getUrlFragment());
+            string(view.getTokenView());
+            string(view.getStyle());
+        }
+
+        private void contract(ContractInfo info) throws IOException
+        {
+            string(info != null ? contractNames.get(info) : null);
+        }
+
+        void string(String value) throws IOException
+        {
+            bytes(value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+        }
+
+        private void bytes(byte[] value) throws IOException
+        {
+            out.writeInt(value != null ? value.length : -1);
+            if (value != null) out.write(value);
+        }
+
+        void enumValue(Enum<?> value) throws IOException
+        {
+            string(value != null ? value.name() : null);
+        }
+
+        private void stringList(List<String> values) throws IOException
+        {
+            out.writeInt(values != null ? values.size() : -1);
+            if (values == null) return;
+            for (String value : values)
+            {
+                string(value);
+            }
+        }
+
+        private void stringMap(Map<String, String> values) throws IOException
+        {
+            out.writeInt(values != null ? values.size() : -1);
+            if (values == null) return;
+            for (Map.Entry<String, String> entry : values.entrySet())
+            {
+                string(entry.getKey());
+                string(entry.getValue());
+            }
+        }
+    }
+
+    private static class Reader
+    {
+        private final ByteBuffer buffer;
+        private TokenDefinition td;
+
+        Reader(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        TokenDefinition definition(Locale locale) throws SAXException
+        {
+            td = new TokenDefinition();
+            td.locale = locale;
+            td.nameSpace = string();
+            td.holdingToken = string();
+            td.keyName = string();
+            td.actionCount = buffer.getInt();
+            Map<String, String> labels = stringMap();
+            if (labels != null) td.labels.putAll(labels);
+
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String name = string();
+                ContractInfo info = new ContractInfo(string());
+                int chains = buffer.getInt();
+                for (int j = 0; j < chains; j++)
+                {
+                    long chainId = buffer.getLong();
+                    info.addresses.put(chainId, stringList());
+                }
+                td.contracts.put(name, info);
+            }
+
+            count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                NamedType namedType = new NamedType(string());
+                int elements = buffer.getInt();
+                for (int j = 0; j < elements; j++)
+                {
+                    NamedType.SequenceElement se = namedType.new SequenceElement();
+                    se.name = string();
+                    se.type = string();
+                    se.indexed = buffer.get() != 0;
+                    namedType.sequence.add(se);
+                }
+                td.namedTypeLookup.put(namedType.name, namedType);
+            }
+
+            attributes(td.attributes);
+            attributes(td.tokenViews.localAttributeTypes);
+
+            count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                String name = string();
+                TSSelection selection = new TSSelection(string());
+                selection.name = name;
+                selection.denialMessage = string();
+                selection.names = stringMap();
+                td.selections.put(key, selection);
+            }
+
+            count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                AttestationDefinition attn = new AttestationDefinition(string());
+                attn.function = function();
+                attn.metadata = stringMap();
+                attn.attributes = stringMap();
+                attn.chainId = buffer.getLong();
+                attn.issuerKey = bytes();
+                attn.collectionKeys = stringList();
+                attn.collectionText = stringList();
+                attn.replacementFieldIds = stringList();
+                attn.schemaUID = string();
+                td.attestations.put(key, attn);
+            }
+
+            td.defaultOrigin = origins();
+
+            count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                TSAction action = new TSAction();
+                action.order = buffer.getInt();
+                action.exclude = string();
+                action.style = string();
+                action.name = string();
+                if (buffer.get() != 0)
+                {
+                    action.attributes = new HashMap<>();
+                    attributes(action.attributes);
+                }
+                action.function = function();
+                action.modifier = enumValue(ActionModifier.class);
+                action.view = view();
+                td.actions.put(key, action);
+            }
+
+            td.tokenViews.globalStyle = string();
+            views(td.tokenViews.views);
+            count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                TSActivityView activityView = new TSActivityView(origins());
+                views(activityView.getViews());
+                td.activityCards.put(key, activityView);
+            }
+
+            return td;
+        }
+
+        private void attributes(Map<String, Attribute> attributes)
+        {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                attributes.put(key, attribute());
+            }
+        }
+
+        private Attribute attribute()
+        {
+            String name = string();
+            String label = string();
+            Attribute attr = new Attribute(name, label, enumValue(TokenDefinition.Syntax.class), enumValue(As.class));
+            String bitmask = string();
+            attr.bitmask = bitmask != null ? new BigInteger(bitmask, 16) : null;
+            attr.bitshift = buffer.getInt();
+            attr.userInput = buffer.get() != 0;
+            attr.originContract = contract();
+            int members = buffer.getInt();
+            if (members >= 0)
+            {
+                attr.members = new HashMap<>();
+                for (int i = 0; i < members; i++)
+                {
+                    BigInteger key = new BigInteger(string(), 16);
+                    attr.members.put(key, string());
+                }
+            }
+            attr.function = function();
+            attr.event = event();
+            if (buffer.get() != 0) attr.event.parentAttribute = attr;
+            return attr;
+        }
+
+        private FunctionDefinition function()
+        {
+            if (buffer.get() == 0) return null;
+            FunctionDefinition fd = new FunctionDefinition();
+            fd.contract = contract();
+            fd.method = string();
+            fd.syntax = enumValue(TokenDefinition.Syntax.class);
+            fd.as = enumValue(As.class);
+            fd.namedTypeReturn = string();
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                MethodArg arg = new MethodArg();
+                arg.parameterType = string();
+                arg.element = element();
+                fd.parameters.add(arg);
+            }
+            count = buffer.getInt();
+            if (count >= 0)
+            {
+                fd.tx = new EthereumTransaction();
+                for (int i = 0; i < count; i++)
+                {
+                    String key = string();
+                    fd.tx.args.put(key, element());
+                }
+            }
+            return fd;
+        }
+
+        private TokenscriptElement element()
+        {
+            if (buffer.get() == 0) return null;
+            TokenscriptElement element = new TokenscriptElement();
+            element.localRef = string();
+            element.ref = string();
+            element.value = string();
+            return element;
+        }
+
+        private EventDefinition event()
+        {
+            if (buffer.get() == 0) return null;
+            EventDefinition ev = new EventDefinition();
+            ev.contract = contract();
+            ev.attributeName = string();
+            String type = string();
+            ev.type = type != null ? td.namedTypeLookup.get(type) : null;
+            ev.filter = string();
+            ev.select = string();
+            ev.activityName = string();
+            return ev;
+        }
+
+        private TSOrigins origins() throws SAXException
+        {
+            if (buffer.get() == 0) return null;
+            TSOriginType type = enumValue(TSOriginType.class);
+            String name = string();
+            return new TSOrigins.Builder(type)
+                    .name(name)
+                    .event(event())
+                    .build();
+        }
+
+        private void views(Map<String, TSTokenView> views)
+        {
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                views.put(key, view());
+            }
+        }
+
+        private TSTokenView view()
+        {
+            if (buffer.get() == 0) return null;
+            String label = string();
+            String url = string();
+            String urlFragment = string();
+
+            //leave the content in the mapped file, just step over it
+            final int contentStart = buffer.position();
+            skipString();
+            skipString();
+            return new TSTokenView(label, url, urlFragment, () -> {
+                Reader content = new Reader(buffer.duplicate());
+                content.buffer.position(contentStart);
+                return new String[] { content.string(), content.string() };
+            });
+        }
+
+        private ContractInfo contract()
+        {
+            String name = string();
+            return name != null ? td.contracts.get(name) : null;
+        }
+
+        String string()
+        {
+            byte[] value = bytes();
+            return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+        }
+
+        private byte[] bytes()
+        {
+            int length = buffer.getInt();
+            if (length < 0) return null;
+            byte[] value = new byte[length];
+            buffer.get(value);
+            return value;
+        }
+
+        private void skipString()
+        {
+            int length = buffer.getInt();
+            if (length > 0) buffer.position(buffer.position() + length);
+        }
+
+        <T extends Enum<T>> T enumValue(Class<T> type)
+        {
+            String name = string();
+            return name != null ? Enum.valueOf(type, name) : null;
+        }
+
+        private List<String> stringList()
+        {
+            int count = buffer.getInt();
+            if (count < 0) return null;
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+            {
+                values.add(string());
+            }
+            return values;
+        }
+
+        private Map<String, String> stringMap()
+        {
+            int count = buffer.getInt();
+            if (count < 0) return null;
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < count; i++)
+            {
+                String key = string();
+                values.put(key, string());
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.setlone.token.tools;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.setlone.token.entity.ParseResult;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares loading the test scripts with a cold DOM parse against loading their precompiled snapshots.
+ * Reports time per load and heap retained per loaded definition (views not yet shown).
+ */
+public class TokenScriptSnapshotBenchmark
+{
+    private static final String[] SCRIPTS = { "entrytoken.canonicalized.xml", "DAI.tsml", "fifa.tsml" };
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 50;
+    private static final int RETAINED = 40;   // definitions held when measuring retained heap
+
+    private static final ParseResult NO_OP = id -> { };
+
+    private interface Loader
+    {
+        TokenDefinition load() throws Exception;
+    }
+
+    private static class Result
+    {
+        long nanos;
+        long retained;
+    }
+
+    @Test
+    public void domParseAgainstSnapshot() throws Exception
+    {
+        File workDir = Files.createTempDirectory("tsb").toFile();
+        long domTotal = 0;
+        long snapshotTotal = 0;
+        try
+        {
+            for (String name : SCRIPTS)
+            {
+                File script = new File(workDir, name);
+                Files.copy(new File("src/test/ts", name).toPath(), script.toPath());
+                TokenScriptSnapshot.load(script, "hash", Locale.ENGLISH, NO_OP); //compile
+                File snapshot = TokenScriptSnapshot.snapshotFile(script);
+
+                Result dom = measure(() -> {
+                    try (InputStream in = new FileInputStream(script))
+                    {
+                        return new TokenDefinition(in, Locale.ENGLISH, NO_OP);
+                    }
+                });
+                Result mapped = measure(() -> TokenScriptSnapshot.read(script, "hash", Locale.ENGLISH, NO_OP));
+
+                System.out.println(String.format(Locale.ROOT, "%s (%d KB, snapshot %d KB): DOM %.3f ms %d KB retained, snapshot %.3f ms %d KB retained",
+                        name, script.length() / 1024, snapshot.length() / 1024, dom.nanos / 1e6, dom.retained / 1024,
+                        mapped.nanos / 1e6, mapped.retained / 1024));
+                domTotal += dom.nanos;
+                snapshotTotal += mapped.nanos;
+            }
+        }
+        finally
+        {
+            File[] files = workDir.listFiles();
+            if (files != null) for (File f : files) f.delete();
+            workDir.delete();
+        }
+
+        assertTrue(snapshotTotal < domTotal);
+    }
+
+    private Result measure(Loader loader) throws Exception
+    {
+        for (int i = 0; i < WARMUP; i++)
+        {
+            assertNotNull(loader.load());
+        }
+
+        Result result = new Result();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            loader.load();
+        }
+        result.nanos = (System.nanoTime() - start) / ITERATIONS;
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        List<TokenDefinition> held = new ArrayList<>(RETAINED);
+        long before = usedHeap(memory);
+        for (int i = 0; i < RETAINED; i++)
+        {
+            held.add(loader.load());
+        }
+        result.retained = Math.max(0, usedHeap(memory) - before) / held.size();
+        return result;
+    }
+
+    private static long usedHeap(MemoryMXBean memory)
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,226 @@
+package com.setlone.token.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.setlone.token.entity.Attribute;
+import com.setlone.token.entity.ContractInfo;
+import com.setlone.token.entity.ParseResult;
+import com.setlone.token.entity.TSAction;
+import com.setlone.token.entity.TSActivityView;
+import com.setlone.token.entity.TSTokenView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class TokenScriptSnapshotTest implements ParseResult
+{
+    private static final File TS_DIR = new File("src/test/ts");
+    private static final String[] SCRIPTS = { "entrytoken.canonicalized.xml", "DAI.tsml", "fifa.tsml" };
+
+    private File workDir;
+    private final List<ParseResultId> messages = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException
+    {
+        workDir = Files.createTempDirectory("tsb").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = workDir.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        workDir.delete();
+    }
+
+    private File copyScript(String name) throws IOException
+    {
+        File copy = new File(workDir, name);
+        Files.copy(new File(TS_DIR, name).toPath(), copy.toPath());
+        return copy;
+    }
+
+    @Test
+    public void snapshotMatchesParsedScript() throws Exception
+    {
+        for (String name : SCRIPTS)
+        {
+            File script = copyScript(name);
+            TokenDefinition parsed = new TokenDefinition(new FileInputStream(script), Locale.ENGLISH, this);
+
+            TokenDefinition compiled = TokenScriptSnapshot.load(script, "hash", Locale.ENGLISH, this);
+            assertTrue(name, TokenScriptSnapshot.snapshotFile(script).exists());
+            messages.clear();
+            TokenDefinition loaded = TokenScriptSnapshot.load(script, "hash", Locale.ENGLISH, this);
+            assertEquals(1, messages.size()); //schema check replayed from the snapshot
+
+            for (TokenDefinition td : new TokenDefinition[] { compiled, loaded })
+            {
+                assertDefinitionsMatch(name, parsed, td);
+            }
+        }
+    }
+
+    private void assertDefinitionsMatch(String name, TokenDefinition expected, TokenDefinition actual)
+    {
+        assertEquals(name, expected.nameSpace, actual.nameSpace);
+        assertEquals(name, expected.holdingToken, actual.holdingToken);
+        assertEquals(name, expected.getKeyName(), actual.getKeyName());
+        assertEquals(name, expected.getTokenName(1), actual.getTokenName(1));
+        assertEquals(name, expected.getTokenName(2), actual.getTokenName(2));
+        assertEquals(name, expected.getViews(), actual.getViews());
+        assertEquals(name, expected.hasEvents(), actual.hasEvents());
+
+        assertEquals(name, expected.contracts.keySet(), actual.contracts.keySet());
+        for (Map.Entry<String, ContractInfo> entry : expected.contracts.entrySet())
+        {
+            ContractInfo info = actual.contracts.get(entry.getKey());
+            assertEquals(name, entry.getValue().contractInterface, info.contractInterface);
+            assertEquals(name, entry.getValue().addresses, info.addresses);
+        }
+
+        assertEquals(name, expected.attributes.keySet(), actual.attributes.keySet());
+        for (Map.Entry<String, Attribute> entry : expected.attributes.entrySet())
+        {
+            Attribute e = entry.getValue();
+            Attribute a = actual.attributes.get(entry.getKey());
+            assertEquals(name, e.label, a.label);
+            assertEquals(name, e.bitmask, a.bitmask);
+            assertEquals(name, e.bitshift, a.bitshift);
+            assertEquals(name, e.syntax, a.syntax);
+            assertEquals(name, e.as, a.as);
+            assertEquals(name, e.members, a.members);
+            assertEquals(name, e.usesTokenId(), a.usesTokenId());
+            if (e.function != null)
+            {
+                assertEquals(name, e.function.method, a.function.method);
+                assertEquals(name, e.function.parameters.size(), a.function.parameters.size());
+                assertSame(name, actual.contracts.get(actual.holdingToken), a.originContract);
+            }
+            if (e.event != null)
+            {
+                assertSame(name, a, a.event.parentAttribute);
+                assertEquals(name, e.event.type.name, a.event.type.name);
+                assertEquals(name, e.event.filter, a.event.filter);
+            }
+        }
+
+        assertEquals(name, expected.getActions().keySet(), actual.getActions().keySet());
+        for (Map.Entry<String, TSAction> entry : expected.getActions().entrySet())
+        {
+            TSAction e = entry.getValue();
+            TSAction a = actual.getActions().get(entry.getKey());
+            assertEquals(name, e.order, a.order);
+            assertEquals(name, e.exclude, a.exclude);
+            assertEquals(name, e.modifier, a.modifier);
+            assertEquals(name, e.style, a.style);
+            if (e.function != null)
+            {
+                assertEquals(name, e.function.method, a.function.method);
+                assertSame(name, actual.contracts.get(contractName(expected, e.function.contract)), a.function.contract);
+            }
+            if (e.view != null)
+            {
+                assertEquals(name, e.view.getTokenView(), a.view.getTokenView());
+                assertEquals(name, e.view.getStyle(), a.view.getStyle());
+            }
+        }
+
+        for (String view : new String[] { "item-view", "view" })
+        {
+            assertEquals(name, expected.getTokenView(view), actual.getTokenView(view));
+            assertEquals(name, expected.getTokenViewStyle(view), actual.getTokenViewStyle(view));
+        }
+
+        assertEquals(name, expected.getActivityCards().keySet(), actual.getActivityCards().keySet());
+        for (Map.Entry<String, TSActivityView> entry : expected.getActivityCards().entrySet())
+        {
+            TSActivityView a = actual.getActivityCards().get(entry.getKey());
+            assertEquals(name, entry.getValue().getEventName(), a.getEventName());
+            assertEquals(name, entry.getValue().getActivityFilter(), a.getActivityFilter());
+            assertEquals(name, entry.getValue().getViews().keySet(), a.getViews().keySet());
+        }
+    }
+
+    private static String contractName(TokenDefinition td, ContractInfo info)
+    {
+        for (Map.Entry<String, ContractInfo> entry : td.contracts.entrySet())
+        {
+            if (entry.getValue() == info) return entry.getKey();
+        }
+        return null;
+    }
+
+    @Test
+    public void viewsDecodedOnFirstUse() throws Exception
+    {
+        File script = copyScript("DAI.tsml");
+        TokenScriptSnapshot.load(script, "hash", Locale.ENGLISH, this);
+        TokenDefinition loaded = TokenScriptSnapshot.load(script, "hash", Locale.ENGLISH, this);
+
+        TSTokenView view = null;
+        for (TSAction action : loaded.getActions().values())
+        {
+            if (action.view != null) view = action.view;
+        }
+        assertNotNull(view);
+        assertFalse(view.isMaterialised());
+        assertFalse(view.getTokenView().isEmpty());
+        assertTrue(view.isMaterialised());
+    }
+
+    @Test
+    public void staleSnapshotIsReplaced() throws Exception
+    {
+        File script = copyScript("DAI.tsml");
+        File snapshot = TokenScriptSnapshot.snapshotFile(script);
+        TokenScriptSnapshot.load(script, "hash1", Locale.ENGLISH, this);
+
+        assertNotNull(TokenScriptSnapshot.read(script, "hash1", Locale.ENGLISH, null));
+        assertNull(TokenScriptSnapshot.read(script, "hash2", Locale.ENGLISH, null));
+        assertNull(TokenScriptSnapshot.read(script, "hash1", Locale.GERMAN, null));
+
+        //script changed: reparsed and snapshot rewritten for the new hash
+        assertNotNull(TokenScriptSnapshot.load(script, "hash2", Locale.ENGLISH, this));
+        assertNotNull(TokenScriptSnapshot.read(script, "hash2", Locale.ENGLISH, null));
+
+        //edited in place without the hash being updated
+        assertTrue(script.setLastModified(script.lastModified() - 60000));
+        assertNull(TokenScriptSnapshot.read(script, "hash2", Locale.ENGLISH, null));
+        assertNotNull(TokenScriptSnapshot.load(script, "hash2", Locale.ENGLISH, this));
+
+        //truncated file is ignored
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "rw"))
+        {
+            file.setLength(file.length() / 2);
+        }
+        assertNull(TokenScriptSnapshot.read(script, "hash2", Locale.ENGLISH, null));
+        assertEquals(2, TokenScriptSnapshot.load(script, "hash2", Locale.ENGLISH, this).contracts.size());
+
+        TokenScriptSnapshot.delete(script);
+        assertFalse(snapshot.exists());
+    }
+
+    @Override
+    public void parseMessage(ParseResultId parseResult)
+    {
+        messages.add(parseResult);
+    }
+}